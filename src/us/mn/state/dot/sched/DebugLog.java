@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2002-2016  Minnesota Department of Transportation
+ * Copyright (C) 2002-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -18,16 +18,31 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * DebugLog is a class for logging debugging information.  Logging can be
  * enabled or disabled by creating or deleting the log file.  Just use "touch
  * {filename}" to start logging.
  *
+ * The log files are checked periodically by a writer thread, so isOpen is
+ * cheap enough to call on any thread.  Messages are queued and written in
+ * batches by the writer thread, so logging never blocks on disk.
+ *
  * @author Douglas Lau
  */
 public final class DebugLog {
 
+	/** Interval to check log files (ms) */
+	static private final long CHECK_MS = 1000;
+
+	/** Maximum number of queued messages per log */
+	static private final int MAX_QUEUE = 10000;
+
 	/** Path to store log files */
 	static private File PATH = new File(".");
 
@@ -42,6 +57,68 @@ public final class DebugLog {
 		}
 	};
 
+	/** All debug logs */
+	static private final CopyOnWriteArrayList<DebugLog> LOGS =
+		new CopyOnWriteArrayList<DebugLog>();
+
+	/** Writer thread */
+	static private final Thread WRITER = new Thread("DebugLog") {
+		public void run() {
+			writeLogs();
+		}
+	};
+	static {
+		WRITER.setDaemon(true);
+		WRITER.start();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				drainLogs();
+			}
+		});
+	}
+
+	/** Write queued messages and check log files on the writer thread */
+	static private void writeLogs() {
+		long checked = 0;
+		while (true) {
+			long now = System.currentTimeMillis();
+			boolean check = (now - checked >= CHECK_MS) ||
+				(now < checked);
+			if (check) {
+				checked = now;
+				checkLogs();
+			}
+			drainLogs();
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(
+				CHECK_MS));
+		}
+	}
+
+	/** Check the files of all logs */
+	static private void checkLogs() {
+		for (DebugLog dl: LOGS) {
+			try {
+				dl.checkFile();
+			}
+			catch (RuntimeException e) {
+				dl.handleException(e);
+			}
+		}
+	}
+
+	/** Write queued messages of all logs.  An exception from one log
+	 * must not stop the others (or kill the writer thread). */
+	static private void drainLogs() {
+		for (DebugLog dl: LOGS) {
+			try {
+				dl.drain();
+			}
+			catch (RuntimeException e) {
+				dl.handleException(e);
+			}
+		}
+	}
+
 	/** Initialize the debug log mechanism.
 	 * @param p File path to store log files.
 	 * @param m Initial message when creating log file.
@@ -51,6 +128,8 @@ public final class DebugLog {
 			PATH = p;
 		MESSAGE = m;
 		HANDLER = h;
+		for (DebugLog dl: LOGS)
+			dl.checkFile();
 	}
 
 	/** Initialize the debug log mechanism.
@@ -80,6 +159,8 @@ public final class DebugLog {
 	public DebugLog(String fn, ExceptionHandler h) {
 		name = fn;
 		handler = h;
+		checkFile();
+		LOGS.add(this);
 		log(MESSAGE);
 	}
 
@@ -91,56 +172,99 @@ public final class DebugLog {
 		return new File(PATH, name);
 	}
 
-	/** Debug log buffered writer */
+	/** Flag indicating log file is writable */
+	private volatile boolean open = false;
+
+	/** Queue of messages to write */
+	private final ConcurrentLinkedQueue<String> queue =
+		new ConcurrentLinkedQueue<String>();
+
+	/** Number of queued messages */
+	private final AtomicInteger n_queued = new AtomicInteger();
+
+	/** Debug log buffered writer (writer thread only) */
 	private BufferedWriter bw = null;
 
+	/** Flag indicating log has been closed */
+	private boolean closed = false;
+
 	/** Check if we can write to the log file */
-	private synchronized boolean canWrite(File file) throws IOException {
-		boolean w = file.canWrite();
-		if (bw != null && (!w || file.length() == 0)) {
-			bw.close();
-			bw = null;
-		}
-		return w;
+	private synchronized void checkFile() {
+		File file = getFile();
+		boolean w = file.canWrite() && !closed;
+		if (bw != null && (!w || file.length() == 0))
+			closeWriter();
+		open = w;
 	}
 
-	/** Check if the debug log is open for writing */
-	public boolean isOpen() {
+	/** Close the debug log.  Queued messages are written, and the log is
+	 * removed from the writer thread. */
+	public synchronized void close() {
+		LOGS.remove(this);
+		drain();
+		closed = true;
+		open = false;
+		closeWriter();
+	}
+
+	/** Close the buffered writer */
+	private void closeWriter() {
 		try {
-			return canWrite(getFile());
+			if (bw != null)
+				bw.close();
 		}
 		catch (IOException e) {
 			handleException(e);
-			return false;
 		}
+		bw = null;
+	}
+
+	/** Check if the debug log is open for writing */
+	public boolean isOpen() {
+		return open;
 	}
 
 	/** Log a message in the debug log file */
-	public synchronized void log(String m) {
+	public void log(String m) {
+		if (open) {
+			if (n_queued.incrementAndGet() <= MAX_QUEUE) {
+				queue.add(TimeSteward.currentDateTimeString(
+					true) + " " + m);
+				LockSupport.unpark(WRITER);
+			} else
+				n_queued.decrementAndGet();
+		}
+	}
+
+	/** Write all queued messages in the debug log file */
+	private synchronized void drain() {
+		if (queue.isEmpty())
+			return;
 		try {
-			File file = getFile();
-			if (canWrite(file))
-				log(file, m);
+			String m = queue.poll();
+			while (m != null) {
+				n_queued.decrementAndGet();
+				if (open)
+					write(m);
+				m = queue.poll();
+			}
+			if (bw != null)
+				bw.flush();
 		}
 		catch (IOException e) {
+			closeWriter();
 			handleException(e);
 		}
 	}
 
 	/** Write a message in the debug log file */
-	private void log(File file, String m) throws IOException {
+	private void write(String m) throws IOException {
 		if (bw == null) {
-			bw = new BufferedWriter(new FileWriter(file, true));
-			log(bw, "DebugLog: " + name);
+			bw = new BufferedWriter(new FileWriter(getFile(),true));
+			bw.write(TimeSteward.currentDateTimeString(true));
+			bw.write(" DebugLog: " + name);
+			bw.newLine();
 		}
-		log(bw, m);
-		bw.flush();
-	}
-
-	/** Write a log message to a buffered writer */
-	private void log(BufferedWriter bw, String m) throws IOException {
-		bw.write(TimeSteward.currentDateTimeString(true));
-		bw.write(" ");
 		bw.write(m);
 		bw.newLine();
 	}
@@ -0,0 +1,253 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A pool scheduler performs jobs on a pool of worker threads.  Jobs are
+ * scheduled the same way as for a Scheduler, but a job which is slow does not
+ * delay other jobs, unless all worker threads are busy.
+ *
+ * Jobs with the same name (class) are exclusive -- they are never performed
+ * at the same time.  A repeating job is not rescheduled until it completes,
+ * so it never overlaps itself.
+ *
+ * The lateness of each job (actual start time minus scheduled time) is
+ * recorded by job name.
+ *
+ * @author Douglas Lau
+ */
+public final class PoolScheduler {
+
+	/** Pool scheduler thread group */
+	static private final ThreadGroup GROUP = new ThreadGroup("POOL");
+
+	/** Default exception handler */
+	static private final ExceptionHandler HANDLER = new ExceptionHandler() {
+		public boolean handle(Exception e) {
+			System.err.println("PoolScheduler: " +
+				Thread.currentThread().getName());
+			e.printStackTrace();
+			return true;
+		}
+	};
+
+	/** Exception handler */
+	private final ExceptionHandler handler;
+
+	/** Handle an exception */
+	private void handleException(Exception e) {
+		if (handler != null)
+			handler.handle(e);
+		else
+			HANDLER.handle(e);
+	}
+
+	/** Thread for dispatching jobs */
+	private final Thread thread;
+
+	/** Worker thread pool */
+	private final ExecutorService pool;
+
+	/** Debug log for scheduled jobs */
+	private final DebugLog slog;
+
+	/** Set of scheduled jobs to do */
+	private final TreeSet<Job> todo = new TreeSet<Job>();
+
+	/** Set of jobs being performed */
+	private final HashSet<Job> running = new HashSet<Job>();
+
+	/** Names of jobs being performed */
+	private final HashSet<String> running_names = new HashSet<String>();
+
+	/** Set of running jobs to remove after they complete */
+	private final HashSet<Job> toremove = new HashSet<Job>();
+
+	/** Most recent lateness of each job name (ms) */
+	private final HashMap<String, Long> lateness =
+		new HashMap<String, Long>();
+
+	/** Flag to indicate disposing */
+	private boolean disposing = false;
+
+	/** Create a new pool scheduler.
+	 * @param name Name of scheduler (and debug log).
+	 * @param n_threads Number of worker threads. */
+	public PoolScheduler(String name, int n_threads) {
+		this(name, n_threads, null);
+	}
+
+	/** Create a new pool scheduler.
+	 * @param name Name of scheduler (and debug log).
+	 * @param n_threads Number of worker threads.
+	 * @param h Exception handler. */
+	public PoolScheduler(final String name, int n_threads,
+		ExceptionHandler h)
+	{
+		assert n_threads > 0;
+		slog = new DebugLog(name, h);
+		handler = h;
+		pool = Executors.newFixedThreadPool(n_threads,
+			new ThreadFactory()
+		{
+			private int n_thread = 0;
+			public Thread newThread(Runnable r) {
+				n_thread++;
+				Thread t = new Thread(GROUP, r, name + "_" +
+					n_thread);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		thread = new Thread(GROUP, name) {
+			public void run() {
+				try {
+					dispatchJobs();
+				}
+				catch (InterruptedException e) {
+					if (!disposing)
+						handleException(e);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Dispatch jobs to the worker pool as they are scheduled */
+	private void dispatchJobs() throws InterruptedException {
+		while (!thread.isInterrupted()) {
+			final Job job = waitJob();
+			final long scheduled = TimeSteward.currentTimeMillis() +
+				job.delay();
+			pool.execute(new Runnable() {
+				public void run() {
+					performJob(job, scheduled);
+				}
+			});
+		}
+	}
+
+	/** Wait until the next job needs to be performed.  A job is skipped
+	 * while another job with the same name is being performed.
+	 * @return Job to be performed. */
+	private synchronized Job waitJob() throws InterruptedException {
+		while (true) {
+			long delay = 0;
+			for (Job job: todo) {
+				delay = job.delay();
+				if (delay > 0)
+					break;
+				String name = job.getName();
+				if (!running_names.contains(name)) {
+					todo.remove(job);
+					running.add(job);
+					running_names.add(name);
+					return job;
+				}
+			}
+			// Wait for a job to be added, removed or completed,
+			// or for the next job to be ready
+			if (delay > 0)
+				TimeSteward.wait(this, delay);
+			else
+				wait();
+		}
+	}
+
+	/** Perform a job */
+	private void performJob(Job job, long scheduled) {
+		long late = TimeSteward.currentTimeMillis() - scheduled;
+		setLateness(job.getName(), late);
+		boolean op = slog.isOpen();
+		try {
+			if (op) {
+				slog.log("Starting " + job.getName() +
+					" (late " + late + " ms)");
+			}
+			job.performTask();
+		}
+		catch (Exception e) {
+			handleException(e);
+		}
+		catch (VirtualMachineError e) {
+			System.err.println("VIRTUAL MACHINE ERROR");
+			e.printStackTrace();
+			System.err.println("FATAL: RESTARTING");
+			System.exit(1);
+		}
+		finally {
+			if (op)
+				slog.log("Finished " + job.getName());
+			completeJob(job);
+		}
+	}
+
+	/** Set the lateness of a job */
+	private synchronized void setLateness(String name, long late) {
+		lateness.put(name, late);
+	}
+
+	/** Complete a job, and repeat it if necessary */
+	private synchronized void completeJob(Job job) {
+		running.remove(job);
+		running_names.remove(job.getName());
+		if (!toremove.remove(job) && job.isRepeating()) {
+			job.computeNextTime();
+			todo.add(job);
+		}
+		notify();
+	}
+
+	/** Add a job for this scheduler to perform */
+	public synchronized void addJob(Job job) {
+		todo.add(job);
+		if (slog.isOpen() && todo.size() > 5000)
+			slog.log("OVERLOADED: " + todo.size());
+		notify();
+	}
+
+	/** Remove a job from this scheduler.  If the job is being performed,
+	 * it will not be repeated. */
+	public synchronized void removeJob(Job job) {
+		if (running.contains(job))
+			toremove.add(job);
+		else
+			todo.remove(job);
+		notify();
+	}
+
+	/** Get the most recent lateness of all jobs, by job name.
+	 * @return Mapping of job names to lateness (ms). */
+	public synchronized Map<String, Long> getLateness() {
+		return new TreeMap<String, Long>(lateness);
+	}
+
+	/** Dispose of the scheduler */
+	public void dispose() {
+		disposing = true;
+		thread.interrupt();
+		pool.shutdownNow();
+	}
+}
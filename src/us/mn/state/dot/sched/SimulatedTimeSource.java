@@ -0,0 +1,46 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * A simulated Time Source provides a clock which is set explicitly, for
+ * replaying data faster than real time.  Sleeping and waiting still use
+ * the system clock, so that schedulers keep running normally.
+ *
+ * @author Douglas Lau
+ */
+public class SimulatedTimeSource extends SystemTimeSource {
+
+	/** Current simulated time */
+	private volatile long now;
+
+	/** Create a new simulated time source.
+	 * @param t Initial time (ms since epoch). */
+	public SimulatedTimeSource(long t) {
+		now = t;
+	}
+
+	/** Set the current time.
+	 * @param t Time (ms since epoch). */
+	public void setTime(long t) {
+		now = t;
+	}
+
+	/** Get the current time */
+	@Override
+	public long currentTimeMillis() {
+		return now;
+	}
+}
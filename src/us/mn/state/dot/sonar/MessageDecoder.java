@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2017  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,8 +14,6 @@
  */
 package us.mn.state.dot.sonar;
 
-import java.io.InputStreamReader;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -25,6 +23,10 @@ import java.util.List;
  * A message decoder provides a Java API for decoding messages from the SONAR
  * wire protocol.
  *
+ * Received bytes are scanned directly for record and unit separators.  Since
+ * UTF-8 never encodes other characters with bytes in the ASCII range, UTF-8
+ * decoding is only needed for complete parameters.
+ *
  * @author Douglas Lau
  */
 public class MessageDecoder {
@@ -32,63 +34,110 @@ public class MessageDecoder {
 	/** Everything on the wire is encoded to UTF-8 */
 	static private final Charset UTF8 = Charset.forName("UTF-8");
 
+	/** Record separator byte */
+	static private final byte RECORD_SEP = (byte) Message.RECORD_SEP.code;
+
+	/** Unit separator byte */
+	static private final byte UNIT_SEP = (byte) Message.UNIT_SEP.code;
+
 	/** Byte buffer to store incoming SONAR data */
 	private final ByteBuffer app_in;
 
-	/** Byte buffer input stream */
-	private final ByteBufferInputStream in_buf;
+	/** Received bytes which have not been decoded */
+	private byte[] buf = new byte[1024];
+
+	/** Offset of first byte in buffer which has not been decoded */
+	private int head = 0;
 
-	/** Char reader input stream */
-	private InputStreamReader reader;
+	/** Offset after last byte in buffer */
+	private int tail = 0;
 
-	/** String builder to build decoded parameters */
-	private final StringBuilder m_buf = new StringBuilder();
+	/** Offset to resume scanning for a record separator */
+	private int scan = 0;
 
-	/** List of decoded parameters */
-	private ArrayList<String> params = new ArrayList<String>();
+	/** List of decoded parameters (reused for every message) */
+	private final ArrayList<String> params = new ArrayList<String>();
 
 	/** Create a new SONAR message decoder */
-	public MessageDecoder(ByteBuffer in) throws IOException {
+	public MessageDecoder(ByteBuffer in) {
 		app_in = in;
-		in_buf = new ByteBufferInputStream(in);
-		reader = new InputStreamReader(in_buf, UTF8);
 	}
 
-	/** Complete the current parameter */
-	private void completeParameter() {
-		params.add(m_buf.toString());
-		m_buf.setLength(0);
+	/** Decode one message.  All data is drained from the input buffer;
+	 * any partial message is retained until the rest is received.
+	 * @return List of message parameters, or null if no complete message
+	 *         is available.  The list is only valid until the next call
+	 *         to decode. */
+	public List<String> decode() {
+		drainInput();
+		for (int i = scan; i < tail; i++) {
+			if (RECORD_SEP == buf[i]) {
+				decodeRecord(head, i);
+				head = i + 1;
+				scan = head;
+				return params;
+			}
+		}
+		scan = tail;
+		shiftBuffer();
+		return null;
+	}
+
+	/** Drain all data from the input buffer */
+	private void drainInput() {
+		app_in.flip();
+		int n_bytes = app_in.remaining();
+		if (n_bytes > 0) {
+			ensureCapacity(n_bytes);
+			app_in.get(buf, tail, n_bytes);
+			tail += n_bytes;
+		}
+		app_in.clear();
 	}
 
-	/** Decode messages */
-	public List<String> decode() throws IOException {
-		try {
-			app_in.flip();
-			return _decode();
+	/** Ensure the buffer has capacity for more bytes */
+	private void ensureCapacity(int n_bytes) {
+		if (tail + n_bytes > buf.length) {
+			shiftBuffer();
+			int cap = buf.length;
+			while (tail + n_bytes > cap)
+				cap *= 2;
+			if (cap > buf.length) {
+				byte[] b = new byte[cap];
+				System.arraycopy(buf, 0, b, 0, tail);
+				buf = b;
+			}
 		}
-		finally {
-			app_in.compact();
+	}
+
+	/** Shift undecoded bytes to the start of the buffer */
+	private void shiftBuffer() {
+		if (head > 0) {
+			System.arraycopy(buf, head, buf, 0, tail - head);
+			tail -= head;
+			scan -= head;
+			head = 0;
 		}
 	}
 
-	/** Decode messages */
-	private List<String> _decode() throws IOException {
-		while (reader.ready()) {
-			int ch = reader.read();
-			if (ch < 0)
-				break;
-			char c = (char) ch;
-			if (Message.RECORD_SEP.code == c) {
-				completeParameter();
-				List<String> p = params;
-				params = new ArrayList<String>();
-				return p;
-			} else if (Message.UNIT_SEP.code == c)
-				completeParameter();
-			else
-				m_buf.append(c);
+	/** Decode the parameters of one record */
+	private void decodeRecord(int start, int end) {
+		params.clear();
+		int p = start;
+		for (int i = start; i < end; i++) {
+			if (UNIT_SEP == buf[i]) {
+				params.add(decodeParameter(p, i));
+				p = i + 1;
+			}
 		}
-		return null;
+		params.add(decodeParameter(p, end));
+	}
+
+	/** Decode one parameter */
+	private String decodeParameter(int start, int end) {
+		return (end > start)
+		      ? new String(buf, start, end - start, UTF8)
+		      : "";
 	}
 
 	/** Debug the SONAR parameters */
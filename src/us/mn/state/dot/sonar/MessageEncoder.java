@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -79,6 +79,49 @@ public class MessageEncoder {
 		writer.write(Message.RECORD_SEP.code);
 	}
 
+	/** Encode one message with the given code, name and parameters to an
+	 * array of bytes.  The array can be appended to any number of
+	 * encoders, so that a broadcast message is only encoded once. */
+	static public byte[] encodeBytes(Message m, String name,
+		String[] params)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(m.code);
+		if (name != null) {
+			sb.append(Message.UNIT_SEP.code);
+			sb.append(name);
+			if (params != null) {
+				for (String p: params) {
+					sb.append(Message.UNIT_SEP.code);
+					sb.append(stripString(p));
+				}
+			}
+		}
+		sb.append(Message.RECORD_SEP.code);
+		return sb.toString().getBytes(UTF8);
+	}
+
+	/** Append previously encoded messages.
+	 * This may only be called on the Task Processor thread.
+	 * @param msg Encoded message bytes (must not be modified). */
+	public void append(byte[] msg) throws IOException {
+		// Flush pending chars first to preserve message order
+		writer.flush();
+		out_buf.write(msg, 0, msg.length);
+	}
+
+	/** Take all encoded data as an array of bytes, clearing the output
+	 * buffer.  This may only be called on the Task Processor thread. */
+	public byte[] takeBytes() throws IOException {
+		writer.flush();
+		ByteBuffer buf = getBuffer();
+		buf.flip();
+		byte[] msg = new byte[buf.remaining()];
+		buf.get(msg);
+		compact();
+		return msg;
+	}
+
 	/** Flush the encoded data */
 	public void flush() throws IOException {
 		writer.flush();
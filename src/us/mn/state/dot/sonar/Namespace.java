@@ -276,6 +276,20 @@ abstract public class Namespace {
 	 * @return Iterator of all objects of the type. */
 	abstract public Iterator<SonarObject> iterator(String tname);
 
+	/** Lookup objects of a type by a secondary index key.  Secondary
+	 * indexes are only available on a server; callers must fall back to
+	 * iterating over all objects when null is returned.
+	 * @param tname Sonar type name.
+	 * @param iname Index name.
+	 * @param key Index key.
+	 * @return Iterator of matching objects, or null if there is no
+	 *         such index. */
+	public Iterator<SonarObject> lookupIndex(String tname, String iname,
+		Object key)
+	{
+		return null;
+	}
+
 	/** Get a count of the number of objects of the specified type.
 	 * @param tname Sonar type name
 	 * @return Total number of objects of the specified type */
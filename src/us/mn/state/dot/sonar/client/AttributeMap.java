@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2012  Minnesota Department of Transportation
+ * Copyright (C) 2012-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -27,7 +27,7 @@ final class AttributeMap {
 	public final Map<String, Attribute> attrs;
 
 	/** Flag indicating the proxy is a zombie */
-	public boolean zombie = false;
+	public volatile boolean zombie = false;
 
 	/** Create a new attribute map */
 	public AttributeMap(Map<String, Attribute> a) {
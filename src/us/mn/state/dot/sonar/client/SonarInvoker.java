@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2012  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -26,6 +26,9 @@ import us.mn.state.dot.sonar.SonarObject;
 /**
  * A SonarInvoker handles method invocations on SonarObject proxies.
  *
+ * Every proxy method is bound to an accessor when the invoker is created,
+ * so that each invocation needs only one map lookup.
+ *
  * @author Douglas Lau
  */
 class SonarInvoker implements InvocationHandler {
@@ -66,6 +69,36 @@ class SonarInvoker implements InvocationHandler {
 		return lookup_accessors(iface, "get");
 	}
 
+	/** An accessor performs one proxy method */
+	static private abstract class Accessor {
+		abstract Object invoke(SonarObject o, Object[] args)
+			throws SonarException;
+	}
+
+	/** Accessor for hashCode method */
+	static private final Accessor HASH_CODE = new Accessor() {
+		Object invoke(SonarObject o, Object[] args) {
+			return System.identityHashCode(o);
+		}
+	};
+
+	/** Accessor for equals method */
+	static private final Accessor EQUALS = new Accessor() {
+		Object invoke(SonarObject o, Object[] args) {
+			return o == args[0];
+		}
+	};
+
+	/** Lookup a method on the Object class */
+	static private Method lookup_object_method(String n, Class... p_types){
+		try {
+			return Object.class.getMethod(n, p_types);
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/** Cache of all proxy objects of the specified type */
 	protected final TypeCache cache;
 
@@ -78,43 +111,86 @@ class SonarInvoker implements InvocationHandler {
 	/** Type name attribute (shared by all proxies of a type) */
 	protected final Attribute typeName;
 
+	/** Map of all methods to accessors */
+	private final HashMap<Method, Accessor> accessors =
+		new HashMap<Method, Accessor>();
+
 	/** Create an invoker for the specified interface */
 	public SonarInvoker(TypeCache c, Class iface) {
 		cache = c;
 		setters = lookup_setters(iface);
 		getters = lookup_getters(iface);
 		typeName = new Attribute(c.tname);
+		bind_accessors(iface);
+	}
+
+	/** Bind accessors for all proxy methods */
+	private void bind_accessors(Class iface) {
+		for (Method m: iface.getMethods()) {
+			if ("destroy".equals(m.getName()))
+				accessors.put(m, createDestroyer());
+		}
+		for (Map.Entry<Method, String> e: setters.entrySet()) {
+			String a = e.getValue();
+			boolean check = getters.containsValue(a);
+			accessors.put(e.getKey(), createSetter(a, check));
+		}
+		for (Map.Entry<Method, String> e: getters.entrySet())
+			accessors.put(e.getKey(), createGetter(e.getValue()));
+		accessors.put(lookup_object_method("hashCode"), HASH_CODE);
+		accessors.put(lookup_object_method("equals", Object.class),
+			EQUALS);
+		accessors.put(lookup_object_method("toString"),
+			createGetter("name"));
+	}
+
+	/** Create an accessor to get an attribute */
+	private Accessor createGetter(final String a) {
+		return new Accessor() {
+			@SuppressWarnings("unchecked")
+			Object invoke(SonarObject o, Object[] args)
+				throws SonarException
+			{
+				return cache.getAttribute(o, a);
+			}
+		};
+	}
+
+	/** Create an accessor to set an attribute */
+	private Accessor createSetter(final String a, final boolean check) {
+		return new Accessor() {
+			@SuppressWarnings("unchecked")
+			Object invoke(SonarObject o, Object[] args)
+				throws SonarException
+			{
+				cache.setAttribute(o, a, args, check);
+				return null;
+			}
+		};
+	}
+
+	/** Create an accessor to destroy an object */
+	private Accessor createDestroyer() {
+		return new Accessor() {
+			@SuppressWarnings("unchecked")
+			Object invoke(SonarObject o, Object[] args) {
+				cache.removeObject(o);
+				return null;
+			}
+		};
 	}
 
 	/** Invoke a method call on a proxy instance */
-	@SuppressWarnings("unchecked")
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args)
 		throws SonarException
 	{
 		assert proxy instanceof SonarObject;
-		SonarObject o = (SonarObject)proxy;
-		if(getters.containsKey(method))
-			return cache.getAttribute(o, getters.get(method));
-		else if(setters.containsKey(method)) {
-			String aname = setters.get(method);
-			boolean check = getters.containsValue(aname);
-			cache.setAttribute(o, aname, args, check);
-			return null;
-		} else {
-			String m = method.getName();
-			if(m.equals("hashCode"))
-				return System.identityHashCode(proxy);
-			if(m.equals("equals"))
-				return proxy == args[0];
-			if(m.equals("toString"))
-				return cache.getAttribute(o, "name");
-			if(m.equals("destroy")) {
-				cache.removeObject(o);
-				return null;
-			}
-		}
-		throw NamespaceError.nameUnknown("*method*");
+		Accessor acc = accessors.get(method);
+		if (acc != null)
+			return acc.invoke((SonarObject) proxy, args);
+		else
+			throw NamespaceError.nameUnknown("*method*");
 	}
 
 	/** Create attributes for one proxy instance */
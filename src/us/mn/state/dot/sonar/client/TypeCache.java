@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2018  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -242,18 +242,23 @@ public class TypeCache<T extends SonarObject> implements Iterable<T> {
 	}
 
 	/** Lookup the attribute map for the given object */
-	private Map<String, Attribute> lookupAttributeMap(T o) {
+	private AttributeMap lookupAttributeMap(T o) {
 		synchronized (this) {
-			AttributeMap amap = attributes.get(o);
-			return amap != null ? amap.attrs : null;
+			return attributes.get(o);
 		}
 	}
 
 	/** Lookup an attribute of the given proxy */
 	private Attribute lookupAttribute(T o, String a) throws NamespaceError {
-		Map<String, Attribute> amap = lookupAttributeMap(o);
+		return lookupAttribute(lookupAttributeMap(o), a);
+	}
+
+	/** Lookup an attribute in an attribute map */
+	private Attribute lookupAttribute(AttributeMap amap, String a)
+		throws NamespaceError
+	{
 		if (amap != null) {
-			Attribute attr = amap.get(a);
+			Attribute attr = amap.attrs.get(a);
 			if (attr != null)
 				return attr;
 			else
@@ -285,11 +290,12 @@ public class TypeCache<T extends SonarObject> implements Iterable<T> {
 	void setAttribute(T o, String a, Object[] args, boolean check)
 		throws SonarException
 	{
-		Attribute attr = lookupAttribute(o, a);
+		AttributeMap amap = lookupAttributeMap(o);
+		Attribute attr = lookupAttribute(amap, a);
 		if (check && attr.valueEquals(args))
 			return;
 		String[] values = namespace.marshall(attr.type, args);
-		if (!isZombie(o))
+		if (!amap.zombie)
 			client.setAttribute(new Name(o, a), values);
 	}
 
@@ -14,8 +14,12 @@
  */
 package us.mn.state.dot.sonar.server;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
@@ -28,6 +32,9 @@ import us.mn.state.dot.sonar.SonarObject;
  * An attribute dispatcher is an adapter for SonarObjects. It provides
  * a pair of simple methods to set and get attributes of those objects.
  *
+ * Setter and getter methods are bound to method handles when the dispatcher
+ * is created, so that no reflective lookups are needed to access attributes.
+ *
  * @author Douglas Lau
  */
 public class AttributeDispatcher {
@@ -41,9 +48,6 @@ public class AttributeDispatcher {
 	/** Alternate method name to destroy an object */
 	static private final String DO_DESTROY_METHOD = "doDestroy";
 
-	/** Empty array of parameters */
-	static private final Object[] NO_PARAMS = new Object[0];
-
 	/** Empty array of strings */
 	static private final String[] EMPTY_STRING = new String[0];
 
@@ -108,6 +112,80 @@ public class AttributeDispatcher {
 			return lookup_method(c, DESTROY_METHOD);
 	}
 
+	/** Lookup for binding method handles */
+	static private final MethodHandles.Lookup LOOKUP =
+		MethodHandles.publicLookup();
+
+	/** Method type for bound constructors */
+	static private final MethodType CONSTRUCTOR_TYPE =
+		MethodType.methodType(SonarObject.class, String.class);
+
+	/** Method type for bound getters */
+	static private final MethodType GETTER_TYPE =
+		MethodType.methodType(Object.class, SonarObject.class);
+
+	/** Method type for bound setters (and other methods) */
+	static private final MethodType SETTER_TYPE = MethodType.methodType(
+		void.class, SonarObject.class, Object[].class);
+
+	/** Bind a constructor to a method handle */
+	static private MethodHandle bind_constructor(Constructor c) {
+		if (c == null)
+			return null;
+		try {
+			return LOOKUP.unreflectConstructor(c)
+			             .asType(CONSTRUCTOR_TYPE);
+		}
+		catch (IllegalAccessException e) {
+			c.setAccessible(true);
+			return bind_constructor(c);
+		}
+	}
+
+	/** Bind a method to a method handle */
+	static private MethodHandle bind_method(Method m) {
+		try {
+			return LOOKUP.unreflect(m);
+		}
+		catch (IllegalAccessException e) {
+			m.setAccessible(true);
+			return bind_method(m);
+		}
+	}
+
+	/** Bind a getter method to a method handle */
+	static private MethodHandle bind_getter(Method m) {
+		return bind_method(m).asType(GETTER_TYPE);
+	}
+
+	/** Bind a setter (or other) method to a method handle, with all
+	 * parameters spread from an array */
+	static private MethodHandle bind_setter(Method m) {
+		int n_params = m.getParameterTypes().length;
+		return bind_method(m).asSpreader(Object[].class, n_params)
+		                     .asType(SETTER_TYPE);
+	}
+
+	/** Wrap an exception thrown from a method handle */
+	static private SonarException wrap_exception(Throwable t) {
+		return new SonarException(new InvocationTargetException(t));
+	}
+
+	/** A setter is a method bound to a handle, with parameter types */
+	static private final class Setter {
+		private final MethodHandle handle;
+		private final Class[] p_types;
+		private Setter(Method m) {
+			handle = bind_setter(m);
+			p_types = m.getParameterTypes();
+		}
+	}
+
+	/** Create a setter for a method (if not null) */
+	static private Setter create_setter(Method m) {
+		return (m != null) ? new Setter(m) : null;
+	}
+
 	/** The implementation class */
 	private final Class the_class;
 
@@ -115,25 +193,29 @@ public class AttributeDispatcher {
 	private final Namespace namespace;
 
 	/** Constructor to create a new object */
-	private final Constructor constructor;
+	private final MethodHandle constructor;
 
 	/** Method to store an object */
-	private final Method storer;
+	private final Setter storer;
 
 	/** Method to destroy an object */
-	private final Method destroyer;
+	private final Setter destroyer;
 
 	/** Mapping of attribute names to setter methods */
-	private final HashMap<String, Method> setters =
-		new HashMap<String, Method>();
+	private final HashMap<String, Setter> setters =
+		new HashMap<String, Setter>();
 
 	/** Mapping of attribute names to getter methods */
-	private final HashMap<String, Method> getters =
-		new HashMap<String, Method>();
+	private final HashMap<String, MethodHandle> getters =
+		new HashMap<String, MethodHandle>();
+
+	/** Array of gettable attributes */
+	private final String[] gettable;
 
-	/** Get an array of gettable attributes */
+	/** Get an array of gettable attributes.  The array must not be
+	 * modified. */
 	public String[] getGettableAttributes() {
-		return getters.keySet().toArray(EMPTY_STRING);
+		return gettable;
 	}
 
 	/** Test if an attribute is gettable */
@@ -148,9 +230,10 @@ public class AttributeDispatcher {
 		the_class = c;
 		namespace = ns;
 		lookup_attributes(c);
-		constructor = lookup_constructor(c);
-		storer = lookup_storer(c);
-		destroyer = lookup_destroyer(c);
+		gettable = getters.keySet().toArray(EMPTY_STRING);
+		constructor = bind_constructor(lookup_constructor(c));
+		storer = create_setter(lookup_storer(c));
+		destroyer = create_setter(lookup_destroyer(c));
 	}
 
 	/** Lookup all the attributes of the specified class */
@@ -182,7 +265,7 @@ public class AttributeDispatcher {
 	private void lookup_setter(Method im) {
 		Method m = lookup__etter(im);
 		if (m != null)
-			setters.put(attribute_name(im.getName()), m);
+			setters.put(attribute_name(im.getName()), new Setter(m));
 	}
 
 	/** Lookup a getter method.
@@ -190,7 +273,7 @@ public class AttributeDispatcher {
 	private void lookup_getter(Method im) {
 		Method m = lookup__etter(im);
 		if (m != null)
-			getters.put(attribute_name(im.getName()), m);
+			getters.put(attribute_name(im.getName()), bind_getter(m));
 	}
 
 	/** Lookup a setter or getter method.
@@ -230,36 +313,27 @@ public class AttributeDispatcher {
 	public SonarObject createObject(String name) throws SonarException {
 		if (constructor == null)
 			throw PermissionDenied.cannotAdd();
-		Object[] params = { name };
 		try {
-			return (SonarObject)constructor.newInstance(params);
+			return (SonarObject) constructor.invokeExact(name);
 		}
-		catch (Exception e) {
-			throw new SonarException(e);
+		catch (Throwable t) {
+			throw wrap_exception(t);
 		}
 	}
 
-	/** Invoke a method on the given SONAR object */
-	private Object _invoke(SonarObject o, Method method, Object[] params)
+	/** Invoke a setter (or other) method on the given SONAR object */
+	private void invoke(SonarObject o, Setter s, String[] v)
 		throws SonarException
 	{
+		Object[] params = namespace.unmarshall(s.p_types, v);
 		try {
-			return method.invoke(o, params);
+			s.handle.invokeExact(o, params);
 		}
-		catch (Exception e) {
-			throw new SonarException(e);
+		catch (Throwable t) {
+			throw wrap_exception(t);
 		}
 	}
 
-	/** Invoke a method on the given SONAR object */
-	private Object invoke(SonarObject o, Method method, String[] v)
-		throws SonarException
-	{
-		Class[] p_types = method.getParameterTypes();
-		Object[] params = namespace.unmarshall(p_types, v);
-		return _invoke(o, method, params);
-	}
-
 	/** Store the given object */
 	public void storeObject(SonarObject o) throws SonarException {
 		if (storer == null)
@@ -278,10 +352,10 @@ public class AttributeDispatcher {
 	public void setValue(SonarObject o, String a, String[] v)
 		throws SonarException
 	{
-		Method m = setters.get(a);
-		if (m == null)
+		Setter s = setters.get(a);
+		if (s == null)
 			throw PermissionDenied.cannotWrite(a);
-		invoke(o, m, v);
+		invoke(o, s, v);
 	}
 
 	/** Lookup the named field from the given class */
@@ -323,10 +397,16 @@ public class AttributeDispatcher {
 	public String[] getValue(SonarObject o, String a)
 		throws SonarException
 	{
-		Method m = getters.get(a);
-		if (m == null)
+		MethodHandle g = getters.get(a);
+		if (g == null)
 			throw PermissionDenied.cannotRead(a);
-		Object result = _invoke(o, m, NO_PARAMS);
+		Object result;
+		try {
+			result = g.invokeExact(o);
+		}
+		catch (Throwable t) {
+			throw wrap_exception(t);
+		}
 		if (result instanceof Object[]) {
 			Object[] r = (Object [])result;
 			String[] res = new String[r.length];
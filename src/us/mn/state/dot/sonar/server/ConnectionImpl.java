@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2018  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -306,48 +306,41 @@ public class ConnectionImpl extends Conduit implements Connection {
 			notifyObject(o);
 	}
 
-	/** Notify the client of an attribute change.
+	/** Check if the client should be notified of an attribute change.
 	 * This may only be called on the Task Processor thread. */
-	void notifyAttribute(Name name, String[] params) {
+	boolean isNotifyAttribute(Name name) {
 		User u = user;
-		if (u != null &&
-		    isWatching(name) &&
-		    namespace.canRead(name, u, address))
-		{
-			notifyAttribute(name.toString(), params);
-		}
+		return u != null
+		    && isWatching(name)
+		    && namespace.canRead(name, u, address);
 	}
 
 	/** Notify the client of an attribute change.
-	 * This may only be called on the Task Processor thread. */
-	private void notifyAttribute(String name, String[] params) {
-		try {
-			state.encoder.encode(Message.ATTRIBUTE, name, params);
-			flush();
-		}
-		catch (IOException e) {
-			disconnect("I/O error: notifyAttribute " + name);
-		}
+	 * This may only be called on the Task Processor thread.
+	 * @param name Attribute name.
+	 * @param msg Encoded ATTRIBUTE message. */
+	void notifyAttribute(Name name, byte[] msg) {
+		notifyEncoded(msg, "notifyAttribute " + name);
 	}
 
 	/** Notify the client of a name being removed.
-	 * This may only be called on the Task Processor thread. */
-	void notifyRemove(Name name) {
-		if (isWatching(name)) {
-			notifyRemove(name.toString());
-			stopWatching(name);
-		}
+	 * This may only be called on the Task Processor thread.
+	 * @param name Name being removed.
+	 * @param msg Encoded REMOVE message. */
+	void notifyRemove(Name name, byte[] msg) {
+		notifyEncoded(msg, "notifyRemove " + name);
+		stopWatching(name);
 	}
 
-	/** Notify the client of a name being removed.
+	/** Notify the client with previously encoded messages.
 	 * This may only be called on the Task Processor thread. */
-	protected void notifyRemove(String name) {
+	void notifyEncoded(byte[] msg, String what) {
 		try {
-			state.encoder.encode(Message.REMOVE, name);
+			state.encoder.append(msg);
 			flush();
 		}
 		catch (IOException e) {
-			disconnect("I/O error: notifyRemove " + name);
+			disconnect("I/O error: " + what);
 		}
 	}
 
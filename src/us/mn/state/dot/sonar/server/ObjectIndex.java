@@ -0,0 +1,179 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import us.mn.state.dot.sonar.EmptyIterator;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * An object index is a secondary index for objects of one SONAR type.  It
+ * maps a key (computed from one or more attributes) to the set of objects
+ * with that key.
+ *
+ * The index is updated when objects are added or removed, when a client sets
+ * an attribute and when server code calls ServerNamespace.reindex (which
+ * Server.setAttribute does).  If a key depends on another object (such as a
+ * location), that object can be returned by getDependency, and the index is
+ * also updated when that object is reindexed.
+ *
+ * @author Douglas Lau
+ */
+abstract public class ObjectIndex {
+
+	/** Index name */
+	public final String name;
+
+	/** Objects by key */
+	private final HashMap<Object, LinkedHashSet<SonarObject>> objects =
+		new HashMap<Object, LinkedHashSet<SonarObject>>();
+
+	/** Keys by object */
+	private final IdentityHashMap<SonarObject, Object> keys =
+		new IdentityHashMap<SonarObject, Object>();
+
+	/** Indexed objects by dependency */
+	private final IdentityHashMap<SonarObject, ArrayList<SonarObject>>
+		dependents = new IdentityHashMap<SonarObject,
+		ArrayList<SonarObject>>();
+
+	/** Dependencies by indexed object */
+	private final IdentityHashMap<SonarObject, SonarObject> deps =
+		new IdentityHashMap<SonarObject, SonarObject>();
+
+	/** Create a new object index */
+	protected ObjectIndex(String n) {
+		name = n;
+	}
+
+	/** Get the index key of an object.
+	 * @param o Object to index.
+	 * @return Key, or null if the object should not be indexed. */
+	abstract protected Object getKey(SonarObject o);
+
+	/** Get an object which the index key depends on.
+	 * @param o Indexed object.
+	 * @return Dependency, or null for none. */
+	protected SonarObject getDependency(SonarObject o) {
+		return null;
+	}
+
+	/** Update the index for an object.  The key is computed while
+	 * holding the index lock, so that concurrent updates of one object
+	 * cannot store a stale key.  Because of this, getKey must not call
+	 * back into the index, and reindexing must not be done while holding
+	 * a lock needed by getKey. */
+	synchronized void update(SonarObject o) {
+		Object k = getKey(o);
+		Object ok = keys.get(o);
+		if (k == null || !k.equals(ok)) {
+			removeKey(o, ok);
+			if (k != null)
+				addKey(o, k);
+		}
+		updateDependency(o, getDependency(o));
+	}
+
+	/** Add an object to a key set */
+	private void addKey(SonarObject o, Object k) {
+		keys.put(o, k);
+		LinkedHashSet<SonarObject> s = objects.get(k);
+		if (null == s) {
+			s = new LinkedHashSet<SonarObject>(2);
+			objects.put(k, s);
+		}
+		s.add(o);
+	}
+
+	/** Remove an object from the index */
+	synchronized void remove(SonarObject o) {
+		removeKey(o, keys.get(o));
+		updateDependency(o, null);
+	}
+
+	/** Remove an object from its key set */
+	private void removeKey(SonarObject o, Object k) {
+		if (k != null) {
+			keys.remove(o);
+			LinkedHashSet<SonarObject> s = objects.get(k);
+			if (s != null) {
+				s.remove(o);
+				if (s.isEmpty())
+					objects.remove(k);
+			}
+		}
+	}
+
+	/** Update the dependency of an object */
+	private void updateDependency(SonarObject o, SonarObject d) {
+		SonarObject od = deps.get(o);
+		if (od == d)
+			return;
+		if (od != null) {
+			deps.remove(o);
+			ArrayList<SonarObject> os = dependents.get(od);
+			if (os != null) {
+				os.remove(o);
+				if (os.isEmpty())
+					dependents.remove(od);
+			}
+		}
+		if (d != null) {
+			deps.put(o, d);
+			ArrayList<SonarObject> os = dependents.get(d);
+			if (null == os) {
+				os = new ArrayList<SonarObject>(1);
+				dependents.put(d, os);
+			}
+			os.add(o);
+		}
+	}
+
+	/** Update all objects which depend on another object */
+	void updateDependents(SonarObject d) {
+		for (SonarObject o: getDependents(d))
+			update(o);
+	}
+
+	/** Get a snapshot of objects which depend on another object */
+	private synchronized ArrayList<SonarObject> getDependents(
+		SonarObject d)
+	{
+		ArrayList<SonarObject> os = dependents.get(d);
+		return (os != null)
+		      ? new ArrayList<SonarObject>(os)
+		      : new ArrayList<SonarObject>(0);
+	}
+
+	/** Lookup all objects with a key.
+	 * @param k Index key.
+	 * @return Iterator of objects (a snapshot). */
+	public synchronized Iterator<SonarObject> lookup(Object k) {
+		LinkedHashSet<SonarObject> s = objects.get(k);
+		if (s != null)
+			return new ArrayList<SonarObject>(s).iterator();
+		else
+			return new EmptyIterator();
+	}
+
+	/** Get the number of indexed objects */
+	public synchronized int size() {
+		return keys.size();
+	}
+}
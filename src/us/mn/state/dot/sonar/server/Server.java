@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2017  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -34,11 +34,15 @@ public final class Server {
 	/** Task processor */
 	private final TaskProcessor processor;
 
+	/** Server namespace */
+	private final ServerNamespace namespace;
+
 	/** Create the SONAR server */
 	public Server(ServerNamespace n, Properties props,
 		AccessMonitor am) throws IOException, ConfigurationError
 	{
 		int port = Props.getIntProp(props, "sonar.port");
+		namespace = n;
 		processor = new TaskProcessor(n, props, am);
 		thread = new SelectorThread(processor, port);
 	}
@@ -68,8 +72,10 @@ public final class Server {
 		processor.scheduleRemoveObject(o);
 	}
 
-	/** Set the specified attribute in the server's namespace */
+	/** Set the specified attribute in the server's namespace.  Secondary
+	 * indexes are updated immediately; clients are notified later. */
 	public void setAttribute(SonarObject o, String a) {
+		namespace.reindex(o);
 		processor.scheduleSetAttribute(o, a);
 	}
 
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2017  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,8 +16,10 @@ package us.mn.state.dot.sonar.server;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import us.mn.state.dot.sonar.EmptyIterator;
 import us.mn.state.dot.sonar.GroupChecker;
 import us.mn.state.dot.sonar.Message;
@@ -48,6 +50,14 @@ public class ServerNamespace extends Namespace {
 	private final HashMap<String, TypeNode> root =
 		new HashMap<String, TypeNode>();
 
+	/** Secondary indexes by type name (protected by root lock) */
+	private final HashMap<String, ArrayList<ObjectIndex>> type_indexes =
+		new HashMap<String, ArrayList<ObjectIndex>>();
+
+	/** All secondary indexes */
+	private final CopyOnWriteArrayList<ObjectIndex> indexes =
+		new CopyOnWriteArrayList<ObjectIndex>();
+
 	/** Register a new type in the namespace */
 	private TypeNode registerType(SonarObject o) {
 		return registerType(o.getTypeName(), o.getClass());
@@ -84,7 +94,10 @@ public class ServerNamespace extends Namespace {
 	 * @return phantom object if one was created; null otherwise */
 	SonarObject setAttribute(Name name, String[] v) throws SonarException {
 		TypeNode t = getTypeNode(name);
-		return t.setValue(name, v);
+		SonarObject p = t.setValue(name, v);
+		if (null == p)
+			updateDependents(t.lookupObject(name.getObjectPart()));
+		return p;
 	}
 
 	/** Set the value of an attribute on a phantom object.
@@ -193,11 +206,79 @@ public class ServerNamespace extends Namespace {
 	public TypeNode registerType(String n, Class c, GroupChecker gc) {
 		TypeNode node = new TypeNode(this, n, c, gc);
 		synchronized (root) {
+			ArrayList<ObjectIndex> idxs = type_indexes.get(n);
+			if (idxs != null) {
+				for (ObjectIndex idx: idxs)
+					node.addIndex(idx);
+			}
 			root.put(n, node);
 		}
 		return node;
 	}
 
+	/** Add a secondary index for a type.  The index is kept up to date
+	 * as objects are added, removed and changed.
+	 * @param tname Type name.
+	 * @param idx Object index. */
+	public void addIndex(String tname, ObjectIndex idx) {
+		synchronized (root) {
+			ArrayList<ObjectIndex> idxs = type_indexes.get(tname);
+			if (null == idxs) {
+				idxs = new ArrayList<ObjectIndex>();
+				type_indexes.put(tname, idxs);
+			}
+			idxs.add(idx);
+			indexes.add(idx);
+			TypeNode t = root.get(tname);
+			if (t != null)
+				t.addIndex(idx);
+		}
+	}
+
+	/** Update secondary indexes after an object has changed.
+	 * @param o Changed object. */
+	public void reindex(SonarObject o) {
+		TypeNode t = _getTypeNode(o.getTypeName());
+		if (t != null)
+			t.reindex(o);
+		updateDependents(o);
+	}
+
+	/** Update indexed objects which depend on a changed object */
+	private void updateDependents(SonarObject o) {
+		if (o != null) {
+			for (ObjectIndex idx: indexes)
+				idx.updateDependents(o);
+		}
+	}
+
+	/** Lookup objects of a type by a secondary index key.
+	 * @param tname Sonar type name.
+	 * @param iname Index name.
+	 * @param key Index key.
+	 * @return Iterator of matching objects, or null if there is no
+	 *         such index. */
+	@Override
+	public Iterator<SonarObject> lookupIndex(String tname, String iname,
+		Object key)
+	{
+		TypeNode t = _getTypeNode(tname);
+		if (t != null) {
+			ObjectIndex idx = t.lookupIndex(iname);
+			return (idx != null) ? idx.lookup(key) : null;
+		}
+		synchronized (root) {
+			ArrayList<ObjectIndex> idxs = type_indexes.get(tname);
+			if (idxs != null) {
+				for (ObjectIndex idx: idxs) {
+					if (idx.name.equals(iname))
+						return new EmptyIterator();
+				}
+			}
+			return null;
+		}
+	}
+
 	/** Register a new type in the namespace.
 	 * @param n Type name.
 	 * @param c Type class.
@@ -35,6 +35,8 @@ import us.mn.state.dot.sched.Work;
 import us.mn.state.dot.sched.Worker;
 import static us.mn.state.dot.sched.TimeSteward.currentTimeMillis;
 import us.mn.state.dot.sonar.ConfigurationError;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
 import us.mn.state.dot.sonar.Name;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.NamespaceError;
@@ -168,6 +170,10 @@ public class TaskProcessor {
 	/** User for current message processing */
 	private String proc_user = null;
 
+	/** Encoder for notifications broadcast to all watching connections.
+	 * This may only be used on the Task Processor thread. */
+	private final MessageEncoder notify_encoder;
+
 	/** Create a task processor */
 	public TaskProcessor(ServerNamespace n, Properties props,
 		AccessMonitor am) throws IOException, ConfigurationError
@@ -184,6 +190,7 @@ public class TaskProcessor {
 		}
 		session_file = props.getProperty("sonar.session.file");
 		cipher_suites = props.getProperty("sonar.cipher.suites");
+		notify_encoder = new MessageEncoder(0);
 	}
 
 	/** Add an authentication provider */
@@ -439,29 +446,81 @@ public class TaskProcessor {
 		}
 	}
 
-	/** Notify all connections watching a name of an object add. */
+	/** Notify all connections watching a name of an object add.  The
+	 * object is only encoded once, for the first watching connection. */
 	private void notifyObject(SonarObject o) {
 		Name name = new Name(o);
-		for (ConnectionImpl c: getConnectionList())
-			c.notifyObject(name, o);
+		byte[] msg = null;
+		for (ConnectionImpl c: getConnectionList()) {
+			if (c.isWatching(name)) {
+				if (null == msg)
+					msg = encodeObject(o);
+				if (msg != null)
+					c.notifyEncoded(msg, "notifyObject " + name);
+				else
+					c.notifyObject(o);
+			}
+		}
 	}
 
-	/** Notify all connections watching a name of an attribute change. */
+	/** Encode all messages for a new object.
+	 * @return Encoded messages, or null on error. */
+	private byte[] encodeObject(SonarObject o) {
+		try {
+			byte[] msg;
+			try {
+				namespace.enumerateObject(notify_encoder, o);
+			}
+			finally {
+				// Always take encoded bytes to clear encoder
+				msg = notify_encoder.takeBytes();
+			}
+			return msg;
+		}
+		catch (SonarException e) {
+			return null;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/** Notify all connections watching a name of an attribute change.
+	 * The message is only encoded once, for the first connection which
+	 * can read the attribute. */
 	void notifyAttribute(Name name, String[] params) {
 		if (DEBUG_TASK.isOpen()) {
 			debugTask("Notify attribute", name.toString() + " (" +
 				processor.size() + ")");
 		}
 		if (namespace.isGettable(name)) {
-			for (ConnectionImpl c: getConnectionList())
-				c.notifyAttribute(name, params);
+			byte[] msg = null;
+			for (ConnectionImpl c: getConnectionList()) {
+				if (c.isNotifyAttribute(name)) {
+					if (null == msg) {
+						msg = MessageEncoder.encodeBytes(
+							Message.ATTRIBUTE,
+							name.toString(), params);
+					}
+					c.notifyAttribute(name, msg);
+				}
+			}
 		}
 	}
 
-	/** Notify all connections watching a name of an object remove. */
+	/** Notify all connections watching a name of an object remove.
+	 * The message is only encoded once. */
 	void notifyRemove(Name name) {
-		for (ConnectionImpl c: getConnectionList())
-			c.notifyRemove(name);
+		byte[] msg = null;
+		for (ConnectionImpl c: getConnectionList()) {
+			if (c.isWatching(name)) {
+				if (null == msg) {
+					msg = MessageEncoder.encodeBytes(
+						Message.REMOVE, name.toString(), null);
+				}
+				c.notifyRemove(name, msg);
+			}
+		}
 	}
 
 	/** Schedule an object to be added to the server's namespace */
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2017  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import us.mn.state.dot.sonar.GroupChecker;
 import us.mn.state.dot.sonar.Message;
 import us.mn.state.dot.sonar.MessageEncoder;
@@ -54,6 +55,10 @@ public class TypeNode {
 	/** An attribute dispatcher can set and get attributes on objects */
 	private final AttributeDispatcher dispatcher;
 
+	/** Secondary indexes of child objects */
+	private final CopyOnWriteArrayList<ObjectIndex> indexes =
+		new CopyOnWriteArrayList<ObjectIndex>();
+
 	/** Create a namespace type node */
 	public TypeNode(Namespace ns, String n, Class c, GroupChecker gc) {
 		name = n;
@@ -61,6 +66,38 @@ public class TypeNode {
 		dispatcher = new AttributeDispatcher(c, ns);
 	}
 
+	/** Add a secondary index, including all existing objects */
+	public void addIndex(ObjectIndex idx) {
+		synchronized (children) {
+			for (SonarObject o: children.values())
+				idx.update(o);
+			indexes.add(idx);
+		}
+	}
+
+	/** Lookup a secondary index by name */
+	public ObjectIndex lookupIndex(String n) {
+		for (ObjectIndex idx: indexes) {
+			if (idx.name.equals(n))
+				return idx;
+		}
+		return null;
+	}
+
+	/** Update all secondary indexes for an object */
+	public void reindex(SonarObject o) {
+		if (children.get(o.getName()) == o) {
+			for (ObjectIndex idx: indexes)
+				idx.update(o);
+		}
+	}
+
+	/** Remove an object from all secondary indexes */
+	private void unindex(SonarObject o) {
+		for (ObjectIndex idx: indexes)
+			idx.remove(o);
+	}
+
 	/** Create a new object in the type node */
 	public SonarObject createObject(String name) throws SonarException {
 		if (children.containsKey(name))
@@ -76,6 +113,7 @@ public class TypeNode {
 				throw NamespaceError.nameExists(name);
 			dispatcher.storeObject(o);
 			children.put(name, o);
+			reindex(o);
 		}
 	}
 
@@ -85,8 +123,10 @@ public class TypeNode {
 		synchronized (children) {
 			if (children.containsKey(name))
 				throw NamespaceError.nameExists(name);
-			else
+			else {
 				children.put(name, o);
+				reindex(o);
+			}
 		}
 	}
 
@@ -106,6 +146,7 @@ public class TypeNode {
 				children.put(n, o);
 				throw e;
 			}
+			unindex(o);
 		}
 	}
 
@@ -168,7 +209,12 @@ public class TypeNode {
 		String aname = name.getAttributePart();
 		SonarObject o = children.get(oname);
 		if (o != null) {
-			dispatcher.setValue(o, aname, v);
+			try {
+				dispatcher.setValue(o, aname, v);
+			}
+			finally {
+				reindex(o);
+			}
 			return null;
 		} else {
 			o = dispatcher.createObject(oname);
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2018  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  * Copyright (C) 2014-2015  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
@@ -20,6 +20,7 @@ import java.net.URISyntaxException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.TreeMap;
+import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.tms.geo.Position;
 import us.mn.state.dot.tms.utils.URIUtil;
 import us.mn.state.dot.tms.units.Distance;
@@ -43,6 +44,15 @@ public class CameraHelper extends BaseHelper {
 			name);
 	}
 
+	/** Name of index by camera number */
+	static public final String NUM_INDEX = "cam_num";
+
+	/** Name of spatial index by location grid cell */
+	static public final String GRID_INDEX = "grid";
+
+	/** Maximum grid rings to search for nearest cameras */
+	static private final int GRID_MAX_RINGS = 10;
+
 	/** Get a camera iterator */
 	static public Iterator<Camera> iterator() {
 		return new IteratorWrapper<Camera>(namespace.iterator(
@@ -51,8 +61,57 @@ public class CameraHelper extends BaseHelper {
 
 	/** Find the nearest cameras to a position */
 	static public Collection<Camera> findNearest(Position pos, int n_count){
+		Collection<Camera> cams = findNearestGrid(pos, n_count);
+		return (cams != null) ? cams : findNearestAll(pos, n_count);
+	}
+
+	/** Find the nearest cameras to a position using the grid index.
+	 * Rings of grid cells around the position are searched until all
+	 * cameras outside the searched block must be farther away.
+	 * @return Nearest cameras, or null if the index is not available
+	 *         or too many rings would be searched. */
+	static private Collection<Camera> findNearestGrid(Position pos,
+		int n_count)
+	{
 		TreeMap<Double, Camera> cams = new TreeMap<Double, Camera>();
-		Iterator<Camera> it = iterator();
+		int row = GeoLocHelper.gridRow(pos.getLatitude());
+		int col = GeoLocHelper.gridCol(pos.getLongitude());
+		for (int r = 0; r <= GRID_MAX_RINGS; r++) {
+			for (int i = -r; i <= r; i++) {
+				for (int j = -r; j <= r; j++) {
+					if (Math.abs(i) < r && Math.abs(j) < r)
+						continue;
+					Iterator<SonarObject> it =
+						namespace.lookupIndex(
+						Camera.SONAR_TYPE, GRID_INDEX,
+						GeoLocHelper.gridKey(row + i,
+						col + j));
+					if (null == it)
+						return null;
+					addNearest(cams, new IteratorWrapper<
+						Camera>(it), pos, n_count);
+				}
+			}
+			if (cams.size() >= n_count && (cams.isEmpty() ||
+			    cams.lastKey() <= GeoLocHelper.gridDistance(pos, r)))
+				return cams.values();
+		}
+		return null;
+	}
+
+	/** Find the nearest cameras to a position by checking all cameras */
+	static private Collection<Camera> findNearestAll(Position pos,
+		int n_count)
+	{
+		TreeMap<Double, Camera> cams = new TreeMap<Double, Camera>();
+		addNearest(cams, iterator(), pos, n_count);
+		return cams.values();
+	}
+
+	/** Add cameras to a map of the nearest cameras */
+	static private void addNearest(TreeMap<Double, Camera> cams,
+		Iterator<Camera> it, Position pos, int n_count)
+	{
 		while (it.hasNext()) {
 			Camera cam = it.next();
 			GeoLoc loc = cam.getGeoLoc();
@@ -63,12 +122,15 @@ public class CameraHelper extends BaseHelper {
 					cams.pollLastEntry();
 			}
 		}
-		return cams.values();
 	}
 
 	/** Find a camera with the specific number */
 	static private Camera findUID(int uid) {
-		Iterator<Camera> it = iterator();
+		Iterator<SonarObject> sit = namespace.lookupIndex(
+			Camera.SONAR_TYPE, NUM_INDEX, uid);
+		Iterator<Camera> it = (sit != null)
+		                    ? new IteratorWrapper<Camera>(sit)
+		                    : iterator();
 		while (it.hasNext()) {
 			Camera cam = it.next();
 			Integer cn = cam.getCamNum();
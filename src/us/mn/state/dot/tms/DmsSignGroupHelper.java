@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,6 +17,7 @@ package us.mn.state.dot.tms;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import us.mn.state.dot.sonar.SonarObject;
 
 /**
  * Helper class for DMS sign groups.
@@ -36,9 +37,37 @@ public class DmsSignGroupHelper extends BaseHelper {
 			DmsSignGroup.SONAR_TYPE));
 	}
 
+	/** Name of index by DMS */
+	static public final String DMS_INDEX = "dms";
+
+	/** Name of index by sign group */
+	static public final String GROUP_INDEX = "sign_group";
+
+	/** Get an iterator of DMS sign groups which may contain a DMS.  This
+	 * uses an index when available, but callers must still check the DMS
+	 * of each sign group. */
+	static public Iterator<DmsSignGroup> iterator(DMS dms) {
+		Iterator<SonarObject> it = namespace.lookupIndex(
+			DmsSignGroup.SONAR_TYPE, DMS_INDEX, dms);
+		return (it != null)
+		      ? new IteratorWrapper<DmsSignGroup>(it)
+		      : iterator();
+	}
+
+	/** Get an iterator of DMS sign groups which may be members of a sign
+	 * group.  This uses an index when available, but callers must still
+	 * check the sign group of each DMS sign group. */
+	static public Iterator<DmsSignGroup> iterator(SignGroup sg) {
+		Iterator<SonarObject> it = namespace.lookupIndex(
+			DmsSignGroup.SONAR_TYPE, GROUP_INDEX, sg);
+		return (it != null)
+		      ? new IteratorWrapper<DmsSignGroup>(it)
+		      : iterator();
+	}
+
 	/** Check if a DMS is in a hidden sign group */
 	static public boolean isHidden(DMS dms) {
-		Iterator<DmsSignGroup> it = iterator();
+		Iterator<DmsSignGroup> it = iterator(dms);
 		while (it.hasNext()) {
 			DmsSignGroup dsg = it.next();
 			if (dsg.getDms() == dms) {
@@ -52,7 +81,7 @@ public class DmsSignGroupHelper extends BaseHelper {
 	/** Find all sign groups for a DMS */
 	static public Set<SignGroup> findGroups(DMS dms) {
 		HashSet<SignGroup> groups = new HashSet<SignGroup>();
-		Iterator<DmsSignGroup> it = iterator();
+		Iterator<DmsSignGroup> it = iterator(dms);
 		while (it.hasNext()) {
 			DmsSignGroup dsg = it.next();
 			if (dsg.getDms() == dms)
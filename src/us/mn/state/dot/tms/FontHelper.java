@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2008-2018  Minnesota Department of Transportation
+ * Copyright (C) 2008-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -19,6 +19,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.TreeMap;
+import us.mn.state.dot.sonar.SonarObject;
 
 /**
  * Font helper methods.
@@ -48,9 +49,16 @@ public class FontHelper extends BaseHelper {
 			Font.SONAR_TYPE));
 	}
 
+	/** Name of index by font number */
+	static public final String NUM_INDEX = "f_number";
+
 	/** Find a font using a font number */
 	static public Font find(int f_num) {
-		Iterator<Font> it = iterator();
+		Iterator<SonarObject> sit = namespace.lookupIndex(
+			Font.SONAR_TYPE, NUM_INDEX, f_num);
+		Iterator<Font> it = (sit != null)
+		                  ? new IteratorWrapper<Font>(sit)
+		                  : iterator();
 		while(it.hasNext()) {
 			Font f = it.next();
 			if(f.getNumber() == f_num)
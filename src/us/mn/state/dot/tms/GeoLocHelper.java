@@ -483,4 +483,46 @@ public class GeoLocHelper extends BaseHelper {
 			return VEC_NORTH;
 		}
 	}
+
+	/** Size of spatial index grid cells (degrees) */
+	static public final double GRID_DEG = 0.05;
+
+	/** Get the spatial index grid row of a latitude */
+	static public int gridRow(double lat) {
+		return (int) Math.floor(lat / GRID_DEG);
+	}
+
+	/** Get the spatial index grid column of a longitude */
+	static public int gridCol(double lon) {
+		return (int) Math.floor(lon / GRID_DEG);
+	}
+
+	/** Get a spatial index grid cell key */
+	static public Long gridKey(int row, int col) {
+		return ((long) row << 32) | (col & 0xFFFFFFFFL);
+	}
+
+	/** Get the spatial index grid cell key of a location.
+	 * @param l Location.
+	 * @return Grid cell key, or null if location has no position. */
+	static public Long gridKey(GeoLoc l) {
+		Position pos = getWgs84Position(l);
+		return (pos != null)
+		      ? gridKey(gridRow(pos.getLatitude()),
+		                gridCol(pos.getLongitude()))
+		      : null;
+	}
+
+	/** Get the minimum distance from a position to any location outside
+	 * a block of grid cells.
+	 * @param pos Position in center cell of block.
+	 * @param r Number of cells from center to edge of block.
+	 * @return Distance (m), which may be an underestimate. */
+	static public double gridDistance(Position pos, int r) {
+		double lat = Math.abs(pos.getLatitude()) + (r + 1) * GRID_DEG;
+		double cos = Math.cos(Math.toRadians(Math.min(lat, 90)));
+		// One degree of latitude on the WGS-84 mean sphere is slightly
+		// more than 111 km; round down to stay conservative.
+		return r * GRID_DEG * 111000 * cos;
+	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2018  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,6 +17,7 @@ package us.mn.state.dot.tms;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Iterator;
+import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.tms.utils.Base64;
 import us.mn.state.dot.tms.utils.MultiAdapter;
 import us.mn.state.dot.tms.utils.MultiString;
@@ -44,9 +45,16 @@ public class GraphicHelper extends BaseHelper {
 			Graphic.SONAR_TYPE));
 	}
 
+	/** Name of index by graphic number */
+	static public final String NUM_INDEX = "g_number";
+
 	/** Find a graphic using a graphic number */
 	static public Graphic find(int g_num) {
-		Iterator<Graphic> it = iterator();
+		Iterator<SonarObject> sit = namespace.lookupIndex(
+			Graphic.SONAR_TYPE, NUM_INDEX, g_num);
+		Iterator<Graphic> it = (sit != null)
+		                     ? new IteratorWrapper<Graphic>(sit)
+		                     : iterator();
 		while (it.hasNext()) {
 			Graphic g = it.next();
 			if (g.getGNumber() == g_num)
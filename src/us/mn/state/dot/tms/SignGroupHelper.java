@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2014  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -42,7 +42,7 @@ public class SignGroupHelper extends BaseHelper {
 
 	/** Check if a sign group has any members */
 	static public boolean hasMembers(SignGroup sg) {
-		Iterator<DmsSignGroup> it = DmsSignGroupHelper.iterator();
+		Iterator<DmsSignGroup> it = DmsSignGroupHelper.iterator(sg);
 		while (it.hasNext()) {
 			DmsSignGroup dsg = it.next();
 			if (dsg.getSignGroup() == sg)
@@ -16,7 +16,9 @@
 package us.mn.state.dot.tms;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
+import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.tms.utils.Base64;
 import us.mn.state.dot.tms.utils.MultiString;
 
@@ -48,6 +50,17 @@ public class SignMessageHelper extends BaseHelper {
 			SignMessage.SONAR_TYPE));
 	}
 
+	/** Name of index by sign configuration and MULTI string */
+	static public final String MULTI_INDEX = "multi";
+
+	/** Get a MULTI index key.
+	 * @param sc Sign configuration.
+	 * @param multi MULTI string.
+	 * @return Index key. */
+	static public Object multiKey(SignConfig sc, String multi) {
+		return Arrays.asList(sc, multi);
+	}
+
 	/** Find a sign message with matching attributes.
 	 * @param sc Sign configuration.
 	 * @param inc Associated incident (original name).
@@ -62,7 +75,12 @@ public class SignMessageHelper extends BaseHelper {
 		boolean be, DmsMsgPriority mp, int src, String owner, Integer d)
 	{
 		int mpi = mp.ordinal();
-		Iterator<SignMessage> it = iterator();
+		Iterator<SonarObject> sit = namespace.lookupIndex(
+			SignMessage.SONAR_TYPE, MULTI_INDEX,
+			multiKey(sc, multi));
+		Iterator<SignMessage> it = (sit != null)
+		                         ? new IteratorWrapper<SignMessage>(sit)
+		                         : iterator();
 		while (it.hasNext()) {
 			SignMessage sm = it.next();
 			if (objectEquals(sc, sm.getSignConfig()) &&
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2018  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  * Copyright (C) 2014  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
@@ -153,6 +153,11 @@ public class Session {
 	/** Tile layer */
 	private final TileLayer tile_layer;
 
+	/** Get the tile layer (may be null) */
+	public TileLayer getTileLayer() {
+		return tile_layer;
+	}
+
 	/** Listeners for edit mode changes */
 	private final LinkedList<EditModeListener> listeners =
 		new LinkedList<EditModeListener>();
@@ -194,7 +199,8 @@ public class Session {
 	/** Create the tile layer */
 	private TileLayer createTileLayer(String url) {
 		if (url != null)
-			return new TileLayer("Base map", url, 1000);
+			return new TileLayer("Base map", url,
+				UserProperty.getTileDir());
 		else
 			return null;
 	}
@@ -403,6 +409,8 @@ public class Session {
 			man.dispose();
 		managers.clear();
 		loc_manager.dispose();
+		if (tile_layer != null)
+			tile_layer.dispose();
 		state.quit();
 	}
 
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2018  Minnesota Department of Transportation
+ * Copyright (C) 2012-2019  Minnesota Department of Transportation
  * Copyright (C) 2010-2014  AHMCT, University of California
  * Copyright (C) 2017       Iteris Inc.
  *
@@ -70,6 +70,11 @@ public enum UserProperty {
 		return new File(home, "iris");
 	}
 
+	/** Get the directory to cache map tiles */
+	static public File getTileDir() {
+		return new File(getDir(), "tiles");
+	}
+
 	/** Get the file to store user properties */
 	static private File getFile() {
 		return new File(getDir(), "user.properties");
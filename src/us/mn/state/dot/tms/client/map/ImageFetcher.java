@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2011-2016  Minnesota Department of Transportation
+ * Copyright (C) 2011-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,6 +17,7 @@ package us.mn.state.dot.tms.client.map;
 import java.io.InputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.net.URLConnection;
 
 /**
  * An image fetcher is a simple class to fetch images remotely.
@@ -25,6 +26,9 @@ import java.net.URL;
  */
 public class ImageFetcher {
 
+	/** Timeout for URL connections */
+	static private final int URL_TIMEOUT_MS = 10 * 1000;
+
 	/** Base URL to fetch images */
 	protected final URL base_url;
 
@@ -36,6 +40,9 @@ public class ImageFetcher {
 	/** Fetch the named image */
 	public InputStream fetchImage(String n) throws IOException {
 		URL url = new URL(base_url.toExternalForm() + n + ".png");
-		return url.openStream();
+		URLConnection conn = url.openConnection();
+		conn.setConnectTimeout(URL_TIMEOUT_MS);
+		conn.setReadTimeout(URL_TIMEOUT_MS);
+		return conn.getInputStream();
 	}
 }
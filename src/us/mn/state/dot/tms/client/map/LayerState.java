@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2016  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -187,12 +187,25 @@ abstract public class LayerState {
 	/** Call the specified callback for each map object in the layer */
 	abstract public MapObject forEach(MapSearcher s);
 
-	/** Paint the layer */
+	/** Call the specified callback for each map object in a region.
+	 * Sub-classes with a spatial index can override this to skip objects
+	 * outside the region; the default searches the whole layer.
+	 * @param r Region in world coordinates (null for whole layer).
+	 * @param s Map searcher callback.
+	 * @return Map object found, if any. */
+	public MapObject forEach(Rectangle2D r, MapSearcher s) {
+		return forEach(s);
+	}
+
+	/** Paint the layer.  Only objects within the clip region of the
+	 * graphics context are painted. */
 	public void paint(final Graphics2D g) {
 		if (isVisible()) {
 			final AffineTransform t = g.getTransform();
+			Shape clip = g.getClip();
+			Rectangle2D r = (clip != null) ? clip.getBounds2D() : null;
 			theme.setScale(getScale());
-			forEach(new MapSearcher() {
+			forEach(r, new MapSearcher() {
 				public boolean next(MapObject mo) {
 					theme.draw(g, mo);
 					g.setTransform(t);
@@ -254,7 +267,8 @@ abstract public class LayerState {
 	/** Search the layer for a map object containing the given point */
 	public MapObject search(final Point2D p) {
 		theme.setScale(getScale());
-		return forEach(new MapSearcher() {
+		Rectangle2D r = new Rectangle2D.Double(p.getX(), p.getY(), 0, 0);
+		return forEach(r, new MapSearcher() {
 			public boolean next(MapObject mo) {
 				return theme.hit(p, mo);
 			}
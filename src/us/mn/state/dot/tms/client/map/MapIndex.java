@@ -0,0 +1,263 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.map;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A map index is a spatial index of map objects, by bounds in world
+ * coordinates.  It is an R-tree, packed with the Sort-Tile-Recursive
+ * algorithm, so it cannot be changed after it is built.  Region searches
+ * visit matching objects in the same order they were added, so that
+ * painting and hit-testing behave the same as iterating the whole layer.
+ *
+ * @author Douglas Lau
+ */
+public class MapIndex {
+
+	/** Maximum number of children in one node */
+	static private final int NODE_SIZE = 16;
+
+	/** Node in the tree */
+	static private class Node {
+		private final double x0, y0, x1, y1;
+		private final Node[] nodes;
+		private final int[] entries;
+		private Node(double[] b, Node[] n, int[] e) {
+			x0 = b[0];
+			y0 = b[1];
+			x1 = b[2];
+			y1 = b[3];
+			nodes = n;
+			entries = e;
+		}
+		private boolean intersects(double qx0, double qy0, double qx1,
+			double qy1)
+		{
+			return x0 <= qx1 && qx0 <= x1 && y0 <= qy1 && qy0 <= y1;
+		}
+	}
+
+	/** Map objects, in the order they were added */
+	private final MapObject[] objects;
+
+	/** Object bounds; 4 values per object (x0, y0, x1, y1) */
+	private final double[] bounds;
+
+	/** Root node (null when empty) */
+	private final Node root;
+
+	/** Create a new map index.
+	 * @param objs Map objects, in search order.
+	 * @param b Bounds of each object, in world coordinates. */
+	public MapIndex(List<MapObject> objs, List<Rectangle2D> b) {
+		int n = objs.size();
+		objects = objs.toArray(new MapObject[n]);
+		bounds = new double[n * 4];
+		for (int i = 0; i < n; i++) {
+			Rectangle2D r = b.get(i);
+			bounds[i * 4] = r.getMinX();
+			bounds[i * 4 + 1] = r.getMinY();
+			bounds[i * 4 + 2] = r.getMaxX();
+			bounds[i * 4 + 3] = r.getMaxY();
+		}
+		root = (n > 0) ? buildTree() : null;
+	}
+
+	/** Get the number of objects in the index */
+	public int size() {
+		return objects.length;
+	}
+
+	/** Build the tree from the bottom up */
+	private Node buildTree() {
+		Integer[] ents = new Integer[objects.length];
+		for (int i = 0; i < ents.length; i++)
+			ents[i] = i;
+		List<Node> level = new ArrayList<Node>();
+		for (Integer[] tile: packTiles(ents, entryCenterX(),
+			entryCenterY()))
+		{
+			int[] e = new int[tile.length];
+			for (int i = 0; i < e.length; i++)
+				e[i] = tile[i];
+			level.add(new Node(entryBounds(e), null, e));
+		}
+		while (level.size() > 1) {
+			List<Node> upper = new ArrayList<Node>();
+			Node[] nodes = level.toArray(new Node[level.size()]);
+			for (Node[] tile: packTiles(nodes, NODE_CENTER_X,
+				NODE_CENTER_Y))
+			{
+				upper.add(new Node(nodeBounds(tile), tile, null));
+			}
+			level = upper;
+		}
+		return level.get(0);
+	}
+
+	/** Pack items into tiles of up to NODE_SIZE, by sorting into vertical
+	 * slices by X, then each slice by Y */
+	static private <E> List<E[]> packTiles(E[] items, Comparator<E> cx,
+		Comparator<E> cy)
+	{
+		int n = items.length;
+		int n_tiles = (n + NODE_SIZE - 1) / NODE_SIZE;
+		int n_slices = (int) Math.ceil(Math.sqrt(n_tiles));
+		int slice_len = n_slices * NODE_SIZE;
+		Arrays.sort(items, cx);
+		List<E[]> tiles = new ArrayList<E[]>(n_tiles);
+		for (int s = 0; s < n; s += slice_len) {
+			int se = Math.min(s + slice_len, n);
+			Arrays.sort(items, s, se, cy);
+			for (int t = s; t < se; t += NODE_SIZE) {
+				tiles.add(Arrays.copyOfRange(items, t,
+					Math.min(t + NODE_SIZE, se)));
+			}
+		}
+		return tiles;
+	}
+
+	/** Compare entries by center X */
+	private Comparator<Integer> entryCenterX() {
+		return new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(center(a, 0), center(b, 0));
+			}
+		};
+	}
+
+	/** Compare entries by center Y */
+	private Comparator<Integer> entryCenterY() {
+		return new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(center(a, 1), center(b, 1));
+			}
+		};
+	}
+
+	/** Get the center of an entry on one axis (0 for X, 1 for Y) */
+	private double center(int e, int axis) {
+		return bounds[e * 4 + axis] + bounds[e * 4 + 2 + axis];
+	}
+
+	/** Compare nodes by center X */
+	static private final Comparator<Node> NODE_CENTER_X =
+		new Comparator<Node>()
+	{
+		public int compare(Node a, Node b) {
+			return Double.compare(a.x0 + a.x1, b.x0 + b.x1);
+		}
+	};
+
+	/** Compare nodes by center Y */
+	static private final Comparator<Node> NODE_CENTER_Y =
+		new Comparator<Node>()
+	{
+		public int compare(Node a, Node b) {
+			return Double.compare(a.y0 + a.y1, b.y0 + b.y1);
+		}
+	};
+
+	/** Get the union of bounds for some entries */
+	private double[] entryBounds(int[] ents) {
+		double[] b = emptyBounds();
+		for (int e: ents) {
+			addBounds(b, bounds[e * 4], bounds[e * 4 + 1],
+				bounds[e * 4 + 2], bounds[e * 4 + 3]);
+		}
+		return b;
+	}
+
+	/** Get the union of bounds for some nodes */
+	static private double[] nodeBounds(Node[] nodes) {
+		double[] b = emptyBounds();
+		for (Node n: nodes)
+			addBounds(b, n.x0, n.y0, n.x1, n.y1);
+		return b;
+	}
+
+	/** Create empty bounds */
+	static private double[] emptyBounds() {
+		return new double[] {
+			Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+		};
+	}
+
+	/** Add a rectangle to bounds */
+	static private void addBounds(double[] b, double x0, double y0,
+		double x1, double y1)
+	{
+		b[0] = Math.min(b[0], x0);
+		b[1] = Math.min(b[1], y0);
+		b[2] = Math.max(b[2], x1);
+		b[3] = Math.max(b[3], y1);
+	}
+
+	/** Call the specified callback for each object in the index.
+	 * @param s Map searcher callback.
+	 * @return Map object found, if any. */
+	public MapObject forEach(MapSearcher s) {
+		for (MapObject mo: objects) {
+			if (s.next(mo))
+				return mo;
+		}
+		return null;
+	}
+
+	/** Call the specified callback for each object intersecting a region.
+	 * @param r Region in world coordinates.
+	 * @param s Map searcher callback.
+	 * @return Map object found, if any. */
+	public MapObject forEach(Rectangle2D r, MapSearcher s) {
+		BitSet found = new BitSet(objects.length);
+		if (root != null) {
+			search(root, r.getMinX(), r.getMinY(), r.getMaxX(),
+				r.getMaxY(), found);
+		}
+		for (int i = found.nextSetBit(0); i >= 0;
+		     i = found.nextSetBit(i + 1))
+		{
+			if (s.next(objects[i]))
+				return objects[i];
+		}
+		return null;
+	}
+
+	/** Search a node for entries intersecting a region */
+	private void search(Node n, double x0, double y0, double x1,
+		double y1, BitSet found)
+	{
+		if (!n.intersects(x0, y0, x1, y1))
+			return;
+		if (n.entries != null) {
+			for (int e: n.entries) {
+				if (bounds[e * 4] <= x1 && x0 <= bounds[e * 4 + 2] &&
+				    bounds[e * 4 + 1] <= y1 &&
+				    y0 <= bounds[e * 4 + 3])
+					found.set(e);
+			}
+		} else {
+			for (Node c: n.nodes)
+				search(c, x0, y0, x1, y1, found);
+		}
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2016  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -23,11 +23,16 @@ import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.HashMap;
 
 /**
  * This class can be used to generate map graphics when access to the graphics
  * subsystem is not available.
  *
+ * Each visible layer is rendered into its own cached raster, which is only
+ * redrawn when that layer changes.  The map image is composed from the
+ * layer rasters.
+ *
  * @author Erik Engstrom
  * @author Douglas Lau
  */
@@ -36,12 +41,28 @@ public class MapPane implements LayerChangeListener {
 	/** Minimum width/height of map pane */
 	static private final int MIN_SIZE = 1;
 
+	/** Transparent color for clearing layer rasters */
+	static private final Color TRANSPARENT = new Color(0, 0, 0, 0);
+
 	/** Buffer for map */
 	private BufferedImage screenBuffer;
 
 	/** Dirty flag */
 	private boolean dirty = true;
 
+	/** Cached raster for one layer */
+	static private class LayerRaster {
+		private final BufferedImage image;
+		private boolean dirty = true;
+		private LayerRaster(BufferedImage bi) {
+			image = bi;
+		}
+	}
+
+	/** Cached rasters of visible layers */
+	private HashMap<LayerState, LayerRaster> rasters =
+		new HashMap<LayerState, LayerRaster>();
+
 	/** Transform from world to screen coordinates */
 	private final AffineTransform transform = new AffineTransform();
 
@@ -64,6 +85,7 @@ public class MapPane implements LayerChangeListener {
 	public void setSize(Dimension d) {
 		screenBuffer = createImage(d.width, d.height);
 		rescale();
+		rasters.clear();
 		dirty = true;
 	}
 
@@ -83,7 +105,7 @@ public class MapPane implements LayerChangeListener {
 
 	/** Dispose of the map pane */
 	public void dispose() {
-		// nothing to do
+		rasters.clear();
 	}
 
 	/** Change the scale of the map panel */
@@ -124,17 +146,71 @@ public class MapPane implements LayerChangeListener {
 
 	/** Draw the map image */
 	private void drawImage(BufferedImage bi) {
+		HashMap<LayerState, LayerRaster> lr =
+			new HashMap<LayerState, LayerRaster>();
 		Graphics2D g = bi.createGraphics();
 		g.setBackground(background);
 		g.clearRect(0, 0, bi.getWidth(), bi.getHeight());
+		for (LayerState s: mapbean.getLayers()) {
+			// Invisible layers do not keep a raster
+			if (s.isVisible()) {
+				LayerRaster r = lookupRaster(s, bi);
+				if (r.dirty) {
+					drawLayer(s, r.image);
+					r.dirty = false;
+				}
+				g.drawImage(r.image, 0, 0, null);
+				lr.put(s, r);
+			}
+		}
+		g.dispose();
+		rasters = lr;
+	}
+
+	/** Lookup the cached raster for a layer */
+	private LayerRaster lookupRaster(LayerState s, BufferedImage bi) {
+		LayerRaster r = rasters.get(s);
+		return (r != null) ? r : new LayerRaster(new BufferedImage(
+			bi.getWidth(), bi.getHeight(),
+			BufferedImage.TYPE_INT_ARGB_PRE));
+	}
+
+	/** Draw one layer into its raster */
+	private void drawLayer(LayerState s, BufferedImage li) {
+		Graphics2D g = li.createGraphics();
+		g.setBackground(TRANSPARENT);
+		g.clearRect(0, 0, li.getWidth(), li.getHeight());
+		// Clip to the raster, so only objects in view are painted
+		g.setClip(0, 0, li.getWidth(), li.getHeight());
 		g.transform(transform);
 		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 			RenderingHints.VALUE_ANTIALIAS_ON);
-		for (LayerState s: mapbean.getLayers())
-			s.paint(g);
+		s.paint(g);
 		g.dispose();
 	}
 
+	/** Mark cached rasters dirty for a layer change.
+	 * @param src Source of change; layer or layer state. */
+	private void setRastersDirty(Object src) {
+		boolean found = false;
+		for (LayerState s: mapbean.getLayers()) {
+			if (s == src || s.getLayer() == src) {
+				LayerRaster r = rasters.get(s);
+				if (r != null)
+					r.dirty = true;
+				found = true;
+			}
+		}
+		if (!found)
+			setRastersDirty();
+	}
+
+	/** Mark all cached rasters dirty */
+	private void setRastersDirty() {
+		for (LayerRaster r: rasters.values())
+			r.dirty = true;
+	}
+
 	/** Get the buffered image */
 	public BufferedImage getBufferedImage() {
 		return screenBuffer;
@@ -149,9 +225,13 @@ public class MapPane implements LayerChangeListener {
 		case model:
 		case extent:
 			rescale();
+			setRastersDirty();
+			break;
 		default:
-			dirty = true;
+			setRastersDirty(ev.getSource());
+			break;
 		}
+		dirty = true;
 	}
 
 	/** Get the transform from world to screen coordinates */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2011-2016  Minnesota Department of Transportation
+ * Copyright (C) 2007-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,99 +14,428 @@
  */
 package us.mn.state.dot.tms.client.map;
 
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
 
 /**
- * A cache of image tiles.
+ * A tile cache keeps map tiles in two tiers.  Decoded images are kept in
+ * memory, and tile files are kept in a disk cache between sessions.  The
+ * least recently used tiles are purged from each tier when it is over its
+ * size limit.  Tiles which are not cached are loaded by a pool of worker
+ * threads, so several can be fetched at once.
  *
  * @author Douglas Lau
  */
 public class TileCache {
 
-	/** FIFO of tile names in cache */
-	protected final LinkedList<String> tiles = new LinkedList<String>();
+	/** Listener for tiles loaded into memory */
+	public interface Listener {
+		void tileLoaded(String n);
+	}
 
-	/** Hash of tile names to image files */
-	protected final HashMap<String, TempImageFile> tile_hash =
-		new HashMap<String, TempImageFile>();
+	/** Maximum number of prefetch requests queued at once */
+	static private final int MAX_PREFETCH = 256;
 
-	/** Image fetcher */
-	protected final ImageFetcher fetcher;
+	/** Get the size of a decoded image (bytes) */
+	static private long imageBytes(BufferedImage bi) {
+		return 4L * bi.getWidth() * bi.getHeight();
+	}
 
-	/** Size of cache (number of tiles) */
-	protected final int size;
+	/** Read all data from an input stream */
+	static private byte[] readAll(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			while (true) {
+				int n = is.read(buf);
+				if (n < 0)
+					break;
+				bos.write(buf, 0, n);
+			}
+			return bos.toByteArray();
+		}
+		finally {
+			is.close();
+		}
+	}
 
-	/** Get the size of cache */
-	public int getSize() {
-		return size;
+	/** Decode a tile image.  Images are converted to a premultiplied
+	 * RGB format, which is fastest to draw. */
+	static private BufferedImage decode(byte[] data) throws IOException {
+		BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+		if (null == img)
+			throw new IOException("Invalid tile image");
+		BufferedImage bi = new BufferedImage(img.getWidth(),
+			img.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = bi.createGraphics();
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		return bi;
 	}
 
-	/** Create a new tile cache */
-	public TileCache(ImageFetcher f, int sz) {
+	/** Image fetcher */
+	private final ImageFetcher fetcher;
+
+	/** Disk cache (null if not available) */
+	private final TileDiskCache disk;
+
+	/** Maximum size of decoded images in memory (bytes) */
+	private final long max_bytes;
+
+	/** Decoded images in memory, in LRU order */
+	private final LinkedHashMap<String, BufferedImage> images =
+		new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+	/** Size of decoded images in memory (bytes) */
+	private long n_bytes = 0;
+
+	/** Pending requests; mapping of tile name to prefetch flag */
+	private final HashMap<String, Boolean> pending =
+		new HashMap<String, Boolean>();
+
+	/** Number of pending prefetch requests */
+	private int n_prefetch = 0;
+
+	/** Network fetches in progress, by tile name */
+	private final HashMap<String, FutureTask<byte[]>> in_flight =
+		new HashMap<String, FutureTask<byte[]>>();
+
+	/** Set of missing tiles */
+	private final HashSet<String> missing = new HashSet<String>();
+
+	/** Count of memory hits */
+	private long n_hits = 0;
+
+	/** Count of memory misses */
+	private long n_misses = 0;
+
+	/** Count of tiles read from disk cache */
+	private long n_disk = 0;
+
+	/** Count of tiles fetched from the network */
+	private long n_fetched = 0;
+
+	/** Sequence number for requests */
+	private long n_seq = 0;
+
+	/** Worker thread pool */
+	private final ThreadPoolExecutor pool;
+
+	/** Tile loaded listener */
+	private Listener listener;
+
+	/** Create a new tile cache.
+	 * @param f Image fetcher.
+	 * @param d Disk cache (null for none).
+	 * @param mb Maximum size of decoded images in memory (bytes).
+	 * @param n_threads Number of fetch threads. */
+	public TileCache(ImageFetcher f, TileDiskCache d, long mb,
+		int n_threads)
+	{
 		fetcher = f;
-		size = sz;
+		disk = d;
+		max_bytes = mb;
+		pool = new ThreadPoolExecutor(n_threads, n_threads, 0,
+			TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+			new ThreadFactory()
+		{
+			private int n_thread = 0;
+			public Thread newThread(Runnable r) {
+				n_thread++;
+				Thread t = new Thread(r, "tile_" + n_thread);
+				t.setDaemon(true);
+				return t;
+			}
+		});
 	}
 
-	/** Purge the oldest image from the cache */
-	protected void purgeOldestImage() {
-		removeFirst();
+	/** Set the tile loaded listener */
+	public void setListener(Listener l) {
+		listener = l;
 	}
 
-	/** Remove a tile from the cache */
-	protected TempImageFile removeFirst() {
-		synchronized(tile_hash) {
-			String name = tiles.removeFirst();
-			return tile_hash.remove(name);
+	/** Request to load a tile */
+	private class Request implements Runnable, Comparable<Request> {
+		private final String name;
+		private final boolean prefetch;
+		private final long seq;
+		private Request(String n, boolean p, long s) {
+			name = n;
+			prefetch = p;
+			seq = s;
+		}
+
+		/** Compare requests; prefetch requests are last */
+		public int compareTo(Request o) {
+			if (prefetch != o.prefetch)
+				return prefetch ? 1 : -1;
+			return Long.compare(seq, o.seq);
+		}
+
+		/** Run the request */
+		public void run() {
+			try {
+				if (prefetch)
+					fetchToDisk(name);
+				else
+					loadTile(name);
+			}
+			catch (FileNotFoundException e) {
+				setMissing(name);
+			}
+			catch (IOException e) {
+				System.err.print("I/O Error ");
+				System.err.print(e.getMessage());
+				System.err.println(" loading tile: " + name);
+			}
+			finally {
+				finishRequest(name, prefetch);
+			}
 		}
 	}
 
-	/** Get the named tile from the cache */
-	public BufferedImage getTile(String n) throws IOException {
-		TempImageFile tif = getTempImageFile(n);
-		if(tif != null)
-			return tif.getImage();
-		else
+	/** Get the named tile from memory.  If the tile is not in memory,
+	 * a request to load it is queued.
+	 * @param n Tile name.
+	 * @return Tile image, or null if not loaded. */
+	public synchronized BufferedImage getTile(String n) {
+		BufferedImage bi = images.get(n);
+		if (bi != null) {
+			n_hits++;
+			return bi;
+		}
+		if (missing.contains(n))
 			return null;
+		if (pending.containsKey(n)) {
+			// Upgrade a prefetch request; it will be loaded
+			// into memory when complete
+			if (pending.get(n)) {
+				n_misses++;
+				pending.put(n, false);
+			}
+		} else {
+			n_misses++;
+			pending.put(n, false);
+			pool.execute(new Request(n, false, n_seq++));
+		}
+		return null;
+	}
+
+	/** Prefetch the named tile into the disk cache.  Prefetching is
+	 * skipped if there is no disk cache, or too many are queued.
+	 * @param n Tile name. */
+	public synchronized void prefetchTile(String n) {
+		if (null == disk || n_prefetch >= MAX_PREFETCH)
+			return;
+		if (images.containsKey(n) || missing.contains(n) ||
+		    pending.containsKey(n) || disk.contains(n))
+			return;
+		n_prefetch++;
+		pending.put(n, true);
+		pool.execute(new Request(n, true, n_seq++));
+	}
+
+	/** Load a tile into memory */
+	private void loadTile(String n) throws IOException {
+		byte[] data = readDisk(n);
+		boolean from_disk = (data != null);
+		if (!from_disk)
+			data = fetchTile(n);
+		BufferedImage bi;
+		try {
+			bi = decode(data);
+		}
+		catch (IOException e) {
+			// Don't keep an invalid file in the disk cache
+			if (disk != null)
+				disk.remove(n);
+			throw e;
+		}
+		synchronized (this) {
+			if (from_disk)
+				n_disk++;
+			putImage(n, bi);
+		}
+		Listener l = listener;
+		if (l != null)
+			l.tileLoaded(n);
 	}
 
-	/** Get the named temp image file from the cache */
-	protected TempImageFile getTempImageFile(String n) {
-		synchronized(tile_hash) {
-			if(tile_hash.containsKey(n))
-				return tile_hash.get(n);
+	/** Fetch a tile into the disk cache */
+	private void fetchToDisk(String n) throws IOException {
+		if (!disk.contains(n))
+			fetchTile(n);
+		// Check whether the tile was requested while prefetching
+		boolean wanted;
+		synchronized (this) {
+			wanted = Boolean.FALSE.equals(pending.get(n));
+		}
+		if (wanted)
+			loadTile(n);
+	}
+
+	/** Read a tile from the disk cache */
+	private byte[] readDisk(String n) {
+		if (disk != null) {
+			try {
+				return disk.read(n);
+			}
+			catch (IOException e) {
+				// fall back to fetching it
+			}
+		}
+		return null;
+	}
+
+	/** Fetch a tile, sharing a fetch already in progress for the same
+	 * tile (from a prefetch or foreground request) */
+	private byte[] fetchTile(final String n) throws IOException {
+		FutureTask<byte[]> task;
+		boolean owner = false;
+		synchronized (this) {
+			task = in_flight.get(n);
+			if (null == task) {
+				task = new FutureTask<byte[]>(
+					new Callable<byte[]>()
+				{
+					public byte[] call()
+						throws IOException
+					{
+						return fetchNow(n);
+					}
+				});
+				in_flight.put(n, task);
+				owner = true;
+			}
+		}
+		if (owner) {
+			try {
+				task.run();
+			}
+			finally {
+				synchronized (this) {
+					in_flight.remove(n);
+				}
+			}
+		}
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException(n);
+		}
+		catch (ExecutionException e) {
+			Throwable c = e.getCause();
+			if (c instanceof IOException)
+				throw (IOException) c;
 			else
-				return null;
+				throw new IOException(c);
+		}
+	}
+
+	/** Fetch a tile from the network, and store it in the disk cache */
+	private byte[] fetchNow(String n) throws IOException {
+		byte[] data = readAll(fetcher.fetchImage(n));
+		synchronized (this) {
+			n_fetched++;
 		}
+		if (disk != null) {
+			try {
+				disk.write(n, data);
+			}
+			catch (IOException e) {
+				System.err.print("I/O Error ");
+				System.err.print(e.getMessage());
+				System.err.println(" caching tile: " + n);
+			}
+		}
+		return data;
 	}
 
-	/** Lookup a tile and put it in the cache */
-	public void lookupTile(String n) throws IOException {
-		while(isFull())
-			purgeOldestImage();
-		TempImageFile tif = new TempImageFile(fetcher.fetchImage(n));
-		// Update the FIFO and hash map last so that exceptions cannot
-		// leave us in an inconsistent state
-		synchronized(tile_hash) {
-			tiles.addLast(n);
-			tile_hash.put(n, tif);
+	/** Put a decoded image into memory, purging least recently used
+	 * images if necessary */
+	private void putImage(String n, BufferedImage bi) {
+		BufferedImage pi = images.put(n, bi);
+		if (pi != null)
+			n_bytes -= imageBytes(pi);
+		n_bytes += imageBytes(bi);
+		Iterator<Map.Entry<String, BufferedImage>> it =
+			images.entrySet().iterator();
+		while (n_bytes > max_bytes && it.hasNext()) {
+			Map.Entry<String, BufferedImage> ent = it.next();
+			if (ent.getKey().equals(n))
+				break;
+			n_bytes -= imageBytes(ent.getValue());
+			it.remove();
 		}
 	}
 
-	/** Check if the cache is full */
-	protected boolean isFull() {
-		synchronized(tile_hash) {
-			return tile_hash.size() >= size;
+	/** Set a tile missing */
+	private synchronized void setMissing(String n) {
+		missing.add(n);
+	}
+
+	/** Finish a request */
+	private synchronized void finishRequest(String n, boolean prefetch) {
+		Boolean p = pending.remove(n);
+		if (prefetch) {
+			n_prefetch--;
+			// Requested after the prefetch checked, so load it now
+			if (Boolean.FALSE.equals(p) && !images.containsKey(n) &&
+			    !missing.contains(n) && !pool.isShutdown())
+			{
+				pending.put(n, false);
+				pool.execute(new Request(n, false, n_seq++));
+			}
 		}
 	}
 
+	/** Get the count of memory hits */
+	public synchronized long getHits() {
+		return n_hits;
+	}
+
+	/** Get the count of memory misses */
+	public synchronized long getMisses() {
+		return n_misses;
+	}
+
+	/** Get the count of tiles read from the disk cache */
+	public synchronized long getDiskReads() {
+		return n_disk;
+	}
+
+	/** Get the count of tiles fetched from the network */
+	public synchronized long getFetched() {
+		return n_fetched;
+	}
+
 	/** Destroy the tile cache */
-	public void destroy() throws IOException {
-		synchronized(tile_hash) {
-			tiles.clear();
-			tile_hash.clear();
+	public void destroy() {
+		pool.shutdownNow();
+		synchronized (this) {
+			images.clear();
+			n_bytes = 0;
+			pending.clear();
 		}
 	}
 }
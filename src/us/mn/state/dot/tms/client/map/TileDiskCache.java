@@ -0,0 +1,211 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.map;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A tile disk cache keeps tile image files in a directory, so that they are
+ * kept between client sessions.  The least recently used files are removed
+ * when the total size is over the limit.  Files older than the maximum age
+ * (by modified time) are expired, so that tiles are fetched again.  At
+ * startup, files are ordered by modified time.
+ *
+ * @author Douglas Lau
+ */
+public class TileDiskCache {
+
+	/** Tile file extension */
+	static private final String EXT = ".png";
+
+	/** Cached tile file */
+	static private final class Entry {
+		private final long bytes;
+		private final long mtime;
+		private Entry(long b, long mt) {
+			bytes = b;
+			mtime = mt;
+		}
+	}
+
+	/** Cache directory */
+	private final File dir;
+
+	/** Maximum total size of files (bytes) */
+	private final long max_bytes;
+
+	/** Maximum age of files (ms) */
+	private final long max_age_ms;
+
+	/** Mapping of tile names to file entries, in LRU order */
+	private final LinkedHashMap<String, Entry> files =
+		new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/** Total size of files (bytes) */
+	private long n_bytes = 0;
+
+	/** Create a new tile disk cache.
+	 * @param d Cache directory.
+	 * @param mb Maximum total size of files (bytes).
+	 * @param ma Maximum age of files (ms). */
+	public TileDiskCache(File d, long mb, long ma) throws IOException {
+		dir = d;
+		max_bytes = mb;
+		max_age_ms = ma;
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create " + dir);
+		scanFiles();
+	}
+
+	/** Scan the cache directory for files from a previous session */
+	private synchronized void scanFiles() {
+		ArrayList<File> found = new ArrayList<File>();
+		findFiles(dir, found);
+		Collections.sort(found, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(),
+					b.lastModified());
+			}
+		});
+		int plen = dir.getPath().length() + 1;
+		for (File f: found) {
+			long mt = f.lastModified();
+			if (isExpired(mt)) {
+				f.delete();
+				continue;
+			}
+			String p = f.getPath();
+			String n = p.substring(plen, p.length() - EXT.length());
+			n = n.replace(File.separatorChar, '/');
+			files.put(n, new Entry(f.length(), mt));
+			n_bytes += f.length();
+		}
+		purge();
+	}
+
+	/** Find all tile files in a directory tree */
+	static private void findFiles(File d, ArrayList<File> found) {
+		File[] fs = d.listFiles();
+		if (fs != null) {
+			for (File f: fs) {
+				if (f.isDirectory())
+					findFiles(f, found);
+				else if (f.getName().endsWith(EXT))
+					found.add(f);
+			}
+		}
+	}
+
+	/** Get the file for a tile */
+	private File getFile(String n) {
+		return new File(dir, n.replace('/', File.separatorChar) + EXT);
+	}
+
+	/** Check if a file modified time is older than the maximum age */
+	private boolean isExpired(long mt) {
+		return System.currentTimeMillis() - mt > max_age_ms;
+	}
+
+	/** Check if the cache contains a tile (which is not expired) */
+	public synchronized boolean contains(String n) {
+		Entry e = files.get(n);
+		return (e != null) && !isExpired(e.mtime);
+	}
+
+	/** Read a tile file.
+	 * @param n Tile name.
+	 * @return Tile file data, or null if not cached or expired. */
+	public byte[] read(String n) throws IOException {
+		if (!contains(n)) {
+			remove(n);
+			return null;
+		}
+		try {
+			return Files.readAllBytes(getFile(n).toPath());
+		}
+		catch (IOException e) {
+			remove(n);
+			throw e;
+		}
+	}
+
+	/** Write a tile file.
+	 * @param n Tile name.
+	 * @param data Tile file data. */
+	public void write(String n, byte[] data) throws IOException {
+		File f = getFile(n);
+		File pd = f.getParentFile();
+		if (!pd.isDirectory() && !pd.mkdirs())
+			throw new IOException("Cannot create " + pd);
+		// Write to a temp file and rename, so that a partial file is
+		// never left in the cache
+		File tmp = File.createTempFile("tile", ".tmp", pd);
+		try {
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				fos.write(data);
+			}
+			finally {
+				fos.close();
+			}
+			Files.move(tmp.toPath(), f.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			tmp.delete();
+		}
+		long mt = f.lastModified();
+		synchronized (this) {
+			Entry e = files.put(n, new Entry(data.length, mt));
+			if (e != null)
+				n_bytes -= e.bytes;
+			n_bytes += data.length;
+			purge();
+		}
+	}
+
+	/** Remove a tile file (if it is invalid) */
+	public void remove(String n) {
+		synchronized (this) {
+			Entry e = files.remove(n);
+			if (null == e)
+				return;
+			n_bytes -= e.bytes;
+		}
+		getFile(n).delete();
+	}
+
+	/** Remove least recently used files until under the size limit */
+	private void purge() {
+		Iterator<Map.Entry<String, Entry>> it =
+			files.entrySet().iterator();
+		while (n_bytes > max_bytes && it.hasNext()) {
+			Map.Entry<String, Entry> ent = it.next();
+			n_bytes -= ent.getValue().bytes;
+			getFile(ent.getKey()).delete();
+			it.remove();
+		}
+	}
+}
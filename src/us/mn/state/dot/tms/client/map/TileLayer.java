@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2011-2016  Minnesota Department of Transportation
+ * Copyright (C) 2011-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,7 +14,11 @@
  */
 package us.mn.state.dot.tms.client.map;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static us.mn.state.dot.tms.client.widget.SwingRunner.runSwing;
 
 /**
  * A tile layer for drawing a Google-style tile map.
@@ -23,26 +27,100 @@ import java.io.IOException;
  */
 public class TileLayer extends Layer {
 
+	/** Maximum size of decoded tiles in memory (bytes) */
+	static private final long MEMORY_BYTES = 64 * 1024 * 1024;
+
+	/** Maximum size of tile files in the disk cache (bytes) */
+	static private final long DISK_BYTES = 256 * 1024 * 1024;
+
+	/** Maximum age of tile files in the disk cache (ms) */
+	static private final long DISK_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+
+	/** Number of threads to fetch tiles */
+	static private final int FETCH_THREADS = 4;
+
+	/** Get a directory name for a tile URL */
+	static private String dirName(String url) throws IOException {
+		URL u = new URL(url);
+		String n = u.getHost();
+		if (u.getPort() >= 0)
+			n = n + '_' + u.getPort();
+		return n + u.getPath().replaceAll("[^A-Za-z0-9.-]", "_");
+	}
+
 	/** URL where tiles are hosted */
 	private final String url;
 
-	/** Number of tiles to cache */
-	private final int n_cached;
+	/** Base directory for disk cache (null for none) */
+	private final File cache_dir;
 
 	/** Tile cache */
 	private TileCache cache;
 
-	/** Create a new tile layer */
-	public TileLayer(String n, String url, int n_cached) {
+	/** Get the tile cache */
+	public TileCache getCache() {
+		return cache;
+	}
+
+	/** Create a new tile layer.
+	 * @param n Layer name.
+	 * @param url URL where tiles are hosted.
+	 * @param dir Base directory for disk cache (null for none). */
+	public TileLayer(String n, String url, File dir) {
 		super(n);
 		this.url = url;
-		this.n_cached = n_cached;
+		cache_dir = dir;
 	}
 
 	/** Initialize the tile layer */
 	public void initialize() throws IOException {
 		ImageFetcher f = new ImageFetcher(url);
-		cache = new TileCache(f, n_cached);
+		cache = new TileCache(f, createDiskCache(), MEMORY_BYTES,
+			FETCH_THREADS);
+		cache.setListener(new TileCache.Listener() {
+			public void tileLoaded(String n) {
+				updateGeometry();
+			}
+		});
+	}
+
+	/** Dispose of the tile layer */
+	public void dispose() {
+		TileCache c = cache;
+		if (c != null)
+			c.destroy();
+	}
+
+	/** Create the disk cache */
+	private TileDiskCache createDiskCache() {
+		if (cache_dir != null) {
+			try {
+				File d = new File(cache_dir, dirName(url));
+				return new TileDiskCache(d, DISK_BYTES,
+					DISK_AGE_MS);
+			}
+			catch (IOException e) {
+				System.err.println("Tile disk cache: " +
+					e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/** Flag to indicate a geometry update is queued */
+	private final AtomicBoolean update_queued = new AtomicBoolean();
+
+	/** Update the layer geometry (on the swing thread).  Tiles loaded
+	 * before the update runs share one update. */
+	private void updateGeometry() {
+		if (update_queued.compareAndSet(false, true)) {
+			runSwing(new Runnable() {
+				public void run() {
+					update_queued.set(false);
+					fireLayerChanged(LayerChange.geometry);
+				}
+			});
+		}
 	}
 
 	/** Create a new layer state */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2011-2016  Minnesota Department of Transportation
+ * Copyright (C) 2011-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,10 +17,6 @@ package us.mn.state.dot.tms.client.map;
 import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.geom.Point2D;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.HashSet;
-import javax.swing.SwingWorker;
 import us.mn.state.dot.tms.geo.ZoomLevel;
 
 /**
@@ -33,9 +29,6 @@ public class TileLayerState extends LayerState {
 	/** Cache of tiles */
 	private final TileCache cache;
 
-	/** Set of missing tiles */
-	private final HashSet<String> no_tile = new HashSet<String>();
-
 	/** Create a new tile layer state */
 	public TileLayerState(TileLayer layer, MapBean mb, TileCache c) {
 		super(layer, mb, new Theme("Tile", new TileSymbol(),
@@ -65,18 +58,45 @@ public class TileLayerState extends LayerState {
 			for (int y = y0; y <= y1; y++) {
 				int yp = (y1 - y) * 256 + oy;
 				String tile = getTileName(zoom, x, y);
-				Image img = getTile(tile);
+				Image img = cache.getTile(tile);
 				if (img != null)
 					s.next(new TileMapObject(img, xp, yp));
-				else {
-					if (!isTileMissing(tile))
-						createTileWorker(tile);
-				}
 			}
 		}
+		prefetchNeighbors(zoom, x0, x1, y0, y1);
+		prefetchNextZoom(zoom, x0, x1, y0, y1);
 		return null;
 	}
 
+	/** Prefetch tiles around the edges of the view */
+	private void prefetchNeighbors(ZoomLevel zoom, int x0, int x1, int y0,
+		int y1)
+	{
+		int xa = zoomLimit(zoom, x0 - 1);
+		int xb = zoomLimit(zoom, x1 + 1);
+		int ya = zoomLimit(zoom, y0 - 1);
+		int yb = zoomLimit(zoom, y1 + 1);
+		for (int x = xa; x <= xb; x++) {
+			for (int y = ya; y <= yb; y++) {
+				if (x < x0 || x > x1 || y < y0 || y > y1)
+					cache.prefetchTile(getTileName(zoom,x,y));
+			}
+		}
+	}
+
+	/** Prefetch tiles in the view at the next zoom level */
+	private void prefetchNextZoom(ZoomLevel zoom, int x0, int x1, int y0,
+		int y1)
+	{
+		ZoomLevel zl = ZoomLevel.fromOrdinal(zoom.ordinal() + 1);
+		if (zl != null) {
+			for (int x = x0 * 2; x <= x1 * 2 + 1; x++) {
+				for (int y = y0 * 2; y <= y1 * 2 + 1; y++)
+					cache.prefetchTile(getTileName(zl, x, y));
+			}
+		}
+	}
+
 	/** Limit X or Y tile based on zoom level */
 	private int zoomLimit(ZoomLevel zoom, int xory) {
 		return Math.max(0, Math.min(zoom.n_tiles - 1, xory));
@@ -87,67 +107,4 @@ public class TileLayerState extends LayerState {
 		int gy = zoom.n_tiles - 1 - ty;
 		return "" + zoom.ordinal() + '/' + tx + '/' + gy;
 	}
-
-	/** Is the given tile missing? */
-	private boolean isTileMissing(String tile) {
-		synchronized (no_tile) {
-			return no_tile.contains(tile);
-		}
-	}
-
-	/** Get a tile from the tile cache */
-	private Image getTile(String tile) {
-		try {
-			return cache.getTile(tile);
-		}
-		catch (IOException e) {
-			System.err.print("I/O Error ");
-			System.err.print(e.getMessage());
-			System.err.println(" reading tile: " + tile);
-			return null;
-		}
-	}
-
-	/** Create a worker to lookup one tile */
-	private void createTileWorker(final String tile) {
-		SwingWorker worker = new SwingWorker<String, Void>() {
-			@Override
-			public String doInBackground() {
-				return lookupTile(tile);
-			}
-			@Override
-			public void done() {
-				try {
-					String tile = get();
-					if (tile != null) {
-						fireLayerChanged(
-							LayerChange.geometry);
-					}
-				}
-				catch (Exception e) {
-					// ignore
-				}
-			}
-		};
-		worker.execute();
-	}
-
-	/** Lookup one tile */
-	private String lookupTile(String tile) {
-		try {
-			cache.lookupTile(tile);
-			return tile;
-		}
-		catch (FileNotFoundException e) {
-			synchronized (no_tile) {
-				no_tile.add(tile);
-			}
-		}
-		catch (IOException e) {
-			System.err.print("I/O Error ");
-			System.err.print(e.getMessage());
-			System.err.println(" loading tile: " + tile);
-		}
-		return null;
-	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2008-2016  Minnesota Department of Transportation
+ * Copyright (C) 2008-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,15 +16,22 @@ package us.mn.state.dot.tms.client.proxy;
 
 import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Set;
 import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.tms.SystemAttrEnum;
 import us.mn.state.dot.tms.client.map.LayerChange;
+import us.mn.state.dot.tms.client.map.LayerChangeEvent;
+import us.mn.state.dot.tms.client.map.LayerChangeListener;
 import us.mn.state.dot.tms.client.map.LayerState;
 import us.mn.state.dot.tms.client.map.MapBean;
+import us.mn.state.dot.tms.client.map.MapIndex;
 import us.mn.state.dot.tms.client.map.MapObject;
 import us.mn.state.dot.tms.client.map.MapSearcher;
+import static us.mn.state.dot.tms.client.widget.Widgets.UI;
 
 /**
  * Base class for all SONAR proxy map layer states.
@@ -33,6 +40,10 @@ import us.mn.state.dot.tms.client.map.MapSearcher;
  */
 public class ProxyLayerState<T extends SonarObject> extends LayerState {
 
+	/** Margin around symbol locations for region searches (pixels).
+	 * This must be large enough to contain any symbol. */
+	static private final int SYMBOL_MARGIN_PIX = UI.scaled(64);
+
 	/** Get the map icon maximum size scale */
 	static private float getIconSizeScaleMax() {
 		return SystemAttrEnum.MAP_ICON_SIZE_SCALE_MAX.getFloat();
@@ -68,12 +79,32 @@ public class ProxyLayerState<T extends SonarObject> extends LayerState {
 		}
 	};
 
+	/** Spatial index of map objects (null when geometry has changed) */
+	private MapIndex index;
+
+	/** Listener for layer geometry changes */
+	private final LayerChangeListener geo_listener =
+		new LayerChangeListener()
+	{
+		public void layerChanged(LayerChangeEvent e) {
+			switch (e.getReason()) {
+			case geometry:
+			case extent:
+				clearIndex();
+				break;
+			default:
+				break;
+			}
+		}
+	};
+
 	/** Create a new sonar proxy layer state */
 	public ProxyLayerState(ProxyLayer<T> layer, MapBean mb) {
 		super(layer, mb);
 		manager = layer.getManager();
 		model = manager.getSelectionModel();
 		model.addProxySelectionListener(sel_listener);
+		layer.addLayerChangeListener(geo_listener);
 	}
 
 	/** Set the selection */
@@ -93,6 +124,8 @@ public class ProxyLayerState<T extends SonarObject> extends LayerState {
 	public void dispose() {
 		super.dispose();
 		model.removeProxySelectionListener(sel_listener);
+		getLayer().removeLayerChangeListener(geo_listener);
+		clearIndex();
 	}
 
 	/** Flag to indicate the tab is selected */
@@ -132,6 +165,75 @@ public class ProxyLayerState<T extends SonarObject> extends LayerState {
 		return manager.forEach(s);
 	}
 
+	/** Iterate through the shapes in a region of the layer */
+	@Override
+	public MapObject forEach(Rectangle2D r, MapSearcher s) {
+		if (null == r)
+			return forEach(s);
+		double m = getSearchMargin();
+		Rectangle2D q = new Rectangle2D.Double(r.getX() - m,
+			r.getY() - m, r.getWidth() + m * 2, r.getHeight() + m * 2);
+		return getIndex().forEach(q, new VisibleSearcher(s));
+	}
+
+	/** Map searcher which skips objects which are not visible */
+	private class VisibleSearcher implements MapSearcher {
+		private final MapSearcher searcher;
+		private VisibleSearcher(MapSearcher s) {
+			searcher = s;
+		}
+		public boolean next(MapObject mo) {
+			return isObjectVisible(mo) && searcher.next(mo);
+		}
+	}
+
+	/** Get the margin to add to regions searched in the spatial index.
+	 * @return Margin in world coordinates. */
+	protected double getSearchMargin() {
+		return getScale() * SYMBOL_MARGIN_PIX;
+	}
+
+	/** Check if an indexed map object is visible */
+	protected boolean isObjectVisible(MapObject mo) {
+		return (mo instanceof MapGeoLoc) &&
+		       manager.isVisible((MapGeoLoc) mo);
+	}
+
+	/** Get the spatial index, creating it if necessary */
+	protected MapIndex getIndex() {
+		MapIndex idx = index;
+		if (null == idx) {
+			idx = createIndex();
+			index = idx;
+		}
+		return idx;
+	}
+
+	/** Clear the spatial index, so it will be created again */
+	protected void clearIndex() {
+		index = null;
+	}
+
+	/** Create a spatial index of the layer.  Objects are indexed by
+	 * location, whether visible or not, so that style changes do not
+	 * require the index to be created again. */
+	protected MapIndex createIndex() {
+		final ArrayList<MapObject> objs = new ArrayList<MapObject>();
+		final ArrayList<Rectangle2D> bounds =
+			new ArrayList<Rectangle2D>();
+		manager.forEachLocated(new MapSearcher() {
+			public boolean next(MapObject mo) {
+				AffineTransform t = mo.getTransform();
+				objs.add(mo);
+				bounds.add(new Rectangle2D.Double(
+					t.getTranslateX(), t.getTranslateY(),
+					0, 0));
+				return false;
+			}
+		});
+		return new MapIndex(objs, bounds);
+	}
+
 	/** Do mouse click event processing */
 	private void doClick(MouseEvent e, T proxy) {
 		if (proxy != null) {
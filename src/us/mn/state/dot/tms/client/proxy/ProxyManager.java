@@ -211,6 +211,7 @@ abstract public class ProxyManager<T extends SonarObject> {
 				}
 			});
 		}
+		updateGeometry();
 	}
 
 	/** Remove a proxy from the manager */
@@ -467,8 +468,20 @@ abstract public class ProxyManager<T extends SonarObject> {
 		return null;
 	}
 
+	/** Iterate through all located proxy objects, including those with
+	 * styles which are not visible */
+	public MapObject forEachLocated(MapSearcher s) {
+		synchronized (map_cache) {
+			for (MapGeoLoc loc: map_cache) {
+				if (isLocationSet(loc) && s.next(loc))
+					return loc;
+			}
+		}
+		return null;
+	}
+
 	/** Check if a MapGeoLoc is visible */
-	private boolean isVisible(MapGeoLoc loc) {
+	public boolean isVisible(MapGeoLoc loc) {
 		return isLocationSet(loc) && isStyleVisible(loc);
 	}
 
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2018  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -141,6 +141,7 @@ public class SegmentBuilder implements Iterable<Segment> {
 		cor_segs.put(corridor.getName(), below);
 		// Prepend lowercase z, for sorting purposes
 		cor_segs.put('z' + corridor.getName(), above);
+		manager.updateGeometry();
 	}
 
 	/** Find the map geo loc */
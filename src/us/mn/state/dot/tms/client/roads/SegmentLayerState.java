@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2018  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,13 +14,19 @@
  */
 package us.mn.state.dot.tms.client.roads;
 
+import java.awt.Shape;
 import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import us.mn.state.dot.tms.R_Node;
 import us.mn.state.dot.tms.client.map.MapBean;
+import us.mn.state.dot.tms.client.map.MapIndex;
 import us.mn.state.dot.tms.client.map.MapObject;
 import us.mn.state.dot.tms.client.map.MapSearcher;
 import us.mn.state.dot.tms.client.proxy.ProxyLayer;
 import us.mn.state.dot.tms.client.proxy.ProxyLayerState;
+import static us.mn.state.dot.tms.client.widget.Widgets.UI;
 import us.mn.state.dot.tms.geo.MapVector;
 
 /**
@@ -30,6 +36,9 @@ import us.mn.state.dot.tms.geo.MapVector;
  */
 public class SegmentLayerState extends ProxyLayerState<R_Node> {
 
+	/** Margin around segment shapes for region searches (pixels) */
+	static private final int OUTLINE_MARGIN_PIX = UI.scaled(4);
+
 	/** R_Node manager */
 	private final R_NodeManager manager;
 
@@ -50,13 +59,64 @@ public class SegmentLayerState extends ProxyLayerState<R_Node> {
 		builder = sb;
 	}
 
+	/** Zoom level of spatial index */
+	private int index_zoom = -1;
+
 	/** Iterate through the segments in the layer */
 	@Override
 	public MapObject forEach(MapSearcher s) {
+		return getIndex().forEach(s);
+	}
+
+	/** Get the margin to add to regions searched in the spatial index */
+	@Override
+	protected double getSearchMargin() {
+		return getScale() * OUTLINE_MARGIN_PIX;
+	}
+
+	/** Check if an indexed map object is visible */
+	@Override
+	protected boolean isObjectVisible(MapObject mo) {
+		return true;
+	}
+
+	/** Get the spatial index.  Segment shapes depend on the zoom level,
+	 * so the index is created again whenever it changes. */
+	@Override
+	protected MapIndex getIndex() {
+		int z = map.getModel().getZoomLevel().ordinal();
+		if (z != index_zoom) {
+			clearIndex();
+			index_zoom = z;
+		}
+		return super.getIndex();
+	}
+
+	/** Create a spatial index of the segments at the current zoom level.
+	 * Segments read their samples when painted, so they do not need to be
+	 * created again for status changes. */
+	@Override
+	protected MapIndex createIndex() {
+		final ArrayList<MapObject> objs = new ArrayList<MapObject>();
+		final ArrayList<Rectangle2D> bounds =
+			new ArrayList<Rectangle2D>();
+		MapSearcher ms = new MapSearcher() {
+			public boolean next(MapObject mo) {
+				Shape shp = mo.getShape();
+				if (shp != null) {
+					AffineTransform t = mo.getTransform();
+					Shape ts = t.createTransformedShape(shp);
+					objs.add(mo);
+					bounds.add(ts.getBounds2D());
+				}
+				return false;
+			}
+		};
 		if (isPastLaneZoomThreshold())
-			return forEachLane(s);
+			forEachLane(ms);
 		else
-			return forEachStation(s);
+			forEachStation(ms);
+		return new MapIndex(objs, bounds);
 	}
 
 	/** Is the zoom level past the "individual lane" threshold? */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2008-2018  Minnesota Department of Transportation
+ * Copyright (C) 2008-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -50,6 +50,10 @@ public class IrisToolBar extends JToolBar {
 			add(new CoordinatePanel(map));
 			add(Box.createGlue());
 		}
+		if (TileCachePanel.getIEnabled(s)) {
+			add(new TileCachePanel(s.getTileLayer().getCache()));
+			add(Box.createGlue());
+		}
 		if (EditModePanel.getIEnabled())
 			add(new EditModePanel(s));
 	}
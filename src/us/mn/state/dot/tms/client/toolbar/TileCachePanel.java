@@ -0,0 +1,83 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.toolbar;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.JLabel;
+import javax.swing.Timer;
+import us.mn.state.dot.tms.client.Session;
+import us.mn.state.dot.tms.client.map.TileCache;
+import us.mn.state.dot.tms.client.map.TileLayer;
+import us.mn.state.dot.tms.client.widget.IPanel;
+import us.mn.state.dot.tms.utils.I18N;
+
+/**
+ * A tool panel that contains map tile cache counters.
+ *
+ * @author Douglas Lau
+ */
+public class TileCachePanel extends ToolPanel {
+
+	/** Interval to update counters (ms) */
+	static private final int UPDATE_MS = 2000;
+
+	/** Tiles label */
+	static private final String TILES = I18N.get("location.map.tiles");
+
+	/** Is this panel IRIS enabled? */
+	static public boolean getIEnabled(Session s) {
+		TileLayer tl = s.getTileLayer();
+		return tl != null && tl.getCache() != null;
+	}
+
+	/** Tile cache */
+	private final TileCache cache;
+
+	/** Label for cache counters */
+	private final JLabel cache_lbl = IPanel.createValueLabel();
+
+	/** Timer to update counters */
+	private final Timer timer;
+
+	/** Create a new tile cache panel */
+	public TileCachePanel(TileCache c) {
+		cache = c;
+		add(cache_lbl);
+		cache_lbl.setToolTipText(I18N.get("location.map.tiles.tooltip"));
+		updateLabel();
+		timer = new Timer(UPDATE_MS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				updateLabel();
+			}
+		});
+		timer.start();
+	}
+
+	/** Update the counters label */
+	private void updateLabel() {
+		long hits = cache.getHits();
+		long total = hits + cache.getMisses();
+		long pct = (total > 0) ? (hits * 100) / total : 0;
+		cache_lbl.setText(TILES + " " + pct + "% (" +
+			cache.getDiskReads() + " / " + cache.getFetched() + ")");
+	}
+
+	/** Cleanup */
+	@Override
+	public void dispose() {
+		timer.stop();
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2018  Minnesota Department of Transportation
+ * Copyright (C) 2012-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,12 +14,10 @@
  */
 package us.mn.state.dot.tms.server;
 
-import us.mn.state.dot.sched.Job;
-import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.sonar.server.AccessMonitor;
 import us.mn.state.dot.tms.EventType;
-import us.mn.state.dot.tms.TMSException;
 import us.mn.state.dot.tms.server.event.ClientEvent;
+import us.mn.state.dot.tms.server.event.EventSink;
 
 /**
  * This is the main class to start the IRIS server.
@@ -28,12 +26,12 @@ import us.mn.state.dot.tms.server.event.ClientEvent;
  */
 public class AccessLogger implements AccessMonitor {
 
-	/** FLUSH Scheduler for I/O jobs */
-	private final Scheduler flush;
+	/** Event sink for storing events */
+	private final EventSink sink;
 
 	/** Create a new access logger */
-	public AccessLogger(Scheduler f) {
-		flush = f;
+	public AccessLogger(EventSink s) {
+		sink = s;
 	}
 
 	/** Log a connect event */
@@ -80,11 +78,6 @@ public class AccessLogger implements AccessMonitor {
 
 	/** Log an event */
 	private void log_event(EventType event, String hostport, String user) {
-		final ClientEvent ev = new ClientEvent(event, hostport, user);
-		flush.addJob(new Job() {
-			public void perform() throws TMSException {
-				ev.doStore();
-			}
-		});
+		sink.add(new ClientEvent(event, hostport, user));
 	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2018  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  * Copyright (C) 2018  Iteris Inc.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -122,7 +122,7 @@ public class ActionPlanImpl extends BaseObjectImpl implements ActionPlan {
 	}
 
 	/** Create an action plan */
-	private ActionPlanImpl(String n, String dsc, String gn, boolean sa,
+	ActionPlanImpl(String n, String dsc, String gn, boolean sa,
 		boolean st, boolean a, PlanPhase dp, PlanPhase p)
 	{
 		this(n);
@@ -351,7 +351,7 @@ public class ActionPlanImpl extends BaseObjectImpl implements ActionPlan {
 	/** Check if a DMS action is deployable */
 	private boolean isDeployable(DmsAction da) {
 		SignGroup sg = da.getSignGroup();
-		Iterator<DmsSignGroup> it = DmsSignGroupHelper.iterator();
+		Iterator<DmsSignGroup> it = DmsSignGroupHelper.iterator(sg);
 		while (it.hasNext()) {
 			DmsSignGroup dsg = it.next();
 			if (dsg.getSignGroup() == sg) {
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2018  Minnesota Department of Transportation
+ * Copyright (C) 2005-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -225,10 +225,9 @@ public class AlarmImpl extends BaseObjectImpl implements Alarm, ControllerIO {
 			return;
 		if (s)
 			setTriggerTime();
-		AlarmEvent ev = new AlarmEvent(getEventType(s), getName());
 		try {
 			store.update(this, "state", s);
-			ev.doStore();
+			logEvent(new AlarmEvent(getEventType(s), getName()));
 			state = s;
 			notifyAttribute("state");
 		}
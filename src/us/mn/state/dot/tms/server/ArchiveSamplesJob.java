@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2013  Minnesota Department of Transportation
+ * Copyright (C) 2010-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -52,6 +52,13 @@ public class ArchiveSamplesJob extends Job {
 		a_factory = saf;
 	}
 
+	/** Get the job name.  This is shared with FlushSamplesJob, so files
+	 * are not archived while samples are being written. */
+	@Override
+	public String getName() {
+		return FlushSamplesJob.SAMPLE_FILES;
+	}
+
 	/** Perform the archive samples job */
 	public void perform() throws IOException {
 		archiveSamples();
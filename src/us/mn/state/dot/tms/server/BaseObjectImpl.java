@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2007-2018  Minnesota Department of Transportation
+ * Copyright (C) 2007-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,13 +16,12 @@ package us.mn.state.dot.tms.server;
 
 import java.text.NumberFormat;
 import java.util.Date;
-import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.sonar.server.Server;
 import us.mn.state.dot.sonar.server.ServerNamespace;
 import us.mn.state.dot.tms.TMSException;
-import static us.mn.state.dot.tms.server.MainServer.FLUSH;
+import static us.mn.state.dot.tms.server.MainServer.EVENT_SINK;
 import us.mn.state.dot.tms.server.event.BaseEvent;
 
 /**
@@ -41,74 +40,117 @@ abstract public class BaseObjectImpl implements Storable, SonarObject {
 	/** Corridor manager */
 	static public final CorridorManager corridors = new CorridorManager();
 
-	/** Load all objects from the database into the SONAR Namespace */
+	/** Load all objects from the database into the SONAR Namespace.
+	 * Independent types are loaded concurrently, each step waiting for
+	 * the types it looks up while loading. */
 	static void loadAll(SQLConnection s, ServerNamespace ns)
 		throws TMSException
 	{
 		store = s;
 		namespace = ns;
 		SystemAttributeImpl.loadAll();
-		GraphicImpl.loadAll();
-		FontImpl.loadAll();
-		GlyphImpl.loadAll();
-		RoadImpl.loadAll();
-		RoadAffixImpl.loadAll();
-		GeoLocImpl.loadAll();
-		MapExtentImpl.loadAll();
-		IncidentDetailImpl.loadAll();
-		CommLinkImpl.loadAll();
-		ModemImpl.loadAll();
-		CabinetStyleImpl.loadAll();
-		CabinetImpl.loadAll();
-		ControllerImpl.loadAll();
-		SignConfigImpl.loadAll();
-		SignDetailImpl.loadAll();
-		DayMatcherImpl.loadAll();
-		DayPlanImpl.loadAll();
-		PlanPhaseImpl.loadAll();
-		ActionPlanImpl.loadAll();
-		R_NodeImpl.loadAll();
-		/* NOTE: must happen after r_nodes are loaded */
-		corridors.createCorridors();
-		AlarmImpl.loadAll();
-		GpsImpl.loadAll();
-		DetectorImpl.loadAll();
-		TollZoneImpl.loadAll();
-		EncoderTypeImpl.loadAll();
-		CameraImpl.loadAll();
-		CameraPresetImpl.loadAll();
-		PlayListImpl.loadAll();
-		CatalogImpl.loadAll();
-		MonitorStyleImpl.loadAll();
-		VideoMonitorImpl.loadAll();
-		BeaconImpl.loadAll();
-		WeatherSensorImpl.loadAll();
-		RampMeterImpl.loadAll();
-		SignMessageImpl.loadAll();
-		DMSImpl.loadAll();
-		SignGroupImpl.loadAll();
-		DmsSignGroupImpl.loadAll();
-		QuickMessageImpl.loadAll();
-		SignTextImpl.loadAll();
-		GateArmArrayImpl.loadAll();
-		GateArmImpl.loadAll();
-		TagReaderImpl.loadAll();
-		LaneMarkingImpl.loadAll();
-		LCSArrayImpl.loadAll();
-		LCSImpl.loadAll();
-		LCSIndicationImpl.loadAll();
-		LaneUseMultiImpl.loadAll();
-		ParkingAreaImpl.loadAll();
-		IncidentImpl.loadAll();
-		IncDescriptorImpl.loadAll();
-		IncLocatorImpl.loadAll();
-		IncAdviceImpl.loadAll();
-		TimeActionImpl.loadAll();
-		DmsActionImpl.loadAll();
-		BeaconActionImpl.loadAll();
-		LaneActionImpl.loadAll();
-		MeterActionImpl.loadAll();
-		WordImpl.loadAll();
+		ObjectLoader ld = new ObjectLoader(s.getMaxConnections());
+		ObjectLoader.Step graphic = ld.addLoad(GraphicImpl.class);
+		ObjectLoader.Step font = ld.addLoad(FontImpl.class);
+		ld.addLoad(GlyphImpl.class, font, graphic);
+		ObjectLoader.Step road = ld.addLoad(RoadImpl.class);
+		ld.addLoad(RoadAffixImpl.class);
+		ObjectLoader.Step geo_loc = ld.addLoad(GeoLocImpl.class,
+			road);
+		ld.addLoad(MapExtentImpl.class);
+		ObjectLoader.Step inc_dtl = ld.addLoad(
+			IncidentDetailImpl.class);
+		ObjectLoader.Step comm_link = ld.addLoad(
+			CommLinkImpl.class);
+		ld.addLoad(ModemImpl.class);
+		ObjectLoader.Step cab_style = ld.addLoad(
+			CabinetStyleImpl.class);
+		ObjectLoader.Step cabinet = ld.addLoad(CabinetImpl.class,
+			cab_style, geo_loc);
+		ObjectLoader.Step ctrl = ld.addLoad(ControllerImpl.class,
+			cabinet, comm_link);
+		ObjectLoader.Step sign_cfg = ld.addLoad(
+			SignConfigImpl.class, font);
+		ObjectLoader.Step sign_dtl = ld.addLoad(
+			SignDetailImpl.class);
+		ObjectLoader.Step day_matcher = ld.addLoad(
+			DayMatcherImpl.class);
+		ObjectLoader.Step day_plan = ld.addLoad(DayPlanImpl.class,
+			day_matcher);
+		ObjectLoader.Step phase = ld.addLoad(PlanPhaseImpl.class);
+		ObjectLoader.Step plan = ld.addLoad(ActionPlanImpl.class,
+			phase);
+		ObjectLoader.Step r_node = ld.addLoad(R_NodeImpl.class,
+			geo_loc);
+		ObjectLoader.Step corr = ld.add(new ObjectLoader.Step(
+			"corridors", r_node)
+		{
+			protected void perform() {
+				corridors.createCorridors();
+			}
+		});
+		ld.addLoad(AlarmImpl.class, ctrl);
+		ObjectLoader.Step gps = ld.addLoad(GpsImpl.class, ctrl);
+		ObjectLoader.Step det = ld.addLoad(DetectorImpl.class,
+			ctrl, geo_loc, r_node, corr);
+		ObjectLoader.Step toll_zone = ld.addLoad(
+			TollZoneImpl.class, det, corr);
+		ObjectLoader.Step enc_type = ld.addLoad(
+			EncoderTypeImpl.class);
+		ObjectLoader.Step camera = ld.addLoad(CameraImpl.class,
+			ctrl, enc_type, geo_loc);
+		ObjectLoader.Step preset = ld.addLoad(
+			CameraPresetImpl.class, camera);
+		ObjectLoader.Step play_list = ld.addLoad(
+			PlayListImpl.class, camera);
+		ld.addLoad(CatalogImpl.class, play_list);
+		ObjectLoader.Step mon_style = ld.addLoad(
+			MonitorStyleImpl.class);
+		ld.addLoad(VideoMonitorImpl.class, camera, ctrl,
+			mon_style);
+		ObjectLoader.Step beacon = ld.addLoad(BeaconImpl.class,
+			ctrl, geo_loc, preset);
+		ld.addLoad(WeatherSensorImpl.class, ctrl, geo_loc);
+		ObjectLoader.Step meter = ld.addLoad(RampMeterImpl.class,
+			beacon, ctrl, det, geo_loc, preset, corr);
+		ObjectLoader.Step sign_msg = ld.addLoad(
+			SignMessageImpl.class, sign_cfg);
+		ObjectLoader.Step dms = ld.addLoad(DMSImpl.class, font,
+			sign_cfg, sign_dtl, sign_msg, beacon, ctrl, geo_loc, gps,
+			graphic, preset);
+		ObjectLoader.Step sign_group = ld.addLoad(
+			SignGroupImpl.class, dms);
+		ld.addLoad(DmsSignGroupImpl.class, dms, sign_group);
+		ObjectLoader.Step quick_msg = ld.addLoad(
+			QuickMessageImpl.class, sign_cfg, sign_group);
+		ld.addLoad(SignTextImpl.class, sign_group);
+		ObjectLoader.Step ga_array = ld.addLoad(
+			GateArmArrayImpl.class, plan, camera, preset, ctrl,
+			geo_loc, phase);
+		ld.addLoad(GateArmImpl.class, ctrl, ga_array);
+		ld.addLoad(TagReaderImpl.class, dms, ctrl, geo_loc,
+			toll_zone);
+		ObjectLoader.Step marking = ld.addLoad(
+			LaneMarkingImpl.class, ctrl, geo_loc);
+		ObjectLoader.Step lcs_array = ld.addLoad(
+			LCSArrayImpl.class, ctrl, dms);
+		ObjectLoader.Step lcs = ld.addLoad(LCSImpl.class,
+			lcs_array, dms);
+		ld.addLoad(LCSIndicationImpl.class, ctrl, lcs);
+		ld.addLoad(LaneUseMultiImpl.class, quick_msg);
+		ld.addLoad(ParkingAreaImpl.class, geo_loc, preset);
+		ld.addLoad(IncidentImpl.class, camera, inc_dtl, road);
+		ld.addLoad(IncDescriptorImpl.class, inc_dtl);
+		ld.addLoad(IncLocatorImpl.class);
+		ld.addLoad(IncAdviceImpl.class);
+		ld.addLoad(TimeActionImpl.class, plan, day_plan);
+		ld.addLoad(DmsActionImpl.class, plan, phase, quick_msg,
+			sign_group);
+		ld.addLoad(BeaconActionImpl.class, plan, beacon, phase);
+		ld.addLoad(LaneActionImpl.class, plan, marking, phase);
+		ld.addLoad(MeterActionImpl.class, plan, meter, phase);
+		ld.addLoad(WordImpl.class);
+		ld.run();
 		DMSImpl.updateAllStyles();
 		RptConduitImpl.loadAll();
 	}
@@ -430,11 +472,7 @@ abstract public class BaseObjectImpl implements Storable, SonarObject {
 	}
 
 	/** Log an event */
-	static public void logEvent(final BaseEvent ev) {
-		FLUSH.addJob(new Job() {
-			public void perform() throws TMSException {
-				ev.doStore();
-			}
-		});
+	static public void logEvent(BaseEvent ev) {
+		EVENT_SINK.add(ev);
 	}
 }
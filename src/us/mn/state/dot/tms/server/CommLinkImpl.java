@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2018  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  * Copyright (C) 2015-2017  SRF Consulting Group
  *
  * This program is free software; you can redistribute it and/or modify
@@ -23,6 +23,7 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.tms.ChangeVetoException;
@@ -32,6 +33,7 @@ import us.mn.state.dot.tms.TMSException;
 import static us.mn.state.dot.tms.server.XmlWriter.createAttribute;
 import us.mn.state.dot.tms.server.comm.DevicePoller;
 import us.mn.state.dot.tms.server.comm.DevicePollerFactory;
+import us.mn.state.dot.tms.server.comm.SamplePoller;
 import us.mn.state.dot.tms.units.Interval;
 
 /**
@@ -50,11 +52,33 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 	/** Poller scheduler for repeating jobs */
 	static private final Scheduler POLLER = new Scheduler("poller");
 
+	/** Poll debug log */
+	static private final DebugLog POLL_LOG = new DebugLog("poll");
+
 	/** Test if a comm protocol supports gate arm control */
 	static private boolean isGateArm(CommProtocol cp) {
 		return cp == CommProtocol.HYSECURITY_STC;
 	}
 
+	/** Calculate the poll offset for a comm link.  Offsets are spread
+	 * across the poll period by a hash of the link name, so that all links
+	 * are not polled at the same time.  Sampled links are polled in the
+	 * first half of the period.
+	 * @param n Comm link name.
+	 * @param s Poll period (seconds).
+	 * @param sampled True if link collects binned samples.
+	 * @return Offset from start of period (ms). */
+	static protected int pollOffsetMs(String n, int s, boolean sampled) {
+		int per = s * 1000;
+		int base = Math.min(OFFSET_SECS * 1000, per / 2);
+		int window = (sampled ? per / 2 : per) - base;
+		if (window <= 0)
+			return base;
+		// Mix hash bits, since similar names have similar hash codes
+		long h = (n.hashCode() * 0x9E3779B9L) & 0xFFFFFFFFL;
+		return base + (int) ((h * window) >>> 32);
+	}
+
 	/** Load all the comm links */
 	static protected void loadAll() throws TMSException {
 		namespace.registerType(SONAR_TYPE, CommLinkImpl.class);
@@ -114,7 +138,7 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 	}
 
 	/** Create a comm link */
-	private CommLinkImpl(String n, String d, boolean m, String u, short p,
+	CommLinkImpl(String n, String d, boolean m, String u, short p,
 		boolean pe, int pp, int t)
 	{
 		super(n);
@@ -145,21 +169,65 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 		PollJob pj = poll_job;
 		if (pj != null)
 			POLLER.removeJob(pj);
-		poll_job = new PollJob(s);
+		int off = pollOffsetMs(name, s, isSampled());
+		poll_job = new PollJob(s, off);
 		POLLER.addJob(poll_job);
 	}
 
+	/** Get the poll offset from start of period (ms) */
+	int getPollOffsetMs() {
+		return pollOffsetMs(name, poll_period, isSampled());
+	}
+
+	/** Test if the poller collects binned samples.  Sample time stamps
+	 * are taken when polled, so these links must be polled early enough
+	 * in each period to stay within the same sample interval. */
+	private synchronized boolean isSampled() {
+		return poller instanceof SamplePoller;
+	}
+
 	/** Job for polling a comm link */
 	private class PollJob extends Job {
-		private PollJob(int s) {
-			super(Calendar.SECOND, s, Calendar.SECOND, OFFSET_SECS);
+		private PollJob(int s, int off) {
+			super(Calendar.SECOND, s, Calendar.MILLISECOND, off);
 		}
 		@Override public void perform() {
-			if (poll_enabled)
+			if (poll_enabled) {
+				// Delay is negative while job is being performed
+				updatePollStats(-delay());
 				pollControllers();
+			}
 		}
 	}
 
+	/** Most recent poll lateness (ms) */
+	private transient long poll_late_ms;
+
+	/** Maximum poll lateness (ms) */
+	private transient long poll_late_max;
+
+	/** Operation queue statistics at most recent poll */
+	private transient String poll_queue = "";
+
+	/** Update poll statistics */
+	private void updatePollStats(long late) {
+		DevicePoller dp = poller;
+		String q = (dp != null) ? dp.getQueueStats() : "";
+		synchronized (this) {
+			poll_late_ms = late;
+			poll_late_max = Math.max(late, poll_late_max);
+			poll_queue = q;
+		}
+		if (POLL_LOG.isOpen())
+			POLL_LOG.log(getPollStats());
+	}
+
+	/** Get the poll statistics */
+	public synchronized String getPollStats() {
+		return name + ": late " + poll_late_ms + " ms (max " +
+			poll_late_max + "), queue: " + poll_queue;
+	}
+
 	/** Destroy an object */
 	@Override
 	public void doDestroy() throws TMSException {
@@ -292,6 +360,7 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 		store.update(this, "protocol", p);
 		setProtocol(p);
 		recreatePoller();
+		createPollJob(poll_period);
 	}
 
 	/** Get the communication protocol */
@@ -317,6 +386,7 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 		store.update(this, "poll_enabled", e);
 		setPollEnabled(e);
 		recreatePoller();
+		createPollJob(poll_period);
 	}
 
 	/** Get polling enabled/disabled flag */
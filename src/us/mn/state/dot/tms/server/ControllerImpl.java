@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2018  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  * Copyright (C) 2011  Berkeley Transportation Systems Inc.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -141,7 +141,7 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 	}
 
 	/** Create a controller */
-	private ControllerImpl(String n, CabinetImpl c, CommLink cl, short d,
+	ControllerImpl(String n, CabinetImpl c, CommLink cl, short d,
 		int cnd, String p, String nt, Date ft, String v)
 		throws TMSException
 	{
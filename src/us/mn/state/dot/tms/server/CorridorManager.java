@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2007-2018  Minnesota Department of Transportation
+ * Copyright (C) 2007-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,6 +17,7 @@ package us.mn.state.dot.tms.server;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeMap;
 import us.mn.state.dot.tms.GeoLoc;
@@ -24,6 +25,7 @@ import us.mn.state.dot.tms.GeoLocHelper;
 import us.mn.state.dot.tms.LaneType;
 import us.mn.state.dot.tms.R_Node;
 import us.mn.state.dot.tms.R_NodeHelper;
+import us.mn.state.dot.tms.SystemAttrEnum;
 import us.mn.state.dot.tms.geo.SphericalMercatorPosition;
 import us.mn.state.dot.tms.units.Distance;
 
@@ -34,6 +36,58 @@ import us.mn.state.dot.tms.units.Distance;
  */
 public class CorridorManager {
 
+	/** Maximum number of cached routes */
+	static private final int MAX_ROUTES = 1000;
+
+	/** Key for cached routes.  The origin and destination are compared by
+	 * identity, along with their positions when the route was found. */
+	static private class RouteKey {
+		private final GeoLoc orig;
+		private final GeoLoc dest;
+		private final String pos;
+		private RouteKey(GeoLoc o, GeoLoc d) {
+			orig = o;
+			dest = d;
+			pos = o.getRoadway() + " " + o.getRoadDir() + " " +
+				o.getLat() + " " + o.getLon() + " " +
+				d.getRoadway() + " " + d.getRoadDir() + " " +
+				d.getLat() + " " + d.getLon() + " " +
+				SystemAttrEnum.ROUTE_MAX_MILES.getInt() + " " +
+				SystemAttrEnum.ROUTE_MAX_LEGS.getInt();
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof RouteKey) {
+				RouteKey k = (RouteKey) o;
+				return orig == k.orig && dest == k.dest &&
+				       pos.equals(k.pos);
+			} else
+				return false;
+		}
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(orig) +
+				System.identityHashCode(dest);
+		}
+	}
+
+	/** Lock for route graph and cached routes */
+	private final Object route_lock = new Object();
+
+	/** Route graph (protected by route_lock) */
+	private RouteGraph graph = new RouteGraph();
+
+	/** Cached routes (protected by route_lock) */
+	private final LinkedHashMap<RouteKey, Route> routes =
+		new LinkedHashMap<RouteKey, Route>(16, 0.75f, true)
+	{
+		protected boolean removeEldestEntry(
+			Map.Entry<RouteKey, Route> e)
+		{
+			return size() > MAX_ROUTES;
+		}
+	};
+
 	/** Map to hold all corridors */
 	private final Map<String, Corridor> corridors =
 		new TreeMap<String, Corridor>();
@@ -52,6 +106,38 @@ public class CorridorManager {
 		}
 		for (Corridor c: corridors.values())
 			c.arrangeNodes();
+		clearRoutes();
+	}
+
+	/** Clear the route graph and all cached routes.  This must be called
+	 * whenever r_nodes change. */
+	public void clearRoutes() {
+		synchronized (route_lock) {
+			graph = new RouteGraph();
+			routes.clear();
+		}
+	}
+
+	/** Find the best route from an origin to a destination.  Routes are
+	 * cached until r_nodes change.
+	 * @param orig Route origin.
+	 * @param dest Route destination.
+	 * @return Best route found, or null. */
+	public Route findRoute(GeoLoc orig, GeoLoc dest) {
+		RouteKey key = new RouteKey(orig, dest);
+		RouteGraph g;
+		synchronized (route_lock) {
+			if (routes.containsKey(key))
+				return routes.get(key);
+			g = graph;
+		}
+		Route r = new RouteFinder(this, g).findRoute(orig, dest);
+		synchronized (route_lock) {
+			// Don't cache route if graph was cleared during search
+			if (g == graph)
+				routes.put(key, r);
+		}
+		return r;
 	}
 
 	/** Add an r_node to the proper corridor */
@@ -84,6 +170,11 @@ public class CorridorManager {
 			c.writeXml(w, m_nodes);
 	}
 
+	/** Get a snapshot of all corridors, by name */
+	public synchronized Map<String, Corridor> getCorridors() {
+		return new TreeMap<String, Corridor>(corridors);
+	}
+
 	/** Find the current bottlenecks for all corridors */
 	public synchronized void findBottlenecks() {
 		for (Corridor c: corridors.values())
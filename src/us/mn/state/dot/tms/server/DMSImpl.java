@@ -261,6 +261,8 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 		override_background = bg;
 		msg_sched = ms;
 		msg_current = mc;
+		SignMessageImpl.replaceRef(null, ms);
+		SignMessageImpl.replaceRef(null, mc);
 		expire_time = stampMillis(et);
 		initTransients();
 	}
@@ -271,6 +273,24 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 		super.doDestroy();
 		setPreset(null);
 		geo_loc.notifyRemove();
+		releaseMsgRefs();
+	}
+
+	/** Lock for swapping sign message references.  Reading the old
+	 * message, replacing the reference and assigning the field must be
+	 * atomic, since messages are set from comm and SONAR threads. */
+	private final transient Object msg_lock = new Object();
+
+	/** Release all sign message references */
+	private void releaseMsgRefs() {
+		setMsgUser(null);
+		setMsgNext(null);
+		synchronized (msg_lock) {
+			SignMessageImpl.replaceRef(msg_sched, null);
+			msg_sched = null;
+			SignMessageImpl.replaceRef(msg_current, null);
+			msg_current = null;
+		}
 	}
 
 	/** Set the controller to which this DMS is assigned */
@@ -501,7 +521,7 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 
 	/** Reset sign state (and notify clients) */
 	public void resetStateNotify() {
-		msg_user = null;
+		setMsgUser(null);
 		setMsgSchedNotify(null);
 		setMsgCurrentNotify(null, "RESET");
 		setPixelStatusNotify(null);
@@ -883,7 +903,10 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 	/** Set the user selected sign message */
 	@Override
 	public void setMsgUser(SignMessage sm) {
-		msg_user = sm;
+		synchronized (msg_lock) {
+			SignMessageImpl.replaceRef(msg_user, sm);
+			msg_user = sm;
+		}
 	}
 
 	/** Set the user selected sign message */
@@ -926,7 +949,10 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 	private void setMsgSched(SignMessage sm) {
 		try {
 			store.update(this, "msg_sched", sm);
-			msg_sched = sm;
+			synchronized (msg_lock) {
+				SignMessageImpl.replaceRef(msg_sched, sm);
+				msg_sched = sm;
+			}
 		}
 		catch (TMSException e) {
 			logError("msg_sched: " + e.getMessage());
@@ -986,7 +1012,10 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 	private void setMsgCurrent(SignMessage sm) {
 		try {
 			store.update(this, "msg_current", sm);
-			msg_current = sm;
+			synchronized (msg_lock) {
+				SignMessageImpl.replaceRef(msg_current, sm);
+				msg_current = sm;
+			}
 		}
 		catch (TMSException e) {
 			logError("msg_current: " + e.getMessage());
@@ -1046,7 +1075,10 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 	 * a sign.
 	 * @see DeviceImpl.acquire */
 	public void setMsgNext(SignMessage sm) {
-		msg_next = sm;
+		synchronized (msg_lock) {
+			SignMessageImpl.replaceRef(msg_next, sm);
+			msg_next = sm;
+		}
 	}
 
 	/** Get validated user/scheduled sign message.
@@ -1140,14 +1172,6 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 		p.sendMessage(this, sm, owner);
 	}
 
-	/** Check if the sign has a reference to a sign message */
-	public boolean hasReference(final SignMessage sm) {
-		return sm == msg_user ||
-		       sm == msg_sched ||
-		       sm == msg_current ||
-		       sm == msg_next;
-	}
-
 	/** Current message expiration time */
 	private Long expire_time;
 
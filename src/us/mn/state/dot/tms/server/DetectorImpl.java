@@ -65,7 +65,7 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 	}
 
 	/** Default average detector field length (feet) */
-	static private final float DEFAULT_FIELD_FT = 22.0f;
+	static public final float DEFAULT_FIELD_FT = 22.0f;
 
 	/** Valid density threshold for speed calculation */
 	static private final float DENSITY_THRESHOLD = 1.2f;
@@ -309,7 +309,7 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 	}
 
 	/** Create a detector */
-	private DetectorImpl(String n, ControllerImpl c, int p, R_NodeImpl r,
+	DetectorImpl(String n, ControllerImpl c, int p, R_NodeImpl r,
 		short lt, short ln, boolean a, boolean ff, boolean af, float fl,
 		String f, String nt)
 	{
@@ -744,6 +744,11 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 	 * spd_cache to get "last_speed" value. */
 	private transient int last_speed = MISSING_DATA;
 
+	/** Get the number of cached scan samples */
+	int getScanSampleCount() {
+		return scn_cache.size();
+	}
+
 	/** Get the current vehicle count */
 	@Override
 	public int getVehCount(long start, long end) {
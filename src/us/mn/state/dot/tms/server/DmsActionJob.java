@@ -71,7 +71,7 @@ public class DmsActionJob extends Job {
 	/** Perform a DMS action */
 	private void performDmsAction(DmsAction da) {
 		SignGroup sg = da.getSignGroup();
-		Iterator<DmsSignGroup> it = DmsSignGroupHelper.iterator();
+		Iterator<DmsSignGroup> it = DmsSignGroupHelper.iterator(sg);
 		while (it.hasNext()) {
 			DmsSignGroup dsg = it.next();
 			if (dsg.getSignGroup() == sg) {
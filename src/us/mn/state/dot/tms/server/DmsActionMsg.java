@@ -18,7 +18,6 @@ import java.text.NumberFormat;
 import java.util.HashMap;
 import java.util.Map;
 import us.mn.state.dot.sched.DebugLog;
-import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.DmsAction;
 import static us.mn.state.dot.tms.DmsMsgPriority.GATE_ARM;
@@ -33,10 +32,9 @@ import us.mn.state.dot.tms.SignTextHelper;
 import us.mn.state.dot.tms.Station;
 import us.mn.state.dot.tms.StationHelper;
 import us.mn.state.dot.tms.SystemAttrEnum;
-import us.mn.state.dot.tms.TMSException;
 import us.mn.state.dot.tms.TollZone;
 import us.mn.state.dot.tms.TollZoneHelper;
-import static us.mn.state.dot.tms.server.MainServer.FLUSH;
+import static us.mn.state.dot.tms.server.MainServer.EVENT_SINK;
 import us.mn.state.dot.tms.server.event.TravelTimeEvent;
 import us.mn.state.dot.tms.units.Distance;
 import us.mn.state.dot.tms.units.Interval;
@@ -106,12 +104,7 @@ public class DmsActionMsg {
 
 	/** Log an event */
 	static private void logEvent(EventType et, String d) {
-		final TravelTimeEvent ev = new TravelTimeEvent(et, d);
-		FLUSH.addJob(new Job() {
-			public void perform() throws TMSException {
-				ev.doStore();
-			}
-		});
+		EVENT_SINK.add(new TravelTimeEvent(et, d));
 	}
 
 	/** Travel time data (for hashmap) */
@@ -569,8 +562,7 @@ public class DmsActionMsg {
 	/** Find a route to a travel time destination */
 	private Route findRoute(Station s) {
 		GeoLoc dest = s.getR_Node().getGeoLoc();
-		RouteFinder rf = new RouteFinder(BaseObjectImpl.corridors);
-		return rf.findRoute(loc, dest);
+		return BaseObjectImpl.corridors.findRoute(loc, dest);
 	}
 
 	/** Process travel time tag */
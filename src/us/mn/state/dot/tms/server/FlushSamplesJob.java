@@ -32,6 +32,11 @@ import us.mn.state.dot.tms.units.Interval;
  */
 public class FlushSamplesJob extends Job {
 
+	/** Job name for writing or archiving sample files.  Jobs with the
+	 * same name are never performed at the same time by a pool
+	 * scheduler. */
+	static public final String SAMPLE_FILES = "SampleFilesJob";
+
 	/** Is archiving enabled? */
 	static private boolean isArchiveEnabled() {
 		return SystemAttrEnum.SAMPLE_ARCHIVE_ENABLE.getBoolean();
@@ -55,6 +60,12 @@ public class FlushSamplesJob extends Job {
 		writer = new PeriodicSampleWriter(saf);
 	}
 
+	/** Get the job name */
+	@Override
+	public String getName() {
+		return SAMPLE_FILES;
+	}
+
 	/** Perform the flush samples job */
 	public void perform() {
 		long before = calculatePurgeStamp();
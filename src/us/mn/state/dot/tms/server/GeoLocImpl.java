@@ -151,7 +151,7 @@ public class GeoLocImpl extends BaseObjectImpl implements GeoLoc {
 	}
 
 	/** Create a new geo location */
-	private GeoLocImpl(String n, String nt, Road r, short rd, Road x,
+	GeoLocImpl(String n, String nt, Road r, short rd, Road x,
 		short xd, short xm, Double lt, Double ln, String lm)
 	{
 		this(n, nt);
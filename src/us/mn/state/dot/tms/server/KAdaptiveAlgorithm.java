@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2001-2018  Minnesota Department of Transportation
+ * Copyright (C) 2001-2019  Minnesota Department of Transportation
  * Copyright (C) 2011-2012  University of Minnesota Duluth (NATSRL)
  *
  * This program is free software; you can redistribute it and/or modify
@@ -17,6 +17,7 @@ package us.mn.state.dot.tms.server;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.EventType;
@@ -207,13 +208,18 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		return alg;
 	}
 
-	/** Process one interval for all K adaptive algorithm states */
-	static public void processAllStates() {
+	/** Get all K adaptive algorithm states, by corridor name.  This must
+	 * be called on the same thread as meterState and removeDoneStates. */
+	static public Map<String, KAdaptiveAlgorithm> getAllStates() {
+		return new HashMap<String, KAdaptiveAlgorithm>(ALL_ALGS);
+	}
+
+	/** Remove K adaptive algorithm states which are done */
+	static public void removeDoneStates() {
 		Iterator<KAdaptiveAlgorithm> it =
 			ALL_ALGS.values().iterator();
 		while (it.hasNext()) {
 			KAdaptiveAlgorithm alg = it.next();
-			alg.updateStations();
 			if (alg.isDone()) {
 				alg.log("isDone: removing");
 				it.remove();
@@ -356,8 +362,10 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		return null;
 	}
 
-	/** Update the station nodes for the current interval */
-	private void updateStations() {
+	/** Update the station nodes for the current interval.  This only
+	 * uses station data from the algorithm's corridor, so algorithms for
+	 * separate corridors can be updated concurrently. */
+	public void updateStations() {
 		for (StationNode sn = firstStation(); sn != null;
 		    sn = sn.downstreamStation())
 		{
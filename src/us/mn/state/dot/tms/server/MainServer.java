@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2018  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  * Copyright (C) 2017  Iteris Inc.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -26,6 +26,7 @@ import java.net.UnknownHostException;
 import java.util.Date;
 import java.util.Properties;
 import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.PoolScheduler;
 import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.sonar.server.Server;
@@ -34,6 +35,8 @@ import us.mn.state.dot.tms.Station;
 import us.mn.state.dot.tms.SystemAttrEnum;
 import us.mn.state.dot.tms.TMSException;
 import us.mn.state.dot.tms.server.event.BaseEvent;
+import us.mn.state.dot.tms.server.event.EventSink;
+import us.mn.state.dot.tms.server.comm.CommThread;
 import us.mn.state.dot.tms.server.comm.cux50.CUx50;
 import us.mn.state.dot.tms.server.comm.cux50.PrServer;
 import us.mn.state.dot.tms.utils.HttpProxySelector;
@@ -67,10 +70,23 @@ public class MainServer {
 	/** Flush thread for disk writing jobs */
 	static public final Scheduler FLUSH = new Scheduler("flush");
 
+	/** Default number of background threads */
+	static private final int BACKGROUND_THREADS = 2;
+
+	/** Background thread pool for slow disk and database jobs */
+	static private PoolScheduler background;
+
+	/** Event sink for storing events to the database */
+	static public final EventSink EVENT_SINK = new EventSink(FLUSH);
+
 	/** Sample archive factory */
 	static public final SampleArchiveFactoryImpl a_factory =
 		new SampleArchiveFactoryImpl();
 
+	/** Vehicle event writer */
+	static public final VehicleEventWriter V_WRITER =
+		new VehicleEventWriter(a_factory, FLUSH);
+
 	/** SONAR server */
 	static public Server server;
 
@@ -95,6 +111,10 @@ public class MainServer {
 			Properties props = PropertyLoader.load(PROP_FILE);
 			district = props.getProperty("district", "tms");
 			initProxySelector(props);
+			initCommThreads(props);
+			initEventSink(props);
+			initVehicleEventWriter(props);
+			background = createBackground(props);
 			store = createStore(props);
 			BaseEvent.store = store;
 			I18N.initialize(props);
@@ -107,8 +127,9 @@ public class MainServer {
 			BaseObjectImpl.loadAll(store, ns);
 			scheduleTimerJobs();
 			scheduleFlushJobs();
+			scheduleBackgroundJobs();
 			startProtocolServer();
-			server = new Server(ns, props, new AccessLogger(FLUSH));
+			server = new Server(ns, props, new AccessLogger(EVENT_SINK));
 			auth_provider = new IrisProvider();
 			server.addProvider(auth_provider);
 			System.err.println("IRIS Server active");
@@ -155,6 +176,42 @@ public class MainServer {
 			(assertsEnabled ? "on" : "off") + ".");
 	}
 
+	/** Initialize comm thread stack size */
+	static private void initCommThreads(Properties props)
+		throws NumberFormatException
+	{
+		String kb = props.getProperty("comm.thread.stack.kb");
+		if (kb != null)
+			CommThread.setStackSizeKb(Integer.parseInt(kb.trim()));
+	}
+
+	/** Initialize the event sink */
+	static private void initEventSink(Properties props)
+		throws NumberFormatException
+	{
+		String m = props.getProperty("event.queue.max");
+		if (m != null)
+			EVENT_SINK.setMaxQueue(Integer.parseInt(m.trim()));
+	}
+
+	/** Initialize the vehicle event writer */
+	static private void initVehicleEventWriter(Properties props) {
+		String b = props.getProperty("vlog.binary");
+		if (b != null)
+			V_WRITER.setBinary(Boolean.parseBoolean(b.trim()));
+	}
+
+	/** Create the background thread pool */
+	static private PoolScheduler createBackground(Properties props)
+		throws NumberFormatException
+	{
+		String n = props.getProperty("background.threads");
+		int n_threads = (n != null)
+		              ? Integer.parseInt(n.trim())
+		              : BACKGROUND_THREADS;
+		return new PoolScheduler("background", n_threads);
+	}
+
 	/** Initialize the proxy selector */
 	static private void initProxySelector(Properties props) {
 		HttpProxySelector ps = new HttpProxySelector(props);
@@ -166,12 +223,17 @@ public class MainServer {
 
 	/** Create the database connection */
 	static private SQLConnection createStore(Properties props)
-		throws IOException, TMSException
+		throws IOException, TMSException, NumberFormatException
 	{
+		String n = props.getProperty("db.connections");
+		int n_conn = (n != null)
+		           ? Integer.parseInt(n.trim())
+		           : SQLConnection.DEFAULT_CONNECTIONS;
 		return new SQLConnection(
 			props.getProperty("db.url"),
 			props.getProperty("db.user"),
-			props.getProperty("db.password")
+			props.getProperty("db.password"),
+			n_conn
 		);
 	}
 
@@ -183,6 +245,7 @@ public class MainServer {
 		// FIXME: static namespace hacks
 		BaseHelper.namespace = ns;
 		ns.registerType(Station.SONAR_TYPE, StationImpl.class);
+		ServerIndexes.addIndexes(ns);
 		return ns;
 	}
 
@@ -203,15 +266,21 @@ public class MainServer {
 
 	/** Schedule jobs on FLUSH thread */
 	static private void scheduleFlushJobs() {
-		FLUSH.addJob(new FlushSamplesJob(a_factory));
-		FLUSH.addJob(new ArchiveSamplesJob(a_factory));
-		FLUSH.addJob(new ProfilingJob());
-		FLUSH.addJob(new XmlConfigJob());
-		FLUSH.addJob(new XmlConfigJob(1000));
 		FLUSH.addJob(new SignMessageXmlJob());
 		FLUSH.addJob(new IncidentXmlJob());
 		FLUSH.addJob(new WeatherSensorXmlJob());
-		FLUSH.addJob(new EventPurgeJob());
+	}
+
+	/** Schedule slow jobs on background threads.  Sample flushing and
+	 * archiving have the same job name, so they are never performed at
+	 * the same time. */
+	static private void scheduleBackgroundJobs() {
+		background.addJob(new FlushSamplesJob(a_factory));
+		background.addJob(new ArchiveSamplesJob(a_factory));
+		background.addJob(new ProfilingJob(background));
+		background.addJob(new XmlConfigJob());
+		background.addJob(new XmlConfigJob(1000));
+		background.addJob(new EventPurgeJob());
 	}
 
 	/** Start the protocol server */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,23 +14,100 @@
  */
 package us.mn.state.dot.tms.server;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.tms.RampMeter;
 import us.mn.state.dot.tms.RampMeterHelper;
 
 /**
- * Job to calculate station data and ramp metering.
+ * Job to calculate station data and ramp metering.  Corridors are mostly
+ * independent, so station data, bottlenecks and K adaptive states are
+ * calculated for each corridor on a fork/join pool.  After all corridors
+ * are complete, meter rates are updated on the calling thread.
  *
  * @author Douglas Lau
  */
 public class MeteringJob extends Job {
 
+	/** Metering debug log */
+	static private final DebugLog METER_LOG = new DebugLog("metering");
+
 	/** Seconds to offset each poll from start of interval */
 	static private final int OFFSET_SECS = 29;
 
+	/** Time (ms) before a cycle is flagged as slow in the log */
+	static private final long SLOW_CYCLE_MS = 10000;
+
+	/** Get elapsed time (ms) since a nano time stamp */
+	static private long elapsedMs(long st) {
+		return (System.nanoTime() - st) / 1000000;
+	}
+
+	/** Metering work for one corridor */
+	static private class CorridorTask implements Callable<Void> {
+		private final List<StationImpl> stations;
+		private final Corridor corridor;
+		private final KAdaptiveAlgorithm alg;
+		private long station_ms;
+		private long bottleneck_ms;
+		private long k_adaptive_ms;
+		private CorridorTask(List<StationImpl> sl, Corridor c,
+			KAdaptiveAlgorithm a)
+		{
+			stations = sl;
+			corridor = c;
+			alg = a;
+		}
+
+		/** Perform metering stages for the corridor */
+		public Void call() {
+			long st = System.nanoTime();
+			if (stations != null) {
+				for (StationImpl s: stations)
+					s.calculateData();
+			}
+			station_ms = elapsedMs(st);
+			st = System.nanoTime();
+			if (corridor != null)
+				corridor.findBottlenecks();
+			bottleneck_ms = elapsedMs(st);
+			st = System.nanoTime();
+			if (alg != null)
+				alg.updateStations();
+			k_adaptive_ms = elapsedMs(st);
+			return null;
+		}
+	}
+
+	/** Create the fork/join pool */
+	static private ForkJoinPool createPool() {
+		return new ForkJoinPool(Runtime.getRuntime()
+			.availableProcessors(),
+			new ForkJoinPool.ForkJoinWorkerThreadFactory()
+		{
+			public ForkJoinWorkerThread newThread(ForkJoinPool p) {
+				ForkJoinWorkerThread t = ForkJoinPool
+					.defaultForkJoinWorkerThreadFactory
+					.newThread(p);
+				t.setName("metering_" + t.getPoolIndex());
+				return t;
+			}
+		}, null, false);
+	}
+
 	/** FLUSH Scheduler for writing XML (I/O to disk) */
 	private final Scheduler flush;
 
@@ -40,7 +117,20 @@ public class MeteringJob extends Job {
 	/** Job to be performed after data has been processed */
 	private final FlushXmlJob flush_job;
 
-	/** Create a new metering job */
+	/** Pool for corridor tasks */
+	private final ForkJoinPool pool = createPool();
+
+	/** Elapsed time of each stage in the last cycle (ms).  Corridor
+	 * stages are summed over all corridors. */
+	private final LinkedHashMap<String, Long> timings =
+		new LinkedHashMap<String, Long>();
+
+	/** Number of corridors in the last cycle */
+	private int n_corridors = 0;
+
+	/** Create a new metering job.
+	 * @param f FLUSH scheduler (may be null if only corridor stages
+	 *          are performed). */
 	public MeteringJob(Scheduler f) {
 		super(Calendar.SECOND, 30, Calendar.SECOND, OFFSET_SECS);
 		flush = f;
@@ -50,21 +140,84 @@ public class MeteringJob extends Job {
 
 	/** Perform the metering job */
 	@Override
-	public void perform() {
+	public void perform() throws Exception {
 		try {
-			station_manager.calculateData();
+			performCorridors();
 			// Perform flush job after station data calculated
 			flush.addJob(flush_job);
-			BaseObjectImpl.corridors.findBottlenecks();
 		}
 		finally {
+			long st = System.nanoTime();
 			validateMetering();
+			long meter_ms = elapsedMs(st);
+			synchronized (timings) {
+				timings.put("meters", meter_ms);
+			}
+			long total_ms = getTiming("corridor_stages") + meter_ms;
+			if (METER_LOG.isOpen())
+				logTimings(total_ms);
+		}
+	}
+
+	/** Perform station, bottleneck and K adaptive stages for all
+	 * corridors, and wait for them to complete */
+	void performCorridors() throws Exception {
+		long st = System.nanoTime();
+		List<CorridorTask> tasks = createTasks();
+		try {
+			performTasks(tasks);
+		}
+		finally {
+			updateTimings(tasks, elapsedMs(st));
+		}
+	}
+
+	/** Create corridor tasks for all stations, corridors and K adaptive
+	 * algorithm states.  Stations which are not on a corridor are grouped
+	 * under a null name; they have no corridor or algorithm state. */
+	private List<CorridorTask> createTasks() {
+		Map<String, ArrayList<StationImpl>> stations =
+			station_manager.getCorridorStations();
+		Map<String, Corridor> corridors =
+			BaseObjectImpl.corridors.getCorridors();
+		Map<String, KAdaptiveAlgorithm> algs =
+			KAdaptiveAlgorithm.getAllStates();
+		HashSet<String> names = new HashSet<String>();
+		names.addAll(stations.keySet());
+		names.addAll(corridors.keySet());
+		names.addAll(algs.keySet());
+		ArrayList<CorridorTask> tasks = new ArrayList<CorridorTask>();
+		for (String cid: names) {
+			if (cid != null) {
+				tasks.add(new CorridorTask(stations.get(cid),
+					corridors.get(cid), algs.get(cid)));
+			} else {
+				tasks.add(new CorridorTask(stations.get(cid),
+					null, null));
+			}
+		}
+		return tasks;
+	}
+
+	/** Perform corridor tasks, and wait for all to complete */
+	private void performTasks(List<CorridorTask> tasks) throws Exception {
+		for (Future<Void> f: pool.invokeAll(tasks)) {
+			try {
+				f.get();
+			}
+			catch (ExecutionException e) {
+				Throwable t = e.getCause();
+				if (t instanceof Exception)
+					throw (Exception) t;
+				else
+					throw e;
+			}
 		}
 	}
 
 	/** Validate all metering algorithms */
 	private void validateMetering() {
-		KAdaptiveAlgorithm.processAllStates();
+		KAdaptiveAlgorithm.removeDoneStates();
 		Iterator<RampMeter> it = RampMeterHelper.iterator();
 		while (it.hasNext()) {
 			RampMeter rm = it.next();
@@ -83,4 +236,64 @@ public class MeteringJob extends Job {
 			}
 		}
 	}
+
+	/** Update the corridor stage timings for the last cycle */
+	private void updateTimings(List<CorridorTask> tasks, long corridor_ms) {
+		long station_ms = 0;
+		long bottleneck_ms = 0;
+		long k_adaptive_ms = 0;
+		for (CorridorTask t: tasks) {
+			station_ms += t.station_ms;
+			bottleneck_ms += t.bottleneck_ms;
+			k_adaptive_ms += t.k_adaptive_ms;
+		}
+		synchronized (timings) {
+			n_corridors = tasks.size();
+			timings.put("stations", station_ms);
+			timings.put("bottlenecks", bottleneck_ms);
+			timings.put("k_adaptive", k_adaptive_ms);
+			timings.put("corridor_stages", corridor_ms);
+		}
+	}
+
+	/** Get the elapsed time of one stage in the last cycle (ms) */
+	private long getTiming(String stage) {
+		synchronized (timings) {
+			Long ms = timings.get(stage);
+			return (ms != null) ? ms : 0;
+		}
+	}
+
+	/** Get elapsed time of each stage in the last cycle (ms) */
+	public Map<String, Long> getTimings() {
+		synchronized (timings) {
+			return new LinkedHashMap<String, Long>(timings);
+		}
+	}
+
+	/** Get the number of corridors in the last cycle */
+	public int getCorridorCount() {
+		synchronized (timings) {
+			return n_corridors;
+		}
+	}
+
+	/** Log the stage timings */
+	private void logTimings(long total_ms) {
+		StringBuilder sb = new StringBuilder();
+		if (total_ms > SLOW_CYCLE_MS)
+			sb.append("SLOW ");
+		sb.append(getCorridorCount());
+		sb.append(" corridors: ");
+		sb.append(total_ms);
+		sb.append(" ms");
+		for (Map.Entry<String, Long> e: getTimings().entrySet()) {
+			sb.append(", ");
+			sb.append(e.getKey());
+			sb.append(": ");
+			sb.append(e.getValue());
+			sb.append(" ms");
+		}
+		METER_LOG.log(sb.toString());
+	}
 }
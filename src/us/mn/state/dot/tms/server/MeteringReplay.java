@@ -0,0 +1,467 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import us.mn.state.dot.sched.SimulatedTimeSource;
+import us.mn.state.dot.sched.TimeSteward;
+import us.mn.state.dot.sonar.SonarException;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.Station;
+import us.mn.state.dot.tms.StationHelper;
+import us.mn.state.dot.tms.SystemAttrEnum;
+import us.mn.state.dot.tms.server.event.BaseEvent;
+import us.mn.state.dot.tms.units.Interval;
+import us.mn.state.dot.tms.utils.I18N;
+
+/**
+ * Metering replay runs detector auto-fail, station, bottleneck and K adaptive
+ * metering logic against one day of archived sample data, faster than real
+ * time.  There is no database and there are no comm links; the TimeSteward
+ * clock is simulated, and advanced by one sample period per step.
+ *
+ * Changes to meter rates, bottlenecks and detector auto-fail are written to
+ * stdout as CSV.  A summary of stage timings is written to stderr.
+ *
+ * Usage: MeteringReplay config.xml archive_dir yyyyMMdd
+ *        [-p HH:mm-HH:mm]... [-a attribute=value]...
+ *
+ * @author Douglas Lau
+ */
+public class MeteringReplay {
+
+	/** Sample period (seconds) */
+	static private final int PERIOD_SEC = DetectorImpl.SAMPLE_PERIOD_SEC;
+
+	/** Sample period (ms) */
+	static private final long PERIOD_MS = DetectorImpl.SAMPLE_PERIOD_MS;
+
+	/** Maximum number of 60 Hz scans in one sample period */
+	static private final int MAX_SCANS = PERIOD_SEC * 60;
+
+	/** Time after end of sample period to perform metering (ms).  This
+	 * matches the offset of MeteringJob. */
+	static private final long METER_OFFSET_MS = 29 * 1000;
+
+	/** Metering period */
+	static private class Period {
+		private final int start;
+		private final int stop;
+		private Period(int st, int sp) {
+			start = st;
+			stop = sp;
+		}
+		private boolean contains(int min) {
+			return min >= start && min < stop;
+		}
+	}
+
+	/** Parse a minute-of-day (HH:mm) */
+	static private int parseMinute(String t) {
+		String[] hm = t.split(":");
+		if (hm.length == 2) {
+			int h = Integer.parseInt(hm[0]);
+			int m = Integer.parseInt(hm[1]);
+			if (h >= 0 && h <= 24 && m >= 0 && m < 60)
+				return h * 60 + m;
+		}
+		throw new IllegalArgumentException("Invalid time: " + t);
+	}
+
+	/** Parse a metering period (HH:mm-HH:mm) */
+	static private Period parsePeriod(String p) {
+		String[] ss = p.split("-");
+		if (ss.length != 2)
+			throw new IllegalArgumentException("Invalid period: " +p);
+		Period per = new Period(parseMinute(ss[0]),
+			parseMinute(ss[1]));
+		if (per.start >= per.stop)
+			throw new IllegalArgumentException("Invalid period: " +p);
+		return per;
+	}
+
+	/** Get the start of a day (local time) */
+	static private long parseDay(String date) {
+		if (date.length() != 8)
+			throw new IllegalArgumentException("Invalid date: " +date);
+		int d = Integer.parseInt(date);
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(d / 10000, d / 100 % 100 - 1, d % 100);
+		return cal.getTimeInMillis();
+	}
+
+	/** Create a time of day as a date */
+	static private Calendar timeOfDay(int min) {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(Calendar.HOUR_OF_DAY, min / 60);
+		cal.set(Calendar.MINUTE, min % 60);
+		return cal;
+	}
+
+	/** One day of samples for a detector */
+	static private class DetectorSamples {
+		private final DetectorImpl det;
+		private final int[] veh;
+		private final int[] scans;
+		private final int[] speed;
+		private DetectorSamples(DetectorImpl d,
+			SampleArchiveReader reader) throws IOException
+		{
+			det = d;
+			String n = d.getName();
+			veh = reader.read(n, PeriodicSampleType.VEH_COUNT,
+				PERIOD_SEC);
+			scans = reader.read(n, PeriodicSampleType.SCAN,
+				PERIOD_SEC);
+			speed = reader.read(n, PeriodicSampleType.SPEED,
+				PERIOD_SEC);
+		}
+
+		/** Store samples for one period, as a poller would */
+		private void store(int i, long stamp) {
+			det.storeVehCount(new PeriodicSample(stamp, PERIOD_SEC,
+				veh[i]));
+			det.storeOccupancy(new OccupancySample(stamp,
+				PERIOD_SEC, scans[i], MAX_SCANS));
+			det.storeSpeed(new PeriodicSample(stamp, PERIOD_SEC,
+				speed[i]));
+		}
+	}
+
+	/** Print program usage */
+	static private void printUsage() {
+		System.err.println("Usage: MeteringReplay config.xml " +
+			"archive_dir yyyyMMdd");
+		System.err.println("       [-p HH:mm-HH:mm]... " +
+			"[-a attribute=value]...");
+		System.err.println("  -p  metering period (one each AM/PM)");
+		System.err.println("  -a  system attribute override");
+	}
+
+	/** Metering replay entry point */
+	static public void main(String[] args) {
+		try {
+			MeteringReplay mr = new MeteringReplay(args);
+			mr.run();
+			System.exit(0);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(1);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/** Configuration XML file */
+	private final File config;
+
+	/** Sample archive directory */
+	private final File archive;
+
+	/** Date to replay (yyyyMMdd) */
+	private final String date;
+
+	/** Start of day */
+	private final long day_start;
+
+	/** Metering periods */
+	private final ArrayList<Period> periods = new ArrayList<Period>();
+
+	/** System attribute overrides */
+	private final HashMap<String, String> attrs =
+		new HashMap<String, String>();
+
+	/** Simulated clock */
+	private final SimulatedTimeSource clock;
+
+	/** Metering job (for corridor stages) */
+	private final MeteringJob job = new MeteringJob(null);
+
+	/** Replay topology */
+	private ReplayTopology topology;
+
+	/** Detector samples */
+	private final ArrayList<DetectorSamples> samples =
+		new ArrayList<DetectorSamples>();
+
+	/** Output stream for changes */
+	private final PrintStream out = new PrintStream(
+		new BufferedOutputStream(System.out));
+
+	/** Previous meter rates */
+	private final HashMap<String, Integer> rates =
+		new HashMap<String, Integer>();
+
+	/** Previous station bottleneck flags */
+	private final HashMap<String, Boolean> bottlenecks =
+		new HashMap<String, Boolean>();
+
+	/** Previous detector auto-fail flags */
+	private final HashMap<String, Boolean> auto_fails =
+		new HashMap<String, Boolean>();
+
+	/** Total time of each stage (ms) */
+	private final LinkedHashMap<String, Long> total_ms =
+		new LinkedHashMap<String, Long>();
+
+	/** Maximum time of each stage in one step (ms) */
+	private final HashMap<String, Long> max_ms = new HashMap<String,Long>();
+
+	/** Create a new metering replay */
+	private MeteringReplay(String[] args) {
+		if (args.length < 3)
+			throw new IllegalArgumentException("Missing arguments");
+		config = new File(args[0]);
+		archive = new File(args[1]);
+		date = args[2];
+		day_start = parseDay(date);
+		for (int i = 3; i < args.length; i++) {
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing " +
+					"value: " + args[i]);
+			String v = args[++i];
+			if (args[i - 1].equals("-p"))
+				periods.add(parsePeriod(v));
+			else if (args[i - 1].equals("-a"))
+				putAttribute(v);
+			else
+				throw new IllegalArgumentException("Unknown " +
+					"option: " + args[i - 1]);
+		}
+		clock = new SimulatedTimeSource(day_start);
+	}
+
+	/** Put a system attribute override (name=value) */
+	private void putAttribute(String a) {
+		int e = a.indexOf('=');
+		String n = (e > 0) ? a.substring(0, e) : a;
+		if (e < 0 || SystemAttrEnum.lookup(n) == null)
+			throw new IllegalArgumentException("Invalid attribute: "
+				+ a);
+		attrs.put(n, a.substring(e + 1));
+	}
+
+	/** Run the replay */
+	private void run() throws Exception {
+		long st = System.nanoTime();
+		TimeSteward.setTimeSource(clock);
+		I18N.initialize(new Properties());
+		initNamespace();
+		topology = new ReplayTopology();
+		topology.read(config);
+		createMeterPlan();
+		readSamples();
+		long setup_ms = elapsedMs(st);
+		out.println("time,type,name,value");
+		int n_steps = (int) new Interval(PERIOD_SEC).per(Interval.DAY);
+		st = System.nanoTime();
+		for (int i = 0; i < n_steps; i++)
+			step(i);
+		out.flush();
+		for (ControllerImpl c: topology.getControllers()) {
+			if (c.isFailed()) {
+				System.err.println("Warning: controller " +
+					c.getName() + " failed during replay");
+			}
+		}
+		printSummary(n_steps, setup_ms, elapsedMs(st));
+	}
+
+	/** Get elapsed time since a nano time stamp (ms) */
+	static private long elapsedMs(long st) {
+		return (System.nanoTime() - st) / 1000000;
+	}
+
+	/** Initialize the namespace, with no database */
+	private void initNamespace() throws SonarException {
+		ServerNamespace ns = new ServerNamespace();
+		BaseHelper.namespace = ns;
+		BaseObjectImpl.namespace = ns;
+		ns.registerType(Station.SONAR_TYPE, StationImpl.class);
+		ServerIndexes.addIndexes(ns);
+		NullStore store = new NullStore();
+		BaseObjectImpl.store = store;
+		BaseEvent.store = store;
+		for (SystemAttrEnum sa: SystemAttrEnum.values()) {
+			String v = attrs.containsKey(sa.aname())
+			         ? attrs.get(sa.aname())
+			         : sa.getDefault();
+			ns.addObject(new SystemAttributeImpl(sa.aname(), v));
+		}
+	}
+
+	/** Create an action plan to operate all meters during the metering
+	 * periods.  This is needed for the start and stop minutes used by
+	 * the K adaptive algorithm. */
+	private void createMeterPlan() throws SonarException {
+		ServerNamespace ns = BaseObjectImpl.namespace;
+		PlanPhaseImpl deployed = new PlanPhaseImpl("deployed", 0, null);
+		PlanPhaseImpl undeployed = new PlanPhaseImpl("undeployed", 0,
+			null);
+		ns.addObject(deployed);
+		ns.addObject(undeployed);
+		ActionPlanImpl plan = new ActionPlanImpl("replay_metering",
+			"", null, false, false, true, undeployed, undeployed);
+		ns.addObject(plan);
+		for (int i = 0; i < periods.size(); i++) {
+			Period p = periods.get(i);
+			ns.addObject(new TimeActionImpl("replay_start_" + i,
+				plan, null, null, timeOfDay(p.start).getTime(),
+				deployed));
+			ns.addObject(new TimeActionImpl("replay_stop_" + i,
+				plan, null, null, timeOfDay(p.stop).getTime(),
+				undeployed));
+		}
+		for (RampMeterImpl meter: topology.getMeters()) {
+			ns.addObject(new MeterActionImpl("replay_" +
+				meter.getName(), plan, meter, deployed));
+		}
+	}
+
+	/** Read samples for all detectors */
+	private void readSamples() throws IOException {
+		SampleArchiveReader reader = new SampleArchiveReader(archive,
+			date);
+		try {
+			for (DetectorImpl det: topology.getDetectors())
+				samples.add(new DetectorSamples(det, reader));
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/** Perform one replay step */
+	private void step(int i) throws Exception {
+		long stamp = day_start + (i + 1) * PERIOD_MS;
+		clock.setTime(stamp);
+		long st = System.nanoTime();
+		for (DetectorSamples ds: samples)
+			ds.store(i, stamp);
+		addTiming("samples", elapsedMs(st));
+		clock.setTime(stamp + METER_OFFSET_MS);
+		updateOperating();
+		job.performCorridors();
+		for (Map.Entry<String, Long> e: job.getTimings().entrySet())
+			addTiming(e.getKey(), e.getValue());
+		st = System.nanoTime();
+		updateMeters();
+		addTiming("meters", elapsedMs(st));
+		writeChanges(TimeSteward.timeShortString(stamp));
+	}
+
+	/** Update the operating state of all meters */
+	private void updateOperating() {
+		int min = TimeSteward.currentMinuteOfDayInt();
+		boolean op = false;
+		for (Period p: periods)
+			op |= p.contains(min);
+		for (RampMeterImpl meter: topology.getMeters())
+			meter.setOperating(op);
+	}
+
+	/** Update all meters, as MeteringJob does after corridor stages */
+	private void updateMeters() {
+		KAdaptiveAlgorithm.removeDoneStates();
+		for (RampMeterImpl meter: topology.getMeters())
+			meter.validateAlgorithm();
+		for (RampMeterImpl meter: topology.getMeters()) {
+			meter.updateQueueState();
+			meter.updateRateReplay();
+		}
+	}
+
+	/** Add to the timing of one stage */
+	private void addTiming(String stage, long ms) {
+		Long t = total_ms.get(stage);
+		total_ms.put(stage, (t != null) ? t + ms : ms);
+		Long m = max_ms.get(stage);
+		if (null == m || ms > m)
+			max_ms.put(stage, ms);
+	}
+
+	/** Write changes since the previous step */
+	private void writeChanges(String t) {
+		for (RampMeterImpl meter: topology.getMeters()) {
+			String n = meter.getName();
+			Integer r = meter.getRate();
+			Integer pr = rates.put(n, r);
+			if (!BaseObjectImpl.objectEquals(r, pr))
+				writeChange(t, "rate", n, (r != null) ? r : "");
+		}
+		Iterator<Station> it = StationHelper.iterator();
+		while (it.hasNext()) {
+			Station s = it.next();
+			if (s instanceof StationImpl) {
+				boolean b = ((StationImpl) s).isBottleneck();
+				if (checkFlag(bottlenecks, s.getName(), b))
+					writeChange(t, "bottleneck", s.getName(), b);
+			}
+		}
+		for (DetectorImpl det: topology.getDetectors()) {
+			boolean af = det.getAutoFail();
+			if (checkFlag(auto_fails, det.getName(), af))
+				writeChange(t, "auto_fail", det.getName(), af);
+		}
+	}
+
+	/** Check whether a flag has changed since the previous step */
+	static private boolean checkFlag(HashMap<String, Boolean> flags,
+		String n, boolean f)
+	{
+		Boolean pf = flags.put(n, f);
+		return f != ((pf != null) ? pf : false);
+	}
+
+	/** Write one change as a CSV line */
+	private void writeChange(String t, String tp, String n, Object v) {
+		out.println(t + "," + tp + "," + n + "," + v);
+	}
+
+	/** Print a summary of replay timings */
+	private void printSummary(int n_steps, long setup_ms, long run_ms) {
+		System.err.println("Replayed " + date + ": " + n_steps +
+			" steps, " + job.getCorridorCount() + " corridors, " +
+			samples.size() + " detectors, " +
+			topology.getMeters().size() + " meters");
+		System.err.println("  setup: " + setup_ms + " ms, replay: " +
+			run_ms + " ms");
+		for (Map.Entry<String, Long> e: total_ms.entrySet()) {
+			String stage = e.getKey();
+			long ms = e.getValue();
+			System.err.println("  " + stage + ": " + ms +
+				" ms total, " + String.format("%.2f",
+				(float) ms / n_steps) + " ms mean, " +
+				max_ms.get(stage) + " ms max");
+		}
+	}
+}
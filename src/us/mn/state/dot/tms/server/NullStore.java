@@ -0,0 +1,39 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Collection;
+
+/**
+ * Storage which discards all changes, for headless tools with no database.
+ *
+ * @author Douglas Lau
+ */
+class NullStore extends SQLConnection {
+	@Override
+	public void query(String sql, ResultFactory factory) { }
+	@Override
+	public void update(String sql) { }
+	@Override
+	public void update(Storable s, String field, Object value) { }
+	@Override
+	public void create(Storable s) { }
+	@Override
+	public void create(Collection<? extends Storable> records) { }
+	@Override
+	public void destroy(Storable s) { }
+	@Override
+	public void batch(BatchFactory f) { }
+}
@@ -0,0 +1,237 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
+import us.mn.state.dot.tms.TMSException;
+
+/**
+ * An object loader performs load steps on a pool of threads.  Each step is
+ * performed after all of its dependencies have completed, so independent
+ * steps can run concurrently (using separate database connections).
+ *
+ * @author Douglas Lau
+ */
+public class ObjectLoader {
+
+	/** Load debug log */
+	static private final DebugLog LOAD_LOG = new DebugLog("load");
+
+	/** A load step */
+	static abstract public class Step {
+
+		/** Name of step */
+		private final String name;
+
+		/** Steps which must complete before this step */
+		private final Step[] deps;
+
+		/** Steps which depend on this step */
+		private final ArrayList<Step> dependents = new ArrayList<Step>();
+
+		/** Count of dependencies which have not completed */
+		private int n_pending;
+
+		/** Create a load step */
+		protected Step(String n, Step... d) {
+			name = n;
+			deps = d;
+		}
+
+		/** Perform the step */
+		abstract protected void perform() throws Exception;
+	}
+
+	/** Create a step to call the static loadAll method of a class */
+	static private Step loadAllStep(final Class<?> c, Step... deps) {
+		return new Step(c.getSimpleName(), deps) {
+			protected void perform() throws Exception {
+				Method m = c.getDeclaredMethod("loadAll");
+				try {
+					m.invoke(null);
+				}
+				catch (InvocationTargetException e) {
+					Throwable t = e.getCause();
+					if (t instanceof Exception)
+						throw (Exception) t;
+					else
+						throw e;
+				}
+			}
+		};
+	}
+
+	/** All steps, in declared order */
+	private final ArrayList<Step> steps = new ArrayList<Step>();
+
+	/** Elapsed time of each step (ms) */
+	private final LinkedHashMap<String, Long> timings =
+		new LinkedHashMap<String, Long>();
+
+	/** Number of steps not yet completed */
+	private int n_remaining;
+
+	/** Number of steps running */
+	private int n_running;
+
+	/** Exception from first failed step */
+	private Exception error;
+
+	/** Worker thread pool */
+	private final ExecutorService pool;
+
+	/** Create a new object loader.
+	 * @param n_threads Number of worker threads. */
+	public ObjectLoader(int n_threads) {
+		pool = Executors.newFixedThreadPool(Math.max(n_threads, 1),
+			new ThreadFactory()
+		{
+			private int n_thread = 0;
+			public Thread newThread(Runnable r) {
+				n_thread++;
+				Thread t = new Thread(r, "load_" + n_thread);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/** Add a step.  All dependencies must be added first.
+	 * @return The step, for use as a dependency. */
+	public Step add(Step s) {
+		for (Step d: s.deps) {
+			if (!steps.contains(d)) {
+				throw new IllegalArgumentException(
+					"Missing dependency: " + d.name);
+			}
+			d.dependents.add(s);
+		}
+		s.n_pending = s.deps.length;
+		steps.add(s);
+		return s;
+	}
+
+	/** Add a step to call the static loadAll method of a class.
+	 * @param c Class to load.
+	 * @param deps Steps which must complete first.
+	 * @return The step, for use as a dependency. */
+	public Step addLoad(Class<?> c, Step... deps) {
+		return add(loadAllStep(c, deps));
+	}
+
+	/** Perform all steps, and wait for them to complete */
+	public void run() throws TMSException {
+		long start = TimeSteward.currentTimeMillis();
+		try {
+			synchronized (this) {
+				n_remaining = steps.size();
+				for (Step s: steps) {
+					if (s.n_pending == 0)
+						submit(s);
+				}
+				while (n_remaining > 0 &&
+				      (error == null || n_running > 0))
+					wait();
+			}
+		}
+		catch (InterruptedException e) {
+			throw new TMSException(e);
+		}
+		finally {
+			pool.shutdown();
+		}
+		if (error instanceof TMSException)
+			throw (TMSException) error;
+		else if (error != null)
+			throw new TMSException(error);
+		long elapsed = TimeSteward.currentTimeMillis() - start;
+		logTimings(elapsed);
+	}
+
+	/** Submit a step to the worker pool */
+	private void submit(final Step s) {
+		n_running++;
+		pool.execute(new Runnable() {
+			public void run() {
+				perform(s);
+			}
+		});
+	}
+
+	/** Perform one step on a worker thread */
+	private void perform(Step s) {
+		long st = TimeSteward.currentTimeMillis();
+		try {
+			s.perform();
+			complete(s, TimeSteward.currentTimeMillis() - st);
+		}
+		catch (Exception e) {
+			fail(s, e);
+		}
+	}
+
+	/** Complete a step, and submit dependents which are ready */
+	private synchronized void complete(Step s, long elapsed) {
+		timings.put(s.name, elapsed);
+		n_running--;
+		n_remaining--;
+		if (error == null) {
+			for (Step d: s.dependents) {
+				d.n_pending--;
+				if (d.n_pending == 0)
+					submit(d);
+			}
+		}
+		notify();
+	}
+
+	/** Fail a step */
+	private synchronized void fail(Step s, Exception e) {
+		if (LOAD_LOG.isOpen())
+			LOAD_LOG.log(s.name + " failed: " + e);
+		if (error == null)
+			error = e;
+		n_running--;
+		notify();
+	}
+
+	/** Get elapsed time of each step (ms), in completion order */
+	public synchronized Map<String, Long> getTimings() {
+		return new LinkedHashMap<String, Long>(timings);
+	}
+
+	/** Log the step timings */
+	private void logTimings(long elapsed) {
+		if (LOAD_LOG.isOpen()) {
+			for (Map.Entry<String, Long> e:
+			     getTimings().entrySet())
+			{
+				LOAD_LOG.log(e.getKey() + ": " + e.getValue() +
+					" ms");
+			}
+		}
+		System.err.println("Loaded " + steps.size() + " steps in " +
+			elapsed + " ms");
+	}
+}
@@ -14,9 +14,10 @@
  */
 package us.mn.state.dot.tms.server;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.NoSuchElementException;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.units.Interval;
@@ -25,6 +26,11 @@ import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
 /**
  * A cache for periodic sample data.  
  *
+ * Sample values are stored in a ring of primitive ints, with one slot for each
+ * sampling period.  The slot for a sample is its start time stamp divided by
+ * the period, so adding a sample is O(1) and aggregating values over a time
+ * interval only visits the slots within that interval.
+ *
  * @author Douglas Lau
  */
 public class PeriodicSampleCache {
@@ -40,6 +46,9 @@ public class PeriodicSampleCache {
 	static private final long SAMPLE_MAX_MS = new Interval(1,
 		Interval.Units.HOURS).ms();
 
+	/** Initial number of slots in the sample ring */
+	static private final int INITIAL_SLOTS = 32;
+
 	/** Check if a timestamp is valid */
 	static private boolean checkStamp(long ts) {
 		long now = TimeSteward.currentTimeMillis();
@@ -130,10 +139,20 @@ public class PeriodicSampleCache {
 	/** Sample type */
 	public final PeriodicSampleType sample_type;
 
-	/** Collection of periodic samples.  Every sample is guaranteed to
-	 * have the same sampling period. */
-	private final ConcurrentSkipListSet<PeriodicSample> samples =
-		new ConcurrentSkipListSet<PeriodicSample>();
+	/** Sampling period (seconds) of every cached sample, or 0 if the
+	 * cache is empty */
+	private int period = 0;
+
+	/** Ring of sample values, indexed by slot number modulo length.
+	 * Slots with no sample contain MISSING_DATA. */
+	private int[] ring = newRing(INITIAL_SLOTS);
+
+	/** Slot number of first (oldest) sample */
+	private long head = 0;
+
+	/** Number of slots from first sample to last sample (inclusive), or 0
+	 * if the cache is empty */
+	private int span = 0;
 
 	/** Create a new periodic sample cache.
 	 * @param tp Sample type. */
@@ -141,15 +160,22 @@ public class PeriodicSampleCache {
 		sample_type = tp;
 	}
 
+	/** Create a new ring with no samples */
+	static private int[] newRing(int n_slots) {
+		int[] r = new int[n_slots];
+		Arrays.fill(r, MISSING_DATA);
+		return r;
+	}
+
 	/** Add a periodic sample to the cache.
 	 * If the sampling period is incompatable with existing samples, the
 	 * cache is cleared first.
 	 * @param ps Sample to add to the cache. */
-	public void add(PeriodicSample ps, String name) {
+	public synchronized void add(PeriodicSample ps, String name) {
 		if (checkStamp(ps.stamp)) {
 			if (sample_type.isValid(ps)) {
 				if (!isPeriodOk(ps.period))
-					samples.clear();
+					clear();
 				if (isPeriodSame(ps.period))
 					addSample(ps);
 				else
@@ -163,41 +189,112 @@ public class PeriodicSampleCache {
 		}
 	}
 
+	/** Clear all samples from the cache */
+	private void clear() {
+		Arrays.fill(ring, MISSING_DATA);
+		period = 0;
+		head = 0;
+		span = 0;
+	}
+
 	/** Check if a period is OK to be cached.
-	 * @param period Period to check (seconds).
+	 * @param p Period to check (seconds).
 	 * @return true if period is OK to be cached. */
-	private boolean isPeriodOk(int period) {
-		return period % getPeriod(period) == 0;
+	private boolean isPeriodOk(int p) {
+		return p % getPeriod(p) == 0;
 	}
 
 	/** Is a sample period the same as for the cache? */
-	private boolean isPeriodSame(int period) {
-		return period == getPeriod(period);
+	private boolean isPeriodSame(int p) {
+		return p == getPeriod(p);
 	}
 
 	/** Get the sample period.
-	 * @param period Default sample period.
+	 * @param p Default sample period.
 	 * @return Sample period (seconds). */
-	private int getPeriod(int period) {
-		return samples.isEmpty()
-		      ? period
-		      : samples.first().period;
+	private int getPeriod(int p) {
+		return (span > 0) ? period : p;
+	}
+
+	/** Get the sample period in milliseconds */
+	private long periodMillis() {
+		return period * 1000L;
+	}
+
+	/** Get the maximum number of slots which can be cached */
+	private int maxSlots() {
+		long ms = SAMPLE_MIN_MS + SAMPLE_MAX_MS;
+		return (int) Math.max(INITIAL_SLOTS, ms / periodMillis());
+	}
+
+	/** Get the ring index of a slot number */
+	private int index(long slot) {
+		return (int) (slot % ring.length);
+	}
+
+	/** Get the slot number of the last (newest) sample */
+	private long tail() {
+		return head + span - 1;
+	}
+
+	/** Get the value in a slot */
+	private int getSlot(long slot) {
+		return (slot >= head && slot <= tail())
+		      ? ring[index(slot)]
+		      : MISSING_DATA;
 	}
 
 	/** Add a sample */
 	private void addSample(PeriodicSample ps) {
 		assert ps.period == getPeriod(ps.period) : "Invalid period";
 		assert !exists(ps.start()) : "Duplicate start time";
-		samples.add(ps);
+		if (span == 0)
+			period = ps.period;
+		long slot = ps.start() / periodMillis();
+		if (span == 0) {
+			head = slot;
+			span = 1;
+		} else if (slot < head) {
+			// Too old to fit in the ring
+			if (tail() - slot >= maxSlots())
+				return;
+			int n_span = (int) (tail() - slot + 1);
+			ensureCapacity(n_span);
+			head = slot;
+			span = n_span;
+		} else if (slot > tail()) {
+			int max_slots = maxSlots();
+			if (slot - head >= max_slots) {
+				purgeSlots(slot - max_slots + 1);
+				if (span == 0) {
+					period = ps.period;
+					head = slot;
+				}
+			}
+			int n_span = (int) (slot - head + 1);
+			ensureCapacity(n_span);
+			span = n_span;
+		}
+		ring[index(slot)] = ps.value;
+	}
+
+	/** Ensure the ring has enough slots for a span.
+	 * @param n_span Number of slots needed. */
+	private void ensureCapacity(int n_span) {
+		if (n_span > ring.length) {
+			int n_slots = ring.length;
+			while (n_slots < n_span)
+				n_slots *= 2;
+			int[] r = newRing(n_slots);
+			for (long s = head; s <= tail(); s++)
+				r[(int) (s % n_slots)] = ring[index(s)];
+			ring = r;
+		}
 	}
 
 	/** Check if a sample exists with the given time stamp (start) */
 	private boolean exists(long stamp) {
-		for (PeriodicSample ps: samples) {
-			if (ps.start() == stamp)
-				return true;
-		}
-		return false;
+		return (span > 0) && getSlot(stamp / periodMillis()) >= 0;
 	}
 
 	/** Interpolate sample data from a sample with a larger period.
@@ -205,17 +302,17 @@ public class PeriodicSampleCache {
 	 * @param ps Periodic sample (with a larger period). */
 	private void interpolate(PeriodicSample ps) {
 		long start = ps.start();
-		int period = getPeriod(ps.period);
-		int n_samples = ps.period / period;
+		int p = getPeriod(ps.period);
+		int n_samples = ps.period / p;
 		assert n_samples > 1;
-		int[] values = getValues(start, ps.end(), n_samples, period);
+		int[] values = getValues(start, n_samples);
 		switch (sample_type.aggregation) {
 		case SUM:
-			addSamples(start, period, interpolateSum(values,
+			addSamples(start, p, interpolateSum(values,
 				ps.value));
 			return;
 		case AVERAGE:
-			addSamples(start, period, interpolateAverage(values,
+			addSamples(start, p, interpolateAverage(values,
 				ps.value));
 			return;
 		default:
@@ -225,29 +322,18 @@ public class PeriodicSampleCache {
 
 	/** Get an array of sample values from the cache.
 	 * @param start Time stamp at start of samples.
-	 * @param end Time stamp at end of samples.
 	 * @param n_samples Number of sample values.
-	 * @param period Period used for samples.
 	 * @return Array of samples values. */
-	private int[] getValues(long start, long end, int n_samples,
-		int period)
-	{
-		int period_ms = period * 1000;
+	private int[] getValues(long start, int n_samples) {
+		long slot = start / periodMillis();
 		int[] values = new int[n_samples];
 		for (int i = 0; i < values.length; i++)
-			values[i] = MISSING_DATA;
-		for (PeriodicSample ps: samples) {
-			long stamp = ps.start();
-			if (stamp >= start && stamp < end) {
-				int i = (int) ((stamp - start) / period_ms);
-				values[i] = ps.value;
-			}
-		}
+			values[i] = getSlot(slot + i);
 		return values;
 	}
 
 	/** Get aggregate of sampled values in a time interval */
-	public int getValue(long start, long end) {
+	public synchronized int getValue(long start, long end) {
 		switch (sample_type.aggregation) {
 		case SUM:
 			return getSum(start, end);
@@ -258,26 +344,38 @@ public class PeriodicSampleCache {
 		}
 	}
 
+	/** Get the first slot number with a start stamp at or after a time.
+	 * @param stamp Time stamp (ms).
+	 * @return Slot number, limited to the first sample. */
+	private long firstSlot(long stamp) {
+		long pms = periodMillis();
+		return Math.max(head, (stamp + pms - 1) / pms);
+	}
+
+	/** Get the last slot number with a start stamp before a time.
+	 * @param stamp Time stamp (ms).
+	 * @return Slot number, limited to the last sample. */
+	private long lastSlot(long stamp) {
+		long pms = periodMillis();
+		return Math.min(tail(), (stamp + pms - 1) / pms - 1);
+	}
+
 	/** Get sum of sampled values in a time interval */
 	private int getSum(long start, long end) {
-		int period = 0;
 		int total = 0;
 		int n_samples = 0;
-		for (PeriodicSample ps: samples) {
-			if (0 == period)
-				period = ps.period;
-			else if (period != ps.period)
-				break;
-			if (ps.value >= 0) {
-				long stamp = ps.start();
-				if (stamp >= start && stamp < end) {
-					total += ps.value;
+		if (span > 0) {
+			long last = lastSlot(end);
+			for (long s = firstSlot(start); s <= last; s++) {
+				int value = ring[index(s)];
+				if (value >= 0) {
+					total += value;
 					n_samples++;
 				}
 			}
 		}
-		long sam_ms = n_samples * period * 1000; // sampled period
-		long full_ms = end - start;              // full period
+		long sam_ms = n_samples * periodMillis(); // sampled period
+		long full_ms = end - start;               // full period
 		if (sam_ms == full_ms)
 			return total;
 		else if (2 * sam_ms >= full_ms) {  // at least half sampled
@@ -291,11 +389,12 @@ public class PeriodicSampleCache {
 	private int getAverage(long start, long end) {
 		int total = 0;
 		int n_samples = 0;
-		for (PeriodicSample ps: samples) {
-			if (ps.value >= 0) {
-				long stamp = ps.start();
-				if (stamp >= start && stamp < end) {
-					total += ps.value;
+		if (span > 0) {
+			long last = lastSlot(end);
+			for (long s = firstSlot(start); s <= last; s++) {
+				int value = ring[index(s)];
+				if (value >= 0) {
+					total += value;
 					n_samples++;
 				}
 			}
@@ -307,34 +406,81 @@ public class PeriodicSampleCache {
 
 	/** Add an array of samples.
 	 * @param start Start time of sample array.
-	 * @param period Sampling period (seconds).
+	 * @param p Sampling period (seconds).
 	 * @param vals Array of sample values to add. */
-	private void addSamples(long start, int period, int[] vals) {
-		int period_ms = period * 1000;
+	private void addSamples(long start, int p, int[] vals) {
+		int period_ms = p * 1000;
 		for (int i = 0; i < vals.length; i++) {
 			if (vals[i] >= 0) {
 				long stamp = start + period_ms * (i + 1);
-				addSample(new PeriodicSample(stamp, period,
+				addSample(new PeriodicSample(stamp, p,
 					vals[i]));
 			}
 		}
 	}
 
-	/** Get a sample iterator. */
-	public Iterator<PeriodicSample> iterator() {
-		return samples.iterator();
+	/** Get a sample iterator.  The iterator is a snapshot of the samples
+	 * in the cache when it was created, in time stamp order. */
+	public synchronized Iterator<PeriodicSample> iterator() {
+		final int p = period;
+		final long first = head;
+		final int[] values = new int[span];
+		for (int i = 0; i < values.length; i++)
+			values[i] = ring[index(first + i)];
+		return new Iterator<PeriodicSample>() {
+			private int cursor = nextSample(0);
+			private int nextSample(int i) {
+				while (i < values.length && values[i] < 0)
+					i++;
+				return i;
+			}
+			public boolean hasNext() {
+				return cursor < values.length;
+			}
+			public PeriodicSample next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				long stamp = (first + cursor + 1) * p * 1000L;
+				PeriodicSample ps = new PeriodicSample(stamp, p,
+					values[cursor]);
+				cursor = nextSample(cursor + 1);
+				return ps;
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/** Get the number of samples in the cache */
+	public synchronized int size() {
+		int n = 0;
+		for (int i = 0; i < span; i++) {
+			if (ring[index(head + i)] >= 0)
+				n++;
+		}
+		return n;
 	}
 
 	/** Purge all samples before a specified time stamp.
 	 * @param before Time stamp to purge before. */
-	public void purge(long before) {
-		Iterator<PeriodicSample> it = iterator();
-		while (it.hasNext()) {
-			PeriodicSample ps = it.next();
-			if (ps.end() < before)
-				it.remove();
-			else
-				break;
+	public synchronized void purge(long before) {
+		if (span > 0) {
+			// Sample end must be before stamp to be purged
+			long pms = periodMillis();
+			purgeSlots((before - 1) / pms);
+		}
+	}
+
+	/** Purge all slots before a slot number.
+	 * @param slot First slot number to keep. */
+	private void purgeSlots(long slot) {
+		while (span > 0 && (head < slot || ring[index(head)] < 0)) {
+			ring[index(head)] = MISSING_DATA;
+			head++;
+			span--;
 		}
+		if (span == 0)
+			clear();
 	}
 }
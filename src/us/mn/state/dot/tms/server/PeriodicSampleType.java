@@ -90,6 +90,18 @@ public enum PeriodicSampleType {
 		}
 	}
 
+	/** Get a sample value from a buffer.
+	 * @param buffer Byte buffer.
+	 * @return Sample value. */
+	public int getValue(ByteBuffer buffer) {
+		if (sample_bytes == 1)
+			return buffer.get();
+		else if (sample_bytes == 2)
+			return buffer.getShort();
+		else
+			return MISSING_DATA;
+	}
+
 	/** Is a periodic sample valid? */
 	public boolean isValid(PeriodicSample ps) {
 		return ps.period > 0 &&
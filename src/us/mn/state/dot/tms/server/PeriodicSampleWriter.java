@@ -35,6 +35,10 @@ import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
  * Each file contains one day of sample data.  For example, a vehicle count file
  * with a 30-second period would have 2880 bytes.
  *
+ * New files are padded with MISSING_DATA for the full day when first opened.
+ * After that, only the byte ranges of cached samples are written, using
+ * positional writes on the file channel.
+ *
  * @author Douglas Lau
  */
 public class PeriodicSampleWriter {
@@ -50,12 +54,19 @@ public class PeriodicSampleWriter {
 		return (int) period.per(Interval.DAY);
 	}
 
+	/** Maximum number of bytes in one sample file */
+	static private final int MAX_FILE_BYTES = samplesPerDay(MIN_PERIOD) *
+		PeriodicSampleType.MAX_BYTES;
+
 	/** Sample archive factory */
 	private final SampleArchiveFactory factory;
 
-	/** Byte buffer for flushing samples to file */
-	private final ByteBuffer buffer = ByteBuffer.allocate(
-		samplesPerDay(MIN_PERIOD) * PeriodicSampleType.MAX_BYTES);
+	/** Byte buffer for writing a run of consecutive samples */
+	private final ByteBuffer buffer = ByteBuffer.allocate(MAX_FILE_BYTES);
+
+	/** Byte buffer filled with MISSING_DATA for padding files.  Every
+	 * sample type stores MISSING_DATA as all bits set. */
+	private final ByteBuffer padding = ByteBuffer.allocate(MAX_FILE_BYTES);
 
 	/** Sample period for current cache */
 	private transient Interval period;
@@ -66,9 +77,14 @@ public class PeriodicSampleWriter {
 	/** Current file channel */
 	private transient FileChannel channel;
 
+	/** File position of current sample run */
+	private transient long run_pos;
+
 	/** Create a new periodic sample writer */
 	public PeriodicSampleWriter(SampleArchiveFactory f) {
 		factory = f;
+		while (padding.hasRemaining())
+			padding.put(MISSING_DATA);
 	}
 
 	/** Flush samples from a cache to files */
@@ -96,88 +112,99 @@ public class PeriodicSampleWriter {
 		PeriodicSampleType s_type) throws IOException
 	{
 		try {
+			PeriodicSample prev = null;
 			while (it.hasNext()) {
 				PeriodicSample ps = it.next();
-				period = new Interval(ps.period);
-				File f = factory.createFile(sensor_id, s_type,
-					ps);
-				if (!f.equals(file)) {
-					file = f;
-					readNextFile(s_type);
+				if (isNewFile(prev, ps)) {
+					period = new Interval(ps.period);
+					File f = factory.createFile(sensor_id,
+						s_type, ps);
+					if (!f.equals(file)) {
+						file = f;
+						openNextFile(s_type);
+					}
 				}
 				putSample(ps, s_type);
+				prev = ps;
 			}
-			writeBuffer(s_type.sample_bytes);
+			writeRun();
 		}
 		finally {
-			if (channel != null)
+			if (channel != null) {
 				channel.close();
+				channel = null;
+			}
 		}
 	}
 
-	/** Read next file (after writing current file buffer). */
-	private void readNextFile(PeriodicSampleType s_type) throws IOException{
-		writeBuffer(s_type.sample_bytes);
-		readBuffer(s_type);
+	/** Check if a sample may belong in a different file than the previous
+	 * sample.  Samples are in time order, so the file can only change
+	 * when the period changes or the local day rolls over. */
+	private boolean isNewFile(PeriodicSample prev, PeriodicSample ps) {
+		return (prev == null)
+		    || (prev.period != ps.period)
+		    || (ps.start() - prev.start() >= Interval.DAY.ms())
+		    || (TimeSteward.secondOfDayInt(ps.start()) <
+		        TimeSteward.secondOfDayInt(prev.start()));
 	}
 
-	/** Read the contents of the given file into the buffer.
-	 * @param s_type Sample type. */
-	private void readBuffer(PeriodicSampleType s_type) throws IOException {
-		int n_size = bufferBytes(s_type.sample_bytes);
+	/** Open next file (after writing current sample run). */
+	private void openNextFile(PeriodicSampleType s_type) throws IOException{
+		writeRun();
+		if (channel != null)
+			channel.close();
 		channel = new RandomAccessFile(file, "rw").getChannel();
-		buffer.clear();
-		readBuffer();
-		// Buffer should contain no more than one day of samples
-		if (buffer.position() > n_size)
-			buffer.position(n_size);
-		padBuffer(s_type);
-		buffer.flip();
+		resizeFile(s_type.sample_bytes);
 	}
 
-	/** Get the number of bytes in buffer for one day.
+	/** Get the number of bytes in file for one day.
 	 * @param s_bytes Bytes per sample.
-	 * @return Size of buffer in bytes. */
-	private int bufferBytes(int s_bytes) {
+	 * @return Size of file in bytes. */
+	private int fileBytes(int s_bytes) {
 		return samplesPerDay(period) * s_bytes;
 	}
 
-	/** Read all existing sample data from file */
-	private void readBuffer() throws IOException {
-		while (channel.read(buffer) >= 0 && buffer.hasRemaining());
+	/** Resize the current file to contain exactly one day of samples.
+	 * A file which is too short is padded with MISSING_DATA; a file which
+	 * is too long is truncated.
+	 * @param s_bytes Bytes per sample. */
+	private void resizeFile(int s_bytes) throws IOException {
+		int n_size = fileBytes(s_bytes);
+		long size = channel.size();
+		if (size < n_size) {
+			long pos = size / s_bytes * s_bytes;
+			padding.limit((int) (n_size - pos));
+			padding.position(0);
+			while (padding.hasRemaining())
+				pos += channel.write(padding, pos);
+		} else if (size > n_size)
+			channel.truncate(n_size);
 	}
 
-	/** Pad the buffer with MISSING_DATA for full day.
-	 * @param s_type Sample type. */
-	private void padBuffer(PeriodicSampleType s_type) {
-		int n_size = bufferBytes(s_type.sample_bytes);
-		int n_sam = (n_size - buffer.position()) / s_type.sample_bytes;
-		for (int i = 0; i < n_sam; i++)
-			s_type.putValue(buffer, MISSING_DATA);
-	}
-
-	/** Write the buffer to the file channel and close the file. */
-	private void writeBuffer(int s_bytes) throws IOException {
-		if (channel != null) {
-			int n_size = bufferBytes(s_bytes);
-			channel.position(0);
-			buffer.position(0);
-			// Write sample data buffer to file
+	/** Write the current run of samples to the file channel. */
+	private void writeRun() throws IOException {
+		if (channel != null && buffer.position() > 0) {
+			buffer.flip();
+			long pos = run_pos;
 			while (buffer.hasRemaining())
-				channel.write(buffer);
-			// Truncate file if it's larger than buffer
-			if (channel.size() > n_size)
-				channel.truncate(n_size);
-			channel.close();
-			channel = null;
+				pos += channel.write(buffer, pos);
 		}
+		buffer.clear();
 	}
 
-	/** Put one sample into the buffer.
+	/** Put one sample into the run buffer.  If the sample does not
+	 * directly follow the current run, the run is written first.
 	 * @param ps Periodic sample. */
-	private void putSample(PeriodicSample ps, PeriodicSampleType s_type) {
-		buffer.position(samplePosition(ps, s_type.sample_bytes));
-		s_type.putValue(buffer, ps.value);
+	private void putSample(PeriodicSample ps, PeriodicSampleType s_type)
+		throws IOException
+	{
+		int pos = samplePosition(ps, s_type.sample_bytes);
+		if (pos != run_pos + buffer.position()) {
+			writeRun();
+			run_pos = pos;
+		}
+		if (pos + s_type.sample_bytes <= fileBytes(s_type.sample_bytes))
+			s_type.putValue(buffer, ps.value);
 	}
 
 	/** Compute the position of a sample in the file.
@@ -0,0 +1,422 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Properties;
+import us.mn.state.dot.sonar.SonarException;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.CommProtocol;
+import us.mn.state.dot.tms.CtrlCondition;
+import us.mn.state.dot.tms.LaneType;
+import us.mn.state.dot.tms.SystemAttrEnum;
+import us.mn.state.dot.tms.TMSException;
+import us.mn.state.dot.tms.server.comm.CommThread;
+import us.mn.state.dot.tms.server.comm.sim.DeviceSim;
+import us.mn.state.dot.tms.server.comm.sim.DxmSim;
+import us.mn.state.dot.tms.server.comm.sim.Mndot170Sim;
+import us.mn.state.dot.tms.server.comm.sim.SampleGenerator;
+import us.mn.state.dot.tms.server.comm.sim.SimConditions;
+import us.mn.state.dot.tms.server.comm.sim.SimServer;
+import us.mn.state.dot.tms.server.comm.sim.SnmpSim;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Integer;
+import us.mn.state.dot.tms.server.comm.ntcip.mib1202.MIB1202;
+import static us.mn.state.dot.tms.server.comm.ntcip.mib1202.MIB1202.*;
+import us.mn.state.dot.tms.server.event.BaseEvent;
+import us.mn.state.dot.tms.utils.I18N;
+
+/**
+ * Poller farm runs the real comm link pollers against simulated devices on
+ * the loopback interface, with no database.  It is a benchmark for polling
+ * many controllers: operation throughput, missed samples, CPU time and
+ * thread count are written to stdout when it finishes.
+ *
+ * Usage: PollerFarm [-p mndot5|dxm|ntcip] [-n controllers] [-d drops]
+ *        [-e detectors] [-s seconds] [-i period] [-l latency_ms]
+ *        [-j jitter_ms] [-x loss_pct] [-t timeout_ms] [-k stack_kb]
+ *
+ * @author Douglas Lau
+ */
+public class PollerFarm {
+
+	/** Mean flow of simulated detectors (vehicles per hour) */
+	static private final int FLOW_VPH = 1200;
+
+	/** Random seed for simulators */
+	static private final long SEED = 42;
+
+	/** Maximum detectors for each simulated protocol */
+	static private final int MAX_DETECTORS = 24;
+
+	/** Simulated protocols, with first detector pin */
+	private enum Protocol {
+		mndot5(CommProtocol.MNDOT_5, "tcp", 39),
+		dxm(CommProtocol.BANNER_DXM, "tcp", 1),
+		ntcip(CommProtocol.NTCIP_A, "udp", 1);
+
+		private final CommProtocol protocol;
+		private final String scheme;
+		private final int first_pin;
+		private Protocol(CommProtocol cp, String s, int fp) {
+			protocol = cp;
+			scheme = s;
+			first_pin = fp;
+		}
+	}
+
+	/** Print program usage */
+	static private void printUsage() {
+		System.err.println("Usage: PollerFarm [-p mndot5|dxm|ntcip] " +
+			"[-n controllers] [-d drops]");
+		System.err.println("       [-e detectors] [-s seconds] " +
+			"[-i period] [-l latency_ms]");
+		System.err.println("       [-j jitter_ms] [-x loss_pct] " +
+			"[-t timeout_ms] [-k stack_kb]");
+		System.err.println("  -p  protocol (default mndot5)");
+		System.err.println("  -n  number of controllers (1000)");
+		System.err.println("  -d  drops per comm link (1)");
+		System.err.println("  -e  detectors per controller (8)");
+		System.err.println("  -s  duration of run (120)");
+		System.err.println("  -i  poll period (30)");
+		System.err.println("  -l  simulated network latency (0)");
+		System.err.println("  -j  simulated network jitter (0)");
+		System.err.println("  -x  simulated packet loss (0)");
+		System.err.println("  -t  comm link timeout (750)");
+		System.err.println("  -k  comm thread stack size (default)");
+	}
+
+	/** Poller farm entry point */
+	static public void main(String[] args) {
+		try {
+			PollerFarm pf = new PollerFarm(args);
+			pf.run();
+			System.exit(0);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(1);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/** Parse an integer option value */
+	static private int parseInt(String o, String v, int min, int max) {
+		try {
+			int i = Integer.parseInt(v);
+			if (i >= min && i <= max)
+				return i;
+		}
+		catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IllegalArgumentException("Invalid value: " + o + " "
+			+ v);
+	}
+
+	/** Simulated protocol */
+	private Protocol protocol = Protocol.mndot5;
+
+	/** Number of controllers */
+	private int n_controllers = 1000;
+
+	/** Drops per comm link */
+	private int n_drops = 1;
+
+	/** Detectors per controller */
+	private int n_detectors = 8;
+
+	/** Duration of run (seconds) */
+	private int duration = 120;
+
+	/** Poll period (seconds) */
+	private int period = 30;
+
+	/** Simulated latency (ms) */
+	private int latency = 0;
+
+	/** Simulated jitter (ms) */
+	private int jitter = 0;
+
+	/** Simulated packet loss (percent) */
+	private int loss = 0;
+
+	/** Comm link timeout (ms) */
+	private int timeout = 750;
+
+	/** Comm thread stack size (KiB) */
+	private int stack_kb = 0;
+
+	/** Simulator server */
+	private SimServer server;
+
+	/** All controllers */
+	private final ArrayList<ControllerImpl> controllers =
+		new ArrayList<ControllerImpl>();
+
+	/** All detectors */
+	private final ArrayList<DetectorImpl> detectors =
+		new ArrayList<DetectorImpl>();
+
+	/** Create a new poller farm */
+	private PollerFarm(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing " +
+					"value: " + args[i]);
+			String o = args[i];
+			String v = args[++i];
+			if (o.equals("-p"))
+				protocol = lookupProtocol(v);
+			else if (o.equals("-n"))
+				n_controllers = parseInt(o, v, 1, 100000);
+			else if (o.equals("-d"))
+				n_drops = parseInt(o, v, 1, 15);
+			else if (o.equals("-e")) {
+				n_detectors = parseInt(o, v, 1,
+					MAX_DETECTORS);
+			} else if (o.equals("-s"))
+				duration = parseInt(o, v, 1, 86400);
+			else if (o.equals("-i"))
+				period = parseInt(o, v, 5, 300);
+			else if (o.equals("-l"))
+				latency = parseInt(o, v, 0, 60000);
+			else if (o.equals("-j"))
+				jitter = parseInt(o, v, 0, 60000);
+			else if (o.equals("-x"))
+				loss = parseInt(o, v, 0, 100);
+			else if (o.equals("-t"))
+				timeout = parseInt(o, v, 0, 60000);
+			else if (o.equals("-k"))
+				stack_kb = parseInt(o, v, 0, 65536);
+			else
+				throw new IllegalArgumentException("Unknown " +
+					"option: " + o);
+		}
+	}
+
+	/** Lookup a simulated protocol */
+	static private Protocol lookupProtocol(String v) {
+		for (Protocol p: Protocol.values()) {
+			if (p.name().equals(v))
+				return p;
+		}
+		throw new IllegalArgumentException("Invalid protocol: " + v);
+	}
+
+	/** Run the poller farm */
+	private void run() throws Exception {
+		I18N.initialize(new Properties());
+		initNamespace();
+		CommThread.setStackSizeKb(stack_kb);
+		server = new SimServer();
+		server.start();
+		try {
+			long st = System.nanoTime();
+			createLinks();
+			long setup_ms = (System.nanoTime() - st) / 1000000;
+			ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+			tmx.resetPeakThreadCount();
+			long cpu = totalCpuNanos(tmx);
+			long start = System.currentTimeMillis();
+			long samples = countSamples();
+			Thread.sleep(duration * 1000L);
+			cpu = totalCpuNanos(tmx) - cpu;
+			long expected = expectedSamples(start);
+			samples = countSamples() - samples;
+			printSummary(tmx, setup_ms, cpu, samples, expected);
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	/** Initialize the namespace, with no database */
+	private void initNamespace() throws SonarException {
+		ServerNamespace ns = new ServerNamespace();
+		BaseHelper.namespace = ns;
+		BaseObjectImpl.namespace = ns;
+		ServerIndexes.addIndexes(ns);
+		NullStore store = new NullStore();
+		BaseObjectImpl.store = store;
+		BaseEvent.store = store;
+		for (SystemAttrEnum sa: SystemAttrEnum.values()) {
+			ns.addObject(new SystemAttributeImpl(sa.aname(),
+				sa.getDefault()));
+		}
+	}
+
+	/** Create comm links, with a simulated device for each */
+	private void createLinks() throws IOException, SonarException,
+		TMSException
+	{
+		SampleGenerator gen = new SampleGenerator(FLOW_VPH, SEED);
+		SimConditions cond = new SimConditions(latency, jitter,
+			loss / 100f, SEED);
+		int n_links = (n_controllers + n_drops - 1) / n_drops;
+		for (int i = 0; i < n_links; i++) {
+			DeviceSim sim = createSim(gen);
+			InetSocketAddress a = ("udp".equals(protocol.scheme))
+				? server.addUdp(sim, cond)
+				: server.addTcp(sim, cond);
+			String uri = protocol.scheme + "://" +
+				a.getAddress().getHostAddress() + ":" +
+				a.getPort();
+			short cp = (short) protocol.protocol.ordinal();
+			CommLinkImpl cl = new CommLinkImpl("LNK_" + i, "",
+				false, uri, cp, true, period, timeout);
+			BaseObjectImpl.namespace.addObject(cl);
+			for (int d = 1; d <= n_drops; d++) {
+				if (controllers.size() < n_controllers)
+					createController(cl, d);
+			}
+		}
+	}
+
+	/** Create a device simulator for one comm link */
+	private DeviceSim createSim(SampleGenerator gen) {
+		switch (protocol) {
+		case dxm:
+			return new DxmSim(gen);
+		case ntcip:
+			SnmpSim s = new SnmpSim(gen);
+			s.putValue(intValue(maxVehicleDetectors, n_detectors));
+			s.putValue(intValue(volumeOccupancySequence, 0));
+			s.putValue(intValue(volumeOccupancyPeriod, period));
+			s.putValue(intValue(activeVolumeOccupancyDetectors,
+				n_detectors));
+			s.putVolumeColumn(detectorVolume.makeInt(1));
+			s.putOccupancyColumn(detectorOccupancy.makeInt(1));
+			return s;
+		default:
+			return new Mndot170Sim(true, gen);
+		}
+	}
+
+	/** Make an integer value for a MIB node */
+	static private ASN1Integer intValue(MIB1202 node, int v) {
+		ASN1Integer i = node.makeInt();
+		i.setInteger(v);
+		return i;
+	}
+
+	/** Create a controller with detectors */
+	private void createController(CommLinkImpl cl, int drop)
+		throws SonarException, TMSException
+	{
+		String n = "CTL_" + controllers.size();
+		ControllerImpl c = new ControllerImpl(n, null, cl, (short) drop,
+			CtrlCondition.ACTIVE.ordinal(), null, "", null, "");
+		BaseObjectImpl.namespace.addObject(c);
+		controllers.add(c);
+		for (int i = 1; i <= n_detectors; i++) {
+			int pin = protocol.first_pin + i - 1;
+			DetectorImpl det = new DetectorImpl(n + "_" + i, c,
+				pin, null, (short) LaneType.MAINLINE.ordinal(),
+				(short) i, false, false, false,
+				DetectorImpl.DEFAULT_FIELD_FT, null, "");
+			BaseObjectImpl.namespace.addObject(det);
+			det.initTransients();
+			detectors.add(det);
+		}
+	}
+
+	/** Calculate the number of samples expected since a start time.
+	 * Only polls which started at least one timeout before now are
+	 * counted. */
+	private long expectedSamples(long start) {
+		long end = System.currentTimeMillis() - timeout;
+		long per = period * 1000L;
+		long n = 0;
+		for (ControllerImpl c: controllers) {
+			CommLinkImpl cl = (CommLinkImpl) c.getCommLink();
+			long first = start - start % per + cl.getPollOffsetMs();
+			if (first < start)
+				first += per;
+			if (end > first)
+				n += ((end - first - 1) / per + 1) * n_detectors;
+		}
+		return n;
+	}
+
+	/** Count the scan samples of all detectors */
+	private long countSamples() {
+		long n = 0;
+		for (DetectorImpl det: detectors)
+			n += det.getScanSampleCount();
+		return n;
+	}
+
+	/** Get the total CPU time of all live threads (ns) */
+	static private long totalCpuNanos(ThreadMXBean tmx) {
+		long t = 0;
+		for (long id: tmx.getAllThreadIds()) {
+			long c = tmx.getThreadCpuTime(id);
+			if (c > 0)
+				t += c;
+		}
+		return t;
+	}
+
+	/** Print a summary of the run */
+	private void printSummary(ThreadMXBean tmx, long setup_ms, long cpu,
+		long samples, long expected)
+	{
+		long success = 0;
+		long failed = 0;
+		for (ControllerImpl c: controllers) {
+			success += c.getSuccessOps();
+			failed += c.getFailedOps();
+		}
+		long missed = Math.max(0, expected - samples);
+		System.out.println("protocol: " + protocol);
+		System.out.println("controllers: " + controllers.size());
+		System.out.println("detectors: " + detectors.size());
+		System.out.println("setup: " + setup_ms + " ms");
+		System.out.println("ops: " + success + " ok, " + failed +
+			" failed");
+		System.out.println("ops/sec: " + format((success + failed) /
+			(float) duration));
+		System.out.println("samples: " + samples + " of " + expected +
+			", missed " + format(percent(missed, expected)) + "%");
+		System.out.println("cpu: " + cpu / 1000000 + " ms (" +
+			format(percent(cpu / 1000000, duration * 1000L)) +
+			"% of one core)");
+		System.out.println("threads: " + tmx.getThreadCount() +
+			" (peak " + tmx.getPeakThreadCount() + ")");
+		System.out.println("sim: " + server.getRequests() +
+			" requests, " + server.getResponses() +
+			" responses, " + server.getLost() + " lost, " +
+			server.getErrors() + " errors");
+	}
+
+	/** Calculate a percentage */
+	static private float percent(long n, long d) {
+		return (d > 0) ? 100f * n / d : 0;
+	}
+
+	/** Format a number with one decimal place */
+	static private String format(float v) {
+		return String.format("%.1f", v);
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2016  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -20,7 +20,9 @@ import java.io.FileWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.text.NumberFormat;
+import java.util.Map;
 import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.PoolScheduler;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.sonar.Connection;
 import us.mn.state.dot.sonar.Namespace;
@@ -93,6 +95,17 @@ public class Profiler {
 			debugThreads(groups[i], deep + 2);
 	}
 
+	/** Debug the lateness of jobs on a pool scheduler */
+	public void debugLateness(PoolScheduler ps) {
+		if (PROFILE_LOG.isOpen()) {
+			Map<String, Long> late = ps.getLateness();
+			for (Map.Entry<String, Long> e: late.entrySet()) {
+				PROFILE_LOG.log(e.getKey() + " late: " +
+					e.getValue() + " ms");
+			}
+		}
+	}
+
 	/** Debug one thread group */
 	private void debugThreadGroup(ThreadGroup group, int deep) {
 		Thread[] thread = new Thread[group.activeCount() + 1];
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,6 +17,7 @@ package us.mn.state.dot.tms.server;
 import java.io.IOException;
 import java.util.Calendar;
 import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.PoolScheduler;
 import us.mn.state.dot.tms.SystemAttrEnum;
 
 /**
@@ -32,15 +33,21 @@ public class ProfilingJob extends Job {
 	/** Profiler instance */
 	protected final Profiler profiler = new Profiler();
 
-	/** Create a new profiling job */
-	public ProfilingJob() {
+	/** Pool scheduler to report job lateness */
+	private final PoolScheduler pool;
+
+	/** Create a new profiling job.
+	 * @param ps Pool scheduler to report job lateness. */
+	public ProfilingJob(PoolScheduler ps) {
 		super(Calendar.MINUTE, 1, Calendar.SECOND, OFFSET_SECS);
+		pool = ps;
 	}
 
 	/** Perform the profiling job */
 	public void perform() throws IOException {
 		profiler.debugMemory();
 		profiler.debugThreads();
+		profiler.debugLateness(pool);
 		if(SystemAttrEnum.UPTIME_LOG_ENABLE.getBoolean())
 			profiler.appendUptimeLog();
 	}
@@ -179,6 +179,7 @@ public class R_NodeImpl extends BaseObjectImpl implements R_Node {
 	public void doDestroy() throws TMSException {
 		updateStation(station, null);
 		super.doDestroy();
+		corridors.clearRoutes();
 	}
 
 	/** Node location */
@@ -223,6 +224,7 @@ public class R_NodeImpl extends BaseObjectImpl implements R_Node {
 			return;
 		store.update(this, "node_type", t);
 		setNodeType(t);
+		corridors.clearRoutes();
 	}
 
 	/** Check if the r_node is an exit */
@@ -294,6 +296,7 @@ public class R_NodeImpl extends BaseObjectImpl implements R_Node {
 			return;
 		store.update(this, "transition", t);
 		setTransition(t);
+		corridors.clearRoutes();
 	}
 
 	/** Get the transition type */
@@ -407,6 +410,7 @@ public class R_NodeImpl extends BaseObjectImpl implements R_Node {
 		if (a != active) {
 			store.update(this, "active", a);
 			setActive(a);
+			corridors.clearRoutes();
 		}
 	}
 
@@ -173,7 +173,7 @@ public class RampMeterImpl extends DeviceImpl implements RampMeter {
 	}
 
 	/** Create a ramp meter */
-	private RampMeterImpl(String n, GeoLocImpl loc, ControllerImpl c,
+	RampMeterImpl(String n, GeoLocImpl loc, ControllerImpl c,
 		int p, String nt, int t, int st, int w, int alg, int at, int pt,
 		Beacon b, CameraPreset cp, Integer lk)
 	{
@@ -683,6 +683,14 @@ public class RampMeterImpl extends DeviceImpl implements RampMeter {
 		setRatePlanned(null);
 	}
 
+	/** Update the planned rate without a meter poller, as if the meter
+	 * had accepted the rate.  This is used when replaying samples. */
+	void updateRateReplay() {
+		Integer r = isLocked() ? rate : validateRate(ratePlanned);
+		setRatePlanned(null);
+		setRateNotify(r);
+	}
+
 	/** Set the release rate (vehicles per hour) */
 	@Override
 	public void setRateNext(Integer r) {
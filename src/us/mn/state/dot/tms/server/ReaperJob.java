@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2018  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -19,8 +19,6 @@ import java.util.Calendar;
 import java.util.Iterator;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
-import us.mn.state.dot.tms.DMS;
-import us.mn.state.dot.tms.DMSHelper;
 import us.mn.state.dot.tms.Incident;
 import us.mn.state.dot.tms.IncidentHelper;
 import us.mn.state.dot.tms.SignMessage;
@@ -43,16 +41,12 @@ public class ReaperJob extends Job {
 	/** Seconds to offset each poll from start of interval */
 	static private final int OFFSET_SECS = 27;
 
-	/** List of zombie sign messages */
-	private final ArrayList<SignMessageImpl> zombie_msgs;
-
 	/** List of zombie incidents */
 	private final ArrayList<IncidentImpl> zombie_incs;
 
 	/** Create a new job to reap dead stuff */
 	public ReaperJob() {
 		super(Calendar.MINUTE, 1, Calendar.SECOND, OFFSET_SECS);
-		zombie_msgs = new ArrayList<SignMessageImpl>();
 		zombie_incs = new ArrayList<IncidentImpl>();
 	}
 
@@ -67,18 +61,12 @@ public class ReaperJob extends Job {
 	/** Reap sign messages which have been unused for awhile */
 	private void reapSignMessages() {
 		// NOTE: there is a small race where a client could send a
-		// message to a DMS just after isReferenced is called.  It can
-		// only happen during a very short window about one minute
+		// message to a DMS just after isUnreferenced is called.  It
+		// can only happen during a very short window about one minute
 		// after the message loses its last reference.  Is it worth
 		// making a fix for this unlikely scenario?
-		if (zombie_msgs.isEmpty()) {
-			findReapableMessages();
-			removeReferencedMessages();
-		} else {
-			for (SignMessageImpl sm: zombie_msgs)
-				reapMessage(sm);
-			zombie_msgs.clear();
-		}
+		for (SignMessageImpl sm: SignMessageImpl.pollReapable())
+			reapMessage(sm);
 	}
 
 	/** Reap one sign message */
@@ -88,46 +76,12 @@ public class ReaperJob extends Job {
 		// This is needed because objects are removed
 		// asynchronously from the namespace.
 		SignMessage m = SignMessageHelper.lookup(sm.getName());
-		if ((m == sm) && !isReferenced(m)) {
+		if ((m == sm) && sm.isUnreferenced()) {
 			sm.notifyRemove();
 			sm.logMsg("removed (reaper)");
 		}
 	}
 
-	/** Find all reapable sign messages */
-	private void findReapableMessages() {
-		Iterator<SignMessage> it = SignMessageHelper.iterator();
-		while (it.hasNext()) {
-			SignMessage sm = it.next();
-			if (sm instanceof SignMessageImpl)
-				zombie_msgs.add((SignMessageImpl) sm);
-		}
-	}
-
-	/** Remove referenced sign messages */
-	private void removeReferencedMessages() {
-		Iterator<SignMessageImpl> it = zombie_msgs.iterator();
-		while (it.hasNext()) {
-			SignMessage sm = it.next();
-			if (isReferenced(sm))
-				it.remove();
-		}
-	}
-
-	/** Check if a sign message is referenced by any DMS */
-	private boolean isReferenced(SignMessage sm) {
-		Iterator<DMS> it = DMSHelper.iterator();
-		while (it.hasNext()) {
-			DMS dms = it.next();
-			if (dms instanceof DMSImpl) {
-				DMSImpl dmsi = (DMSImpl) dms;
-				if (dmsi.hasReference(sm))
-					return true;
-			}
-		}
-		return false;
-	}
-
 	/** Reap incidents which have been cleared for awhile */
 	private void reapIncidents() {
 		if (zombie_incs.isEmpty())
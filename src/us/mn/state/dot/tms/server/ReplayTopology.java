@@ -0,0 +1,356 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import us.mn.state.dot.sonar.SonarException;
+import us.mn.state.dot.tms.CtrlCondition;
+import us.mn.state.dot.tms.Direction;
+import us.mn.state.dot.tms.LaneType;
+import us.mn.state.dot.tms.MeterAlgorithm;
+import us.mn.state.dot.tms.R_NodeTransition;
+import us.mn.state.dot.tms.R_NodeType;
+import us.mn.state.dot.tms.RampMeterType;
+import us.mn.state.dot.tms.TMSException;
+
+/**
+ * Replay topology creates roads, r_nodes, detectors and ramp meters from a
+ * configuration XML file written by TmsConfigXmlWriter, without a database.
+ * All detectors and meters are put on ACTIVE controllers of one comm link,
+ * which has no device poller.  Every meter uses the K adaptive algorithm.
+ *
+ * @author Douglas Lau
+ */
+public class ReplayTopology extends DefaultHandler {
+
+	/** Name of comm link for all controllers */
+	static private final String LINK_NAME = "replay";
+
+	/** Name of controller for devices with none specified */
+	static private final String CTRL_NAME = "replay";
+
+	/** Parse an integer attribute */
+	static private int parseInt(String v, int d) {
+		try {
+			if (v != null)
+				return Integer.parseInt(v);
+		}
+		catch (NumberFormatException e) {
+			// Invalid value
+		}
+		return d;
+	}
+
+	/** Parse a float attribute */
+	static private float parseFloat(String v, float d) {
+		try {
+			if (v != null)
+				return Float.parseFloat(v);
+		}
+		catch (NumberFormatException e) {
+			// Invalid value
+		}
+		return d;
+	}
+
+	/** Parse a double attribute */
+	static private Double parseDouble(String v) {
+		try {
+			if (v != null)
+				return Double.parseDouble(v);
+		}
+		catch (NumberFormatException e) {
+			// Invalid value
+		}
+		return null;
+	}
+
+	/** Parse a flag attribute */
+	static private boolean parseFlag(String v, boolean d) {
+		return (v != null) ? "t".equals(v) : d;
+	}
+
+	/** Lookup an r_node type by description */
+	static private R_NodeType lookupNodeType(String d) {
+		for (R_NodeType nt: R_NodeType.values()) {
+			if (nt.description.equals(d))
+				return nt;
+		}
+		return R_NodeType.STATION;
+	}
+
+	/** Lookup an r_node transition by description */
+	static private R_NodeTransition lookupTransition(String d) {
+		for (R_NodeTransition t: R_NodeTransition.values()) {
+			if (t.description.equals(d))
+				return t;
+		}
+		return R_NodeTransition.NONE;
+	}
+
+	/** Lookup a lane type by suffix */
+	static private LaneType lookupLaneType(String s) {
+		if (s != null) {
+			for (LaneType lt: LaneType.values()) {
+				if (lt != LaneType.NONE && lt.suffix.equals(s))
+					return lt;
+			}
+		}
+		return LaneType.MAINLINE;
+	}
+
+	/** Lookup a direction by abbreviation */
+	static private Direction lookupDirection(String a) {
+		for (Direction d: Direction.values()) {
+			if (d.abbrev.equals(a))
+				return d;
+		}
+		return Direction.UNKNOWN;
+	}
+
+	/** Ramp meter element, which is created after corridors */
+	static private class MeterElement {
+		private final String name;
+		private final GeoLocImpl loc;
+		private final int storage;
+		private final int max_wait;
+		private MeterElement(String n, GeoLocImpl l, int st, int w) {
+			name = n;
+			loc = l;
+			storage = st;
+			max_wait = w;
+		}
+	}
+
+	/** Comm link for all controllers */
+	private final CommLinkImpl comm_link;
+
+	/** Mapping of controller names to controllers */
+	private final HashMap<String, ControllerImpl> controllers =
+		new HashMap<String, ControllerImpl>();
+
+	/** Next controller pin to assign */
+	private int next_pin = 1;
+
+	/** Mapping of road names to roads */
+	private final HashMap<String, RoadImpl> roads =
+		new HashMap<String, RoadImpl>();
+
+	/** All detectors */
+	private final ArrayList<DetectorImpl> detectors =
+		new ArrayList<DetectorImpl>();
+
+	/** Ramp meter elements */
+	private final ArrayList<MeterElement> meter_elems =
+		new ArrayList<MeterElement>();
+
+	/** All ramp meters */
+	private final ArrayList<RampMeterImpl> meters =
+		new ArrayList<RampMeterImpl>();
+
+	/** Roadway of current corridor */
+	private RoadImpl roadway;
+
+	/** Direction of current corridor */
+	private Direction road_dir;
+
+	/** Current r_node */
+	private R_NodeImpl r_node;
+
+	/** Create a new replay topology */
+	public ReplayTopology() throws SonarException {
+		comm_link = new CommLinkImpl(LINK_NAME);
+		comm_link.setPollEnabled(true);
+		BaseObjectImpl.namespace.addObject(comm_link);
+	}
+
+	/** Read a configuration XML file.  Corridors are created after all
+	 * r_nodes are read, followed by ramp meters. */
+	public void read(File f) throws IOException, SAXException,
+		ParserConfigurationException, SonarException, TMSException
+	{
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.newSAXParser().parse(f, this);
+		BaseObjectImpl.corridors.createCorridors();
+		for (MeterElement me: meter_elems)
+			createMeter(me);
+	}
+
+	/** Get all detectors */
+	public List<DetectorImpl> getDetectors() {
+		return detectors;
+	}
+
+	/** Get all ramp meters */
+	public List<RampMeterImpl> getMeters() {
+		return meters;
+	}
+
+	/** Get all controllers */
+	public List<ControllerImpl> getControllers() {
+		return new ArrayList<ControllerImpl>(controllers.values());
+	}
+
+	/** Handle the start of an element */
+	@Override
+	public void startElement(String uri, String localName, String qname,
+		Attributes attrs) throws SAXException
+	{
+		try {
+			if (qname.equals("corridor"))
+				handleCorridor(attrs);
+			else if (qname.equals("r_node"))
+				handleR_Node(attrs);
+			else if (qname.equals("detector"))
+				handleDetector(attrs);
+			else if (qname.equals("meter"))
+				handleMeter(attrs);
+		}
+		catch (SonarException e) {
+			throw new SAXException(e);
+		}
+		catch (TMSException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	/** Handle the end of an element */
+	@Override
+	public void endElement(String uri, String localName, String qname) {
+		if (qname.equals("corridor"))
+			roadway = null;
+		else if (qname.equals("r_node"))
+			r_node = null;
+	}
+
+	/** Handle a corridor element */
+	private void handleCorridor(Attributes attrs) throws SonarException {
+		roadway = lookupRoad(attrs.getValue("route"));
+		road_dir = lookupDirection(attrs.getValue("dir"));
+	}
+
+	/** Lookup a road, or create it if it does not exist */
+	private RoadImpl lookupRoad(String n) throws SonarException {
+		RoadImpl r = roads.get(n);
+		if (null == r) {
+			r = new RoadImpl(n, n, (short) 0, (short) 0, (short) 0);
+			BaseObjectImpl.namespace.addObject(r);
+			roads.put(n, r);
+		}
+		return r;
+	}
+
+	/** Handle an r_node element.  The r_node name is used as a cross
+	 * street, so that each r_node location matches only its own
+	 * ramp meter. */
+	private void handleR_Node(Attributes attrs) throws SonarException {
+		if (null == roadway)
+			return;
+		String n = attrs.getValue("name");
+		GeoLocImpl loc = new GeoLocImpl(n, null, roadway,
+			(short) road_dir.ordinal(), lookupRoad(n), (short) 0,
+			(short) 0, parseDouble(attrs.getValue("lat")),
+			parseDouble(attrs.getValue("lon")), null);
+		BaseObjectImpl.namespace.addObject(loc);
+		r_node = new R_NodeImpl(n, loc,
+			lookupNodeType(attrs.getValue("n_type")).ordinal(),
+			parseFlag(attrs.getValue("pickable"), false),
+			parseFlag(attrs.getValue("above"), false),
+			lookupTransition(attrs.getValue("transition")).ordinal(),
+			parseInt(attrs.getValue("lanes"), 0),
+			"left".equals(attrs.getValue("attach_side")),
+			parseInt(attrs.getValue("shift"), 0),
+			parseFlag(attrs.getValue("active"), true),
+			parseFlag(attrs.getValue("abandoned"), false),
+			attrs.getValue("station_id"),
+			parseInt(attrs.getValue("s_limit"),
+			         R_NodeImpl.getDefaultSpeedLimit()),
+			"");
+		BaseObjectImpl.namespace.addObject(r_node);
+	}
+
+	/** Handle a detector element */
+	private void handleDetector(Attributes attrs)
+		throws SonarException, TMSException
+	{
+		if (null == r_node)
+			return;
+		String c = attrs.getValue("controller");
+		DetectorImpl det = new DetectorImpl(attrs.getValue("name"),
+			lookupController((c != null) ? c : CTRL_NAME),
+			next_pin++, r_node,
+			(short) lookupLaneType(attrs.getValue("category"))
+				.ordinal(),
+			(short) parseInt(attrs.getValue("lane"), 0),
+			parseFlag(attrs.getValue("abandoned"), false),
+			false, false,
+			parseFloat(attrs.getValue("field"),
+			           DetectorImpl.DEFAULT_FIELD_FT),
+			null, "");
+		BaseObjectImpl.namespace.addObject(det);
+		det.initTransients();
+		detectors.add(det);
+	}
+
+	/** Lookup a controller, or create it if it does not exist */
+	private ControllerImpl lookupController(String n)
+		throws SonarException, TMSException
+	{
+		ControllerImpl c = controllers.get(n);
+		if (null == c) {
+			short drop = (short) (controllers.size() + 1);
+			c = new ControllerImpl(n, null, comm_link, drop,
+				CtrlCondition.ACTIVE.ordinal(), null, "", null,
+				"");
+			BaseObjectImpl.namespace.addObject(c);
+			controllers.put(n, c);
+		}
+		return c;
+	}
+
+	/** Handle a ramp meter element.  The meter shares the location of
+	 * its entrance r_node. */
+	private void handleMeter(Attributes attrs) {
+		if (null == r_node)
+			return;
+		meter_elems.add(new MeterElement(attrs.getValue("name"),
+			(GeoLocImpl) r_node.getGeoLoc(),
+			parseInt(attrs.getValue("storage"), 0),
+			parseInt(attrs.getValue("max_wait"),
+			         RampMeterImpl.DEFAULT_MAX_WAIT)));
+	}
+
+	/** Create a ramp meter */
+	private void createMeter(MeterElement me)
+		throws SonarException, TMSException
+	{
+		RampMeterImpl meter = new RampMeterImpl(me.name, me.loc,
+			lookupController(CTRL_NAME), next_pin++, "",
+			RampMeterType.SINGLE.ordinal(), me.storage, me.max_wait,
+			MeterAlgorithm.K_ADAPTIVE.ordinal(), 0, 0, null, null,
+			null);
+		BaseObjectImpl.namespace.addObject(meter);
+		meters.add(meter);
+	}
+}
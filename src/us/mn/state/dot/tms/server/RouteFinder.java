@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2007-2018  Minnesota Department of Transportation
+ * Copyright (C) 2007-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,7 +14,9 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
 import us.mn.state.dot.tms.GeoLoc;
 import us.mn.state.dot.tms.GeoLocHelper;
 import us.mn.state.dot.tms.SystemAttrEnum;
@@ -24,20 +26,35 @@ import static us.mn.state.dot.tms.units.Distance.Units.MILES;
 /**
  * A route finder builds a route from an origin to a destination.
  *
+ * Partial routes are searched in order of goodness (lowest first), so the
+ * first completed route found is the best one.  Since every leg adds to the
+ * goodness, this is a Dijkstra search on the graph of corridor exits, where
+ * the state is the origin of the next leg and the number of legs so far.
+ *
  * @author Douglas Lau
  */
 public class RouteFinder {
 
-	/** Determine the best of two routes */
-	static private Route bestRoute(Route r1, Route r2) {
-		if (null == r1)
-			return r2;
-		else if (null == r2)
-			return r1;
-		else {
-			float g1 = r1.getGoodness();
-			float g2 = r2.getGoodness();
-			return (g1 <= g2) ? r1 : r2;
+	/** Partial route being searched */
+	static private class Label implements Comparable<Label> {
+		private final GeoLoc orig;	// origin of next leg
+		private final Route route;	// partial (or complete) route
+		private final boolean complete;
+		private final float goodness;
+		private Label(GeoLoc o, Route r, boolean c) {
+			orig = o;
+			route = r;
+			complete = c;
+			goodness = r.getGoodness();
+		}
+		public int compareTo(Label o) {
+			return Float.compare(goodness, o.goodness);
+		}
+		/** Get the search state.  With the same leg count, the first
+		 * label searched for a state has the shortest distance (and
+		 * the most remaining distance), so later labels are dropped */
+		private String stateKey() {
+			return orig.getName() + "#" + route.legCount();
 		}
 	}
 
@@ -51,10 +68,25 @@ public class RouteFinder {
 	/** Corridor manager */
 	private final CorridorManager corridors;
 
+	/** Route graph */
+	private final RouteGraph graph;
+
+	/** Distances from exits to the route destination */
+	private final HashMap<R_NodeImpl, Distance> exit_dist =
+		new HashMap<R_NodeImpl, Distance>();
+
+	/** Create a new route finder.
+	 * @param c Corridor manager.
+	 * @param g Route graph. */
+	public RouteFinder(CorridorManager c, RouteGraph g) {
+		corridors = c;
+		graph = g;
+	}
+
 	/** Create a new route finder.
 	 * @param c Corridor manager. */
 	public RouteFinder(CorridorManager c) {
-		corridors = c;
+		this(c, new RouteGraph());
 	}
 
 	/** Find the best route from an origin to a destination.
@@ -62,6 +94,7 @@ public class RouteFinder {
 	 * @param dest Route destination.
 	 * @return Best route found, or null. */
 	public Route findRoute(GeoLoc orig, GeoLoc dest) {
+		exit_dist.clear();
 		Route r = findRoute(orig, new Route(dest));
 		return (r != null && r.getDistance().compareTo(dist_max) < 0)
 		      ? r
@@ -73,17 +106,35 @@ public class RouteFinder {
 	 * @param r Partial route.
 	 * @return Completed route, or null if none found. */
 	private Route findRoute(GeoLoc orig, Route r) {
+		PriorityQueue<Label> queue = new PriorityQueue<Label>();
+		HashSet<String> searched = new HashSet<String>();
+		queue.add(new Label(orig, r, false));
+		for (Label lb = queue.poll(); lb != null; lb = queue.poll()) {
+			if (lb.complete)
+				return lb.route;
+			if (searched.add(lb.stateKey()))
+				searchLabel(lb, queue);
+		}
+		return null;
+	}
+
+	/** Search from a partial route.
+	 * @param lb Partial route label.
+	 * @param queue Queue to add extended routes. */
+	private void searchLabel(Label lb, PriorityQueue<Label> queue) {
+		GeoLoc orig = lb.orig;
+		Route r = lb.route;
 		Corridor c = getCorridor(orig, r.getDestination());
 		if (c != null) {
 			Route re = r.createExtended(c, orig, r.getDestination(),
 				false);
-			if (re != null)
-				return re;
+			if (re != null) {
+				queue.add(new Label(null, re, true));
+				return;
+			}
 		}
 		if (r.legCount() < legs_max)
-			return findBranching(orig, r);
-		else
-			return null;
+			findBranching(orig, r, queue);
 	}
 
 	/** Get the corridor.
@@ -96,80 +147,74 @@ public class RouteFinder {
 		return (oc == dc) ? oc : null;
 	}
 
-	/** Find the best branching route to a destination.
+	/** Find branching routes toward a destination.
 	 * @param orig Corridor origin.
 	 * @param r Partial route.
-	 * @return Completed route, or null if none found. */
-	private Route findBranching(GeoLoc orig, Route r) {
+	 * @param queue Queue to add branched routes. */
+	private void findBranching(GeoLoc orig, Route r,
+		PriorityQueue<Label> queue)
+	{
 		Corridor c = corridors.getCorridor(orig);
 		if (null == c)
-			return null;
+			return;
 		Float o_mi = c.calculateMilePoint(orig);
 		if (null == o_mi)
-			return null;
+			return;
 		Distance rd = dist_max.sub(r.getDistance());
-		BranchFinder bf = new BranchFinder(o_mi, r.getDestination(),rd);
-		c.findActiveNode(bf);
-		Route rb = null;
-		for (R_NodeImpl rn: bf.branches)
-			rb = bestRoute(branchRoute(r, c, orig, rn), rb);
-		return rb;
+		for (RouteGraph.Exit ex: graph.getExits(c)) {
+			if (ex.mile > o_mi) {
+				if (isWithinReach(ex, o_mi, r.getDestination(),
+				    rd))
+					branchRoute(r, c, orig, ex.r_node, queue);
+				if (ex.common)
+					return;
+			}
+		}
 	}
 
-	/** Find a complete branched route.
+	/** Check if the route destination may be reached from an exit.
+	 * @param ex Corridor exit.
+	 * @param o_mi Corridor origin milepoint.
+	 * @param dest Route destination.
+	 * @param rem Remaining route distance. */
+	private boolean isWithinReach(RouteGraph.Exit ex, float o_mi,
+		GeoLoc dest, Distance rem)
+	{
+		// distance from this exit to the route destination
+		Distance d = exitDistance(ex.r_node, dest);
+		if (d != null) {
+			// add distance from corridor origin to exit
+			Distance td = d.add(new Distance(ex.mile - o_mi, MILES));
+			return td.compareTo(rem) < 0;
+		} else
+			return false;
+	}
+
+	/** Get the distance from an exit to the route destination */
+	private Distance exitDistance(R_NodeImpl rn, GeoLoc dest) {
+		if (exit_dist.containsKey(rn))
+			return exit_dist.get(rn);
+		Distance d = GeoLocHelper.distanceTo(rn.getGeoLoc(), dest);
+		exit_dist.put(rn, d);
+		return d;
+	}
+
+	/** Add a branched route.
 	 * @param r Partial route.
 	 * @param c Corridor.
 	 * @param orig Corridor origin.
 	 * @param rn Corridor destination.
-	 * @return Completed route, or null if none found. */
-	private Route branchRoute(Route r, Corridor c, GeoLoc orig,
-		R_NodeImpl rn)
+	 * @param queue Queue to add branched route. */
+	private void branchRoute(Route r, Corridor c, GeoLoc orig,
+		R_NodeImpl rn, PriorityQueue<Label> queue)
 	{
 		R_NodeImpl f = rn.getFork();
-		if (f != null) {
+		if (f != null && f.getGeoLoc() != null) {
 			boolean turn = rn.hasTurnPenalty() && f.hasTurnPenalty();
 			GeoLoc dst_c = rn.getGeoLoc();
 			Route re = r.createExtended(c, orig, dst_c, turn);
-			if (re != null) {
-				GeoLoc o = f.getGeoLoc();
-				return findRoute(o, re);
-			}
-		}
-		return null;
-	}
-
-	/** Route branch finder */
-	static private class BranchFinder implements Corridor.NodeFinder {
-		private final float o_mi;	// corridor origin milepoint
-		private final GeoLoc dest;	// route destination
-		private final Distance rem;	// remaining distance
-		private final ArrayList<R_NodeImpl> branches =
-			new ArrayList<R_NodeImpl>();
-		private BranchFinder(float o, GeoLoc dst, Distance rd) {
-			o_mi = o;
-			dest = dst;
-			rem = rd;
-		}
-		public boolean check(float m, R_NodeImpl rn) {
-			if (m > o_mi) {
-				if (rn.isExit())
-					checkExit(rn, m);
-				if (rn.isCommonExit())
-					return true;
-			}
-			return false;
-		}
-		private void checkExit(R_NodeImpl rn, float m) {
-			// distance from this exit to the route destination
-			Distance d = GeoLocHelper.distanceTo(rn.getGeoLoc(),
-				dest);
-			if (d != null) {
-				// add distance from corridor origin to exit
-				Distance td = d.add(new Distance(m - o_mi,
-					MILES));
-				if (td.compareTo(rem) < 0)
-					branches.add(rn);
-			}
+			if (re != null)
+				queue.add(new Label(f.getGeoLoc(), re, false));
 		}
 	}
 }
@@ -0,0 +1,76 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A route graph contains the active exits of each corridor, in milepoint
+ * order.  Exits are the edges which link one corridor to another (through
+ * the exit fork).  The exits of a corridor are found the first time they are
+ * needed, so a graph must be discarded whenever r_nodes change.
+ *
+ * @author Douglas Lau
+ */
+public class RouteGraph {
+
+	/** An exit from a corridor */
+	static public class Exit {
+
+		/** Milepoint of exit on corridor */
+		public final float mile;
+
+		/** Exit r_node */
+		public final R_NodeImpl r_node;
+
+		/** Flag indicating exit to a common section */
+		public final boolean common;
+
+		/** Create a new exit */
+		private Exit(float m, R_NodeImpl rn) {
+			mile = m;
+			r_node = rn;
+			common = rn.isCommonExit();
+		}
+	}
+
+	/** Mapping of corridors to exits */
+	private final HashMap<Corridor, Exit[]> exits =
+		new HashMap<Corridor, Exit[]>();
+
+	/** Get the active exits of a corridor, in milepoint order */
+	public synchronized Exit[] getExits(Corridor c) {
+		Exit[] ex = exits.get(c);
+		if (null == ex) {
+			ex = findExits(c);
+			exits.put(c, ex);
+		}
+		return ex;
+	}
+
+	/** Find the active exits of a corridor */
+	static private Exit[] findExits(Corridor c) {
+		final ArrayList<Exit> ex = new ArrayList<Exit>();
+		c.findActiveNode(new Corridor.NodeFinder() {
+			public boolean check(float m, R_NodeImpl rn) {
+				if (rn.isExit())
+					ex.add(new Exit(m, rn));
+				return false;
+			}
+		});
+		return ex.toArray(new Exit[0]);
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2016  Minnesota Department of Transportation
+ * Copyright (C) 2005-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,9 +16,14 @@ package us.mn.state.dot.tms.server;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -28,7 +33,13 @@ import us.mn.state.dot.tms.ChangeVetoException;
 import us.mn.state.dot.tms.TMSException;
 
 /**
- * Simple SQL database abstraction stuff
+ * Simple SQL database abstraction stuff.
+ *
+ * A pool of database connections is shared by all threads.  Each connection
+ * caches prepared statements for storable updates, which bind values as
+ * parameters instead of escaping them into SQL text.  A thread which is
+ * already using a connection (for example, within a ResultFactory) reuses
+ * that connection.
  *
  * @author Douglas Lau
  */
@@ -37,6 +48,12 @@ public class SQLConnection {
 	/** SQL debug log */
 	static private final DebugLog SQL_LOG = new DebugLog("sql");
 
+	/** Default number of database connections */
+	static public final int DEFAULT_CONNECTIONS = 4;
+
+	/** Maximum number of cached prepared statements per connection */
+	static private final int MAX_CACHED_STATEMENTS = 256;
+
 	/** Pattern to match for a SQL identifier */
 	static private final Pattern SQL_IDENTIFIER =
 		Pattern.compile("[a-z_0-9.]*");
@@ -52,20 +69,23 @@ public class SQLConnection {
 		}
 	}
 
-	/** Pattern to match for a SQL string constant value */
-	static private final Pattern SQL_VALUE =
-		Pattern.compile("[[\\p{Graph}\\p{Blank}\n]]*");
-
-	/** Validate a SQL string constant value */
-	static private void validateValue(String v) throws ChangeVetoException {
-		Matcher m = SQL_VALUE.matcher(v);
-		if (!m.matches())
-			throw new ChangeVetoException("Invalid SQL value: " +v);
+	/** Set a statement parameter.  Values are bound as strings of
+	 * unspecified type, so the database converts them to the column type,
+	 * as it would for a quoted literal. */
+	static private void setParameter(PreparedStatement ps, int i,
+		Object value) throws SQLException
+	{
+		if (value != null)
+			ps.setObject(i, value.toString(), Types.OTHER);
+		else
+			ps.setNull(i, Types.OTHER);
 	}
 
-	/** Escape a string constant value for SQL */
-	static private String escapeValue(Object value) {
-		return value.toString().replace("'", "''");
+	/** Check if an exception means a connection is unusable */
+	static private boolean isConnectionError(SQLException e) {
+		// SQLSTATE class 08 is "connection exception"
+		String state = e.getSQLState();
+		return state == null || state.startsWith("08");
 	}
 
 	/** Location of database server */
@@ -77,16 +97,115 @@ public class SQLConnection {
 	/** Password to log into database server */
 	private final String password;
 
-	/** Connection to the SQL database */
-	private Connection connection = null;
+	/** Maximum number of database connections */
+	private final int max_connections;
+
+	/** Idle database connections (protected by idle lock) */
+	private final LinkedList<Pooled> idle = new LinkedList<Pooled>();
+
+	/** Count of open database connections (protected by idle lock) */
+	private int n_connections = 0;
+
+	/** Connection in use by the current thread */
+	private final ThreadLocal<Pooled> held = new ThreadLocal<Pooled>();
+
+	/** A pooled database connection */
+	private class Pooled {
+
+		/** Connection to the SQL database */
+		private final Connection connection;
+
+		/** Cache of prepared statements, by SQL */
+		private final LinkedHashMap<String, PreparedStatement> cache =
+			new LinkedHashMap<String, PreparedStatement>(16, 0.75f,
+			true)
+		{
+			protected boolean removeEldestEntry(
+				Map.Entry<String, PreparedStatement> e)
+			{
+				if (size() > MAX_CACHED_STATEMENTS) {
+					closeStatement(e.getValue());
+					return true;
+				} else
+					return false;
+			}
+		};
+
+		/** Number of nested uses by the owning thread */
+		private int depth = 0;
+
+		/** Flag indicating the connection is unusable */
+		private boolean broken = false;
+
+		/** Open a new database connection */
+		private Pooled() throws SQLException {
+			connection = DriverManager.getConnection(location, user,
+				password);
+			connection.setAutoCommit(true);
+		}
+
+		/** Create a database statement */
+		private Statement createStatement() throws SQLException {
+			return connection.createStatement();
+		}
+
+		/** Get a prepared statement (from cache if possible) */
+		private PreparedStatement prepare(String sql)
+			throws SQLException
+		{
+			PreparedStatement ps = cache.get(sql);
+			if (ps == null) {
+				ps = connection.prepareStatement(sql);
+				cache.put(sql, ps);
+			}
+			return ps;
+		}
+
+		/** Check an exception, and mark the connection as broken
+		 * if it is unusable */
+		private void checkError(SQLException e) {
+			if (isConnectionError(e))
+				broken = true;
+		}
+
+		/** Close the connection */
+		private void close() {
+			for (PreparedStatement ps: cache.values())
+				closeStatement(ps);
+			cache.clear();
+			try {
+				connection.close();
+			}
+			catch (SQLException e) {
+				SQL_LOG.log("close -> " + e);
+			}
+		}
+	}
 
-	/** Available SQL statements */
-	private final LinkedList<Statement> statements =
-		new LinkedList<Statement>();
+	/** Close a statement, ignoring errors */
+	static private void closeStatement(Statement s) {
+		try {
+			s.close();
+		}
+		catch (SQLException e) {
+			SQL_LOG.log("closeStatement -> " + e);
+		}
+	}
 
 	/** Create a new SQL connection */
 	public SQLConnection(String url, String usr, String pswd)
 		throws TMSException
+	{
+		this(url, usr, pswd, DEFAULT_CONNECTIONS);
+	}
+
+	/** Create a new SQL connection.
+	 * @param url Database URL.
+	 * @param usr Database user.
+	 * @param pswd Database password.
+	 * @param n_conn Maximum number of database connections. */
+	public SQLConnection(String url, String usr, String pswd, int n_conn)
+		throws TMSException
 	{
 		try {
 			Class.forName("org.postgresql.Driver");
@@ -97,98 +216,160 @@ public class SQLConnection {
 		location = url;
 		user = usr;
 		password = pswd;
+		max_connections = Math.max(n_conn, 1);
 	}
 
-	/** Close the current database connection */
-	private void close() throws SQLException {
-		statements.clear();
-		if (connection != null) {
-			try {
-				connection.close();
-			}
-			finally {
-				connection = null;
-			}
-		}
+	/** Create a SQL connection with no database.  This is only useful
+	 * for subclasses which override all storage methods. */
+	protected SQLConnection() {
+		location = null;
+		user = null;
+		password = null;
+		max_connections = 1;
 	}
 
-	/** Open a new database connection */
-	private void open() throws SQLException {
-		connection = DriverManager.getConnection(location, user,
-			password);
-		connection.setAutoCommit(true);
+	/** Get the maximum number of database connections */
+	public int getMaxConnections() {
+		return max_connections;
 	}
 
-	/** Create a database statement */
-	private Statement _createStatement() throws SQLException {
-		if (connection == null)
-			open();
-		return connection.createStatement();
+	/** Acquire a database connection for the current thread */
+	private Pooled acquire() throws TMSException {
+		Pooled p = held.get();
+		if (p == null) {
+			p = acquireIdle();
+			held.set(p);
+		}
+		p.depth++;
+		return p;
 	}
 
-	/** Create a database statement */
-	private Statement createStatement() throws TMSException {
-		try {
-			return _createStatement();
-		}
-		catch (SQLException e) {
-			SQL_LOG.log("createStatement -> " + e);
-			try {
-				close();
-				return _createStatement();
-			}
-			catch (SQLException e2) {
-				SQL_LOG.log("createStatement.2 -> " + e2);
-				throw new TMSException(e2);
+	/** Acquire an idle database connection, opening a new one if all
+	 * connections are in use and the limit has not been reached */
+	private Pooled acquireIdle() throws TMSException {
+		synchronized (idle) {
+			while (idle.isEmpty()) {
+				if (n_connections < max_connections) {
+					Pooled p = open();
+					n_connections++;
+					return p;
+				}
+				try {
+					idle.wait();
+				}
+				catch (InterruptedException e) {
+					throw new TMSException(e);
+				}
 			}
+			return idle.removeLast();
 		}
 	}
 
-	/** Get an available statement */
-	private synchronized Statement getStatement() throws TMSException {
-		if (statements.isEmpty())
-			return createStatement();
-		else
-			return statements.removeLast();
+	/** Open a new database connection */
+	private Pooled open() throws TMSException {
+		try {
+			return new Pooled();
+		}
+		catch (SQLException e) {
+			SQL_LOG.log("open -> " + e);
+			throw new TMSException(e);
+		}
 	}
 
-	/** Put a statement back after using it */
-	private synchronized void putStatement(Statement s) {
-		statements.add(s);
+	/** Release a database connection after using it */
+	private void release(Pooled p) {
+		p.depth--;
+		if (p.depth > 0)
+			return;
+		held.remove();
+		if (p.broken)
+			p.close();
+		synchronized (idle) {
+			if (p.broken)
+				n_connections--;
+			else
+				idle.add(p);
+			idle.notify();
+		}
 	}
 
 	/** Query the database and call a factory for each result */
 	public void query(String sql, ResultFactory factory)
 		throws TMSException
 	{
-		Statement s = getStatement();
+		Pooled p = acquire();
 		try {
-			ResultSet set = s.executeQuery(sql);
+			Statement s = p.createStatement();
 			try {
-				while (set.next())
-					factory.create(set);
+				ResultSet set = s.executeQuery(sql);
+				try {
+					while (set.next())
+						factory.create(set);
+				}
+				finally {
+					set.close();
+				}
 			}
 			finally {
-				set.close();
+				s.close();
 			}
-			putStatement(s);
+		}
+		catch (SQLException e) {
+			SQL_LOG.log(sql + " -> " + e);
+			p.checkError(e);
+			throw new TMSException(e);
 		}
 		catch (Exception e) {
 			throw new TMSException(e);
 		}
+		finally {
+			release(p);
+		}
 	}
 
 	/** Update the database with the given SQL command */
 	public void update(String sql) throws TMSException {
-		Statement s = getStatement();
+		Pooled p = acquire();
+		try {
+			Statement s = p.createStatement();
+			try {
+				s.executeUpdate(sql);
+			}
+			finally {
+				s.close();
+			}
+		}
+		catch (SQLException e) {
+			SQL_LOG.log(sql + " -> " + e);
+			p.checkError(e);
+			throw new TMSException(e);
+		}
+		finally {
+			release(p);
+		}
+	}
+
+	/** Update the database with a prepared statement.
+	 * @param sql SQL statement, with parameter placeholders.
+	 * @param params Parameter values. */
+	private void updatePrepared(String sql, Object... params)
+		throws TMSException
+	{
+		Pooled p = acquire();
 		try {
-			s.executeUpdate(sql);
-			putStatement(s);
+			PreparedStatement ps = p.prepare(sql);
+			for (int i = 0; i < params.length; i++)
+				setParameter(ps, i + 1, params[i]);
+			ps.executeUpdate();
 		}
 		catch (SQLException e) {
 			SQL_LOG.log(sql + " -> " + e);
+			p.checkError(e);
 			throw new TMSException(e);
 		}
+		finally {
+			release(p);
+		}
 	}
 
 	/** Update one field in a storable database table */
@@ -196,79 +377,193 @@ public class SQLConnection {
 		throws TMSException
 	{
 		validateIdentifier(field);
-		String key = escapeValue(s.getKey());
-		validateValue(key);
-		if (value == null) {
-			updateNull(s, field, key);
-			return;
-		}
-		String v = escapeValue(value);
-		validateValue(v);
-		update("UPDATE " + s.getTable() +
-		      " SET " + field + " = '" + v + "'" +
-		      " WHERE " + s.getKeyName() + " = '" + key + "';");
+		validateIdentifier(s.getKeyName());
+		updatePrepared("UPDATE " + s.getTable() +
+		      " SET " + field + " = ?" +
+		      " WHERE " + s.getKeyName() + " = ?;",
+		      value, s.getKey());
 	}
 
-	/** Update one field with a NULL value */
-	private void updateNull(Storable s, String field, String key)
-		throws TMSException
+	/** Get the non-null columns of a storable record */
+	static private ArrayList<Map.Entry<String, Object>> getColumns(
+		Storable s) throws ChangeVetoException
 	{
-		update("UPDATE " + s.getTable() +
-		      " SET " + field + " = NULL" +
-		      " WHERE " + s.getKeyName() + " = '" + key + "';");
+		ArrayList<Map.Entry<String, Object>> cols =
+			new ArrayList<Map.Entry<String, Object>>();
+		for (Map.Entry<String, Object> e: s.getColumns().entrySet()) {
+			if (e.getValue() != null) {
+				validateIdentifier(e.getKey());
+				cols.add(e);
+			}
+		}
+		return cols;
 	}
 
-	/** Create one storable record */
-	public void create(Storable s) throws TMSException {
-		Map<String, Object> columns = s.getColumns();
+	/** Build an INSERT statement for a list of columns */
+	static private String insertSQL(Storable s,
+		ArrayList<Map.Entry<String, Object>> cols)
+	{
 		StringBuilder keys = new StringBuilder();
 		StringBuilder values = new StringBuilder();
-		for (Map.Entry<String, Object> e: columns.entrySet()) {
-			Object value = e.getValue();
-			if (value != null) {
-				String field = e.getKey();
-				validateIdentifier(field);
-				keys.append(field);
-				keys.append(",");
-				String val = escapeValue(value);
-				validateValue(val);
-				values.append("'");
-				values.append(val);
-				values.append("',");
-			}
+		for (Map.Entry<String, Object> e: cols) {
+			keys.append(e.getKey());
+			keys.append(",");
+			values.append("?,");
 		}
 		keys.setLength(keys.length() - 1);
 		values.setLength(values.length() - 1);
-		String sql = "INSERT INTO " + s.getTable() + " (" + keys +
+		return "INSERT INTO " + s.getTable() + " (" + keys +
 			") VALUES (" + values + ");";
-		update(sql);
+	}
+
+	/** Set parameters for an INSERT statement */
+	static private void setParameters(PreparedStatement ps,
+		ArrayList<Map.Entry<String, Object>> cols) throws SQLException
+	{
+		for (int i = 0; i < cols.size(); i++)
+			setParameter(ps, i + 1, cols.get(i).getValue());
+	}
+
+	/** Create one storable record */
+	public void create(Storable s) throws TMSException {
+		ArrayList<Map.Entry<String, Object>> cols = getColumns(s);
+		String sql = insertSQL(s, cols);
+		Pooled p = acquire();
+		try {
+			PreparedStatement ps = p.prepare(sql);
+			setParameters(ps, cols);
+			ps.executeUpdate();
+		}
+		catch (SQLException e) {
+			SQL_LOG.log(sql + " -> " + e);
+			p.checkError(e);
+			throw new TMSException(e);
+		}
+		finally {
+			release(p);
+		}
+	}
+
+	/** Create a collection of storable records.  Records with the same
+	 * table and columns are inserted with one batched statement.  All
+	 * records are inserted in one transaction, so if any insert fails,
+	 * none of the records are created. */
+	public void create(Collection<? extends Storable> records)
+		throws TMSException
+	{
+		if (records.isEmpty())
+			return;
+		Pooled p = acquire();
+		try {
+			createBatch(p, records);
+		}
+		finally {
+			release(p);
+		}
+	}
+
+	/** Create a collection of storable records in one transaction */
+	private void createBatch(Pooled p,
+		Collection<? extends Storable> records) throws TMSException
+	{
+		try {
+			p.connection.setAutoCommit(false);
+			try {
+				LinkedHashMap<String, PreparedStatement> batches =
+					addBatches(p, records);
+				for (PreparedStatement ps: batches.values())
+					ps.executeBatch();
+				p.connection.commit();
+			}
+			catch (SQLException e) {
+				p.connection.rollback();
+				throw e;
+			}
+			catch (ChangeVetoException e) {
+				p.connection.rollback();
+				throw e;
+			}
+			finally {
+				p.connection.setAutoCommit(true);
+			}
+		}
+		catch (SQLException e) {
+			SQL_LOG.log("create batch -> " + e);
+			p.checkError(e);
+			throw new TMSException(e);
+		}
+	}
+
+	/** Add records to batched INSERT statements */
+	private LinkedHashMap<String, PreparedStatement> addBatches(Pooled p,
+		Collection<? extends Storable> records) throws SQLException,
+		ChangeVetoException
+	{
+		LinkedHashMap<String, PreparedStatement> batches =
+			new LinkedHashMap<String, PreparedStatement>();
+		try {
+			for (Storable s: records) {
+				ArrayList<Map.Entry<String, Object>> cols =
+					getColumns(s);
+				String sql = insertSQL(s, cols);
+				PreparedStatement ps = p.prepare(sql);
+				setParameters(ps, cols);
+				ps.addBatch();
+				batches.put(sql, ps);
+			}
+			return batches;
+		}
+		catch (SQLException e) {
+			clearBatches(batches);
+			throw e;
+		}
+		catch (ChangeVetoException e) {
+			clearBatches(batches);
+			throw e;
+		}
+	}
+
+	/** Clear batched statements */
+	static private void clearBatches(
+		LinkedHashMap<String, PreparedStatement> batches)
+		throws SQLException
+	{
+		for (PreparedStatement ps: batches.values())
+			ps.clearBatch();
 	}
 
 	/** Destroy one storable record */
 	public void destroy(Storable s) throws TMSException {
-		String val = escapeValue(s.getKey());
-		validateValue(val);
-		update("DELETE FROM " + s.getTable() +
-		      " WHERE " + s.getKeyName() + " = '" + val + "';");
+		validateIdentifier(s.getKeyName());
+		updatePrepared("DELETE FROM " + s.getTable() +
+		      " WHERE " + s.getKeyName() + " = ?;", s.getKey());
 	}
 
 	/** Update the database with a batch of SQL commands */
 	public void batch(BatchFactory f) throws TMSException {
-		Statement s = getStatement();
+		Pooled p = acquire();
 		try {
-			while (true) {
-				String sql = f.next();
-				if (sql == null)
-					break;
-				s.addBatch(sql);
+			Statement s = p.createStatement();
+			try {
+				while (true) {
+					String sql = f.next();
+					if (sql == null)
+						break;
+					s.addBatch(sql);
+				}
+				s.executeBatch();
+			}
+			finally {
+				s.close();
 			}
-			s.executeBatch();
-			s.clearBatch();
-			putStatement(s);
 		}
 		catch (SQLException e) {
 			SQL_LOG.log("batch -> " + e);
+			p.checkError(e);
 			throw new TMSException(e);
 		}
+		finally {
+			release(p);
+		}
 	}
 }
@@ -0,0 +1,124 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import us.mn.state.dot.tms.units.Interval;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * A reader for one day of archived sample data.  Sample files are read from
+ * the day directory written by PeriodicSampleWriter, or from the .traffic
+ * archive file created by ArchiveSamplesJob.
+ *
+ * @author Douglas Lau
+ */
+public class SampleArchiveReader {
+
+	/** Day directory */
+	private final File day;
+
+	/** Traffic archive file (null if not found) */
+	private final ZipFile traffic;
+
+	/** Create a new sample archive reader.
+	 * @param arc Sample archive directory.
+	 * @param date Date string (yyyyMMdd). */
+	public SampleArchiveReader(File arc, String date) throws IOException {
+		if (date.length() != 8)
+			throw new IllegalArgumentException("Invalid date: " + date);
+		day = new File(new File(arc, date.substring(0, 4)), date);
+		File traf = new File(day.getPath() + ".traffic");
+		traffic = traf.isFile() ? new ZipFile(traf) : null;
+		if (null == traffic && !day.isDirectory())
+			throw new IOException("No samples for " + date);
+	}
+
+	/** Read one day of samples for a sensor.
+	 * @param sensor_id Sensor identifier.
+	 * @param s_type Periodic sample type.
+	 * @param period Sample period (seconds).
+	 * @return Array of sample values, one per period.  Any samples not
+	 *         found are MISSING_DATA. */
+	public int[] read(String sensor_id, PeriodicSampleType s_type,
+		int period) throws IOException
+	{
+		int n_samples = (int) new Interval(period).per(Interval.DAY);
+		int[] samples = new int[n_samples];
+		Arrays.fill(samples, MISSING_DATA);
+		String name = sensor_id + "." + s_type.extension + period;
+		InputStream is = openStream(name);
+		if (is != null) {
+			try {
+				ByteBuffer buf = readBuffer(is,
+					n_samples * s_type.sample_bytes);
+				for (int i = 0; buf.remaining() >=
+				     s_type.sample_bytes; i++)
+					samples[i] = s_type.getValue(buf);
+			}
+			finally {
+				is.close();
+			}
+		}
+		return samples;
+	}
+
+	/** Open an input stream for a sample file.  A file in the day
+	 * directory is used before a traffic archive entry.
+	 * @param name Sample file name.
+	 * @return Input stream, or null if not found. */
+	private InputStream openStream(String name) throws IOException {
+		File f = new File(day, name);
+		if (f.isFile())
+			return new FileInputStream(f);
+		if (traffic != null) {
+			ZipEntry ze = traffic.getEntry(name);
+			if (ze != null)
+				return traffic.getInputStream(ze);
+		}
+		return null;
+	}
+
+	/** Read a stream into a byte buffer.
+	 * @param is Input stream.
+	 * @param n_bytes Maximum number of bytes to read.
+	 * @return Buffer flipped for reading. */
+	static private ByteBuffer readBuffer(InputStream is, int n_bytes)
+		throws IOException
+	{
+		byte[] data = new byte[n_bytes];
+		int n = 0;
+		while (n < n_bytes) {
+			int r = is.read(data, n, n_bytes - n);
+			if (r < 0)
+				break;
+			n += r;
+		}
+		return ByteBuffer.wrap(data, 0, n);
+	}
+
+	/** Close the reader */
+	public void close() throws IOException {
+		if (traffic != null)
+			traffic.close();
+	}
+}
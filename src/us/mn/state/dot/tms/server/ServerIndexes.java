@@ -0,0 +1,103 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import us.mn.state.dot.sonar.SonarObject;
+import us.mn.state.dot.sonar.server.ObjectIndex;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.Camera;
+import us.mn.state.dot.tms.CameraHelper;
+import us.mn.state.dot.tms.DmsSignGroup;
+import us.mn.state.dot.tms.DmsSignGroupHelper;
+import us.mn.state.dot.tms.Font;
+import us.mn.state.dot.tms.FontHelper;
+import us.mn.state.dot.tms.GeoLocHelper;
+import us.mn.state.dot.tms.Graphic;
+import us.mn.state.dot.tms.GraphicHelper;
+import us.mn.state.dot.tms.SignMessage;
+import us.mn.state.dot.tms.SignMessageHelper;
+
+/**
+ * Secondary indexes used by helper find methods on the server.  Each index
+ * name and key must match the lookup in the corresponding helper.
+ *
+ * @author Douglas Lau
+ */
+public class ServerIndexes {
+
+	/** Add all secondary indexes to a namespace */
+	static public void addIndexes(ServerNamespace ns) {
+		ns.addIndex(SignMessage.SONAR_TYPE, new ObjectIndex(
+			SignMessageHelper.MULTI_INDEX)
+		{
+			protected Object getKey(SonarObject o) {
+				SignMessage sm = (SignMessage) o;
+				return SignMessageHelper.multiKey(
+					sm.getSignConfig(), sm.getMulti());
+			}
+		});
+		ns.addIndex(Camera.SONAR_TYPE, new ObjectIndex(
+			CameraHelper.NUM_INDEX)
+		{
+			protected Object getKey(SonarObject o) {
+				return ((Camera) o).getCamNum();
+			}
+		});
+		ns.addIndex(Camera.SONAR_TYPE, new ObjectIndex(
+			CameraHelper.GRID_INDEX)
+		{
+			protected Object getKey(SonarObject o) {
+				return GeoLocHelper.gridKey(
+					((Camera) o).getGeoLoc());
+			}
+			protected SonarObject getDependency(SonarObject o) {
+				return ((Camera) o).getGeoLoc();
+			}
+		});
+		ns.addIndex(Font.SONAR_TYPE, new ObjectIndex(
+			FontHelper.NUM_INDEX)
+		{
+			protected Object getKey(SonarObject o) {
+				return ((Font) o).getNumber();
+			}
+		});
+		ns.addIndex(Graphic.SONAR_TYPE, new ObjectIndex(
+			GraphicHelper.NUM_INDEX)
+		{
+			protected Object getKey(SonarObject o) {
+				return ((Graphic) o).getGNumber();
+			}
+		});
+		ns.addIndex(DmsSignGroup.SONAR_TYPE, new ObjectIndex(
+			DmsSignGroupHelper.DMS_INDEX)
+		{
+			protected Object getKey(SonarObject o) {
+				return ((DmsSignGroup) o).getDms();
+			}
+		});
+		ns.addIndex(DmsSignGroup.SONAR_TYPE, new ObjectIndex(
+			DmsSignGroupHelper.GROUP_INDEX)
+		{
+			protected Object getKey(SonarObject o) {
+				return ((DmsSignGroup) o).getSignGroup();
+			}
+		});
+	}
+
+	/** Prevent instances */
+	private ServerIndexes() {
+		assert false;
+	}
+}
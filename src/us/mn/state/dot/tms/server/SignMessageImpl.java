@@ -18,9 +18,13 @@ import java.io.IOException;
 import java.io.Writer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.DMSHelper;
 import us.mn.state.dot.tms.DmsMsgPriority;
 import us.mn.state.dot.tms.SignConfig;
@@ -62,6 +66,67 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 		return "system_" + last_id;
 	}
 
+	/** Time an unreferenced message is kept before it can be reaped (ms).
+	 * This guards against a race where a client sends a message to a DMS
+	 * just as it loses its last reference. */
+	static private final long REAP_GRACE_MS = 60 * 1000;
+
+	/** Entry in unreferenced message queue */
+	static private class Unreferenced {
+		private final SignMessageImpl msg;
+		private final long stamp;
+		private Unreferenced(SignMessageImpl sm, long st) {
+			msg = sm;
+			stamp = st;
+		}
+		/** Check if this is the current entry for an unreferenced
+		 * message.  Earlier entries for a requeued message are not. */
+		private boolean isCurrent() {
+			return msg.ref_count == 0 && msg.unref == this;
+		}
+	}
+
+	/** Queue of unreferenced messages, in time order.  This is also used
+	 * to lock all reference counts. */
+	static private final ArrayDeque<Unreferenced> unreferenced =
+		new ArrayDeque<Unreferenced>();
+
+	/** Replace a reference to a sign message.
+	 * @param o Old referenced message (may be null).
+	 * @param sm New referenced message (may be null). */
+	static void replaceRef(SignMessage o, SignMessage sm) {
+		if (o != sm) {
+			synchronized (unreferenced) {
+				if (sm instanceof SignMessageImpl)
+					((SignMessageImpl) sm).ref_count++;
+				if (o instanceof SignMessageImpl)
+					((SignMessageImpl) o).releaseRef();
+			}
+		}
+	}
+
+	/** Get messages which have been unreferenced for longer than the
+	 * grace time.  They are removed from the unreferenced queue.
+	 * @return List of reapable messages. */
+	static List<SignMessageImpl> pollReapable() {
+		long before = TimeSteward.currentTimeMillis() - REAP_GRACE_MS;
+		ArrayList<SignMessageImpl> msgs =
+			new ArrayList<SignMessageImpl>();
+		synchronized (unreferenced) {
+			while (!unreferenced.isEmpty()) {
+				Unreferenced u = unreferenced.peek();
+				if (u.stamp > before)
+					break;
+				unreferenced.poll();
+				if (u.isCurrent()) {
+					u.msg.unref = null;
+					msgs.add(u.msg);
+				}
+			}
+		}
+		return msgs;
+	}
+
 	/** Load all the sign messages */
 	static protected void loadAll() throws TMSException {
 		namespace.registerType(SONAR_TYPE, SignMessageImpl.class);
@@ -108,6 +173,7 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 	/** Create a new sign message (by SONAR clients) */
 	public SignMessageImpl(String n) {
 		super(n);
+		queueUnreferenced();
 		logMsg("created (client)");
 	}
 
@@ -139,7 +205,8 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 		msg_priority = mp;
 		source = s;
 		owner = o;
-		duration = d;		
+		duration = d;
+		queueUnreferenced();
 	}
 
 	/** Create a new sign message (by IRIS) */
@@ -155,6 +222,7 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 		source = s;
 		owner = o;
 		duration = d;
+		queueUnreferenced();
 		logMsg("created (server)");
 	}
 
@@ -164,6 +232,43 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 			MSG_LOG.log(getName() + ": " + msg);
 	}
 
+	/** Count of references from DMS */
+	private transient int ref_count = 0;
+
+	/** Entry in unreferenced queue since the last reference was
+	 * released */
+	private transient Unreferenced unref;
+
+	/** Add the message to the unreferenced queue */
+	private void queueUnreferenced() {
+		synchronized (unreferenced) {
+			unref = new Unreferenced(this,
+				TimeSteward.currentTimeMillis());
+			unreferenced.add(unref);
+		}
+	}
+
+	/** Release one reference to the message.  Releasing a message with
+	 * no references means the counts are out of balance, so it is
+	 * logged (and not queued again). */
+	private void releaseRef() {
+		synchronized (unreferenced) {
+			if (ref_count > 0) {
+				ref_count--;
+				if (0 == ref_count)
+					queueUnreferenced();
+			} else
+				logMsg("released with no references");
+		}
+	}
+
+	/** Check if the message is not referenced by any DMS */
+	boolean isUnreferenced() {
+		synchronized (unreferenced) {
+			return 0 == ref_count;
+		}
+	}
+
 	/** Sign configuration */
 	private SignConfig sign_config;
 
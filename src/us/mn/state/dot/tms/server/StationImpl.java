@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2004-2018  Minnesota Department of Transportation
+ * Copyright (C) 2004-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -640,6 +640,11 @@ public class StationImpl implements Station, VehicleSampler {
 		}
 	}
 
+	/** Check if the station is a bottleneck */
+	public boolean isBottleneck() {
+		return bottleneck;
+	}
+
 	/** Check if the station is a bottleneck for the given distance */
 	public boolean isBottleneckFor(float d) {
 		return bottleneck && isBottleneckInRange(d);
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2004-2014  Minnesota Department of Transportation
+ * Copyright (C) 2004-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,8 +16,12 @@ package us.mn.state.dot.tms.server;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import us.mn.state.dot.sched.TimeSteward;
+import us.mn.state.dot.tms.R_NodeHelper;
 import us.mn.state.dot.tms.Station;
 import us.mn.state.dot.tms.StationHelper;
 
@@ -31,16 +35,27 @@ class StationManager {
 	/** Location of station sample XML file */
 	static private final String SAMPLE_XML = "stat_sample.xml";
 
-	/** Calculate the current data for all stations */
-	public void calculateData() {
+	/** Get all stations, grouped by corridor name.  Stations which are
+	 * not on a corridor are grouped with a null name. */
+	public Map<String, ArrayList<StationImpl>> getCorridorStations() {
+		HashMap<String, ArrayList<StationImpl>> stations =
+			new HashMap<String, ArrayList<StationImpl>>();
 		Iterator<Station> it = StationHelper.iterator();
-		while(it.hasNext()) {
+		while (it.hasNext()) {
 			Station s = it.next();
-			if(s instanceof StationImpl) {
-				StationImpl si = (StationImpl)s;
-				si.calculateData();
+			if (s instanceof StationImpl) {
+				StationImpl si = (StationImpl) s;
+				String cid = R_NodeHelper.getCorridorName(
+					si.getR_Node());
+				ArrayList<StationImpl> sl = stations.get(cid);
+				if (null == sl) {
+					sl = new ArrayList<StationImpl>();
+					stations.put(cid, sl);
+				}
+				sl.add(si);
 			}
 		}
+		return stations;
 	}
 
 	/** Write the station sample data out as XML */
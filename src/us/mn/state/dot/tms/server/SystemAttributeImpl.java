@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2008-2018  Minnesota Department of Transportation
+ * Copyright (C) 2008-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -111,7 +111,7 @@ public class SystemAttributeImpl extends BaseObjectImpl
 	}
 
 	/** Create a new attribute */
-	private SystemAttributeImpl(String att_name, String arg_value) {
+	SystemAttributeImpl(String att_name, String arg_value) {
 		super(att_name);
 		value = arg_value;
 	}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2006-2014  Minnesota Department of Transportation
+ * Copyright (C) 2006-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,16 +14,12 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.Calendar;
-import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.SystemAttrEnum;
 import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
 import static us.mn.state.dot.tms.server.DetectorImpl.SAMPLE_PERIOD_SEC;
-import static us.mn.state.dot.tms.server.MainServer.FLUSH;
+import static us.mn.state.dot.tms.server.MainServer.V_WRITER;
 
 /**
  * The vehicle event log records vehicle detection events.
@@ -50,9 +46,6 @@ public class VehicleEventLog {
 		      : TimeSteward.currentTimeMillis();
 	}
 
-	/** Sample archive factory */
-	private final SampleArchiveFactory factory;
-
 	/** Sensor ID */
 	private final String sensor_id;
 
@@ -71,12 +64,11 @@ public class VehicleEventLog {
 	/** Create a new vehicle event log */
 	public VehicleEventLog(String sid) {
 		sensor_id = sid;
-		factory = MainServer.a_factory;
 	}
 
 	/** Log a vehicle detection event */
-	public void logVehicle(final Calendar stamp, final int duration,
-		final int headway, final int speed)
+	public void logVehicle(Calendar stamp, int duration, int headway,
+		int speed)
 	{
 		ev_vehicles++;
 		ev_duration += duration;
@@ -85,42 +77,17 @@ public class VehicleEventLog {
 			ev_speed += speed;
 		}
 		if (isArchiveEnabled()) {
-			FLUSH.addJob(new Job() {
-				public void perform() throws IOException {
-					appendEvent(stamp, formatEvent(stamp,
-						duration, headway, speed));
-				}
-			});
-		}
-	}
-
-	/** Append an event to the log */
-	private void appendEvent(Calendar stamp, String line)
-		throws IOException
-	{
-		File file = factory.createFile(sensor_id, "vlog",
-			getStampMillis(stamp));
-		if (file != null) {
-			FileWriter fw = new FileWriter(file, true);
-			try {
-				fw.write(line);
-			}
-			finally {
-				fw.close();
-			}
+			V_WRITER.addEvent(sensor_id, getStampMillis(stamp),
+				formatEvent(stamp, duration, headway, speed),
+				duration, headway, speed);
 		}
 	}
 
 	/** Log a gap in vehicle events */
 	public void logGap() {
 		p_stamp = null;
-		if (isArchiveEnabled()) {
-			FLUSH.addJob(new Job() {
-				public void perform() throws IOException {
-					appendEvent(null, "*\n");
-				}
-			});
-		}
+		if (isArchiveEnabled())
+			V_WRITER.addGap(sensor_id, getStampMillis(null));
 	}
 
 	/** Time stamp of most recent vehicle event */
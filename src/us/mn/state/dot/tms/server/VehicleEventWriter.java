@@ -0,0 +1,395 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.Scheduler;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * A vehicle event writer buffers vehicle events for all detectors and writes
+ * them to sample archive files in batches.  A batch is written when
+ * FLUSH_BYTES are pending, or FLUSH_MS after the first event is buffered,
+ * whichever comes first.  Files are kept open between batches, up to
+ * MAX_OPEN files, and files for previous days are closed after each batch.
+ *
+ * Events are written to .vlog text files.  If binary logging is enabled, they
+ * are also written to .vlogb files, which contain fixed-size records of
+ * BIN_RECORD_BYTES each (big-endian):
+ *
+ *   int   time -- milliseconds since start of day (local time)
+ *   int   headway -- milliseconds, or 0 if unknown
+ *   short duration -- milliseconds (capped at 32767), or 0 if unknown
+ *   short speed -- mph, or 0 if unknown
+ *
+ * A gap record has -1 for headway, duration and speed.
+ *
+ * @author Douglas Lau
+ */
+public class VehicleEventWriter {
+
+	/** Vehicle event writer debug log */
+	static private final DebugLog VLOG_LOG = new DebugLog("vlog");
+
+	/** Text file extension */
+	static public final String TEXT_EXT = "vlog";
+
+	/** Binary file extension */
+	static public final String BIN_EXT = "vlogb";
+
+	/** Size of binary event records */
+	static public final int BIN_RECORD_BYTES = 12;
+
+	/** Number of pending bytes to flush immediately */
+	static private final int FLUSH_BYTES = 256 * 1024;
+
+	/** Maximum time to buffer an event before writing (ms) */
+	static private final int FLUSH_MS = 10 * 1000;
+
+	/** Maximum number of open files */
+	static private final int MAX_OPEN = 128;
+
+	/** ASCII charset for vlog text */
+	static private final Charset ASCII = Charset.forName("US-ASCII");
+
+	/** Pending events for one sensor and day */
+	static private class Pending {
+		private final String sensor_id;
+		private final long day;
+		private final StringBuilder text = new StringBuilder();
+		private final ByteArrayOutputStream bin =
+			new ByteArrayOutputStream();
+		private Pending(String sid, long d) {
+			sensor_id = sid;
+			day = d;
+		}
+	}
+
+	/** Sample archive factory */
+	private final SampleArchiveFactory factory;
+
+	/** Scheduler for flush jobs */
+	private final Scheduler scheduler;
+
+	/** Pending events, by sensor ID and day */
+	private LinkedHashMap<String, Pending> pending =
+		new LinkedHashMap<String, Pending>();
+
+	/** Number of pending bytes */
+	private int n_pending = 0;
+
+	/** Flag to enable binary event files */
+	private boolean binary = false;
+
+	/** Start of cached day (ms) */
+	private long day_start = 0;
+
+	/** End of cached day (ms) */
+	private long day_end = 0;
+
+	/** Flag indicating a delayed flush job is scheduled */
+	private boolean delay_scheduled = false;
+
+	/** Flag indicating an immediate flush job is scheduled */
+	private boolean now_scheduled = false;
+
+	/** Count of events buffered */
+	private long n_events = 0;
+
+	/** Count of file write errors */
+	private long n_errors = 0;
+
+	/** Open files by sensor, extension and day (flush thread only), in
+	 * access order */
+	private final LinkedHashMap<String, OutputStream> open_files =
+		new LinkedHashMap<String, OutputStream>(16, 0.75f, true)
+	{
+		protected boolean removeEldestEntry(
+			Map.Entry<String, OutputStream> e)
+		{
+			if (size() > MAX_OPEN) {
+				close(e.getValue());
+				return true;
+			} else
+				return false;
+		}
+	};
+
+	/** Day of each open file */
+	private final LinkedHashMap<String, Long> open_days =
+		new LinkedHashMap<String, Long>();
+
+	/** Job to flush pending events */
+	private class FlushJob extends Job {
+		private final boolean delayed;
+		private FlushJob(boolean d) {
+			super(d ? FLUSH_MS : 0);
+			delayed = d;
+		}
+		public void perform() {
+			flushScheduled(delayed);
+		}
+	}
+
+	/** Create a new vehicle event writer.
+	 * @param saf Sample archive factory.
+	 * @param s Scheduler for flush jobs. */
+	public VehicleEventWriter(SampleArchiveFactory saf, Scheduler s) {
+		factory = saf;
+		scheduler = s;
+	}
+
+	/** Enable or disable binary event files */
+	public synchronized void setBinary(boolean b) {
+		binary = b;
+	}
+
+	/** Get the start of the day containing a time stamp */
+	private long startOfDay(long stamp) {
+		if (stamp < day_start || stamp >= day_end) {
+			Calendar cal = Calendar.getInstance();
+			cal.setTimeInMillis(stamp);
+			cal.set(Calendar.HOUR_OF_DAY, 0);
+			cal.set(Calendar.MINUTE, 0);
+			cal.set(Calendar.SECOND, 0);
+			cal.set(Calendar.MILLISECOND, 0);
+			day_start = cal.getTimeInMillis();
+			cal.add(Calendar.DATE, 1);
+			day_end = cal.getTimeInMillis();
+		}
+		return day_start;
+	}
+
+	/** Add a vehicle event.
+	 * @param sid Sensor ID.
+	 * @param stamp Time stamp of event.
+	 * @param line Formatted vlog line.
+	 * @param duration Vehicle duration (ms); 0 if unknown.
+	 * @param headway Vehicle headway (ms); 0 if unknown.
+	 * @param speed Vehicle speed (mph); 0 if unknown. */
+	public void addEvent(String sid, long stamp, String line,
+		int duration, int headway, int speed)
+	{
+		Job job = null;
+		synchronized (this) {
+			Pending p = lookupPending(sid, stamp);
+			p.text.append(line);
+			n_pending += line.length();
+			if (binary) {
+				writeRecord(p.bin, (int) (stamp - p.day),
+					Math.max(headway, 0),
+					Math.max(Math.min(duration,
+						Short.MAX_VALUE), 0),
+					Math.max(Math.min(speed,
+						Short.MAX_VALUE), 0));
+				n_pending += BIN_RECORD_BYTES;
+			}
+			n_events++;
+			job = checkSchedule();
+		}
+		if (job != null)
+			scheduler.addJob(job);
+	}
+
+	/** Add a gap in vehicle events.
+	 * @param sid Sensor ID.
+	 * @param stamp Time stamp of gap. */
+	public void addGap(String sid, long stamp) {
+		Job job = null;
+		synchronized (this) {
+			Pending p = lookupPending(sid, stamp);
+			p.text.append("*\n");
+			n_pending += 2;
+			if (binary) {
+				writeRecord(p.bin, (int) (stamp - p.day), -1,
+					-1, -1);
+				n_pending += BIN_RECORD_BYTES;
+			}
+			job = checkSchedule();
+		}
+		if (job != null)
+			scheduler.addJob(job);
+	}
+
+	/** Lookup pending events for a sensor and time stamp */
+	private Pending lookupPending(String sid, long stamp) {
+		long day = startOfDay(stamp);
+		String key = sid + '@' + day;
+		Pending p = pending.get(key);
+		if (null == p) {
+			p = new Pending(sid, day);
+			pending.put(key, p);
+		}
+		return p;
+	}
+
+	/** Write a binary event record */
+	static private void writeRecord(ByteArrayOutputStream bin, int time,
+		int headway, int duration, int speed)
+	{
+		writeInt(bin, time);
+		writeInt(bin, headway);
+		bin.write(duration >>> 8);
+		bin.write(duration);
+		bin.write(speed >>> 8);
+		bin.write(speed);
+	}
+
+	/** Write a big-endian int */
+	static private void writeInt(ByteArrayOutputStream bin, int v) {
+		bin.write(v >>> 24);
+		bin.write(v >>> 16);
+		bin.write(v >>> 8);
+		bin.write(v);
+	}
+
+	/** Check if a flush job needs to be scheduled */
+	private Job checkSchedule() {
+		if (n_pending >= FLUSH_BYTES && !now_scheduled) {
+			now_scheduled = true;
+			return new FlushJob(false);
+		} else if (!delay_scheduled) {
+			delay_scheduled = true;
+			return new FlushJob(true);
+		} else
+			return null;
+	}
+
+	/** Perform a scheduled flush */
+	private void flushScheduled(boolean delayed) {
+		synchronized (this) {
+			if (delayed)
+				delay_scheduled = false;
+			else
+				now_scheduled = false;
+		}
+		flush();
+	}
+
+	/** Take all pending events */
+	private synchronized LinkedHashMap<String, Pending> takePending() {
+		LinkedHashMap<String, Pending> p = pending;
+		pending = new LinkedHashMap<String, Pending>();
+		n_pending = 0;
+		return p;
+	}
+
+	/** Flush all pending events to files.  This must only be called on
+	 * the flush scheduler thread. */
+	public void flush() {
+		LinkedHashMap<String, Pending> p = takePending();
+		for (Pending pe: p.values()) {
+			write(pe, TEXT_EXT, pe.text.toString().getBytes(ASCII));
+			if (pe.bin.size() > 0)
+				write(pe, BIN_EXT, pe.bin.toByteArray());
+		}
+		closePastDays(startOfToday());
+		if (VLOG_LOG.isOpen()) {
+			VLOG_LOG.log(toString() + ", open: " +
+				open_files.size());
+		}
+	}
+
+	/** Get the start of the current day */
+	private synchronized long startOfToday() {
+		return startOfDay(TimeSteward.currentTimeMillis());
+	}
+
+	/** Write pending bytes to a file */
+	private void write(Pending pe, String ext, byte[] b) {
+		if (b.length == 0)
+			return;
+		try {
+			OutputStream os = lookupStream(pe, ext);
+			if (os != null)
+				os.write(b);
+		}
+		catch (IOException e) {
+			addError();
+			if (VLOG_LOG.isOpen()) {
+				VLOG_LOG.log("Write failed: " + pe.sensor_id +
+					"." + ext + ", " + e.getMessage());
+			}
+		}
+	}
+
+	/** Lookup an open stream for a sensor file */
+	private OutputStream lookupStream(Pending pe, String ext)
+		throws IOException
+	{
+		String key = pe.sensor_id + '.' + ext + '@' + pe.day;
+		OutputStream os = open_files.get(key);
+		if (null == os) {
+			File file = factory.createFile(pe.sensor_id, ext,
+				pe.day);
+			if (null == file)
+				return null;
+			os = new FileOutputStream(file, true);
+			open_files.put(key, os);
+			open_days.put(key, pe.day);
+		}
+		return os;
+	}
+
+	/** Close all files for days before the current day.  Late events
+	 * for a previous day are still written, but the file is closed so
+	 * that it can be archived. */
+	private void closePastDays(long today) {
+		Iterator<Map.Entry<String, OutputStream>> it =
+			open_files.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, OutputStream> e = it.next();
+			Long day = open_days.get(e.getKey());
+			if (null == day || day < today) {
+				close(e.getValue());
+				it.remove();
+			}
+		}
+		open_days.keySet().retainAll(open_files.keySet());
+	}
+
+	/** Close an output stream */
+	private void close(OutputStream os) {
+		try {
+			os.close();
+		}
+		catch (IOException e) {
+			addError();
+		}
+	}
+
+	/** Add to the count of write errors */
+	private synchronized void addError() {
+		n_errors++;
+	}
+
+	/** Get a string representation of the writer */
+	@Override
+	public synchronized String toString() {
+		return "events: " + n_events + ", errors: " + n_errors +
+			", pending: " + n_pending;
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2016-2018  Minnesota Department of Transportation
+ * Copyright (C) 2016-2019  Minnesota Department of Transportation
  * Copyright (C) 2017       SRF Consulting Group
  *
  * This program is free software; you can redistribute it and/or modify
@@ -171,6 +171,7 @@ abstract public class BasePoller implements DevicePoller {
 		drainQueues();
 		closeChannel();
 		log("DESTROYED");
+		logger.close();
 	}
 
 	/** Drain the queues */
@@ -676,6 +677,20 @@ abstract public class BasePoller implements DevicePoller {
 		}
 	}
 
+	/** Get the number of queued operations */
+	@Override
+	public int getQueueSize() {
+		synchronized (op_set) {
+			return p_queue.size() + r_queue.size();
+		}
+	}
+
+	/** Get operation queue statistics since the previous call */
+	@Override
+	public String getQueueStats() {
+		return "depth " + getQueueSize();
+	}
+
 	/** Check if the poll queue is empty */
 	private boolean isPollEmpty() {
 		synchronized (op_set) {
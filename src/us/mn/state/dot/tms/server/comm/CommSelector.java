@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2016-2017  Minnesota Department of Transportation
+ * Copyright (C) 2016-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -32,6 +32,8 @@ import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.channels.spi.AbstractSelectableChannel;
 import java.util.Iterator;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
 
 /**
  * A comm selector performs non-blocking I/O on a set of channels.
@@ -40,9 +42,18 @@ import java.util.Iterator;
  */
 public class CommSelector implements Closeable {
 
+	/** Duration of one timer tick (ms) */
+	static private final int TICK_MS = 50;
+
+	/** Number of slots in timer wheel */
+	static private final int TIMER_SLOTS = 256;
+
 	/** Selector for non-blocking I/O */
 	private final Selector selector;
 
+	/** Timer wheel for timeouts, advanced by the select loop */
+	private final TimerWheel timers = new TimerWheel(TICK_MS, TIMER_SLOTS);
+
 	/** Create a new comm selector */
 	public CommSelector() throws IOException {
 		selector = Selector.open();
@@ -62,7 +73,8 @@ public class CommSelector implements Closeable {
 
 	/** Select and perform ready I/O */
 	private void doSelect() throws IOException {
-		selector.select();
+		// Only wake up for timer ticks while timeouts are pending
+		selector.select(timers.isEmpty() ? 0 : TICK_MS);
 		Iterator<SelectionKey> it = selector.selectedKeys().iterator();
 		while (it.hasNext()) {
 			handleReady(it.next());
@@ -71,17 +83,69 @@ public class CommSelector implements Closeable {
 		synchronized (this) {
 			// NOTE: this prevents deadlock in register
 		}
+		runTimers();
+	}
+
+	/** Run tasks for all expired timeouts */
+	private void runTimers() {
+		long now = TimeSteward.currentTimeMillis();
+		for (Runnable task: timers.advance(now)) {
+			try {
+				task.run();
+			}
+			catch (RuntimeException e) {
+				logTimerException(e);
+			}
+		}
+	}
+
+	/** Log an exception from a timer task */
+	static private void logTimerException(RuntimeException e) {
+		DebugLog log = DatagramMux.MUX_LOG;
+		if (log.isOpen()) {
+			StackTraceElement[] st = e.getStackTrace();
+			log.log("Timer exception -- " + e +
+				((st.length > 0) ? " at " + st[0] : ""));
+		}
+	}
+
+	/** Schedule a timeout.  The task is run on the selector thread.
+	 * @param task Task to run when the timeout expires.
+	 * @param delay Delay before expiration (ms).
+	 * @return Timeout which can be cancelled. */
+	public TimerWheel.Timeout schedule(Runnable task, long delay) {
+		boolean wake = timers.isEmpty();
+		TimerWheel.Timeout t = timers.schedule(task,
+			TimeSteward.currentTimeMillis(), delay);
+		// Selector may be waiting without a timeout
+		if (wake)
+			selector.wakeup();
+		return t;
 	}
 
 	/** Handle ready events on a selection key */
 	private void handleReady(SelectionKey skey) {
-		BasePoller bp = attachedPoller(skey);
-		if (bp != null)
-			handleReady(skey, bp);
+		Object a = skey.attachment();
+		if (a instanceof BasePoller)
+			handleReady(skey, (BasePoller) a);
+		else if (a instanceof DatagramMux)
+			handleReady(skey, (DatagramMux) a);
 		else
 			handleDisconnect(skey, null);
 	}
 
+	/** Handle ready events on a selection key with datagram mux.  The
+	 * channel is shared, so it is not closed on errors. */
+	private void handleReady(SelectionKey skey, DatagramMux mux) {
+		try {
+			if (skey.isReadable())
+				mux.receive();
+		}
+		catch (IOException e) {
+			mux.handleException(e);
+		}
+	}
+
 	/** Handle ready events on a selection key with poller */
 	private void handleReady(SelectionKey skey, BasePoller bp) {
 		try {
@@ -98,12 +162,6 @@ public class CommSelector implements Closeable {
 		}
 	}
 
-	/** Get the attached poller */
-	private BasePoller attachedPoller(SelectionKey skey) {
-		Object a = skey.attachment();
-		return (a instanceof BasePoller) ? (BasePoller) a : null;
-	}
-
 	/** Handle connect event on a selection key */
 	private void handleConnect(SelectionKey skey, BasePoller bp)
 		throws IOException
@@ -228,13 +286,20 @@ public class CommSelector implements Closeable {
 		return register(sc, SelectionKey.OP_CONNECT, bp);
 	}
 
+	/** Register a shared datagram channel for reading */
+	public SelectionKey registerDatagram(DatagramChannel dc,
+		DatagramMux mux) throws IOException
+	{
+		return register(dc, SelectionKey.OP_READ, mux);
+	}
+
 	/** Register a channel with the selector */
 	private synchronized SelectionKey register(AbstractSelectableChannel ch,
-		int ops, BasePoller bp) throws IOException
+		int ops, Object att) throws IOException
 	{
 		// NOTE: must wake up the selector because locking
 		//       on this is really screwy
 		selector.wakeup();
-		return ch.register(selector, ops, bp);
+		return ch.register(selector, ops, att);
 	}
 }
@@ -47,6 +47,16 @@ public class CommThread<T extends ControllerProperty> {
 	/** Thread group for all comm threads */
 	static private final ThreadGroup GROUP = new ThreadGroup("Comm");
 
+	/** Stack size for new comm threads (bytes); 0 for JVM default */
+	static private long STACK_SIZE = 0;
+
+	/** Set the stack size for new comm threads.  Comm threads spend most
+	 * of their time blocked, so a small stack allows many more of them.
+	 * @param kb Stack size (KiB); 0 for JVM default. */
+	static public void setStackSizeKb(int kb) {
+		STACK_SIZE = Math.max(kb, 0) * 1024L;
+	}
+
 	/** Check if messenger needs reconnect after read timeout failure.
 	 * For a modem link, read timeout should be handled by reconnecting
 	 * the modem.  For a datagram messenger (UDP), a reconnect may be
@@ -120,7 +130,9 @@ public class CommThread<T extends ControllerProperty> {
 		int rt, DebugLog log)
 	{
 		poller = dp;
- 		thread = new Thread(GROUP, "Comm: " + poller.name) {
+ 		thread = new Thread(GROUP, null, "Comm: " + poller.name,
+			STACK_SIZE)
+		{
 			@Override
 			public void run() {
 				doRun();
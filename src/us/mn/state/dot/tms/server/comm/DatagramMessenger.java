@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -137,6 +137,12 @@ public class DatagramMessenger extends Messenger {
 			buffer.put((byte)b);
 		}
 
+		/** Write bytes to the buffer */
+		@Override
+		public void write(byte[] b, int off, int len) {
+			buffer.put(b, off, len);
+		}
+
 		/** Flush packet to datagram */
 		@Override
 		public void flush() throws IOException {
@@ -179,6 +185,23 @@ public class DatagramMessenger extends Messenger {
 			}
 		}
 
+		/** Read bytes from a received datagram */
+		@Override
+		public int read(byte[] b, int off, int len)
+			throws IOException
+		{
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining()) {
+				receivePacket();
+				if (!buffer.hasRemaining())
+					throw new SocketTimeoutException("DIS");
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
 		/** Recvie and buffer a datagram */
 		private void receivePacket() throws IOException {
 			packet.setLength(1024);
@@ -0,0 +1,320 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.HashMap;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * A datagram mux shares one non-blocking UDP channel between many devices.
+ * Received datagrams are read on the selector thread, and matched to an
+ * outstanding request by remote address and request-id.  Each device
+ * (remote address) can have at most one outstanding request; timeouts are
+ * scheduled on the comm selector timer wheel.
+ *
+ * @author Douglas Lau
+ */
+public class DatagramMux implements Closeable {
+
+	/** Decoder for request-id of a datagram */
+	public interface RequestIdDecoder {
+
+		/** Decode the request-id of a datagram.
+		 * @param buf Buffer containing one datagram.  The buffer
+		 *            position must not be changed.
+		 * @return Request-id of the datagram. */
+		int decodeRequestId(ByteBuffer buf) throws IOException;
+	}
+
+	/** Maximum size of a UDP datagram */
+	static private final int MAX_DATAGRAM = 65507;
+
+	/** Mux debug log, also used for comm selector timer errors */
+	static final DebugLog MUX_LOG = new DebugLog("datagram_mux");
+
+	/** One request with a pending response */
+	public class Exchange {
+
+		/** Remote address */
+		private final SocketAddress remote;
+
+		/** Request-id */
+		private final int request_id;
+
+		/** Timeout on timer wheel.  This is scheduled after the
+		 * exchange is pending, so a response may arrive first. */
+		private volatile TimerWheel.Timeout timeout;
+
+		/** Received response (null on timeout) */
+		private byte[] response;
+
+		/** Done flag */
+		private boolean done;
+
+		/** Create a new exchange */
+		private Exchange(SocketAddress ra, int rid) {
+			remote = ra;
+			request_id = rid;
+		}
+
+		/** Complete the exchange */
+		private synchronized void complete(byte[] r) {
+			response = r;
+			done = true;
+			notifyAll();
+		}
+
+		/** Wait for the response.
+		 * @param ms Maximum time to wait (ms).
+		 * @return Response datagram, or null on timeout. */
+		public byte[] await(long ms) throws InterruptedIOException {
+			try {
+				synchronized (this) {
+					long end = TimeSteward.currentTimeMillis()
+					         + ms;
+					while (!done) {
+						long w = end -
+						     TimeSteward.currentTimeMillis();
+						if (w <= 0)
+							break;
+						wait(w);
+					}
+					if (done)
+						return response;
+				}
+			}
+			catch (InterruptedException e) {
+				release(this);
+				throw new InterruptedIOException();
+			}
+			// Timer wheel did not expire in time
+			release(this);
+			return null;
+		}
+	}
+
+	/** Comm selector */
+	private final CommSelector selector;
+
+	/** Request-id decoder */
+	private final RequestIdDecoder decoder;
+
+	/** Shared datagram channel */
+	private final DatagramChannel channel;
+
+	/** Selection key for channel */
+	private final SelectionKey skey;
+
+	/** Receive buffer (only used on selector thread) */
+	private final ByteBuffer rx_buf = ByteBuffer.allocate(MAX_DATAGRAM);
+
+	/** Outstanding exchanges by remote address.  All access must be
+	 * synchronized. */
+	private final HashMap<SocketAddress, Exchange> pending =
+		new HashMap<SocketAddress, Exchange>();
+
+	/** Count of datagrams which did not match a pending request */
+	private int n_unmatched = 0;
+
+	/** Create a new datagram mux.
+	 * @param sel Comm selector.
+	 * @param d Request-id decoder. */
+	public DatagramMux(CommSelector sel, RequestIdDecoder d)
+		throws IOException
+	{
+		selector = sel;
+		decoder = d;
+		channel = DatagramChannel.open();
+		channel.bind(null);
+		channel.configureBlocking(false);
+		skey = selector.registerDatagram(channel, this);
+	}
+
+	/** Close the mux */
+	@Override
+	public void close() throws IOException {
+		skey.cancel();
+		channel.close();
+	}
+
+	/** Get the local address of the shared channel */
+	public SocketAddress getLocalAddress() throws IOException {
+		return channel.getLocalAddress();
+	}
+
+	/** Get the number of outstanding requests */
+	public int getPendingCount() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	/** Get the count of datagrams which did not match a request */
+	public int getUnmatchedCount() {
+		synchronized (pending) {
+			return n_unmatched;
+		}
+	}
+
+	/** Send a request datagram.  If the device already has an outstanding
+	 * request, wait until it completes.
+	 * @param remote Remote address of device.
+	 * @param pkt Buffer containing request datagram.
+	 * @param timeout Receive timeout (ms).
+	 * @return Exchange to wait for the response. */
+	public Exchange send(SocketAddress remote, ByteBuffer pkt,
+		int timeout) throws IOException
+	{
+		final Exchange ex = new Exchange(remote,
+			decoder.decodeRequestId(pkt));
+		acquire(ex, timeout);
+		ex.timeout = selector.schedule(new Runnable() {
+			public void run() {
+				expire(ex);
+			}
+		}, timeout);
+		try {
+			if (channel.send(pkt, remote) == 0)
+				throw new IOException("SEND BUFFER FULL");
+		}
+		catch (IOException e) {
+			release(ex);
+			throw e;
+		}
+		return ex;
+	}
+
+	/** Acquire the device slot for an exchange */
+	private void acquire(Exchange ex, int timeout) throws IOException {
+		long end = TimeSteward.currentTimeMillis() + timeout;
+		try {
+			synchronized (pending) {
+				while (pending.containsKey(ex.remote)) {
+					long w = end -
+					     TimeSteward.currentTimeMillis();
+					if (w <= 0) {
+						throw new SocketTimeoutException(
+							"DEVICE BUSY");
+					}
+					pending.wait(w);
+				}
+				pending.put(ex.remote, ex);
+			}
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	/** Remove an exchange from the pending map.
+	 * @return true if the exchange was pending. */
+	private boolean remove(Exchange ex) {
+		synchronized (pending) {
+			if (pending.get(ex.remote) == ex) {
+				pending.remove(ex.remote);
+				pending.notifyAll();
+				return true;
+			} else
+				return false;
+		}
+	}
+
+	/** Release an exchange without a response */
+	public void release(Exchange ex) {
+		if (remove(ex)) {
+			cancelTimeout(ex);
+			ex.complete(null);
+		}
+	}
+
+	/** Cancel the timeout of an exchange, if it has been scheduled */
+	private void cancelTimeout(Exchange ex) {
+		TimerWheel.Timeout t = ex.timeout;
+		if (t != null)
+			t.cancel();
+	}
+
+	/** Expire an exchange (on selector thread) */
+	private void expire(Exchange ex) {
+		if (remove(ex)) {
+			if (MUX_LOG.isOpen())
+				MUX_LOG.log("TIMEOUT " + ex.remote);
+			ex.complete(null);
+		}
+	}
+
+	/** Receive all available datagrams (on selector thread) */
+	public void receive() throws IOException {
+		while (true) {
+			rx_buf.clear();
+			SocketAddress remote = channel.receive(rx_buf);
+			if (null == remote)
+				break;
+			rx_buf.flip();
+			dispatch(remote, rx_buf);
+		}
+	}
+
+	/** Dispatch a received datagram to its exchange */
+	private void dispatch(SocketAddress remote, ByteBuffer buf) {
+		Exchange ex = lookup(remote, buf);
+		if (ex != null && remove(ex)) {
+			cancelTimeout(ex);
+			byte[] r = new byte[buf.remaining()];
+			buf.get(r);
+			ex.complete(r);
+		} else {
+			synchronized (pending) {
+				n_unmatched++;
+			}
+			if (MUX_LOG.isOpen())
+				MUX_LOG.log("UNMATCHED " + remote);
+		}
+	}
+
+	/** Lookup the exchange for a received datagram */
+	private Exchange lookup(SocketAddress remote, ByteBuffer buf) {
+		int rid;
+		try {
+			rid = decoder.decodeRequestId(buf);
+		}
+		catch (IOException e) {
+			if (MUX_LOG.isOpen()) {
+				MUX_LOG.log("INVALID " + remote + ": " +
+					e.getMessage());
+			}
+			return null;
+		}
+		synchronized (pending) {
+			Exchange ex = pending.get(remote);
+			return (ex != null && ex.request_id == rid) ? ex : null;
+		}
+	}
+
+	/** Handle an exception on the shared channel */
+	public void handleException(IOException e) {
+		if (MUX_LOG.isOpen())
+			MUX_LOG.log("Exception -- " + e.getMessage());
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2014-2018  Minnesota Department of Transportation
+ * Copyright (C) 2014-2019  Minnesota Department of Transportation
  * Copyright (C) 2017       SRF Consulting Group
  *
  * This program is free software; you can redistribute it and/or modify
@@ -40,6 +40,12 @@ public interface DevicePoller {
 	/** Check if the poller is currently connected */
 	boolean isConnected();
 
+	/** Get the number of queued operations */
+	int getQueueSize();
+
+	/** Get operation queue statistics since the previous call */
+	String getQueueStats();
+
 	/** Get max seconds an idle connection should be left open
 	 * (0 indicates indefinite). */
 	int getIdleDisconnectSec();
@@ -0,0 +1,191 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import us.mn.state.dot.tms.server.ControllerImpl;
+
+/**
+ * A MuxMessenger polls a field controller over UDP using a shared datagram
+ * mux instead of its own socket.  Each flush of the output stream sends one
+ * request datagram; the input stream waits for the matching response.
+ *
+ * @author Douglas Lau
+ */
+public class MuxMessenger extends Messenger {
+
+	/** Create a messenger, using the datagram mux for UDP.
+	 * @param mux Shared datagram mux.
+	 * @param scheme Default URI scheme.
+	 * @param uri URI of remote host.
+	 * @param rt Receive timeout (ms). */
+	static public Messenger create(DatagramMux mux, URI scheme, String uri,
+		int rt) throws MessengerException, IOException
+	{
+		URI u = createURI(scheme, uri);
+		if ("udp".equals(u.getScheme()))
+			return new MuxMessenger(mux, createSocketAddress(u), rt);
+		else
+			return Messenger.create(scheme, uri, rt);
+	}
+
+	/** Extra time to wait for timer wheel expiration (ms) */
+	static private final int EXPIRE_MARGIN_MS = 1000;
+
+	/** Shared datagram mux */
+	private final DatagramMux mux;
+
+	/** Remote address */
+	private final SocketAddress remote;
+
+	/** Receive timeout (ms) */
+	private final int timeout;
+
+	/** Input stream */
+	private final MuxInputStream input = new MuxInputStream();
+
+	/** Output stream */
+	private final MuxOutputStream output = new MuxOutputStream();
+
+	/** Exchange of last request sent (null if none pending) */
+	private DatagramMux.Exchange exchange;
+
+	/** Create a new mux messenger.
+	 * @param m Shared datagram mux.
+	 * @param ra Remote socket address.
+	 * @param rt Receive timeout (ms). */
+	public MuxMessenger(DatagramMux m, SocketAddress ra, int rt) {
+		mux = m;
+		remote = ra;
+		timeout = rt;
+	}
+
+	/** Get the input stream */
+	@Override
+	public InputStream getInputStream(String path) {
+		return input;
+	}
+
+	/** Get the output stream */
+	@Override
+	public OutputStream getOutputStream(ControllerImpl c) {
+		return output;
+	}
+
+	/** Drain any bytes from the input stream */
+	@Override
+	public void drain() {
+		input.clear();
+	}
+
+	/** Close the messenger, releasing any pending request */
+	@Override
+	public void close() {
+		releaseExchange();
+	}
+
+	/** Release the pending exchange */
+	private void releaseExchange() {
+		DatagramMux.Exchange ex = exchange;
+		exchange = null;
+		if (ex != null)
+			mux.release(ex);
+	}
+
+	/** Output stream for sending request datagrams */
+	private class MuxOutputStream extends ByteArrayOutputStream {
+
+		/** Send buffered bytes as one datagram */
+		@Override
+		public void flush() throws IOException {
+			ByteBuffer pkt = ByteBuffer.wrap(buf, 0, count);
+			releaseExchange();
+			try {
+				exchange = mux.send(remote, pkt, timeout);
+			}
+			finally {
+				reset();
+			}
+		}
+	}
+
+	/** Input stream for receiving response datagrams */
+	private class MuxInputStream extends InputStream {
+
+		/** Buffer of received datagram */
+		private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+		/** Clear the buffer */
+		private void clear() {
+			buffer = ByteBuffer.allocate(0);
+		}
+
+		/** Read a byte from a received datagram */
+		@Override
+		public int read() throws IOException {
+			if (!buffer.hasRemaining())
+				receive();
+			return buffer.get() & 0xFF;
+		}
+
+		/** Read bytes from a received datagram */
+		@Override
+		public int read(byte[] b, int off, int len)
+			throws IOException
+		{
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				receive();
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		/** Wait for the response to the pending request */
+		private void receive() throws IOException {
+			DatagramMux.Exchange ex = exchange;
+			exchange = null;
+			byte[] r = (ex != null)
+			         ? ex.await(timeout + EXPIRE_MARGIN_MS)
+			         : null;
+			if (null == r || r.length == 0)
+				throw new SocketTimeoutException("TIMEOUT");
+			buffer = ByteBuffer.wrap(r);
+		}
+
+		/** Get the number of available bytes */
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+		/** Skip bytes in the input stream */
+		@Override
+		public long skip(long n) {
+			int s = (int) Math.min(Math.max(n, 0),
+				buffer.remaining());
+			buffer.position(buffer.position() + s);
+			return s;
+		}
+	}
+}
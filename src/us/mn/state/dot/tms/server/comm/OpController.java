@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2017  Minnesota Department of Transportation
+ * Copyright (C) 2005-2019  Minnesota Department of Transportation
  * Copyright (C) 2012  Iteris Inc.
  * Copyright (C) 2014-2015  AHMCT, University of California
  *
@@ -176,6 +176,15 @@ abstract public class OpController<T extends ControllerProperty> {
 		       ((OpController) o).controller == controller;
 	}
 
+	/** Get a hash code consistent with equals.  Subclasses which
+	 * override equals must only consider operations of the same class
+	 * (and controller) equal. */
+	@Override
+	public int hashCode() {
+		return 31 * getClass().hashCode() +
+			System.identityHashCode(controller);
+	}
+
 	/** Get a string description of the operation */
 	@Override
 	public final String toString() {
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2014  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -51,6 +51,15 @@ abstract public class OpDevice<T extends ControllerProperty>
 		       ((OpDevice)o).device == device;
 	}
 
+	/** Get a hash code consistent with equals.  Subclasses which
+	 * override equals must only consider operations of the same class
+	 * (and device) equal. */
+	@Override
+	public int hashCode() {
+		return 31 * getClass().hashCode() +
+			System.identityHashCode(device);
+	}
+
 	/** Phase to acquire exclusive ownership of the device */
 	protected class AcquireDevice extends Phase<T> {
 
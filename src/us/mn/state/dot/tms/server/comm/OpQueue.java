@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2018  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  * Copyright (C) 2017       SRF Consulting Group
  *
  * This program is free software; you can redistribute it and/or modify
@@ -15,12 +15,26 @@
  */
 package us.mn.state.dot.tms.server.comm;
 
-import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import us.mn.state.dot.sched.TimeSteward;
 
 /**
  * A prioritized queue which sorts Operation objects by their priority
  * class.  Operations with the same priority are sorted FIFO.
  *
+ * Each priority level has its own FIFO bucket, and queued operations are
+ * indexed by hash code, so enqueue, duplicate checks and next do not need to
+ * scan the whole queue.
+ *
+ * The queue is guarded by a ReentrantLock instead of the object monitor, so
+ * a comm thread waiting for the next operation does not hold a monitor.
+ *
  * @author Douglas Lau
  * @author John L. Stanley
  */
@@ -29,27 +43,55 @@ public final class OpQueue<T extends ControllerProperty> {
 	/** Inner class for nodes in the queue */
 	static private final class Node<T extends ControllerProperty> {
 		final OpController<T> operation;
-		final PriorityLevel priority;
-		Node<T> next;
-		Node(OpController<T> op, Node<T> n) {
+		final long queued;
+		Node(OpController<T> op) {
 			operation = op;
-			priority = op.getPriority();
-			next = n;
+			queued = TimeSteward.currentTimeMillis();
 		}
 	}
 
-	/** Front node in the queue */
-	private Node<T> front = null;
+	/** Number of priority levels */
+	static private final int N_LEVELS = PriorityLevel.values().length;
+
+	/** Lock for queue state */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Condition signalled when an operation is added */
+	private final Condition added = lock.newCondition();
+
+	/** FIFO buckets for each priority level */
+	private final ArrayList<ArrayDeque<Node<T>>> buckets =
+		new ArrayList<ArrayDeque<Node<T>>>(N_LEVELS);
+
+	/** Index of queued operations (lists of equal operations) */
+	private final HashMap<OpController<T>, ArrayList<OpController<T>>>
+		index = new HashMap<OpController<T>,
+		ArrayList<OpController<T>>>();
+
+	/** Number of queued operations (not including work) */
+	private int n_queued = 0;
 
 	/** Current working operation.  This is needed so that an "equal"
 	 * operation cannot be added while work is in progress. */
 	private OpController<T> work = null;
 
 	/** Flag to tell when the poller is closing */
-	private boolean closing = false;
+	private volatile boolean closing = false;
+
+	/** Maximum queue depth since stats were reset */
+	private int max_depth = 0;
+
+	/** Maximum time an operation waited in queue since stats were reset */
+	private long max_wait_ms = 0;
+
+	/** Create a new operation queue */
+	public OpQueue() {
+		for (int i = 0; i < N_LEVELS; i++)
+			buckets.add(new ArrayDeque<Node<T>>());
+	}
 
 	/** Close the queue for new operations */
-	public synchronized void close() {
+	public void close() {
 		closing = true;
 	}
 
@@ -59,18 +101,41 @@ public final class OpQueue<T extends ControllerProperty> {
 	}
 
 	/** Check if the queue is empty */
-	public synchronized boolean isEmpty() {
-		return (work == null) && (front == null);
+	public boolean isEmpty() {
+		lock.lock();
+		try {
+			return (work == null) && (n_queued == 0);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Get the number of operations in the queue (including work) */
+	public int size() {
+		lock.lock();
+		try {
+			return (work != null) ? n_queued + 1 : n_queued;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/** Enqueue a new operation */
-	public synchronized boolean enqueue(OpController<T> op) {
-		if (shouldAdd(op)) {
-			op.begin();
-			add(op);
-			return true;
-		} else
-			return false;
+	public boolean enqueue(OpController<T> op) {
+		lock.lock();
+		try {
+			if (shouldAdd(op)) {
+				op.begin();
+				add(op);
+				return true;
+			} else
+				return false;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/** Check if an operation should be added to the queue */
@@ -82,42 +147,65 @@ public final class OpQueue<T extends ControllerProperty> {
 	private boolean contains(OpController<T> op) {
 		if (op.equals(work) && !work.isDone())
 			return true;
-		Node<T> node = front;
-		while (node != null) {
-			OpController<T> nop = node.operation;
-			if (op.equals(nop) && !nop.isDone())
-				return true;
-			node = node.next;
+		ArrayList<OpController<T>> ops = index.get(op);
+		if (ops != null) {
+			for (OpController<T> nop: ops) {
+				if (op.equals(nop) && !nop.isDone())
+					return true;
+			}
 		}
 		return false;
 	}
 
 	/** Add an operation to the queue */
 	private void add(OpController<T> op) {
-		PriorityLevel priority = op.getPriority();
-		Node<T> prev = null;
-		Node<T> node = front;
-		while (node != null) {
-			if (priority.ordinal() < node.priority.ordinal())
-				break;
-			prev = node;
-			node = node.next;
-		}
-		node = new Node<T>(op, node);
-		if (prev == null)
-			front = node;
-		else
-			prev.next = node;
-		notify();
+		bucket(op.getPriority()).addLast(new Node<T>(op));
+		ArrayList<OpController<T>> ops = index.get(op);
+		if (null == ops) {
+			ops = new ArrayList<OpController<T>>(1);
+			index.put(op, ops);
+		}
+		ops.add(op);
+		n_queued++;
+		max_depth = Math.max(max_depth, n_queued);
+		added.signal();
+	}
+
+	/** Get the bucket for a priority level */
+	private ArrayDeque<Node<T>> bucket(PriorityLevel p) {
+		return buckets.get(p.ordinal());
+	}
+
+	/** Remove an operation from the index */
+	private void unindex(OpController<T> op) {
+		ArrayList<OpController<T>> ops = index.get(op);
+		if (ops != null) {
+			Iterator<OpController<T>> it = ops.iterator();
+			while (it.hasNext()) {
+				if (it.next() == op) {
+					it.remove();
+					break;
+				}
+			}
+			if (ops.isEmpty())
+				index.remove(op);
+		}
+		n_queued--;
 	}
 
 	/** Requeue an in-progress operation */
-	public synchronized boolean requeue(OpController<T> op) {
-		if ((remove(op) == op) && isOpen()) {
-			add(op);
-			return true;
-		} else
-			return false;
+	public boolean requeue(OpController<T> op) {
+		lock.lock();
+		try {
+			if ((remove(op) == op) && isOpen()) {
+				add(op);
+				return true;
+			} else
+				return false;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/** Remove an operation from the queue */
@@ -126,18 +214,30 @@ public final class OpQueue<T extends ControllerProperty> {
 			work = null;
 			return op;
 		}
-		Node<T> prev = null;
-		Node<T> node = front;
-		while (node != null) {
-			if (node.operation == op) {
-				if (prev == null)
-					front = node;
-				else
-					prev.next = node;
-				return op;
+		for (ArrayDeque<Node<T>> b: buckets) {
+			Iterator<Node<T>> it = b.iterator();
+			while (it.hasNext()) {
+				if (it.next().operation == op) {
+					it.remove();
+					unindex(op);
+					return op;
+				}
+			}
+		}
+		return null;
+	}
+
+	/** Take the operation at the front of the queue */
+	private OpController<T> takeFront() {
+		for (ArrayDeque<Node<T>> b: buckets) {
+			Node<T> node = b.pollFirst();
+			if (node != null) {
+				unindex(node.operation);
+				long w = TimeSteward.currentTimeMillis() -
+					node.queued;
+				max_wait_ms = Math.max(max_wait_ms, w);
+				return node.operation;
 			}
-			prev = node;
-			node = node.next;
 		}
 		return null;
 	}
@@ -149,40 +249,70 @@ public final class OpQueue<T extends ControllerProperty> {
 	 * @return Operation at front of queue.
 	 * @throws InterruptedException If thread is interrupted or idle timeout
 	 *                              expires. */
-	public synchronized OpController<T> next(long idle_ms)
-		throws InterruptedException
-	{
-		work = null;
-		while (null == front) {
-			wait(idle_ms);
-			if (idle_ms > 0 && null == front)
-				throw new InterruptedException("Idle timeout");
+	public OpController<T> next(long idle_ms) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			work = null;
+			while (0 == n_queued) {
+				if (idle_ms > 0) {
+					added.await(idle_ms,
+						TimeUnit.MILLISECONDS);
+					if (0 == n_queued) {
+						throw new InterruptedException(
+							"Idle timeout");
+					}
+				} else
+					added.await();
+			}
+			work = takeFront();
+			return work;
+		}
+		finally {
+			lock.unlock();
 		}
-		work = front.operation;
-		front = front.next;
-		return work;
 	}
 
 	/** Get the next operation from the queue (and remove it).
 	 * If there's no op in the queue, immediately return null. */
-	public synchronized OpController<T> tryNext() {
-		OpController<T> op = null;
-		if (front != null) {
-			op = front.operation;
-			front = front.next;
+	public OpController<T> tryNext() {
+		lock.lock();
+		try {
+			return takeFront();
+		}
+		finally {
+			lock.unlock();
 		}
-		return op;
 	}
 
 	/** Do something to each operation in the queue */
-	public synchronized boolean forEach(OpHandler<T> handler) {
-		OpController<T> w = work;
-		boolean flag = (w != null) ? handler.handle(w) : true;
-		Node<T> node = front;
-		while (node != null) {
-			flag &= handler.handle(node.operation);
-			node = node.next;
-		}
-		return flag;
+	public boolean forEach(OpHandler<T> handler) {
+		lock.lock();
+		try {
+			OpController<T> w = work;
+			boolean flag = (w != null) ? handler.handle(w) : true;
+			for (ArrayDeque<Node<T>> b: buckets) {
+				for (Node<T> node: b)
+					flag &= handler.handle(node.operation);
+			}
+			return flag;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Get queue statistics, and reset maximum depth and wait time */
+	public String takeStats() {
+		lock.lock();
+		try {
+			String s = "depth " + n_queued + " (max " + max_depth +
+				"), wait max " + max_wait_ms + " ms";
+			max_depth = n_queued;
+			max_wait_ms = 0;
+			return s;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2014-2018  Minnesota Department of Transportation
+ * Copyright (C) 2014-2019  Minnesota Department of Transportation
  * Copyright (C) 2015-2017  SRF Consulting Group
  *
  * This program is free software; you can redistribute it and/or modify
@@ -169,6 +169,18 @@ public class ThreadedPoller<T extends ControllerProperty>
 		return (c_thread != null) ? c_thread.getStatus() : "";
 	}
 
+	/** Get the number of queued operations */
+	@Override
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/** Get operation queue statistics since the previous call */
+	@Override
+	public String getQueueStats() {
+		return queue.takeStats();
+	}
+
 	/** Check if the poller is currently connected */
 	@Override
 	public synchronized boolean isConnected() {
@@ -0,0 +1,158 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashed timer wheel for scheduling many timeouts cheaply.  Each timeout
+ * is put into a slot by its expire tick.  Advancing the wheel only visits
+ * slots which have been passed, so scheduling and cancelling are constant
+ * time.  Timeouts longer than one revolution stay in their slot until the
+ * expire tick is reached.
+ *
+ * @author Douglas Lau
+ */
+public class TimerWheel {
+
+	/** A scheduled timeout */
+	public class Timeout {
+
+		/** Task to run on expiration */
+		private final Runnable task;
+
+		/** Expire tick */
+		private final long expire;
+
+		/** Done flag (expired or cancelled) */
+		private boolean done;
+
+		/** Create a new timeout */
+		private Timeout(Runnable t, long e) {
+			task = t;
+			expire = e;
+		}
+
+		/** Cancel the timeout.
+		 * @return true if the timeout had not expired. */
+		public boolean cancel() {
+			synchronized (TimerWheel.this) {
+				if (done)
+					return false;
+				done = true;
+				n_pending--;
+				return true;
+			}
+		}
+	}
+
+	/** Duration of one tick (ms) */
+	private final int tick_ms;
+
+	/** Slots of timeouts, indexed by expire tick */
+	private final ArrayList<ArrayList<Timeout>> slots;
+
+	/** Last tick which was advanced */
+	private long last_tick = -1;
+
+	/** Number of pending timeouts */
+	private int n_pending = 0;
+
+	/** Create a new timer wheel.
+	 * @param t Duration of one tick (ms).
+	 * @param n Number of slots. */
+	public TimerWheel(int t, int n) {
+		if (t < 1 || n < 1)
+			throw new IllegalArgumentException();
+		tick_ms = t;
+		slots = new ArrayList<ArrayList<Timeout>>(n);
+		for (int i = 0; i < n; i++)
+			slots.add(new ArrayList<Timeout>());
+	}
+
+	/** Get the duration of one tick (ms) */
+	public int getTickMs() {
+		return tick_ms;
+	}
+
+	/** Check if there are no pending timeouts */
+	public synchronized boolean isEmpty() {
+		return n_pending == 0;
+	}
+
+	/** Get the number of pending timeouts */
+	public synchronized int size() {
+		return n_pending;
+	}
+
+	/** Schedule a timeout.
+	 * @param task Task to run when the timeout expires.
+	 * @param now Current time (ms).
+	 * @param delay Delay before expiration (ms).
+	 * @return Timeout which can be cancelled. */
+	public synchronized Timeout schedule(Runnable task, long now,
+		long delay)
+	{
+		if (last_tick < 0)
+			last_tick = now / tick_ms;
+		// Round up, so a timeout never expires early
+		long e = (now + Math.max(delay, 0) + tick_ms - 1) / tick_ms;
+		Timeout t = new Timeout(task, Math.max(e, last_tick + 1));
+		slots.get(slotIndex(t.expire)).add(t);
+		n_pending++;
+		return t;
+	}
+
+	/** Get the slot index for a tick */
+	private int slotIndex(long tick) {
+		return (int) (tick % slots.size());
+	}
+
+	/** Advance the wheel to the current time.
+	 * @param now Current time (ms).
+	 * @return Tasks of all expired timeouts, to be run by the caller. */
+	public synchronized List<Runnable> advance(long now) {
+		ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+		long tick = now / tick_ms;
+		if (last_tick < 0)
+			last_tick = tick;
+		long n = Math.min(tick - last_tick, slots.size());
+		for (long i = 1; i <= n; i++)
+			expireSlot(slots.get(slotIndex(last_tick + i)), tick,
+				tasks);
+		last_tick = Math.max(last_tick, tick);
+		return tasks;
+	}
+
+	/** Expire all timeouts in a slot up to a tick */
+	private void expireSlot(ArrayList<Timeout> slot, long tick,
+		ArrayList<Runnable> tasks)
+	{
+		Iterator<Timeout> it = slot.iterator();
+		while (it.hasNext()) {
+			Timeout t = it.next();
+			if (t.done)
+				it.remove();
+			else if (t.expire <= tick) {
+				t.done = true;
+				n_pending--;
+				tasks.add(t.task);
+				it.remove();
+			}
+		}
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2017  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,15 +16,21 @@ package us.mn.state.dot.tms.server.comm.ntcip;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.tms.CommProtocol;
 import us.mn.state.dot.tms.server.ControllerImpl;
 import us.mn.state.dot.tms.server.comm.CommMessage;
+import us.mn.state.dot.tms.server.comm.CommSelector;
 import us.mn.state.dot.tms.server.comm.CommThread;
+import us.mn.state.dot.tms.server.comm.DatagramMux;
 import us.mn.state.dot.tms.server.comm.Messenger;
 import us.mn.state.dot.tms.server.comm.MessengerException;
+import us.mn.state.dot.tms.server.comm.MuxMessenger;
 import us.mn.state.dot.tms.server.comm.OpController;
 import us.mn.state.dot.tms.server.comm.OpQueue;
+import us.mn.state.dot.tms.server.comm.SelectorThread;
+import us.mn.state.dot.tms.server.comm.snmp.AgentCaps;
 import us.mn.state.dot.tms.server.comm.snmp.SNMP;
 
 /**
@@ -34,6 +40,31 @@ import us.mn.state.dot.tms.server.comm.snmp.SNMP;
  */
 public class NtcipThread extends CommThread {
 
+	/** Shared datagram mux for all SNMP over UDP (NTCIP_A) links */
+	static private DatagramMux SNMP_MUX;
+
+	/** Get the shared SNMP datagram mux */
+	static private synchronized DatagramMux getSnmpMux()
+		throws IOException
+	{
+		if (null == SNMP_MUX) {
+			CommSelector sel = SelectorThread.getSelector();
+			if (null == sel)
+				throw new IOException("No CommSelector");
+			SNMP_MUX = new DatagramMux(sel,
+				new DatagramMux.RequestIdDecoder()
+			{
+				private final SNMP snmp = new SNMP();
+				public int decodeRequestId(ByteBuffer buf)
+					throws IOException
+				{
+					return snmp.decodeRequestId(buf);
+				}
+			});
+		}
+		return SNMP_MUX;
+	}
+
 	/** Communication protocol */
 	private final CommProtocol protocol;
 
@@ -49,11 +80,14 @@ public class NtcipThread extends CommThread {
 		protocol = cp;
 	}
 
-	/** Create a messenger */
+	/** Create a messenger.  UDP links share one datagram mux, instead of
+	 * a socket for each link. */
 	@Override
 	protected Messenger createMessenger(URI s, String u, int rt)
 		throws MessengerException, IOException
 	{
+		if (protocol == CommProtocol.NTCIP_A)
+			return MuxMessenger.create(getSnmpMux(), s, u, rt);
 		Messenger m = Messenger.create(s, u, rt);
 		if (protocol == CommProtocol.NTCIP_B)
 			return new HDLCMessenger(m);
@@ -71,6 +105,7 @@ public class NtcipThread extends CommThread {
 	{
 		ControllerImpl c = o.getController();
 		return snmp.new Message(m.getOutputStream(c),
-			m.getInputStream("", c), c.getPassword());
+			m.getInputStream("", c), c.getPassword(),
+			AgentCaps.lookup(c.getName()));
 	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2018  Minnesota Department of Transportation
+ * Copyright (C) 2018-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -36,6 +36,9 @@ import us.mn.state.dot.tms.utils.Base64;
  */
 public class OpQueryDMSFonts extends OpDMS {
 
+	/** Maximum number of characters to query in one phase poll */
+	static private final int CHARS_PER_POLL = 16;
+
 	/** Directory to store font files */
 	static private final String FONT_FILE_DIR = "/var/log/iris/";
 
@@ -202,7 +205,7 @@ public class OpQueryDMSFonts extends OpDMS {
 			"width, pixels) FROM stdin;");
 	}
 
-	/** Get phase to query the next character in a font */
+	/** Get phase to query the next characters in a font */
 	private Phase nextCharacter(String name, int r, int cr) {
 		if (cr < max_characters.getInteger())
 			return new QueryCharacter(name, r, cr + 1);
@@ -218,7 +221,7 @@ public class OpQueryDMSFonts extends OpDMS {
 		writer.println();
 	}
 
-	/** Phase to query one character */
+	/** Phase to query characters */
 	private class QueryCharacter extends Phase {
 
 		/** Font name */
@@ -227,33 +230,41 @@ public class OpQueryDMSFonts extends OpDMS {
 		/** Font row */
 		private final int row;
 
-		/** Character row */
+		/** First character row */
 		private final int crow;
 
-		/** Create a new add character phase */
+		/** Create a new query character phase */
 		public QueryCharacter(String n, int r, int cr) {
 			name = n;
 			row = r;
 			crow = cr;
 		}
 
-		/** Add a character to the font table */
+		/** Query characters from the font table.  Several characters
+		 * are packed into as few requests as the sign allows. */
 		@SuppressWarnings("unchecked")
 		protected Phase poll(CommMessage mess) throws IOException {
-			ASN1Integer char_width = characterWidth.makeInt(row,
-				crow);
-			ASN1OctetString char_bitmap = new ASN1OctetString(
-				characterBitmap.node, row, crow);
-			mess.add(char_width);
-			mess.add(char_bitmap);
+			int n_chars = Math.min(CHARS_PER_POLL,
+				max_characters.getInteger() - crow + 1);
+			ASN1Integer[] widths = new ASN1Integer[n_chars];
+			ASN1OctetString[] bitmaps = new ASN1OctetString[n_chars];
+			for (int i = 0; i < n_chars; i++) {
+				widths[i] = characterWidth.makeInt(row,
+					crow + i);
+				bitmaps[i] = new ASN1OctetString(
+					characterBitmap.node, row, crow + i);
+				mess.add(widths[i]);
+				mess.add(bitmaps[i]);
+			}
 			mess.queryProps();
-			logQuery(char_width);
-			logQuery(char_bitmap);
-			if (char_width.getInteger() > 0) {
-				write_char(name, crow, char_width.getInteger(),
-				           char_bitmap);
+			for (int i = 0; i < n_chars; i++) {
+				logQuery(widths[i]);
+				logQuery(bitmaps[i]);
+				int w = widths[i].getInteger();
+				if (w > 0)
+					write_char(name, crow + i, w, bitmaps[i]);
 			}
-			return nextCharacter(name, row, crow);
+			return nextCharacter(name, row, crow + n_chars - 1);
 		}
 	}
 
@@ -80,6 +80,10 @@ public class OpSendDMSFonts extends OpDMS {
 			fontStatus.node, row);
 	}
 
+	/** Maximum number of characters to add in one phase poll.  These are
+	 * packed into as few requests as the sign allows. */
+	static private final int CHARS_PER_POLL = 16;
+
 	/** Time in seconds to allow for verifying font status */
 	static private final int VERIFY_STATUS_SECS = 5;
 
@@ -155,6 +159,35 @@ public class OpSendDMSFonts extends OpDMS {
 	/** Phase to query all font numbers */
 	private class QueryFontNumbers extends Phase {
 
+		/** Query the font numbers for all rows in font table */
+		@SuppressWarnings("unchecked")
+		protected Phase poll(CommMessage mess) throws IOException {
+			int n_fonts = num_fonts.getInteger();
+			ASN1Integer[] numbers = new ASN1Integer[n_fonts];
+			for (int row = 1; row <= n_fonts; row++) {
+				numbers[row - 1] = fontNumber.makeInt(row);
+				mess.add(numbers[row - 1]);
+			}
+			try {
+				mess.queryProps();
+			}
+			catch (NoSuchName e) {
+				// Some vendors respond with NoSuchName for
+				// invalid fonts; query one row at a time
+				return new QueryFontNumber();
+			}
+			for (int row = 1; row <= n_fonts; row++) {
+				ASN1Integer number = numbers[row - 1];
+				logQuery(number);
+				addRow(row, fontNum(row, number.getInteger()));
+			}
+			return firstFontPhase();
+		}
+	}
+
+	/** Phase to query font numbers one row at a time */
+	private class QueryFontNumber extends Phase {
+
 		/** Row to query */
 		private int row = 1;
 
@@ -539,9 +572,6 @@ public class OpSendDMSFonts extends OpDMS {
 		/** Iterator for remaining glyphs */
 		private final Iterator<Glyph> chars;
 
-		/** Current glyph */
-		private Glyph glyph;
-
 		/** Count of characters added */
 		private int count = 0;
 
@@ -549,34 +579,25 @@ public class OpSendDMSFonts extends OpDMS {
 		public AddCharacter(FontRow fr, Collection<Glyph> c) {
 			frow = fr;
 			chars = c.iterator();
-			if (chars.hasNext())
-				glyph = chars.next();
 		}
 
-		/** Add a character to the font table */
-		@SuppressWarnings("unchecked")
+		/** Add characters to the font table.  Each character can be
+		 * set independently, so the set-request may be split. */
 		protected Phase poll(CommMessage mess) throws IOException {
-			int row = frow.row;
-			int code_point = glyph.getCodePoint();
-			byte[] pixels = Base64.decode(glyph.getPixels());
-			ASN1Integer char_width = characterWidth.makeInt(row,
-				code_point);
-			ASN1OctetString char_bitmap = new ASN1OctetString(
-				characterBitmap.node, row, code_point);
-			char_width.setInteger(glyph.getWidth());
-			char_bitmap.setOctetString(pixels);
-			mess.add(char_width);
-			mess.add(char_bitmap);
-			logStore(char_width);
-			logStore(char_bitmap);
+			((SNMP.Message) mess).setSplitSets(true);
+			int c = count;
+			for (int i = 0; i < CHARS_PER_POLL && chars.hasNext();
+			     i++)
+			{
+				addCharacter(mess, frow.row, chars.next());
+				count++;
+			}
 			mess.storeProps();
-			count++;
-			if (count % 20 == 0 && !controller.isFailed())
+			if (c / 20 != count / 20 && !controller.isFailed())
 				setSuccess(true);
-			if (chars.hasNext()) {
-				glyph = chars.next();
+			if (chars.hasNext())
 				return this;
-			} else {
+			else {
 				if (version2)
 					return new ValidateFontV2(frow);
 				else
@@ -585,6 +606,25 @@ public class OpSendDMSFonts extends OpDMS {
 		}
 	}
 
+	/** Add one character to a message */
+	@SuppressWarnings("unchecked")
+	private void addCharacter(CommMessage mess, int row, Glyph glyph)
+		throws IOException
+	{
+		int code_point = glyph.getCodePoint();
+		byte[] pixels = Base64.decode(glyph.getPixels());
+		ASN1Integer char_width = characterWidth.makeInt(row,
+			code_point);
+		ASN1OctetString char_bitmap = new ASN1OctetString(
+			characterBitmap.node, row, code_point);
+		char_width.setInteger(glyph.getWidth());
+		char_bitmap.setOctetString(pixels);
+		mess.add(char_width);
+		mess.add(char_bitmap);
+		logStore(char_width);
+		logStore(char_bitmap);
+	}
+
 	/** Validate the font. This forces a fontVersionID update on some signs
 	 * which implement 1203 version 1 (LedStar). */
 	private class ValidateFontV1 extends Phase {
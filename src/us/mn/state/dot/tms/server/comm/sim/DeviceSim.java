@@ -0,0 +1,41 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A device simulator answers requests for one wire protocol.  All methods
+ * are called on the simulator server thread, so implementations do not
+ * need to be thread-safe.
+ *
+ * @author Douglas Lau
+ */
+abstract public class DeviceSim {
+
+	/** Get the length of the next complete request in a stream.  Only
+	 * used for TCP endpoints; each UDP datagram is one request.
+	 * @param buf Buffer of received data (flipped for reading).  The
+	 *            buffer position must not be changed.
+	 * @return Length of request, or 0 if it is not complete.
+	 * @throws IOException if the data can never be a valid request. */
+	abstract public int requestLength(ByteBuffer buf) throws IOException;
+
+	/** Respond to one request.
+	 * @param req Request data.
+	 * @return Response data, or null for no response. */
+	abstract public byte[] respond(byte[] req) throws IOException;
+}
@@ -0,0 +1,91 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import us.mn.state.dot.tms.server.comm.ParsingException;
+
+/**
+ * Simulator for a Banner DXM controller.  Register read commands are
+ * answered with generated 30-second occupancy scans.
+ *
+ * @author Douglas Lau
+ */
+public class DxmSim extends DeviceSim {
+
+	/** Maximum length of a command line */
+	static private final int MAX_LINE = 80;
+
+	/** Command prefix */
+	static private final String CMD = "CMD0001 ";
+
+	/** Response prefix */
+	static private final String RSP = "RSP0001";
+
+	/** Parse an integer value */
+	static private int parseInt(String v) throws ParsingException {
+		try {
+			return Integer.parseInt(v.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new ParsingException("Invalid value: " + v);
+		}
+	}
+
+	/** Sample generator */
+	private final SampleGenerator generator;
+
+	/** Create a new DXM simulator */
+	public DxmSim(SampleGenerator g) {
+		generator = g;
+	}
+
+	/** Get the length of the next complete command line */
+	@Override
+	public int requestLength(ByteBuffer buf) throws IOException {
+		int n = Math.min(buf.remaining(), MAX_LINE);
+		for (int i = 0; i < n; i++) {
+			if (buf.get(buf.position() + i) == '\n')
+				return i + 1;
+		}
+		if (n >= MAX_LINE)
+			throw new ParsingException("LINE TOO LONG");
+		return 0;
+	}
+
+	/** Respond to one command line */
+	@Override
+	public byte[] respond(byte[] req) throws IOException {
+		String cmd = new String(req, "US-ASCII").trim();
+		if (!cmd.startsWith(CMD))
+			throw new ParsingException("Invalid command: " + cmd);
+		String[] par = cmd.substring(CMD.length()).split(",");
+		if (par.length != 5)
+			throw new ParsingException("Wrong # of params");
+		int reg = parseInt(par[0]);
+		int len = parseInt(par[1]);
+		StringBuilder sb = new StringBuilder();
+		sb.append(RSP);
+		sb.append(reg);
+		sb.append(',');
+		for (int i = 0; i < len; i++) {
+			sb.append(generator.scans(generator.vehCount()));
+			sb.append(',');
+		}
+		sb.append("\r\n");
+		return sb.toString().getBytes("US-ASCII");
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import us.mn.state.dot.tms.server.comm.ParsingException;
+import us.mn.state.dot.tms.server.comm.mndot.Address;
+import us.mn.state.dot.tms.server.comm.mndot.CatCode;
+import us.mn.state.dot.tms.server.comm.mndot.StatCode;
+
+/**
+ * Simulator for a multi-drop line of MnDOT 170 controllers.  Every drop
+ * address answers.  Memory writes are remembered, and reads of the
+ * 30-second data buffer return generated samples.
+ *
+ * @author Douglas Lau
+ */
+public class Mndot170Sim extends DeviceSim {
+
+	/** Offset for DROP/CAT or DROP/STAT field */
+	static private final int OFF_DROP_CAT = 0;
+
+	/** Offset for message length field */
+	static private final int OFF_LENGTH = 1;
+
+	/** Offset for message payload field */
+	static private final int OFF_PAYLOAD = 2;
+
+	/** Maximum data bytes */
+	static private final int MAX_DATA_BYTES = 125;
+
+	/** Number of detector inputs */
+	static private final int DETECTOR_INPUTS = 24;
+
+	/** Length of 30-second data buffer */
+	static private final int DATA_30_SEC_LEN = DETECTOR_INPUTS * 3;
+
+	/** Calculate the checksum of a packet */
+	static private byte checksum(byte[] pkt) {
+		byte xsum = 0;
+		for (int i = 0; i < pkt.length - 1; i++)
+			xsum ^= pkt[i];
+		return xsum;
+	}
+
+	/** Flag for 5-bit drop addressing (MNDOT_5) */
+	private final boolean five_bit;
+
+	/** Sample generator */
+	private final SampleGenerator generator;
+
+	/** Memory blocks written, by drop and address */
+	private final HashMap<Integer, byte[]> memory =
+		new HashMap<Integer, byte[]>();
+
+	/** Create a new MnDOT 170 simulator.
+	 * @param fb Flag for 5-bit drop addressing (MNDOT_5).
+	 * @param g Sample generator. */
+	public Mndot170Sim(boolean fb, SampleGenerator g) {
+		five_bit = fb;
+		generator = g;
+	}
+
+	/** Get the length of the next complete request */
+	@Override
+	public int requestLength(ByteBuffer buf) throws IOException {
+		if (buf.remaining() < 2)
+			return 0;
+		int len = buf.get(buf.position() + OFF_LENGTH) & 0xFF;
+		if (len > MAX_DATA_BYTES)
+			throw new ParsingException("INVALID LENGTH: " + len);
+		int n = 3 + len;
+		return (buf.remaining() >= n) ? n : 0;
+	}
+
+	/** Respond to one request */
+	@Override
+	public byte[] respond(byte[] req) throws IOException {
+		int dc = req[OFF_DROP_CAT] & 0xFF;
+		int drop = five_bit ? (dc >> 3) : (dc >> 4);
+		int cat = five_bit ? (dc & 0x07) : (dc & 0x0F);
+		if (req[req.length - 1] != checksum(req))
+			return response(drop, StatCode.BAD_POLL_CHECKSUM);
+		if (cat >= CatCode.values().length)
+			return response(drop, StatCode.BAD_MESSAGE);
+		switch (CatCode.values()[cat]) {
+		case READ_MEMORY:
+			return readMemory(drop, req);
+		case WRITE_MEMORY:
+			return writeMemory(drop, req);
+		case QUERY_RECORD_COUNT:
+		case DELETE_OLDEST_RECORD:
+			// No binned data records are stored
+			return response(drop, StatCode.OK, new byte[1]);
+		case SEND_NEXT_RECORD:
+			return response(drop, StatCode.NO_DATA);
+		default:
+			return response(drop, StatCode.OK);
+		}
+	}
+
+	/** Get a memory key for a drop and address */
+	static private int memoryKey(int drop, int address) {
+		return (drop << 16) | address;
+	}
+
+	/** Read controller memory */
+	private byte[] readMemory(int drop, byte[] req) {
+		if (req.length != 6)
+			return response(drop, StatCode.MESSAGE_SIZE);
+		int address = ((req[2] & 0xFF) << 8) | (req[3] & 0xFF);
+		int len = req[4] & 0xFF;
+		if (len < 1 || len > MAX_DATA_BYTES)
+			return response(drop, StatCode.MESSAGE_SIZE);
+		byte[] data = new byte[len];
+		if (address == Address.DATA_BUFFER_30_SECOND &&
+		    len == DATA_30_SEC_LEN)
+			generateSamples(data);
+		else {
+			byte[] m = memory.get(memoryKey(drop, address));
+			if (m != null)
+				System.arraycopy(m, 0, data, 0,
+					Math.min(m.length, len));
+		}
+		return response(drop, StatCode.OK, data);
+	}
+
+	/** Generate 30-second sample data */
+	private void generateSamples(byte[] data) {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		int[] veh = new int[DETECTOR_INPUTS];
+		for (int i = 0; i < DETECTOR_INPUTS; i++) {
+			veh[i] = generator.vehCount();
+			buf.put((byte) veh[i]);
+		}
+		for (int i = 0; i < DETECTOR_INPUTS; i++)
+			buf.putShort((short) generator.scans(veh[i]));
+	}
+
+	/** Write controller memory */
+	private byte[] writeMemory(int drop, byte[] req) {
+		if (req.length < 6)
+			return response(drop, StatCode.MESSAGE_SIZE);
+		int address = ((req[2] & 0xFF) << 8) | (req[3] & 0xFF);
+		byte[] data = new byte[req.length - 5];
+		System.arraycopy(req, 4, data, 0, data.length);
+		memory.put(memoryKey(drop, address), data);
+		return response(drop, StatCode.OK);
+	}
+
+	/** Create a response with no payload */
+	private byte[] response(int drop, StatCode stat) {
+		return response(drop, stat, new byte[0]);
+	}
+
+	/** Create a response packet */
+	private byte[] response(int drop, StatCode stat, byte[] payload) {
+		byte[] pkt = new byte[3 + payload.length];
+		pkt[OFF_DROP_CAT] = (byte) (five_bit
+			? (drop << 3 | stat.ordinal())
+			: (drop << 4 | stat.ordinal()));
+		pkt[OFF_LENGTH] = (byte) payload.length;
+		System.arraycopy(payload, 0, pkt, OFF_PAYLOAD, payload.length);
+		pkt[pkt.length - 1] = checksum(pkt);
+		return pkt;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.util.Random;
+
+/**
+ * Sample generator for simulated detectors.  Vehicle counts are uniformly
+ * distributed around a mean flow, and occupancy is derived from the count
+ * and a typical vehicle length.
+ *
+ * @author Douglas Lau
+ */
+public class SampleGenerator {
+
+	/** Maximum 60 Hz scans in a 30-second sample */
+	static public final int MAX_SCANS_30 = 1800;
+
+	/** Scans each vehicle occupies a detector, at highway speed */
+	static private final int SCANS_PER_VEHICLE = 12;
+
+	/** Mean vehicle count per 30-second sample */
+	private final int mean_veh;
+
+	/** Random number generator */
+	private final Random random;
+
+	/** Create a sample generator.
+	 * @param f Mean flow (vehicles per hour per lane).
+	 * @param seed Random seed. */
+	public SampleGenerator(int f, long seed) {
+		if (f < 0)
+			throw new IllegalArgumentException();
+		mean_veh = Math.round(f / 120f);
+		random = new Random(seed);
+	}
+
+	/** Generate a 30-second vehicle count */
+	public int vehCount() {
+		return random.nextInt(2 * mean_veh + 1);
+	}
+
+	/** Generate 30-second scans for a vehicle count */
+	public int scans(int veh) {
+		int s = veh * SCANS_PER_VEHICLE + random.nextInt(
+			SCANS_PER_VEHICLE);
+		return Math.min(s, MAX_SCANS_30);
+	}
+
+	/** Generate a percent occupancy for a vehicle count */
+	public int occupancy(int veh) {
+		return Math.round(100f * scans(veh) / MAX_SCANS_30);
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.util.Random;
+
+/**
+ * Simulated network conditions for a simulator endpoint.
+ *
+ * @author Douglas Lau
+ */
+public class SimConditions {
+
+	/** Ideal conditions, with no latency or loss */
+	static public final SimConditions IDEAL = new SimConditions(0, 0, 0f,
+		0);
+
+	/** Response latency (ms) */
+	public final int latency_ms;
+
+	/** Maximum random jitter added to latency (ms) */
+	public final int jitter_ms;
+
+	/** Probability that a request is lost (0 to 1) */
+	public final float loss;
+
+	/** Random number generator */
+	private final Random random;
+
+	/** Create simulated conditions.
+	 * @param l Response latency (ms).
+	 * @param j Maximum jitter (ms).
+	 * @param ls Probability of lost request (0 to 1).
+	 * @param seed Random seed. */
+	public SimConditions(int l, int j, float ls, long seed) {
+		if (l < 0 || j < 0 || ls < 0 || ls > 1)
+			throw new IllegalArgumentException();
+		latency_ms = l;
+		jitter_ms = j;
+		loss = ls;
+		random = new Random(seed);
+	}
+
+	/** Check if the next request is lost */
+	public synchronized boolean isLost() {
+		return loss > 0 && random.nextFloat() < loss;
+	}
+
+	/** Get the delay for the next response (ms) */
+	public synchronized int nextDelay() {
+		return (jitter_ms > 0)
+		      ? latency_ms + random.nextInt(jitter_ms + 1)
+		      : latency_ms;
+	}
+}
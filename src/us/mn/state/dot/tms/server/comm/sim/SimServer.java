@@ -0,0 +1,400 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import us.mn.state.dot.sched.TimeSteward;
+import us.mn.state.dot.tms.server.comm.ParsingException;
+import us.mn.state.dot.tms.server.comm.TimerWheel;
+
+/**
+ * A simulator server runs in-process TCP and UDP endpoints on the loopback
+ * interface, each answering requests with a device simulator.  All
+ * endpoints are handled by one selector thread, so thousands of simulated
+ * devices can run without a thread for each.  Delayed responses are
+ * scheduled on a timer wheel.
+ *
+ * @author Douglas Lau
+ */
+public class SimServer implements Closeable {
+
+	/** Duration of one timer tick (ms) */
+	static private final int TICK_MS = 5;
+
+	/** Number of slots in timer wheel */
+	static private final int TIMER_SLOTS = 1024;
+
+	/** Maximum size of a UDP datagram */
+	static private final int MAX_DATAGRAM = 65507;
+
+	/** Size of TCP receive buffer */
+	static private final int TCP_BUF_SZ = 1 << 12;
+
+	/** Backlog for TCP listeners */
+	static private final int BACKLOG = 64;
+
+	/** Responder to send a response */
+	private interface Responder {
+		void send(byte[] resp) throws IOException;
+	}
+
+	/** A simulated device endpoint */
+	static private class Endpoint {
+		private final DeviceSim sim;
+		private final SimConditions cond;
+		private Endpoint(DeviceSim s, SimConditions c) {
+			sim = s;
+			cond = c;
+		}
+	}
+
+	/** A TCP connection to an endpoint */
+	private class Connection implements Responder {
+		private final Endpoint endpoint;
+		private final SelectionKey skey;
+		private final SocketChannel channel;
+		private final ByteBuffer rx_buf =
+			ByteBuffer.allocate(TCP_BUF_SZ);
+		private final ArrayDeque<ByteBuffer> tx_queue =
+			new ArrayDeque<ByteBuffer>();
+		private Connection(Endpoint ep, SocketChannel sc)
+			throws IOException
+		{
+			endpoint = ep;
+			channel = sc;
+			skey = sc.register(selector, SelectionKey.OP_READ,
+				this);
+		}
+		@Override public void send(byte[] resp) throws IOException {
+			if (skey.isValid()) {
+				tx_queue.add(ByteBuffer.wrap(resp));
+				flush();
+			}
+		}
+		private void flush() throws IOException {
+			while (!tx_queue.isEmpty()) {
+				ByteBuffer b = tx_queue.peek();
+				channel.write(b);
+				if (b.hasRemaining())
+					break;
+				tx_queue.poll();
+			}
+			skey.interestOps(tx_queue.isEmpty()
+				? SelectionKey.OP_READ
+				: SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		private void read() throws IOException {
+			if (channel.read(rx_buf) < 0) {
+				close(skey);
+				return;
+			}
+			rx_buf.flip();
+			while (skey.isValid()) {
+				int len = endpoint.sim.requestLength(rx_buf);
+				if (len <= 0)
+					break;
+				byte[] req = new byte[len];
+				rx_buf.get(req);
+				handleRequest(endpoint, req, this);
+			}
+			rx_buf.compact();
+			if (!rx_buf.hasRemaining())
+				throw new IOException("REQUEST TOO LONG");
+		}
+	}
+
+	/** Selector for all endpoints */
+	private final Selector selector;
+
+	/** Timer wheel for delayed responses */
+	private final TimerWheel timers = new TimerWheel(TICK_MS, TIMER_SLOTS);
+
+	/** Receive buffer for UDP endpoints */
+	private final ByteBuffer udp_buf = ByteBuffer.allocate(MAX_DATAGRAM);
+
+	/** Selector thread */
+	private final Thread thread;
+
+	/** Closed flag */
+	private volatile boolean closed = false;
+
+	/** Count of received requests */
+	private final AtomicLong n_requests = new AtomicLong();
+
+	/** Count of sent responses */
+	private final AtomicLong n_responses = new AtomicLong();
+
+	/** Count of lost requests */
+	private final AtomicLong n_lost = new AtomicLong();
+
+	/** Count of errors (TCP connections closed or datagrams dropped) */
+	private final AtomicLong n_errors = new AtomicLong();
+
+	/** Create a new simulator server */
+	public SimServer() throws IOException {
+		selector = Selector.open();
+		thread = new Thread("sim_server") {
+			@Override public void run() {
+				doRun();
+			}
+		};
+		thread.setDaemon(true);
+	}
+
+	/** Start the server thread */
+	public void start() {
+		thread.start();
+	}
+
+	/** Close the server and all endpoints */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		}
+		catch (InterruptedException e) {
+			// ignore
+		}
+		synchronized (this) {
+			for (SelectionKey sk: selector.keys())
+				sk.channel().close();
+			selector.close();
+		}
+	}
+
+	/** Get the count of received requests */
+	public long getRequests() {
+		return n_requests.get();
+	}
+
+	/** Get the count of sent responses */
+	public long getResponses() {
+		return n_responses.get();
+	}
+
+	/** Get the count of lost requests */
+	public long getLost() {
+		return n_lost.get();
+	}
+
+	/** Get the count of errors */
+	public long getErrors() {
+		return n_errors.get();
+	}
+
+	/** Add a TCP endpoint.
+	 * @param sim Device simulator.
+	 * @param cond Simulated network conditions.
+	 * @return Local address of endpoint. */
+	public InetSocketAddress addTcp(DeviceSim sim, SimConditions cond)
+		throws IOException
+	{
+		ServerSocketChannel ssc = ServerSocketChannel.open();
+		ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+			0), BACKLOG);
+		ssc.configureBlocking(false);
+		register(ssc, SelectionKey.OP_ACCEPT, new Endpoint(sim, cond));
+		return (InetSocketAddress) ssc.getLocalAddress();
+	}
+
+	/** Add a UDP endpoint.
+	 * @param sim Device simulator.
+	 * @param cond Simulated network conditions.
+	 * @return Local address of endpoint. */
+	public InetSocketAddress addUdp(DeviceSim sim, SimConditions cond)
+		throws IOException
+	{
+		DatagramChannel dc = DatagramChannel.open();
+		dc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+			0));
+		dc.configureBlocking(false);
+		register(dc, SelectionKey.OP_READ, new Endpoint(sim, cond));
+		return (InetSocketAddress) dc.getLocalAddress();
+	}
+
+	/** Register a channel with the selector */
+	private synchronized void register(AbstractSelectableChannel ch,
+		int ops, Endpoint ep) throws IOException
+	{
+		// NOTE: must wake up the selector before registering
+		selector.wakeup();
+		ch.register(selector, ops, ep);
+	}
+
+	/** Run the select loop */
+	private void doRun() {
+		try {
+			while (!closed)
+				doSelect();
+		}
+		catch (IOException e) {
+			if (!closed)
+				e.printStackTrace();
+		}
+	}
+
+	/** Select and perform ready I/O */
+	private void doSelect() throws IOException {
+		selector.select(timers.isEmpty() ? 0 : TICK_MS);
+		Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+		while (it.hasNext()) {
+			handleReady(it.next());
+			it.remove();
+		}
+		synchronized (this) {
+			// NOTE: this prevents deadlock in register
+		}
+		for (Runnable task: timers.advance(
+		     TimeSteward.currentTimeMillis()))
+			task.run();
+	}
+
+	/** Handle ready events on a selection key.  On errors, TCP
+	 * connections are closed, but listeners and UDP endpoints are kept. */
+	private void handleReady(SelectionKey skey) {
+		try {
+			if (!skey.isValid())
+				return;
+			Object a = skey.attachment();
+			if (a instanceof Connection) {
+				Connection c = (Connection) a;
+				if (skey.isWritable())
+					c.flush();
+				if (skey.isValid() && skey.isReadable())
+					c.read();
+			} else if (skey.isAcceptable())
+				handleAccept(skey, (Endpoint) a);
+			else if (skey.isReadable())
+				handleDatagram(skey, (Endpoint) a);
+		}
+		catch (IOException e) {
+			n_errors.incrementAndGet();
+			if (skey.attachment() instanceof Connection)
+				close(skey);
+		}
+	}
+
+	/** Close a channel */
+	private void close(SelectionKey skey) {
+		skey.cancel();
+		try {
+			skey.channel().close();
+		}
+		catch (IOException e) {
+			// nothing else to do
+		}
+	}
+
+	/** Accept a TCP connection */
+	private void handleAccept(SelectionKey skey, Endpoint ep)
+		throws IOException
+	{
+		ServerSocketChannel ssc = (ServerSocketChannel) skey.channel();
+		SocketChannel sc = ssc.accept();
+		if (sc != null) {
+			sc.configureBlocking(false);
+			new Connection(ep, sc);
+		}
+	}
+
+	/** Receive datagrams on a UDP endpoint.  An invalid datagram is
+	 * counted as an error and dropped. */
+	private void handleDatagram(SelectionKey skey, Endpoint ep)
+		throws IOException
+	{
+		final DatagramChannel dc = (DatagramChannel) skey.channel();
+		while (true) {
+			udp_buf.clear();
+			final SocketAddress remote = dc.receive(udp_buf);
+			if (null == remote)
+				break;
+			udp_buf.flip();
+			byte[] req = new byte[udp_buf.remaining()];
+			udp_buf.get(req);
+			try {
+				int len = ep.sim.requestLength(
+					ByteBuffer.wrap(req));
+				if (len <= 0 || len != req.length) {
+					throw new ParsingException(
+						"INVALID DATAGRAM");
+				}
+				handleRequest(ep, req, new Responder() {
+					public void send(byte[] resp)
+						throws IOException
+					{
+						dc.send(ByteBuffer.wrap(resp),
+							remote);
+					}
+				});
+			}
+			catch (IOException e) {
+				n_errors.incrementAndGet();
+			}
+		}
+	}
+
+	/** Handle one request */
+	private void handleRequest(Endpoint ep, byte[] req, final Responder r)
+		throws IOException
+	{
+		n_requests.incrementAndGet();
+		if (ep.cond.isLost()) {
+			n_lost.incrementAndGet();
+			return;
+		}
+		final byte[] resp = ep.sim.respond(req);
+		if (null == resp)
+			return;
+		int d = ep.cond.nextDelay();
+		if (d > 0) {
+			timers.schedule(new Runnable() {
+				public void run() {
+					sendResponse(r, resp);
+				}
+			}, TimeSteward.currentTimeMillis(), d);
+		} else
+			sendResponse(r, resp);
+	}
+
+	/** Send a response */
+	private void sendResponse(Responder r, byte[] resp) {
+		// Count before sending, so the count is current when the
+		// response is received
+		n_responses.incrementAndGet();
+		try {
+			r.send(resp);
+		}
+		catch (IOException e) {
+			n_responses.decrementAndGet();
+			n_errors.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import us.mn.state.dot.tms.server.comm.ParsingException;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Integer;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Object;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Tag;
+import us.mn.state.dot.tms.server.comm.snmp.SNMP;
+import us.mn.state.dot.tms.server.comm.snmp.SNMPTag;
+import us.mn.state.dot.tms.server.comm.snmp.Tag;
+
+/**
+ * Simulator for an SNMP agent (over UDP).  Get-requests are answered with
+ * INTEGER values, either fixed or generated for a table column.
+ * Set-requests are accepted and echoed, without changing any values.
+ *
+ * @author Douglas Lau
+ */
+public class SnmpSim extends DeviceSim {
+
+	/** SNMP error status for noSuchName */
+	static private final int NO_SUCH_NAME = 2;
+
+	/** Occupancy value for 100% (NTCIP 1202) */
+	static private final int MAX_OCC = 200;
+
+	/** Kind of generated column */
+	private enum Column {
+		VOLUME, OCCUPANCY
+	}
+
+	/** Format an OID as a dotted string */
+	static private String formatOid(int[] oid) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < oid.length; i++) {
+			if (i > 0)
+				sb.append('.');
+			sb.append(oid[i]);
+		}
+		return sb.toString();
+	}
+
+	/** Format an encoded OID as a dotted string */
+	static private String formatOid(byte[] enc) throws ParsingException {
+		if (enc.length < 1)
+			throw new ParsingException("EMPTY OID");
+		StringBuilder sb = new StringBuilder();
+		sb.append((enc[0] & 0xFF) / 40);
+		sb.append('.');
+		sb.append((enc[0] & 0xFF) % 40);
+		int sub = 0;
+		for (int i = 1; i < enc.length; i++) {
+			sub = (sub << 7) | (enc[i] & 0x7F);
+			if ((enc[i] & 0x80) == 0) {
+				sb.append('.');
+				sb.append(sub);
+				sub = 0;
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Get the column part of a dotted OID (without the row) */
+	static private String columnOid(String oid) {
+		int i = oid.lastIndexOf('.');
+		return (i > 0) ? oid.substring(0, i) : oid;
+	}
+
+	/** SNMP encoder / decoder */
+	private final Codec codec = new Codec();
+
+	/** Sample generator */
+	private final SampleGenerator generator;
+
+	/** Fixed values, by dotted OID */
+	private final HashMap<String, Integer> values =
+		new HashMap<String, Integer>();
+
+	/** Generated columns, by dotted OID */
+	private final HashMap<String, Column> columns =
+		new HashMap<String, Column>();
+
+	/** Create a new SNMP agent simulator */
+	public SnmpSim(SampleGenerator g) {
+		generator = g;
+	}
+
+	/** Put a fixed INTEGER value */
+	public void putValue(ASN1Integer v) {
+		values.put(formatOid(v.oid()), v.getInteger());
+	}
+
+	/** Put a table column of generated vehicle counts.
+	 * @param row Object for any row of the column. */
+	public void putVolumeColumn(ASN1Object row) {
+		columns.put(columnOid(formatOid(row.oid())), Column.VOLUME);
+	}
+
+	/** Put a table column of generated occupancies (0-200).
+	 * @param row Object for any row of the column. */
+	public void putOccupancyColumn(ASN1Object row) {
+		columns.put(columnOid(formatOid(row.oid())), Column.OCCUPANCY);
+	}
+
+	/** Get the value of an object.
+	 * @return Value, or null for noSuchName. */
+	private Integer getValue(String oid) {
+		Integer v = values.get(oid);
+		if (v != null)
+			return v;
+		Column c = columns.get(columnOid(oid));
+		if (c == Column.VOLUME)
+			return generator.vehCount();
+		else if (c == Column.OCCUPANCY) {
+			return generator.occupancy(generator.vehCount()) *
+				MAX_OCC / 100;
+		} else
+			return null;
+	}
+
+	/** Each UDP datagram is one request */
+	@Override
+	public int requestLength(ByteBuffer buf) throws IOException {
+		return buf.remaining();
+	}
+
+	/** Respond to one request */
+	@Override
+	public byte[] respond(byte[] req) throws IOException {
+		return codec.respond(ByteBuffer.wrap(req));
+	}
+
+	/** A variable binding from a request */
+	static private class VarBind {
+		private final byte[] oid;
+		private final byte[] value;
+		private VarBind(byte[] o, byte[] v) {
+			oid = o;
+			value = v;
+		}
+	}
+
+	/** Codec for SNMP messages */
+	private class Codec extends SNMP {
+
+		/** Respond to one request message */
+		private byte[] respond(ByteBuffer buf) throws IOException {
+			decodeSequence(buf);
+			int ver = decodeInteger(buf);
+			byte[] community = decodeOctetString(buf);
+			Tag tag = decodeIdentifier(buf);
+			decodeLength(buf);
+			int request_id = decodeInteger(buf);
+			decodeInteger(buf);	// error-status
+			decodeInteger(buf);	// error-index
+			decodeSequence(buf);
+			ArrayList<VarBind> binds = new ArrayList<VarBind>();
+			while (buf.hasRemaining())
+				binds.add(decodeVarBind(buf));
+			int index = 0;
+			resetEncoder();
+			for (int i = binds.size() - 1; i >= 0; i--) {
+				VarBind vb = binds.get(i);
+				int mark = encodedLength();
+				if (tag == SNMPTag.SET_REQUEST) {
+					encodeBytes(vb.value, 0,
+						vb.value.length);
+				} else {
+					Integer v = getValue(formatOid(vb.oid));
+					if (v != null)
+						encodeInteger(v);
+					else {
+						encodeNull();
+						index = i + 1;
+					}
+				}
+				encodeBytes(vb.oid, 0, vb.oid.length);
+				encodeLength(vb.oid.length);
+				encodeIdentifier(ASN1Tag.OBJECT_IDENTIFIER);
+				encodeSequence(mark);
+			}
+			encodeSequence(0);
+			encodeInteger(index);
+			encodeInteger((index > 0) ? NO_SUCH_NAME : 0);
+			encodeInteger(request_id);
+			encodeConstructed(SNMPTag.GET_RESPONSE, 0);
+			encodeOctetString(community);
+			encodeInteger(ver);
+			encodeSequence(0);
+			return getEncodedData();
+		}
+
+		/** Decode one variable binding */
+		private VarBind decodeVarBind(ByteBuffer buf)
+			throws IOException
+		{
+			decodeSequence(buf);
+			if (decodeIdentifier(buf) != ASN1Tag.OBJECT_IDENTIFIER)
+				throw new ParsingException("EXPECTED OID TAG");
+			byte[] oid = new byte[decodeLength(buf)];
+			buf.get(oid);
+			int pos = buf.position();
+			decodeIdentifier(buf);
+			int len = decodeLength(buf);
+			buf.position(buf.position() + len);
+			byte[] value = new byte[buf.position() - pos];
+			buf.position(pos);
+			buf.get(value);
+			return new VarBind(oid, value);
+		}
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2015  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,25 +14,68 @@
  */
 package us.mn.state.dot.tms.server.comm.snmp;
 
-import java.io.InputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Abstract Syntax Notation One (ASN.1)
  *
+ * Values are encoded backwards, from the end of a reusable buffer toward the
+ * start.  That way, the length of a constructed value is known when its
+ * header is encoded, and nested values never need to be copied.  So, the
+ * parts of a constructed value must be encoded in reverse order, followed by
+ * its length and identifier.
+ *
  * @author Douglas Lau
  */
 abstract public class ASN1 {
 
+	/** Initial size of encoder buffer */
+	static private final int INITIAL_BUFFER = 512;
+
 	/** Get the tag with matching parameters */
 	protected Tag getTag(byte clazz, boolean constructed, int number) {
 		return ASN1Tag.fromValues(clazz, constructed, number);
 	}
 
-	/** Byte array output stream used to encode messages */
-	protected final ByteArrayOutputStream encoder =
-		new ByteArrayOutputStream();
+	/** Buffer used to encode messages */
+	private byte[] encoder = new byte[INITIAL_BUFFER];
+
+	/** Position of first encoded byte in buffer */
+	private int enc_pos = encoder.length;
+
+	/** Make room in the encoder for more bytes */
+	private void ensureSpace(int n) {
+		if (n > enc_pos) {
+			int len = encodedLength();
+			int size = Math.max(encoder.length * 2, len + n);
+			byte[] buf = new byte[size];
+			System.arraycopy(encoder, enc_pos, buf, size - len,
+				len);
+			encoder = buf;
+			enc_pos = size - len;
+		}
+	}
+
+	/** Encode one byte (before previously encoded bytes) */
+	protected void encodeByte(int b) {
+		ensureSpace(1);
+		encoder[--enc_pos] = (byte) b;
+	}
+
+	/** Encode bytes (before previously encoded bytes) */
+	protected void encodeBytes(byte[] b, int off, int len) {
+		ensureSpace(len);
+		enc_pos -= len;
+		System.arraycopy(b, off, encoder, enc_pos, len);
+	}
+
+	/** Get the number of bytes encoded.  This can be used to mark the
+	 * end of a value before encoding it, to find its length after. */
+	protected int encodedLength() {
+		return encoder.length - enc_pos;
+	}
 
 	/** Encode an ASN.1 identifier (tag) */
 	abstract protected void encodeIdentifier(Tag tag) throws IOException;
@@ -40,17 +83,33 @@ abstract public class ASN1 {
 	/** Encode an ASN.1 length */
 	abstract protected void encodeLength(int length) throws IOException;
 
+	/** Write encoded data to an output stream (and reset the encoder) */
+	protected void writeEncodedData(OutputStream os) throws IOException {
+		try {
+			os.write(encoder, enc_pos, encodedLength());
+		}
+		finally {
+			resetEncoder();
+		}
+	}
+
 	/** Get encoded data as byte array (and reset the encoder) */
 	protected byte[] getEncodedData() {
-		byte[] buffer = encoder.toByteArray();
-		encoder.reset();
+		byte[] buffer = new byte[encodedLength()];
+		System.arraycopy(encoder, enc_pos, buffer, 0, buffer.length);
+		resetEncoder();
 		return buffer;
 	}
 
+	/** Reset the encoder */
+	protected void resetEncoder() {
+		enc_pos = encoder.length;
+	}
+
 	/** Decode an ASN.1 identifier (tag) */
-	abstract protected Tag decodeIdentifier(InputStream is)
+	abstract protected Tag decodeIdentifier(ByteBuffer buf)
 		throws IOException;
 
 	/** Decode an ASN.1 length */
-	abstract protected int decodeLength(InputStream is) throws IOException;
+	abstract protected int decodeLength(ByteBuffer buf) throws IOException;
 }
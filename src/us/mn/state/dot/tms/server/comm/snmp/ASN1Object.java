@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2015  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,8 +14,8 @@
  */
 package us.mn.state.dot.tms.server.comm.snmp;
 
-import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import us.mn.state.dot.tms.server.comm.ControllerProperty;
 
 /**
@@ -74,5 +74,5 @@ abstract public class ASN1Object extends ControllerProperty {
 	abstract public void encode(BER er) throws IOException;
 
 	/** Decode the object */
-	abstract public void decode(InputStream is, BER er) throws IOException;
+	abstract public void decode(ByteBuffer buf, BER er) throws IOException;
 }
@@ -0,0 +1,93 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.snmp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * SNMP agent capabilities, which determine how many variable bindings can be
+ * packed into one request.  Capabilities are cached by agent (controller)
+ * name, so they are kept when a comm link reconnects.
+ *
+ * @author Douglas Lau
+ */
+public class AgentCaps {
+
+	/** Time to keep a reduced object limit before trying to pack
+	 * requests fully again (ms) */
+	static private final long LIMIT_MS = 60 * 60 * 1000;
+
+	/** Cache of agent capabilities */
+	static private final ConcurrentHashMap<String, AgentCaps> CACHE =
+		new ConcurrentHashMap<String, AgentCaps>();
+
+	/** Lookup the capabilities of an agent.
+	 * @param name Agent (controller) name.
+	 * @return Cached agent capabilities. */
+	static public AgentCaps lookup(String name) {
+		AgentCaps caps = CACHE.get(name);
+		if (null == caps) {
+			caps = new AgentCaps();
+			AgentCaps c = CACHE.putIfAbsent(name, caps);
+			if (c != null)
+				caps = c;
+		}
+		return caps;
+	}
+
+	/** Maximum number of objects per request */
+	private int max_objs = Integer.MAX_VALUE;
+
+	/** Largest number of objects in a successful request */
+	private int ok_objs = 0;
+
+	/** Time when object limit expires (ms) */
+	private long limit_until = 0;
+
+	/** Get the maximum number of objects per request */
+	public synchronized int getMaxObjects() {
+		if (TimeSteward.currentTimeMillis() >= limit_until)
+			max_objs = Integer.MAX_VALUE;
+		return max_objs;
+	}
+
+	/** Record a successful request.
+	 * @param n Number of objects in request. */
+	public synchronized void success(int n) {
+		ok_objs = Math.max(n, ok_objs);
+	}
+
+	/** Reduce the number of objects per request (after tooBig).  The
+	 * limit is halved, but not below a size which worked before.
+	 * @param n Number of objects in failed request. */
+	public synchronized void reduce(int n) {
+		int m = n / 2;
+		if (ok_objs < n)
+			m = Math.max(m, ok_objs);
+		setMaxObjects(Math.max(1, m));
+	}
+
+	/** Switch to single-object mode (after genErr) */
+	public synchronized void setSingle() {
+		setMaxObjects(1);
+	}
+
+	/** Set the maximum number of objects per request */
+	private void setMaxObjects(int n) {
+		max_objs = Math.min(n, max_objs);
+		limit_until = TimeSteward.currentTimeMillis() + LIMIT_MS;
+	}
+}
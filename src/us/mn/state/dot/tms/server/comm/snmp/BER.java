@@ -15,9 +15,8 @@
 package us.mn.state.dot.tms.server.comm.snmp;
 
 import java.io.EOFException;
-import java.io.InputStream;
 import java.io.IOException;
-import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import us.mn.state.dot.tms.server.comm.ParsingException;
 
 /**
@@ -44,232 +43,208 @@ abstract public class BER extends ASN1 {
 	 * than one octet */
 	static private final int ONE_OCTET = 0x1F;
 
-	/** Encode a BER identifier to the output stream */
+	/** Empty object identifier */
+	static private final int[] EMPTY_OID = new int[0];
+
+	/** Encode a BER identifier */
 	protected void encodeIdentifier(Tag tag) throws IOException {
 		byte first = tag.getClazz();
 		int number = tag.getNumber();
 		if (tag.isConstructed())
 			first |= Tag.CONSTRUCTED;
-		if (number < ONE_OCTET) {
-			encoder.write(first | number);
-			return;
-		}
-		encoder.write(first | ONE_OCTET);
-		byte[] buffer = new byte[5];
-		int start = 4;
-		buffer[start] = (byte)(number & SEVEN_BITS);
-		for (number >>= 7; number > SEVEN_BITS; number >>= 7) {
-			buffer[--start] = (byte)
-				((number & SEVEN_BITS) | HIGH_BIT);
+		if (number < ONE_OCTET)
+			encodeByte(first | number);
+		else {
+			encodeSubidentifier(number);
+			encodeByte(first | ONE_OCTET);
 		}
-		encoder.write(buffer, start, 5 - start);
+	}
+
+	/** Encode a BER subidentifier */
+	protected void encodeSubidentifier(int number) {
+		encodeByte(number & SEVEN_BITS);
+		for (number >>>= 7; number != 0; number >>>= 7)
+			encodeByte((number & SEVEN_BITS) | HIGH_BIT);
 	}
 
 	/** Encode a BER length */
 	protected void encodeLength(int length) throws IOException {
 		if (length < 128)
-			encoder.write(length);
+			encodeByte(length);
 		else if (length < 256) {
-			encoder.write(HIGH_BIT | 1);
-			encoder.write(length);
+			encodeByte(length);
+			encodeByte(HIGH_BIT | 1);
 		} else {
-			encoder.write(HIGH_BIT | 2);
-			encoder.write((byte)(length >> 8));
-			encoder.write((byte)(length & 0xFF));
+			encodeByte(length & 0xFF);
+			encodeByte(length >> 8);
+			encodeByte(HIGH_BIT | 2);
 		}
 	}
 
 	/** Encode a boolean value */
 	protected void encodeBoolean(boolean value) throws IOException {
-		encodeIdentifier(ASN1Tag.BOOLEAN);
+		encodeByte(value ? 0xFF : 0x00);
 		encodeLength(1);
-		if (value)
-			encoder.write(0xFF);
-		else
-			encoder.write(0x00);
+		encodeIdentifier(ASN1Tag.BOOLEAN);
 	}
 
 	/** Encode an integer value */
 	protected void encodeInteger(int value) throws IOException {
-		byte[] buffer = new byte[4];
-		int len = 0;
-		boolean flag = false;
-		for (int shift = 23; shift > 0; shift -= 8) {
-			int test = (value >> shift) & 0x1FF;
-			if (test != 0 && test != 0x1FF)
-				flag = true;
-			if (flag)
-				buffer[len++] = (byte)(test >> 1);
+		// Find fewest octets which preserve the sign
+		int len = 1;
+		while (len < 4) {
+			int rest = value >> (len * 8 - 1);
+			if (rest == 0 || rest == -1)
+				break;
+			len++;
 		}
-		buffer[len++] = (byte)(value & 0xFF);
-		encodeIdentifier(ASN1Tag.INTEGER);
+		for (int i = 0; i < len; i++)
+			encodeByte(value >> (i * 8));
 		encodeLength(len);
-		encoder.write(buffer, 0, len);
+		encodeIdentifier(ASN1Tag.INTEGER);
 	}
 
 	/** Encode an octet string */
 	protected void encodeOctetString(byte[] string) throws IOException {
-		encodeIdentifier(ASN1Tag.OCTET_STRING);
+		encodeBytes(string, 0, string.length);
 		encodeLength(string.length);
-		encoder.write(string);
+		encodeIdentifier(ASN1Tag.OCTET_STRING);
 	}
 
 	/** Encode a null value */
 	protected void encodeNull() throws IOException {
-		encodeIdentifier(ASN1Tag.NULL);
 		encodeLength(0);
+		encodeIdentifier(ASN1Tag.NULL);
 	}
 
 	/** Encode an object identifier */
 	protected void encodeObjectIdentifier(int[] oid) throws IOException {
-		ByteArrayOutputStream bs = new ByteArrayOutputStream();
-		bs.write(oid[0] * 40 + oid[1]);
-		for (int i = 2; i < oid.length; i++) {
-			int subid = oid[i];
-			if (subid > SEVEN_BITS) {
-				bs.write(HIGH_BIT | (subid >> 7));
-				subid &= SEVEN_BITS;
-			}
-			bs.write(subid);
-		}
-		byte[] buffer = bs.toByteArray();
+		int mark = encodedLength();
+		for (int i = oid.length - 1; i >= 2; i--)
+			encodeSubidentifier(oid[i]);
+		encodeSubidentifier(oid[0] * 40 + oid[1]);
+		encodeLength(encodedLength() - mark);
 		encodeIdentifier(ASN1Tag.OBJECT_IDENTIFIER);
-		encodeLength(buffer.length);
-		encoder.write(buffer);
 	}
 
-	/** Encode a sequence (or sequence-of) */
-	protected void encodeSequence(byte[] seq) throws IOException {
-		encodeIdentifier(ASN1Tag.SEQUENCE);
-		encodeLength(seq.length);
-		encoder.write(seq);
+	/** Encode a constructed value header.
+	 * @param tag Identifier of constructed value.
+	 * @param mark Encoded length before encoding contents. */
+	protected void encodeConstructed(Tag tag, int mark) throws IOException {
+		encodeLength(encodedLength() - mark);
+		encodeIdentifier(tag);
 	}
 
-	/** Decode a BER identifier (tag) */
-	protected Tag decodeIdentifier(InputStream is) throws IOException {
-		int first = is.read();
-		if (first < 0)
+	/** Encode a sequence (or sequence-of) header.
+	 * @param mark Encoded length before encoding contents. */
+	protected void encodeSequence(int mark) throws IOException {
+		encodeConstructed(ASN1Tag.SEQUENCE, mark);
+	}
+
+	/** Decode one octet */
+	static private int decodeByte(ByteBuffer buf) throws IOException {
+		if (buf.hasRemaining())
+			return buf.get() & 0xFF;
+		else
 			throw END_OF_STREAM;
+	}
+
+	/** Decode a BER identifier (tag) */
+	protected Tag decodeIdentifier(ByteBuffer buf) throws IOException {
+		int first = decodeByte(buf);
 		byte clazz = (byte)(first & Tag.CLASS_MASK);
 		boolean constructed = (first & Tag.CONSTRUCTED) != 0;
 		int number = (first & ONE_OCTET);
 		if (number == ONE_OCTET)
-			number = decodeSubidentifier(is);
+			number = decodeSubidentifier(buf);
 		return getTag(clazz, constructed, number);
 	}
 
 	/** Decode a BER subidentifier */
-	protected int decodeSubidentifier(InputStream is) throws IOException {
+	protected int decodeSubidentifier(ByteBuffer buf) throws IOException {
 		int number = 0;
 		for (int i = 0; i < 4; i++) {
-			int next = is.read();
-			if (next < 0)
-				throw END_OF_STREAM;
+			int next = decodeByte(buf);
 			number <<= 7;
 			number |= (next & SEVEN_BITS);
-			if ((next & HIGH_BIT) != 0)
+			if ((next & HIGH_BIT) == 0)
 				return number;
 		}
 		throw new ParsingException("INVALID SUBIDENTIFIER");
 	}
 
 	/** Decode a BER length */
-	protected int decodeLength(InputStream is) throws IOException {
-		int first = is.read();
-		if (first < 0)
-			throw END_OF_STREAM;
+	protected int decodeLength(ByteBuffer buf) throws IOException {
+		int first = decodeByte(buf);
 		if (first == RESERVED)
 			throw new ParsingException("RESERVED LENGTH CODE");
 		int length = first & SEVEN_BITS;
 		if (length != first) {
 			if (length == 0)
 				throw new ParsingException("INDEFINITE LENGTH");
+			if (length > 4)
+				throw new ParsingException("INVALID LENGTH CODE");
 			int i = length;
 			for (length = 0; i > 0; i--) {
 				length <<= 8;
-				int lg = is.read();
-				if (lg < 0)
-					throw END_OF_STREAM;
-				length |= lg;
+				length |= decodeByte(buf);
 			}
 		}
-		if (length > is.available()) {
+		if (length < 0 || length > buf.remaining()) {
 			throw new ParsingException("INVALID LENGTH: " + length +
-				" > " + is.available());
+				" > " + buf.remaining());
 		}
 		return length;
 	}
 
 	/** Decode an integer */
-	protected int decodeInteger(InputStream is) throws IOException {
-		Tag tag = decodeIdentifier(is);
+	protected int decodeInteger(ByteBuffer buf) throws IOException {
+		Tag tag = decodeIdentifier(buf);
 		// Skyline signs return dmsFreeChangeableMemory and 
 		// dmsFreeVolatileMemory as INTEGER_SKYLINE instead of INTEGER
 		if (tag != ASN1Tag.INTEGER && tag != SNMPTag.INTEGER_SKYLINE)
 			throw new ParsingException("EXPECTED AN INTEGER TAG");
-		int length = decodeLength(is);
+		int length = decodeLength(buf);
 		if (length < 1 || length > 4)
 			throw new ParsingException("INVALID INTEGER LENGTH");
-		int value = is.read();
-		if (value < 0)
-			throw END_OF_STREAM;
-		value = (byte)value;	// NOTE: cast to preserve sign
+		int value = buf.get();	// NOTE: byte preserves sign
 		for (int i = 1; i < length; i++) {
 			value <<= 8;
-			int v = is.read();
-			if (v < 0)
-				throw END_OF_STREAM;
-			value |= v;
+			value |= buf.get() & 0xFF;
 		}
 		return value;
 	}
 
 	/** Decode an octet string */
-	protected byte[] decodeOctetString(InputStream is) throws IOException {
-		if (decodeIdentifier(is) != ASN1Tag.OCTET_STRING)
+	protected byte[] decodeOctetString(ByteBuffer buf) throws IOException {
+		if (decodeIdentifier(buf) != ASN1Tag.OCTET_STRING)
 			throw new ParsingException("EXPECTED OCTET STRING TAG");
-		int length = decodeLength(is);
-		if (length < 0)
-			throw new ParsingException("NEGATIVE STRING LENGTH");
-		byte[] buffer = new byte[length];
-		if (length > 0) {
-			int blen = is.read(buffer);
-			if (blen < 0)
-				throw END_OF_STREAM;
-			if (blen != length)
-				throw new ParsingException("READ STRING FAIL");
-		}
+		byte[] buffer = new byte[decodeLength(buf)];
+		buf.get(buffer);
 		return buffer;
 	}
 
 	/** Decode an object identifier */
-	protected int[] decodeObjectIdentifier(InputStream is)
+	protected int[] decodeObjectIdentifier(ByteBuffer buf)
 		throws IOException
 	{
-		if (decodeIdentifier(is) != ASN1Tag.OBJECT_IDENTIFIER) {
+		if (decodeIdentifier(buf) != ASN1Tag.OBJECT_IDENTIFIER) {
 			throw new ParsingException(
 				"EXPECTED OBJECT IDENTIFIER TAG");
 		}
-		int length = decodeLength(is);
+		int length = decodeLength(buf);
 		if (length < 1)
 			throw new ParsingException("NEGATIVE OID LENGTH");
-		byte[] buffer = new byte[length];
-		if (length > 0) {
-			int blen = is.read(buffer);
-			if (blen < 0)
-				throw END_OF_STREAM;
-			if (blen != length)
-				throw new ParsingException("READ OID FAIL");
-		}
-		// NOTE: when the length is zero, there is no OID
-		return new int[0];
+		buf.position(buf.position() + length);
+		// NOTE: the OID is skipped, not decoded
+		return EMPTY_OID;
 	}
 
 	/** Decode a sequence (or sequence-of)
 	  * @return Length of sequence */
-	protected int decodeSequence(InputStream is) throws IOException {
-		if (decodeIdentifier(is) != ASN1Tag.SEQUENCE)
+	protected int decodeSequence(ByteBuffer buf) throws IOException {
+		if (decodeIdentifier(buf) != ASN1Tag.SEQUENCE)
 			throw new ParsingException("EXPECTED SEQUENCE TAG");
-		return decodeLength(is);
+		return decodeLength(buf);
 	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2015  Minnesota Department of Transportation
+ * Copyright (C) 2009-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,8 +14,8 @@
  */
 package us.mn.state.dot.tms.server.comm.snmp;
 
-import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import us.mn.state.dot.tms.server.comm.ParsingException;
 
 /**
@@ -32,21 +32,16 @@ public class Counter extends ASN1Integer {
 
 	/** Decode a counter */
 	@Override
-	public void decode(InputStream is, BER er) throws IOException {
-		if (er.decodeIdentifier(is) != SNMPTag.COUNTER)
+	public void decode(ByteBuffer buf, BER er) throws IOException {
+		if (er.decodeIdentifier(buf) != SNMPTag.COUNTER)
 			throw new ParsingException("EXPECTED COUNTER");
-		int len = er.decodeLength(is);
+		int len = er.decodeLength(buf);
 		if (len < 1 || len > 4)
 			throw new ParsingException("INVALID COUNTER LENGTH");
-		int val = is.read();
-		if (val < 0)
-			throw BER.END_OF_STREAM;
+		int val = buf.get() & 0xFF;
 		for (int i = 1; i < len; i++) {
 			val <<= 8;
-			int v = is.read();
-			if (v < 0)
-				throw BER.END_OF_STREAM;
-			val |= v;
+			val |= buf.get() & 0xFF;
 		}
 		setInteger(val);
 	}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2016  Minnesota Department of Transportation
+ * Copyright (C) 2000-2019  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,8 +17,9 @@ package us.mn.state.dot.tms.server.comm.snmp;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.ByteArrayOutputStream;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.tms.server.comm.CommMessage;
 import us.mn.state.dot.tms.server.comm.ParsingException;
@@ -61,32 +62,95 @@ public class SNMP extends BER {
 	 * returns -128,-127,-126,... */
 	static private final int REQUEST_ID_MAX_LEDSTAR_BUG = 127;
 
+	/** Initial size of decoder buffer */
+	static private final int INITIAL_BUFFER = 1024;
+
 	/** Last SNMP request-id */
 	private int last_request = 0;
 
-	/** Encode an SNMP message */
-	private void encodeSNMPMessage(String community) throws IOException {
-		byte[] pdu = getEncodedData();
+	/** Get the next request-id */
+	private int nextRequestId() {
+		int r = last_request++;
+		if (last_request > REQUEST_ID_MAX_LEDSTAR_BUG)
+			last_request = 0;
+		return r;
+	}
+
+	/** Buffer for decoding received messages */
+	private ByteBuffer decoder = ByteBuffer.allocate(INITIAL_BUFFER);
+
+	/** Encode an SNMP message header (before an encoded PDU).
+	 * @param community Community name.
+	 * @param mark Encoded length before encoding the PDU. */
+	private void encodeSNMPMessage(byte[] community, int mark)
+		throws IOException
+	{
+		encodeOctetString(community);
 		encodeInteger(SNMP_VERSION);
-		encodeOctetString(community.getBytes());
-		encoder.write(pdu);
-		encodeSequence(getEncodedData());
+		encodeSequence(mark);
+	}
+
+	/** Read a received message into the decoder buffer.  Reading the
+	 * first byte waits for a message; all bytes available after that are
+	 * part of the same message. */
+	private ByteBuffer readMessage(InputStream is) throws IOException {
+		int first = is.read();
+		if (first < 0)
+			throw END_OF_STREAM;
+		int n = is.available() + 1;
+		if (n > decoder.capacity())
+			decoder = ByteBuffer.allocate(n);
+		byte[] b = decoder.array();
+		b[0] = (byte) first;
+		for (int off = 1; off < n;) {
+			int r = is.read(b, off, n - off);
+			if (r < 0)
+				throw END_OF_STREAM;
+			off += r;
+		}
+		decoder.clear();
+		decoder.limit(n);
+		return decoder;
 	}
 
 	/** Decode an SNMP message */
-	private void decodeSNMPMessage(InputStream is, String community)
+	private void decodeSNMPMessage(ByteBuffer buf, byte[] community)
 		throws IOException
 	{
-		if (decodeSequence(is) > is.available())
-			throw new ParsingException("INVALID SNMP LENGTH");
-		if (decodeInteger(is) != 0)
+		decodeSequence(buf);
+		if (decodeInteger(buf) != 0)
 			throw new ParsingException("SNMP VERSION MISMATCH");
-		String c = new String(decodeOctetString(is));
-		if (!c.equals(community))
+		if (!Arrays.equals(decodeOctetString(buf), community))
 			throw new ParsingException("SNMP COMMUNITY MISMATCH");
 	}
 
-	/** SNMP message class */
+	/** Decode the request-id of an encoded SNMP message (request or
+	 * response).  This does not change any decoder state, so it can be
+	 * called from any thread.
+	 * @param buf Buffer containing one message; its position is not
+	 *            changed.
+	 * @return SNMP request-id. */
+	public int decodeRequestId(ByteBuffer buf) throws IOException {
+		ByteBuffer b = buf.duplicate();
+		decodeSequence(b);
+		decodeInteger(b);	// version
+		decodeOctetString(b);	// community
+		decodeIdentifier(b);	// PDU type
+		decodeLength(b);
+		return decodeInteger(b);
+	}
+
+	/** SNMP message class.  All objects added to a message are sent in
+	 * one request, unless the agent has responded with tooBig before.
+	 * Then, get-requests are split to fewer objects per request; after
+	 * genErr to a get-request with multiple objects, they are sent one
+	 * per request.  Set-requests are only split if enabled with
+	 * setSplitSets, since a failed request could leave a partial set.
+	 *
+	 * Requests are encoded backwards into the reusable encoder buffer:
+	 * variable bindings (last to first), then the PDU and message
+	 * headers, so nothing is copied before writing to the output stream.
+	 * Responses are decoded directly from the decoder buffer. */
 	public class Message implements CommMessage<ASN1Object> {
 
 		/** Output stream for this message */
@@ -96,23 +160,47 @@ public class SNMP extends BER {
 		private final InputStream is;
 
 		/** Community name */
-		private final String community;
+		private final byte[] community;
+
+		/** Agent capabilities */
+		private final AgentCaps caps;
 
-		/** SNMP request-id */
-		public final int request_id;
+		/** SNMP request-id of current request */
+		private int request_id;
 
 		/** List of objects set or get with this message */
-		private final LinkedList<ASN1Object> mos =
-			new LinkedList<ASN1Object>();
+		private final ArrayList<ASN1Object> mos =
+			new ArrayList<ASN1Object>();
+
+		/** Index of first object in current request */
+		private int first;
+
+		/** Number of objects in current request */
+		private int n_objs;
+
+		/** Flag to allow splitting set-requests */
+		private boolean split_sets = false;
 
 		/** Create a new SNMP message */
-		public Message(OutputStream o, InputStream i, String c) {
+		public Message(OutputStream o, InputStream i, String c,
+			AgentCaps ac)
+		{
 			os = o;
 			is = i;
-			community = (c != null) ? c : PUBLIC;
-			request_id = last_request++;
-			if (last_request > REQUEST_ID_MAX_LEDSTAR_BUG)
-				last_request = 0;
+			community = ((c != null) ? c : PUBLIC).getBytes();
+			caps = ac;
+		}
+
+		/** Create a new SNMP message */
+		public Message(OutputStream o, InputStream i, String c) {
+			this(o, i, c, new AgentCaps());
+		}
+
+		/** Allow set-requests to be split.  This should only be
+		 * enabled when each object can be set independently.
+		 * @param s True to split set-requests like get-requests. */
+		public void setSplitSets(boolean s) {
+			split_sets = s;
 		}
 
 		/** Add a controller property */
@@ -121,20 +209,11 @@ public class SNMP extends BER {
 		}
 
 		/** Query the controller properties.  This is accomplished with
-		 * an SNMP get-request.
+		 * one or more SNMP get-requests.
 		 * @throws IOException On any errors sending a request or
 		 *         receiving response */
 		public void queryProps() throws IOException {
-			if (mos.isEmpty())
-				return;
-			is.skip(is.available());
-			encodeVarBindList(false);
-			encodeRequestPDU(SNMPTag.GET_REQUEST);
-			encodeSNMPMessage(community);
-			encoder.writeTo(os);
-			encoder.reset();
-			os.flush();
-			decodeResponse();
+			sendRequests(SNMPTag.GET_REQUEST, false);
 		}
 
 		/** Log a property query */
@@ -156,18 +235,67 @@ public class SNMP extends BER {
 		}
 
 		/** Store the controller properties.  This is accomplished with
-		 * an SNMP set-request.
+		 * one or more SNMP set-requests.
 		 * @throws IOException On any errors sending a request or
 		 *         receiving response */
 		public void storeProps() throws IOException {
-			if (mos.isEmpty())
-				return;
+			sendRequests(SNMPTag.SET_REQUEST, true);
+		}
+
+		/** Send requests for all objects.
+		 * @param tag PDU type identifier.
+		 * @param set Flag for set-request. */
+		private void sendRequests(Tag tag, boolean set)
+			throws IOException
+		{
+			boolean split = split_sets || !set;
+			first = 0;
+			while (first < mos.size()) {
+				n_objs = mos.size() - first;
+				if (split) {
+					n_objs = Math.min(n_objs,
+						caps.getMaxObjects());
+				}
+				encodeVarBindList(set);
+				try {
+					sendRequest(tag);
+				}
+				catch (TooBig e) {
+					if (!split || n_objs < 2)
+						throw e;
+					logLimit(e);
+					caps.reduce(n_objs);
+					continue;
+				}
+				catch (GenError e) {
+					if (set || n_objs < 2)
+						throw e;
+					logLimit(e);
+					caps.setSingle();
+					continue;
+				}
+				caps.success(n_objs);
+				first += n_objs;
+			}
+		}
+
+		/** Log an error which limits objects per request */
+		private void logLimit(Exception e) {
+			if (SNMP_LOG.isOpen()) {
+				SNMP_LOG.log(e.getMessage() + ", " + n_objs +
+					" objects; retrying with fewer");
+			}
+		}
+
+		/** Send one request and decode the response.  The variable
+		 * bindings for the request must already be encoded.
+		 * @param tag PDU type identifier. */
+		private void sendRequest(Tag tag) throws IOException {
+			request_id = nextRequestId();
 			is.skip(is.available());
-			encodeVarBindList(true);
-			encodeRequestPDU(SNMPTag.SET_REQUEST);
-			encodeSNMPMessage(community);
-			encoder.writeTo(os);
-			encoder.reset();
+			encodeRequestPDU(tag, 0);
+			encodeSNMPMessage(community, 0);
+			writeEncodedData(os);
 			os.flush();
 			decodeResponse();
 		}
@@ -176,9 +304,10 @@ public class SNMP extends BER {
 		private void decodeResponse() throws IOException {
 			for (int i = 0;; i++) {
 				try {
-					decodeSNMPMessage(is, community);
-					decodeResponsePDU(is);
-					decodeVarBindList(is);
+					ByteBuffer buf = readMessage(is);
+					decodeSNMPMessage(buf, community);
+					decodeResponsePDU(buf);
+					decodeVarBindList(buf);
 					return;
 				}
 				catch (RequestIDException e) {
@@ -190,74 +319,70 @@ public class SNMP extends BER {
 			}
 		}
 
-		/** Encode a null variable binding */
+		/** Encode a variable binding */
 		private void encodeVarBind(ASN1Object mo, boolean set)
 			throws IOException
 		{
-			encodeObjectIdentifier(mo.oid());
+			int mark = encodedLength();
 			if (set)
 				mo.encode(SNMP.this);
 			else
 				encodeNull();
-			encodeSequence(getEncodedData());
+			encodeObjectIdentifier(mo.oid());
+			encodeSequence(mark);
 		}
 
-		/** Encode the variable binding list */
+		/** Encode variable bindings for the current request */
 		private void encodeVarBindList(boolean set) throws IOException {
-			ByteArrayOutputStream vb = new ByteArrayOutputStream();
-			for (ASN1Object mo: mos) {
-				encodeVarBind(mo, set);
-				vb.write(getEncodedData());
-			}
-			encodeSequence(vb.toByteArray());
+			resetEncoder();
+			for (int i = first + n_objs - 1; i >= first; i--)
+				encodeVarBind(mos.get(i), set);
 		}
 
-		/** Encode an SNMP request PDU
-		 * @param tag PDU type identifier */
-		private void encodeRequestPDU(Tag tag) throws IOException {
-			byte[] varBindList = getEncodedData();
-			encodeInteger(request_id);
-			encodeInteger(0);	// error-status
+		/** Encode an SNMP request PDU (before encoded bindings).
+		 * @param tag PDU type identifier.
+		 * @param mark Encoded length before encoding bindings. */
+		private void encodeRequestPDU(Tag tag, int mark)
+			throws IOException
+		{
+			encodeSequence(mark);
 			encodeInteger(0);	// error-index
-			encoder.write(varBindList);
-			byte[] buffer = getEncodedData();
-			encodeIdentifier(tag);
-			encodeLength(buffer.length);
-			encoder.write(buffer);
+			encodeInteger(0);	// error-status
+			encodeInteger(request_id);
+			encodeConstructed(tag, mark);
 		}
 
 		/** Decode a variable binding */
-		private void decodeVarBind(InputStream is, ASN1Object mo)
+		private void decodeVarBind(ByteBuffer buf, ASN1Object mo)
 			throws IOException
 		{
-			decodeSequence(is);
+			decodeSequence(buf);
 			// FIXME: compare with OID from mo
-			decodeObjectIdentifier(is);
-			mo.decode(is, SNMP.this);
+			decodeObjectIdentifier(buf);
+			mo.decode(buf, SNMP.this);
 		}
 
 		/** Decode the variable binding list */
-		private void decodeVarBindList(InputStream is)
+		private void decodeVarBindList(ByteBuffer buf)
 			throws IOException
 		{
-			decodeSequence(is);
-			for (ASN1Object mo: mos)
-				decodeVarBind(is, mo);
+			decodeSequence(buf);
+			for (int i = first; i < first + n_objs; i++)
+				decodeVarBind(buf, mos.get(i));
 		}
 
 		/** Decode an SNMP response PDU */
-		private void decodeResponsePDU(InputStream is)
+		private void decodeResponsePDU(ByteBuffer buf)
 			throws IOException
 		{
-			if (decodeIdentifier(is) != SNMPTag.GET_RESPONSE)
+			if (decodeIdentifier(buf) != SNMPTag.GET_RESPONSE)
 				throw new ParsingException("!GET_RESPONSE TAG");
-			if (decodeLength(is) > is.available())
-				throw new ParsingException("INVALID PDU LEN");
-			int req = decodeInteger(is);
+			decodeLength(buf);
+			int req = decodeInteger(buf);
 			if (req != request_id)
 				throw new RequestIDException(req, request_id);
-			int error = decodeInteger(is);
-			int index = decodeInteger(is);
+			int error = decodeInteger(buf);
+			int index = decodeInteger(buf);
 			switch (error) {
 			case TOO_BIG:
 				throw new TooBig();
@@ -274,16 +399,16 @@ public class SNMP extends BER {
 
 		/** Get the object name/value */
 		private String getObject(int i) {
-			if (i > 0 && i <= mos.size())
-				return mos.get(i - 1).toString();
+			if (i > 0 && i <= n_objs)
+				return mos.get(first + i - 1).toString();
 			else
 				return String.valueOf(i);
 		}
 
 		/** Get the object name */
 		private String getName(int i) {
-			if (i > 0 && i <= mos.size())
-				return mos.get(i - 1).getName();
+			if (i > 0 && i <= n_objs)
+				return mos.get(first + i - 1).getName();
 			else
 				return String.valueOf(i);
 		}
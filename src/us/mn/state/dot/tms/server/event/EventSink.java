@@ -0,0 +1,210 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.event;
+
+import java.util.ArrayList;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.Scheduler;
+import us.mn.state.dot.tms.TMSException;
+
+/**
+ * An event sink buffers events and stores them to the database in batches.
+ * A batch is stored when BATCH_SIZE events are queued, or FLUSH_MS after the
+ * first event is queued, whichever comes first.
+ *
+ * The queue is bounded.  When it is full, new events are dropped (and
+ * counted) until the queue has been flushed.
+ *
+ * @author Douglas Lau
+ */
+public class EventSink {
+
+	/** Event sink debug log */
+	static private final DebugLog EVENT_LOG = new DebugLog("event_sink");
+
+	/** Default maximum number of queued events */
+	static public final int DEFAULT_MAX_QUEUE = 10000;
+
+	/** Maximum number of events to store in one batch */
+	static private final int BATCH_SIZE = 500;
+
+	/** Maximum time to hold an event before storing (ms) */
+	static private final int FLUSH_MS = 1000;
+
+	/** Scheduler for flush jobs */
+	private final Scheduler scheduler;
+
+	/** Queue of events to store */
+	private final ArrayList<BaseEvent> queue = new ArrayList<BaseEvent>();
+
+	/** Maximum number of queued events */
+	private int max_queue = DEFAULT_MAX_QUEUE;
+
+	/** Flag indicating a delayed flush job is scheduled */
+	private boolean delay_scheduled = false;
+
+	/** Flag indicating an immediate flush job is scheduled */
+	private boolean now_scheduled = false;
+
+	/** Count of events queued */
+	private long n_queued = 0;
+
+	/** Count of events written to the database */
+	private long n_written = 0;
+
+	/** Count of events dropped (queue overflow or write failure) */
+	private long n_dropped = 0;
+
+	/** Job to flush queued events */
+	private class FlushJob extends Job {
+		private final boolean delayed;
+		private FlushJob(boolean d) {
+			super(d ? FLUSH_MS : 0);
+			delayed = d;
+		}
+		public void perform() {
+			flushScheduled(delayed);
+		}
+	}
+
+	/** Create a new event sink.
+	 * @param s Scheduler for flush jobs. */
+	public EventSink(Scheduler s) {
+		scheduler = s;
+	}
+
+	/** Set the maximum number of queued events */
+	public synchronized void setMaxQueue(int m) {
+		max_queue = Math.max(m, BATCH_SIZE);
+	}
+
+	/** Add an event to be stored */
+	public void add(BaseEvent ev) {
+		FlushJob job = null;
+		synchronized (this) {
+			if (queue.size() >= max_queue) {
+				n_dropped++;
+				if (EVENT_LOG.isOpen())
+					EVENT_LOG.log("Queue full, dropped " +
+						ev.getTable());
+				return;
+			}
+			queue.add(ev);
+			n_queued++;
+			if (queue.size() >= BATCH_SIZE && !now_scheduled) {
+				now_scheduled = true;
+				job = new FlushJob(false);
+			} else if (!delay_scheduled) {
+				delay_scheduled = true;
+				job = new FlushJob(true);
+			}
+		}
+		if (job != null)
+			scheduler.addJob(job);
+	}
+
+	/** Perform a scheduled flush */
+	private void flushScheduled(boolean delayed) {
+		synchronized (this) {
+			if (delayed)
+				delay_scheduled = false;
+			else
+				now_scheduled = false;
+		}
+		flush();
+	}
+
+	/** Flush all queued events to the database */
+	public void flush() {
+		ArrayList<BaseEvent> batch = takeBatch();
+		while (batch.size() > 0) {
+			storeBatch(batch);
+			batch = takeBatch();
+		}
+		if (EVENT_LOG.isOpen())
+			EVENT_LOG.log(toString());
+	}
+
+	/** Take a batch of events from the queue */
+	private synchronized ArrayList<BaseEvent> takeBatch() {
+		int n = Math.min(queue.size(), BATCH_SIZE);
+		ArrayList<BaseEvent> batch = new ArrayList<BaseEvent>(
+			queue.subList(0, n));
+		queue.subList(0, n).clear();
+		return batch;
+	}
+
+	/** Store a batch of events */
+	private void storeBatch(ArrayList<BaseEvent> batch) {
+		try {
+			BaseEvent.store.create(batch);
+			addWritten(batch.size());
+		}
+		catch (TMSException e) {
+			if (EVENT_LOG.isOpen())
+				EVENT_LOG.log("Batch failed: " + e.getMessage());
+			// Store events one at a time, so that one bad event
+			// does not cause the whole batch to be dropped
+			for (BaseEvent ev: batch)
+				storeEvent(ev);
+		}
+	}
+
+	/** Store one event */
+	private void storeEvent(BaseEvent ev) {
+		try {
+			ev.doStore();
+			addWritten(1);
+		}
+		catch (TMSException e) {
+			e.printStackTrace();
+			addDropped(1);
+		}
+	}
+
+	/** Add to the count of written events */
+	private synchronized void addWritten(int n) {
+		n_written += n;
+	}
+
+	/** Add to the count of dropped events */
+	private synchronized void addDropped(int n) {
+		n_dropped += n;
+	}
+
+	/** Get the count of events queued */
+	public synchronized long getQueued() {
+		return n_queued;
+	}
+
+	/** Get the count of events written to the database */
+	public synchronized long getWritten() {
+		return n_written;
+	}
+
+	/** Get the count of events dropped */
+	public synchronized long getDropped() {
+		return n_dropped;
+	}
+
+	/** Get a string representation of the event sink */
+	@Override
+	public synchronized String toString() {
+		return "queued: " + n_queued + ", written: " + n_written +
+			", dropped: " + n_dropped + ", pending: " +
+			queue.size();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Debug log tests
+ *
+ * @author Doug Lau
+ */
+public class DebugLogTest extends TestCase {
+
+	public DebugLogTest(String name) {
+		super(name);
+	}
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = Files.createTempDirectory("debug_log").toFile();
+		DebugLog.init(dir, "Created DebugLog");
+	}
+
+	@Override
+	protected void tearDown() {
+		DebugLog.init(new File("."), "Created DebugLog");
+		for (File f: dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	/** Read a log file */
+	private String read(File f) throws IOException {
+		return new String(Files.readAllBytes(f.toPath()));
+	}
+
+	public void testBadFile() throws Exception {
+		// A directory can be checked, but not opened for writing
+		File bf = new File(dir, "bad_log");
+		assertTrue(bf.mkdir());
+		File gf = new File(dir, "good_log");
+		assertTrue(gf.createNewFile());
+		final AtomicInteger errors = new AtomicInteger();
+		DebugLog bad = new DebugLog("bad_log", new ExceptionHandler() {
+			public boolean handle(Exception e) {
+				errors.incrementAndGet();
+				return true;
+			}
+		});
+		DebugLog good = new DebugLog("good_log");
+		try {
+			assertTrue(bad.isOpen());
+			assertTrue(good.isOpen());
+			bad.log("first");
+			good.log("second");
+			long end = System.currentTimeMillis() + 5000;
+			while (!read(gf).contains("second") &&
+			       System.currentTimeMillis() < end)
+				Thread.sleep(50);
+			assertTrue(errors.get() > 0);
+			// Writer thread is still running after the error
+			assertTrue(read(gf).contains("second"));
+			good.log("third");
+			end = System.currentTimeMillis() + 5000;
+			while (!read(gf).contains("third") &&
+			       System.currentTimeMillis() < end)
+				Thread.sleep(50);
+			assertTrue(read(gf).contains("third"));
+		}
+		finally {
+			bad.close();
+			good.close();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Pool scheduler tests
+ *
+ * @author Doug Lau
+ */
+public class PoolSchedulerTest extends TestCase {
+
+	/** Job which sleeps, tracking concurrent jobs with the same name */
+	static private class SleepJob extends Job {
+		private final String name;
+		private final AtomicInteger active;
+		private final AtomicInteger max_active;
+		private final AtomicInteger done;
+		private SleepJob(String n, AtomicInteger a, AtomicInteger m,
+			AtomicInteger d)
+		{
+			name = n;
+			active = a;
+			max_active = m;
+			done = d;
+		}
+		public void perform() throws InterruptedException {
+			int n = active.incrementAndGet();
+			if (n > max_active.get())
+				max_active.set(n);
+			Thread.sleep(200);
+			active.decrementAndGet();
+			done.incrementAndGet();
+		}
+		public String getName() {
+			return name;
+		}
+	}
+
+	protected final PoolScheduler scheduler = new PoolScheduler("pool",4);
+
+	public PoolSchedulerTest(String name) {
+		super(name);
+	}
+
+	public void testExclusive() throws InterruptedException {
+		AtomicInteger a_active = new AtomicInteger();
+		AtomicInteger a_max = new AtomicInteger();
+		AtomicInteger b_active = new AtomicInteger();
+		AtomicInteger b_max = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		for (int i = 0; i < 3; i++) {
+			scheduler.addJob(new SleepJob("A", a_active, a_max,
+				done));
+			scheduler.addJob(new SleepJob("B", b_active, b_max,
+				done));
+		}
+		long start = System.currentTimeMillis();
+		while (done.get() < 6)
+			Thread.sleep(50);
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(a_max.get() == 1);
+		assertTrue(b_max.get() == 1);
+		// A and B jobs should run at the same time
+		assertTrue(elapsed < 1000);
+		assertTrue(scheduler.getLateness().containsKey("A"));
+		assertTrue(scheduler.getLateness().containsKey("B"));
+		assertFalse(scheduler.getLateness().containsKey("C"));
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Message decoder tests
+ *
+ * @author Doug Lau
+ */
+public class MessageDecoderTest extends TestCase {
+
+	static private final Charset UTF8 = Charset.forName("UTF-8");
+
+	static private final String US = String.valueOf(Message.UNIT_SEP.code);
+
+	static private final String RS =
+		String.valueOf(Message.RECORD_SEP.code);
+
+	private final ByteBuffer app_in = ByteBuffer.allocate(64);
+
+	private final MessageDecoder decoder = new MessageDecoder(app_in);
+
+	public MessageDecoderTest(String name) {
+		super(name);
+	}
+
+	private void put(String s) {
+		app_in.put(s.getBytes(UTF8));
+	}
+
+	public void testDecode() {
+		put("t" + RS + "a" + US + "dms/V1/msg" + US + "x" + US + RS);
+		List<String> p = decoder.decode();
+		assertTrue(p.size() == 1);
+		assertTrue(p.get(0).equals("t"));
+		p = decoder.decode();
+		assertTrue(p.size() == 4);
+		assertTrue(p.get(0).equals("a"));
+		assertTrue(p.get(1).equals("dms/V1/msg"));
+		assertTrue(p.get(2).equals("x"));
+		assertTrue(p.get(3).equals(""));
+		assertTrue(decoder.decode() == null);
+		assertTrue(app_in.position() == 0);
+	}
+
+	public void testPartial() {
+		String n = "sign_msg/\u00e9\u4e2d";
+		byte[] b = ("o" + US + n + RS).getBytes(UTF8);
+		// Split in the middle of a multi-byte character
+		int split = b.length - 3;
+		app_in.put(b, 0, split);
+		assertTrue(decoder.decode() == null);
+		assertTrue(app_in.position() == 0);
+		app_in.put(b, split, b.length - split);
+		List<String> p = decoder.decode();
+		assertTrue(p.size() == 2);
+		assertTrue(p.get(1).equals(n));
+		assertTrue(decoder.decode() == null);
+	}
+
+	public void testLarge() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			sb.append('z');
+		String big = sb.toString();
+		byte[] b = ("s" + US + big + RS).getBytes(UTF8);
+		int off = 0;
+		List<String> p = null;
+		while (off < b.length) {
+			int n = Math.min(app_in.remaining(), b.length - off);
+			app_in.put(b, off, n);
+			off += n;
+			p = decoder.decode();
+		}
+		assertTrue(p != null);
+		assertTrue(p.size() == 2);
+		assertTrue(p.get(1).equals(big));
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.SonarException;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * Object index tests
+ *
+ * @author Doug Lau
+ */
+public class ObjectIndexTest extends TestCase {
+
+	/** Simple object for testing */
+	static public class TestObject implements SonarObject {
+		private final String type;
+		private final String name;
+		public TestObject parent;
+		public Integer num;
+		private TestObject(String t, String n, Integer v) {
+			type = t;
+			name = n;
+			num = v;
+		}
+		public String getTypeName() {
+			return type;
+		}
+		public String getName() {
+			return name;
+		}
+		public void destroy() { }
+	}
+
+	/** Index by number */
+	static private class NumIndex extends ObjectIndex {
+		private NumIndex() {
+			super("num");
+		}
+		protected Object getKey(SonarObject o) {
+			return ((TestObject) o).num;
+		}
+	}
+
+	/** Index by parent number */
+	static private class ParentIndex extends ObjectIndex {
+		private ParentIndex() {
+			super("parent");
+		}
+		protected Object getKey(SonarObject o) {
+			TestObject p = ((TestObject) o).parent;
+			return (p != null) ? p.num : null;
+		}
+		protected SonarObject getDependency(SonarObject o) {
+			return ((TestObject) o).parent;
+		}
+	}
+
+	/** Index by number, which stalls computing the first key */
+	static private class SlowIndex extends NumIndex {
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		protected Object getKey(SonarObject o) {
+			Object k = super.getKey(o);
+			if (started.getCount() > 0) {
+				started.countDown();
+				try {
+					release.await(1, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					// fall through
+				}
+			}
+			return k;
+		}
+	}
+
+	private final ServerNamespace ns = new ServerNamespace();
+
+	public ObjectIndexTest(String name) {
+		super(name);
+	}
+
+	public void testNoIndex() {
+		assertTrue(ns.lookupIndex("test", "num", 1) == null);
+	}
+
+	public void testIndex() throws SonarException {
+		ns.addIndex("test", new NumIndex());
+		assertFalse(ns.lookupIndex("test", "num", 1).hasNext());
+		assertTrue(ns.lookupIndex("test", "other", 1) == null);
+		TestObject a = new TestObject("test", "a", 1);
+		TestObject b = new TestObject("test", "b", 2);
+		TestObject c = new TestObject("test", "c", 2);
+		ns.addObject(a);
+		ns.addObject(b);
+		ns.addObject(c);
+		assertTrue(count(ns.lookupIndex("test", "num", 1)) == 1);
+		assertTrue(count(ns.lookupIndex("test", "num", 2)) == 2);
+		assertTrue(count(ns.lookupIndex("test", "num", 3)) == 0);
+		b.num = 3;
+		ns.reindex(b);
+		assertTrue(count(ns.lookupIndex("test", "num", 2)) == 1);
+		assertTrue(ns.lookupIndex("test", "num", 3).next() == b);
+		c.num = null;
+		ns.reindex(c);
+		assertTrue(count(ns.lookupIndex("test", "num", 2)) == 0);
+		ns.removeObject(a);
+		assertTrue(count(ns.lookupIndex("test", "num", 1)) == 0);
+		// Not in namespace -- must not be indexed
+		a.num = 3;
+		ns.reindex(a);
+		assertTrue(count(ns.lookupIndex("test", "num", 3)) == 1);
+	}
+
+	public void testExisting() throws SonarException {
+		ns.addObject(new TestObject("test", "a", 1));
+		ns.addIndex("test", new NumIndex());
+		assertTrue(count(ns.lookupIndex("test", "num", 1)) == 1);
+	}
+
+	public void testDependency() throws SonarException {
+		ns.addIndex("child", new ParentIndex());
+		TestObject p = new TestObject("test", "p", 5);
+		TestObject c = new TestObject("child", "c", 0);
+		c.parent = p;
+		ns.addObject(p);
+		ns.addObject(c);
+		assertTrue(ns.lookupIndex("child", "parent", 5).next() == c);
+		p.num = 6;
+		ns.reindex(p);
+		assertFalse(ns.lookupIndex("child", "parent", 5).hasNext());
+		assertTrue(ns.lookupIndex("child", "parent", 6).next() == c);
+	}
+
+	public void testConcurrentUpdate() throws Exception {
+		final SlowIndex idx = new SlowIndex();
+		final TestObject a = new TestObject("test", "a", 1);
+		Thread t1 = new Thread() {
+			public void run() {
+				idx.update(a);
+			}
+		};
+		t1.start();
+		idx.started.await();
+		// Key changes while the first update is computing its key
+		a.num = 2;
+		Thread t2 = new Thread() {
+			public void run() {
+				idx.update(a);
+			}
+		};
+		t2.start();
+		t2.join(100);
+		idx.release.countDown();
+		t1.join();
+		t2.join();
+		assertFalse(idx.lookup(1).hasNext());
+		assertTrue(idx.lookup(2).next() == a);
+	}
+
+	private int count(Iterator<SonarObject> it) {
+		int n = 0;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		return n;
+	}
+}
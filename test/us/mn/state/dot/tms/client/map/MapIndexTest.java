@@ -0,0 +1,151 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.map;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Map index tests
+ *
+ * @author Douglas Lau
+ */
+public class MapIndexTest extends TestCase {
+
+	/** Simple map object for testing */
+	static private class TestObject implements MapObject {
+		private final Rectangle2D bounds;
+		private TestObject(Rectangle2D b) {
+			bounds = b;
+		}
+		public AffineTransform getTransform() {
+			return new AffineTransform();
+		}
+		public AffineTransform getInverseTransform() {
+			return new AffineTransform();
+		}
+		public Shape getShape() {
+			return bounds;
+		}
+		public Shape getOutlineShape() {
+			return bounds;
+		}
+	}
+
+	/** Collector for search results */
+	static private class Collector implements MapSearcher {
+		private final List<MapObject> found = new ArrayList<MapObject>();
+		public boolean next(MapObject mo) {
+			found.add(mo);
+			return false;
+		}
+	}
+
+	public MapIndexTest(String name) {
+		super(name);
+	}
+
+	private List<MapObject> objs = new ArrayList<MapObject>();
+
+	private List<Rectangle2D> bounds = new ArrayList<Rectangle2D>();
+
+	private void add(double x, double y, double w, double h) {
+		Rectangle2D b = new Rectangle2D.Double(x, y, w, h);
+		objs.add(new TestObject(b));
+		bounds.add(b);
+	}
+
+	/** Search by scanning every object */
+	private List<MapObject> scan(Rectangle2D r) {
+		List<MapObject> found = new ArrayList<MapObject>();
+		for (int i = 0; i < objs.size(); i++) {
+			Rectangle2D b = bounds.get(i);
+			if (b.getMinX() <= r.getMaxX() &&
+			    r.getMinX() <= b.getMaxX() &&
+			    b.getMinY() <= r.getMaxY() &&
+			    r.getMinY() <= b.getMaxY())
+				found.add(objs.get(i));
+		}
+		return found;
+	}
+
+	private List<MapObject> search(MapIndex idx, Rectangle2D r) {
+		Collector c = new Collector();
+		assertNull(idx.forEach(r, c));
+		return c.found;
+	}
+
+	public void testEmpty() {
+		MapIndex idx = new MapIndex(objs, bounds);
+		assertEquals(0, idx.size());
+		assertTrue(search(idx, new Rectangle2D.Double(0, 0, 10, 10))
+			.isEmpty());
+	}
+
+	public void testPoints() {
+		add(0, 0, 0, 0);
+		add(5, 5, 0, 0);
+		add(10, 10, 0, 0);
+		MapIndex idx = new MapIndex(objs, bounds);
+		assertEquals(3, idx.size());
+		List<MapObject> f = search(idx,
+			new Rectangle2D.Double(5, 5, 0, 0));
+		assertEquals(1, f.size());
+		assertSame(objs.get(1), f.get(0));
+		f = search(idx, new Rectangle2D.Double(-1, -1, 7, 7));
+		assertEquals(2, f.size());
+		assertSame(objs.get(0), f.get(0));
+		assertSame(objs.get(1), f.get(1));
+		assertTrue(search(idx, new Rectangle2D.Double(11, 11, 5, 5))
+			.isEmpty());
+	}
+
+	public void testOrder() {
+		Random rnd = new Random(1234);
+		for (int i = 0; i < 5000; i++) {
+			add(rnd.nextDouble() * 1000, rnd.nextDouble() * 1000,
+				rnd.nextDouble() * 20, rnd.nextDouble() * 20);
+		}
+		MapIndex idx = new MapIndex(objs, bounds);
+		for (int i = 0; i < 100; i++) {
+			Rectangle2D r = new Rectangle2D.Double(
+				rnd.nextDouble() * 1000, rnd.nextDouble() * 1000,
+				rnd.nextDouble() * 100, rnd.nextDouble() * 100);
+			assertEquals(scan(r), search(idx, r));
+		}
+		Collector c = new Collector();
+		assertNull(idx.forEach(c));
+		assertEquals(objs, c.found);
+	}
+
+	public void testFirstFound() {
+		add(0, 0, 10, 10);
+		add(5, 5, 10, 10);
+		MapIndex idx = new MapIndex(objs, bounds);
+		MapObject mo = idx.forEach(new Rectangle2D.Double(6, 6, 0, 0),
+			new MapSearcher()
+		{
+			public boolean next(MapObject o) {
+				return true;
+			}
+		});
+		assertSame(objs.get(0), mo);
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.map;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+/**
+ * Tile cache tests
+ *
+ * @author Douglas Lau
+ */
+public class TileCacheTest extends TestCase {
+
+	/** Fetcher which creates tile images */
+	static private class TestFetcher extends ImageFetcher {
+		private int n_fetched = 0;
+		private long delay_ms = 0;
+		private TestFetcher() throws IOException {
+			super("http://127.0.0.1/");
+		}
+		@Override
+		public InputStream fetchImage(String n) throws IOException {
+			if (n.startsWith("missing"))
+				throw new FileNotFoundException(n);
+			synchronized (this) {
+				n_fetched++;
+			}
+			try {
+				Thread.sleep(delay_ms);
+			}
+			catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			BufferedImage bi = new BufferedImage(256, 256,
+				BufferedImage.TYPE_INT_RGB);
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			ImageIO.write(bi, "png", bos);
+			return new ByteArrayInputStream(bos.toByteArray());
+		}
+		private synchronized int getFetched() {
+			return n_fetched;
+		}
+	}
+
+	/** Size of one decoded tile */
+	static private final long TILE_BYTES = 256 * 256 * 4;
+
+	/** One day (ms) */
+	static private final long DAY_MS = 24 * 60 * 60 * 1000;
+
+	public TileCacheTest(String name) {
+		super(name);
+	}
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = Files.createTempDirectory("tiles").toFile();
+	}
+
+	@Override
+	protected void tearDown() {
+		delete(dir);
+	}
+
+	static private void delete(File f) {
+		File[] fs = f.listFiles();
+		if (fs != null) {
+			for (File c: fs)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	/** Wait for a tile to be loaded into memory */
+	static private BufferedImage waitTile(TileCache c, String n)
+		throws InterruptedException
+	{
+		for (int i = 0; i < 500; i++) {
+			BufferedImage bi = c.getTile(n);
+			if (bi != null)
+				return bi;
+			Thread.sleep(10);
+		}
+		return null;
+	}
+
+	public void testMemoryLRU() throws Exception {
+		TestFetcher f = new TestFetcher();
+		TileCache c = new TileCache(f, null, TILE_BYTES * 2, 2);
+		assertTrue(waitTile(c, "1/0/0") != null);
+		assertTrue(waitTile(c, "1/0/1") != null);
+		// Use 1/0/0, so 1/0/1 is least recently used
+		assertTrue(c.getTile("1/0/0") != null);
+		assertTrue(waitTile(c, "1/1/0") != null);
+		assertTrue(c.getTile("1/0/0") != null);
+		assertTrue(c.getTile("1/0/1") == null);
+		assertTrue(waitTile(c, "1/0/1") != null);
+		assertTrue(f.getFetched() == 4);
+		assertTrue(c.getFetched() == 4);
+		assertTrue(c.getDiskReads() == 0);
+		c.destroy();
+	}
+
+	public void testMissing() throws Exception {
+		TestFetcher f = new TestFetcher();
+		TileCache c = new TileCache(f, null, TILE_BYTES * 2, 2);
+		assertTrue(c.getTile("missing") == null);
+		Thread.sleep(100);
+		assertTrue(c.getTile("missing") == null);
+		assertTrue(c.getMisses() == 1);
+		c.destroy();
+	}
+
+	public void testDiskCache() throws Exception {
+		TestFetcher f = new TestFetcher();
+		TileDiskCache d = new TileDiskCache(dir, 1024 * 1024, DAY_MS);
+		TileCache c = new TileCache(f, d, TILE_BYTES * 2, 2);
+		assertTrue(waitTile(c, "2/1/1") != null);
+		assertTrue(d.contains("2/1/1"));
+		c.destroy();
+		// A new cache should find the file from the disk cache
+		d = new TileDiskCache(dir, 1024 * 1024, DAY_MS);
+		assertTrue(d.contains("2/1/1"));
+		c = new TileCache(f, d, TILE_BYTES * 2, 2);
+		assertTrue(waitTile(c, "2/1/1") != null);
+		assertTrue(f.getFetched() == 1);
+		assertTrue(c.getDiskReads() == 1);
+		c.destroy();
+	}
+
+	public void testPrefetch() throws Exception {
+		TestFetcher f = new TestFetcher();
+		TileDiskCache d = new TileDiskCache(dir, 1024 * 1024, DAY_MS);
+		TileCache c = new TileCache(f, d, TILE_BYTES * 2, 2);
+		c.prefetchTile("3/2/2");
+		for (int i = 0; i < 500 && !d.contains("3/2/2"); i++)
+			Thread.sleep(10);
+		assertTrue(d.contains("3/2/2"));
+		assertTrue(waitTile(c, "3/2/2") != null);
+		assertTrue(f.getFetched() == 1);
+		c.destroy();
+	}
+
+	public void testDiskPurge() throws Exception {
+		TileDiskCache d = new TileDiskCache(dir, 250, DAY_MS);
+		d.write("0/0/0", new byte[100]);
+		d.write("0/0/1", new byte[100]);
+		assertTrue(d.read("0/0/0") != null);
+		d.write("0/0/2", new byte[100]);
+		assertTrue(d.contains("0/0/0"));
+		assertFalse(d.contains("0/0/1"));
+		assertTrue(d.contains("0/0/2"));
+		assertFalse(new File(dir, "0/0/1.png").exists());
+	}
+
+	public void testPrefetchLoad() throws Exception {
+		TestFetcher f = new TestFetcher();
+		f.delay_ms = 100;
+		TileDiskCache d = new TileDiskCache(dir, 1024 * 1024, DAY_MS);
+		TileCache c = new TileCache(f, d, TILE_BYTES * 2, 2);
+		// Requested while prefetching
+		c.prefetchTile("3/2/3");
+		Thread.sleep(20);
+		assertTrue(waitTile(c, "3/2/3") != null);
+		assertTrue(f.getFetched() == 1);
+		c.destroy();
+	}
+
+	public void testDiskAge() throws Exception {
+		TileDiskCache d = new TileDiskCache(dir, 1024 * 1024, DAY_MS);
+		d.write("0/0/0", new byte[100]);
+		d.write("0/0/1", new byte[100]);
+		assertTrue(d.contains("0/0/0"));
+		File f = new File(dir, "0/0/0.png");
+		f.setLastModified(System.currentTimeMillis() - 2 * DAY_MS);
+		d = new TileDiskCache(dir, 1024 * 1024, DAY_MS);
+		assertFalse(d.contains("0/0/0"));
+		assertTrue(d.read("0/0/0") == null);
+		assertFalse(f.exists());
+		assertTrue(d.contains("0/0/1"));
+		// Expired while cached (file times may be in seconds)
+		d = new TileDiskCache(dir, 1024 * 1024, 1500);
+		d.write("0/0/2", new byte[100]);
+		assertTrue(d.contains("0/0/2"));
+		Thread.sleep(1600);
+		assertFalse(d.contains("0/0/2"));
+		assertTrue(d.read("0/0/2") == null);
+		assertFalse(new File(dir, "0/0/2.png").exists());
+	}
+}
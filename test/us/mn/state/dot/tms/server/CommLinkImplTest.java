@@ -0,0 +1,76 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.CommProtocol;
+
+/**
+ * Comm link poll offset tests
+ *
+ * @author Doug Lau
+ */
+public class CommLinkImplTest extends TestCase {
+
+	public CommLinkImplTest(String name) {
+		super(name);
+	}
+
+	public void testRange() {
+		for (int i = 0; i < 1000; i++) {
+			String n = "L" + i;
+			int off = CommLinkImpl.pollOffsetMs(n, 30, true);
+			assertTrue(off >= 2000 && off < 15000);
+			off = CommLinkImpl.pollOffsetMs(n, 30, false);
+			assertTrue(off >= 2000 && off < 30000);
+			off = CommLinkImpl.pollOffsetMs(n, 5, false);
+			assertTrue(off >= 2000 && off < 5000);
+			off = CommLinkImpl.pollOffsetMs(n, 1, false);
+			assertTrue(off >= 500 && off < 1000);
+		}
+		assertTrue(CommLinkImpl.pollOffsetMs("L1", 30, true) ==
+			CommLinkImpl.pollOffsetMs("L1", 30, true));
+	}
+
+	public void testSpread() {
+		// Similar link names should be spread across the period
+		int[] bins = new int[10];
+		for (int i = 0; i < 1000; i++) {
+			int off = CommLinkImpl.pollOffsetMs("L" + i, 30, false);
+			bins[(off - 2000) / 2800]++;
+		}
+		for (int b: bins)
+			assertTrue(b > 50 && b < 150);
+	}
+
+	public void testSampled() {
+		// Sample pollers are polled in the first half of the period
+		int late = 0;
+		for (int i = 0; i < 20; i++) {
+			CommLinkImpl cl = new CommLinkImpl("L" + i, "", false,
+				"", (short) CommProtocol.NTCIP_A.ordinal(), true,
+				30, 1000);
+			assertTrue(cl.getPollOffsetMs() < 15000);
+			cl.setPollEnabled(false);
+			cl = new CommLinkImpl("L" + i, "", false, "",
+				(short) CommProtocol.PELCO_P.ordinal(), true,
+				30, 1000);
+			if (cl.getPollOffsetMs() >= 15000)
+				late++;
+			cl.setPollEnabled(false);
+		}
+		assertTrue(late > 0);
+	}
+}
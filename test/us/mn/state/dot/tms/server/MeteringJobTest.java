@@ -0,0 +1,81 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.Direction;
+import us.mn.state.dot.tms.R_NodeTransition;
+import us.mn.state.dot.tms.R_NodeType;
+import us.mn.state.dot.tms.Station;
+import us.mn.state.dot.tms.SystemAttrEnum;
+import us.mn.state.dot.tms.server.event.BaseEvent;
+
+/**
+ * Metering job tests, with no database.
+ *
+ * @author Doug Lau
+ */
+public class MeteringJobTest extends TestCase {
+
+	public MeteringJobTest(String name) {
+		super(name);
+	}
+
+	private ServerNamespace ns;
+
+	@Override
+	protected void setUp() throws Exception {
+		ns = new ServerNamespace();
+		BaseHelper.namespace = ns;
+		BaseObjectImpl.namespace = ns;
+		ns.registerType(Station.SONAR_TYPE, StationImpl.class);
+		ServerIndexes.addIndexes(ns);
+		NullStore store = new NullStore();
+		BaseObjectImpl.store = store;
+		BaseEvent.store = store;
+		for (SystemAttrEnum sa: SystemAttrEnum.values()) {
+			ns.addObject(new SystemAttributeImpl(sa.aname(),
+				sa.getDefault()));
+		}
+	}
+
+	/** Add an r_node with a station */
+	private void addStation(String n, RoadImpl roadway) throws Exception {
+		GeoLocImpl loc = new GeoLocImpl(n, null, roadway,
+			(short) Direction.NORTH.ordinal(), null, (short) 0,
+			(short) 0, 45.0, -93.0, null);
+		ns.addObject(loc);
+		R_NodeImpl r_node = new R_NodeImpl(n, loc,
+			R_NodeType.STATION.ordinal(), false, false,
+			R_NodeTransition.NONE.ordinal(), 2, false, 0, true,
+			false, "S_" + n, 55, "");
+		ns.addObject(r_node);
+	}
+
+	public void testNoCorridor() throws Exception {
+		RoadImpl road = new RoadImpl("T-1", "T-1", (short) 0,
+			(short) 0, (short) 0);
+		ns.addObject(road);
+		addStation("rnd_1", road);
+		// Station r_node with no roadway is not on any corridor
+		addStation("rnd_2", null);
+		BaseObjectImpl.corridors.createCorridors();
+		MeteringJob job = new MeteringJob(null);
+		job.performCorridors();
+		assertTrue(job.getCorridorCount() == 2);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.TMSException;
+
+/**
+ * Object loader tests
+ *
+ * @author Doug Lau
+ */
+public class ObjectLoaderTest extends TestCase {
+
+	/** Step which records when it was performed */
+	static private class RecordStep extends ObjectLoader.Step {
+		private final String name;
+		private final List<String> done;
+		private RecordStep(String n, List<String> d,
+			ObjectLoader.Step... deps)
+		{
+			super(n, deps);
+			name = n;
+			done = d;
+		}
+		protected void perform() throws Exception {
+			Thread.sleep(50);
+			synchronized (done) {
+				done.add(name);
+			}
+		}
+	}
+
+	public ObjectLoaderTest(String name) {
+		super(name);
+	}
+
+	public void testOrder() throws TMSException {
+		List<String> done = new ArrayList<String>();
+		ObjectLoader ld = new ObjectLoader(4);
+		ObjectLoader.Step a = ld.add(new RecordStep("a", done));
+		ObjectLoader.Step b = ld.add(new RecordStep("b", done));
+		ObjectLoader.Step c = ld.add(new RecordStep("c", done, a));
+		ld.add(new RecordStep("d", done, b, c));
+		ld.add(new RecordStep("e", done));
+		long start = System.currentTimeMillis();
+		ld.run();
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(done.size() == 5);
+		assertTrue(done.indexOf("c") > done.indexOf("a"));
+		assertTrue(done.indexOf("d") > done.indexOf("b"));
+		assertTrue(done.indexOf("d") > done.indexOf("c"));
+		// a, b and e should be performed at the same time
+		assertTrue(elapsed < 250);
+		assertTrue(ld.getTimings().size() == 5);
+	}
+
+	public void testError() {
+		List<String> done = new ArrayList<String>();
+		ObjectLoader ld = new ObjectLoader(2);
+		ObjectLoader.Step a = ld.add(new ObjectLoader.Step("a") {
+			protected void perform() throws Exception {
+				throw new TMSException("failed");
+			}
+		});
+		ld.add(new RecordStep("b", done, a));
+		try {
+			ld.run();
+			assertTrue(false);
+		}
+		catch (TMSException e) {
+			assertTrue("failed".equals(e.getMessage()));
+		}
+		assertTrue(done.isEmpty());
+	}
+
+	public void testMissing() {
+		ObjectLoader ld = new ObjectLoader(1);
+		ObjectLoader.Step a = new RecordStep("a",
+			new ArrayList<String>());
+		try {
+			ld.add(new RecordStep("b", new ArrayList<String>(), a));
+			assertTrue(false);
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
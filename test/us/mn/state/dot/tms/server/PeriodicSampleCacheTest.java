@@ -139,6 +139,37 @@ public class PeriodicSampleCacheTest extends TestCase {
 		assertFalse(it.hasNext());
 	}
 
+	public void testOutOfOrder() {
+		PeriodicSampleCache cache = new PeriodicSampleCache(
+			PeriodicSampleType.VEH_COUNT);
+		cache.add(new PeriodicSample(T[6], 30, 6), "test");
+		cache.add(new PeriodicSample(T[2], 30, 2), "test");
+		cache.add(new PeriodicSample(T[4], 30, 4), "test");
+		cache.add(new PeriodicSample(T[1], 30, 1), "test");
+		assertTrue(cache.getValue(T[0], T[2]) == 3);
+		assertTrue(cache.getValue(T[3], T[4]) == 4);
+		assertTrue(cache.getValue(T[4], T[5]) == -1);
+		assertTrue(cache.getValue(T[0], T[4]) == 9);
+		Iterator<PeriodicSample> it = cache.iterator();
+		assertTrue(it.hasNext());
+		assertTrue(it.next().value == 1);
+		assertTrue(it.hasNext());
+		assertTrue(it.next().value == 2);
+		assertTrue(it.hasNext());
+		assertTrue(it.next().value == 4);
+		assertTrue(it.hasNext());
+		PeriodicSample ps = it.next();
+		assertTrue(ps.value == 6);
+		assertTrue(ps.end() == T[6]);
+		assertFalse(it.hasNext());
+		cache.purge(T[3]);
+		it = cache.iterator();
+		assertTrue(it.hasNext());
+		assertTrue(it.next().value == 4);
+		cache.purge(T[7]);
+		assertTrue(isEmpty(cache));
+	}
+
 	private boolean isEmpty(PeriodicSampleCache cache) {
 		return !cache.iterator().hasNext();
 	}
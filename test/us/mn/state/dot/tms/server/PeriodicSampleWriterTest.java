@@ -35,25 +35,30 @@ public class PeriodicSampleWriterTest extends TestCase {
 	public void testWriter() {
 		PeriodicSampleCache cache = new PeriodicSampleCache(
 			PeriodicSampleType.VEH_COUNT);
+		// Samples must be recent to pass cache time stamp checks
 		Calendar cal = Calendar.getInstance();
-		cal.set(2012, Calendar.JANUARY, 1, 0, 0, 30);
+		int y = cal.get(Calendar.YEAR);
+		int m = cal.get(Calendar.MONTH);
+		int d = cal.get(Calendar.DATE);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.set(y, m, d, 0, 0, 30);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 1), "test");
-		cal.set(2012, Calendar.JANUARY, 1, 0, 1, 0);
+		cal.set(y, m, d, 0, 1, 0);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 2), "test");
-		cal.set(2012, Calendar.JANUARY, 1, 0, 1, 30);
+		cal.set(y, m, d, 0, 1, 30);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 3), "test");
-		cal.set(2012, Calendar.JANUARY, 1, 0, 2, 0);
+		cal.set(y, m, d, 0, 2, 0);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 4), "test");
-		// Missing sample @ 2012-01-01 00:02:30
-		cal.set(2012, Calendar.JANUARY, 1, 0, 3, 0);
+		// Missing sample @ 00:02:30
+		cal.set(y, m, d, 0, 3, 0);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 6), "test");
-		cal.set(2012, Calendar.JANUARY, 1, 0, 3, 30);
+		cal.set(y, m, d, 0, 3, 30);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 7), "test");
-		cal.set(2012, Calendar.JANUARY, 1, 0, 4, 0);
+		cal.set(y, m, d, 0, 4, 0);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 8), "test");
-		cal.set(2012, Calendar.JANUARY, 1, 0, 4, 30);
+		cal.set(y, m, d, 0, 4, 30);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 9), "test");
-		cal.set(2012, Calendar.JANUARY, 1, 0, 5, 0);
+		cal.set(y, m, d, 0, 5, 0);
 		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 10), "test");
 		SampleArchiveFactory factory = new TestFactory();
 		PeriodicSampleWriter writer = new PeriodicSampleWriter(factory);
@@ -87,6 +92,52 @@ public class PeriodicSampleWriterTest extends TestCase {
 		}
 	}
 
+	public void testExisting() {
+		PeriodicSampleCache cache = new PeriodicSampleCache(
+			PeriodicSampleType.VEH_COUNT);
+		Calendar cal = Calendar.getInstance();
+		int y = cal.get(Calendar.YEAR);
+		int m = cal.get(Calendar.MONTH);
+		int d = cal.get(Calendar.DATE);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.set(y, m, d, 0, 1, 0);
+		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 2), "test");
+		cal.set(y, m, d, 0, 2, 0);
+		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 4), "test");
+		SampleArchiveFactory factory = new TestFactory();
+		PeriodicSampleWriter writer = new PeriodicSampleWriter(factory);
+		try {
+			File file = new File("/tmp/EXIST.v30");
+			file.delete();
+			FileChannel channel = new RandomAccessFile(file,
+				"rw").getChannel();
+			ByteBuffer buf = ByteBuffer.allocate(3000);
+			while (buf.hasRemaining())
+				buf.put((byte) 5);
+			buf.flip();
+			while (buf.hasRemaining())
+				channel.write(buf);
+			channel.close();
+			writer.flush(cache, "EXIST");
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			buf.clear();
+			while(channel.read(buf) >= 0 && buf.hasRemaining());
+			channel.close();
+			buf.flip();
+			assertTrue(buf.limit() == 2880);
+			assertTrue(buf.get() == 5);
+			assertTrue(buf.get() == 2);
+			assertTrue(buf.get() == 5);
+			assertTrue(buf.get() == 4);
+			assertTrue(buf.get() == 5);
+			assertTrue(file.length() == 2880);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			assertTrue(false);
+		}
+	}
+
 	static class TestFactory implements SampleArchiveFactory {
 		public File createFile(String sensor_id, String ext, long stamp)
 			throws IOException
@@ -0,0 +1,292 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.Direction;
+import us.mn.state.dot.tms.GeoLoc;
+import us.mn.state.dot.tms.GeoLocHelper;
+import us.mn.state.dot.tms.R_NodeTransition;
+import us.mn.state.dot.tms.R_NodeType;
+import us.mn.state.dot.tms.SystemAttrEnum;
+import us.mn.state.dot.tms.units.Distance;
+import static us.mn.state.dot.tms.units.Distance.Units.MILES;
+
+/**
+ * Route finder tests, comparing the search against an exhaustive search.
+ *
+ * The test network has two paths from the origin (on O) to the entrance
+ * from A onto C, so the same search state is reached with two different
+ * remaining distances:
+ *
+ *   O (north) -> W (southeast) -> A (north) -> C (east): about 21 miles
+ *   O (north) -> V (east) -> A (north) -> C (east): about 17 miles
+ *
+ * @author Doug Lau
+ */
+public class RouteFinderTest extends TestCase {
+
+	/** Spacing of nodes on a corridor (degrees) */
+	static private final double SPACING = 0.005;
+
+	/** Northbound direction */
+	static private final short NB = (short) Direction.NORTH.ordinal();
+
+	/** Eastbound direction */
+	static private final short EB = (short) Direction.EAST.ordinal();
+
+	public RouteFinderTest(String name) {
+		super(name);
+	}
+
+	private ServerNamespace ns;
+
+	private SystemAttributeImpl max_miles;
+
+	private SystemAttributeImpl max_legs;
+
+	private RoadImpl road_o, road_w, road_v, road_a, road_c;
+
+	private int n_nodes;
+
+	@Override
+	protected void setUp() throws Exception {
+		ns = new ServerNamespace();
+		BaseHelper.namespace = ns;
+		BaseObjectImpl.namespace = ns;
+		BaseObjectImpl.store = new NullStore();
+		for (SystemAttrEnum sa: SystemAttrEnum.values()) {
+			SystemAttributeImpl a = new SystemAttributeImpl(
+				sa.aname(), sa.getDefault());
+			ns.addObject(a);
+			if (sa == SystemAttrEnum.ROUTE_MAX_MILES)
+				max_miles = a;
+			if (sa == SystemAttrEnum.ROUTE_MAX_LEGS)
+				max_legs = a;
+		}
+		max_miles.setValue("30");
+		road_o = createRoad("O");
+		road_w = createRoad("W");
+		road_v = createRoad("V");
+		road_a = createRoad("A");
+		road_c = createRoad("C");
+		addLine(road_o, NB, 44.98, -93.10, 45.06, -93.10);
+		addLine(road_w, EB, 45.00, -93.10, 44.95, -93.00);
+		addLine(road_v, EB, 45.05, -93.10, 45.05, -93.00);
+		addLine(road_a, NB, 44.95, -93.00, 45.11, -93.00);
+		addLine(road_c, EB, 45.10, -93.00, 45.10, -92.88);
+		addInterchange(road_o, NB, road_w, EB, 45.00, -93.10);
+		addInterchange(road_o, NB, road_v, EB, 45.05, -93.10);
+		addInterchange(road_w, EB, road_a, NB, 44.95, -93.00);
+		addInterchange(road_v, EB, road_a, NB, 45.05, -93.00);
+		addInterchange(road_a, NB, road_c, EB, 45.10, -93.00);
+		BaseObjectImpl.corridors.createCorridors();
+	}
+
+	private RoadImpl createRoad(String n) throws Exception {
+		RoadImpl r = new RoadImpl(n, n, (short) 0, (short) 0,
+			(short) 0);
+		ns.addObject(r);
+		return r;
+	}
+
+	/** Create a location */
+	private GeoLocImpl createLoc(RoadImpl r, short rd, RoadImpl x,
+		short xd, double lat, double lon)
+	{
+		return new GeoLocImpl("loc_" + n_nodes, null, r, rd, x, xd,
+			(short) 0, lat, lon, null);
+	}
+
+	/** Add an r_node */
+	private void addNode(GeoLocImpl loc, R_NodeType nt) throws Exception {
+		ns.addObject(loc);
+		R_NodeImpl rn = new R_NodeImpl("rnd_" + n_nodes, loc,
+			nt.ordinal(), false, false,
+			R_NodeTransition.NONE.ordinal(), 2, false, 0, true,
+			false, null, 55, "");
+		ns.addObject(rn);
+		n_nodes++;
+	}
+
+	/** Add a line of station nodes on a corridor */
+	private void addLine(RoadImpl r, short rd, double lat0, double lon0,
+		double lat1, double lon1) throws Exception
+	{
+		double dy = lat1 - lat0;
+		double dx = lon1 - lon0;
+		int n = (int) Math.ceil(Math.max(Math.abs(dy), Math.abs(dx)) /
+			SPACING);
+		for (int i = 0; i <= n; i++) {
+			addNode(createLoc(r, rd, null, (short) 0,
+				lat0 + dy * i / n, lon0 + dx * i / n),
+				R_NodeType.STATION);
+		}
+	}
+
+	/** Add an exit from one corridor to an entrance on another */
+	private void addInterchange(RoadImpl r, short rd, RoadImpl x,
+		short xd, double lat, double lon) throws Exception
+	{
+		addNode(createLoc(r, rd, x, xd, lat, lon), R_NodeType.EXIT);
+		addNode(createLoc(x, xd, r, rd, lat, lon), R_NodeType.ENTRANCE);
+	}
+
+	/** Find a route with the exhaustive (recursive) search */
+	private Route findExhaustive(GeoLoc orig, GeoLoc dest) {
+		Distance dist_max = new Distance(
+			SystemAttrEnum.ROUTE_MAX_MILES.getInt(), MILES);
+		Route r = findExhaustive(orig, new Route(dest), dist_max);
+		return (r != null && r.getDistance().compareTo(dist_max) < 0)
+		      ? r
+		      : null;
+	}
+
+	/** Find a route with the exhaustive search from a partial route */
+	private Route findExhaustive(GeoLoc orig, Route r, Distance dist_max) {
+		CorridorManager cm = BaseObjectImpl.corridors;
+		Corridor c = cm.getCorridor(orig);
+		GeoLoc dest = r.getDestination();
+		if (c != null && c == cm.getCorridor(dest)) {
+			Route re = r.createExtended(c, orig, dest, false);
+			if (re != null)
+				return re;
+		}
+		if (null == c ||
+		    r.legCount() >= SystemAttrEnum.ROUTE_MAX_LEGS.getInt())
+			return null;
+		Float o_mi = c.calculateMilePoint(orig);
+		if (null == o_mi)
+			return null;
+		Distance rem = dist_max.sub(r.getDistance());
+		Route best = null;
+		for (RouteGraph.Exit ex: new RouteGraph().getExits(c)) {
+			if (ex.mile <= o_mi)
+				continue;
+			Distance d = GeoLocHelper.distanceTo(
+				ex.r_node.getGeoLoc(), dest);
+			if (d != null && d.add(new Distance(ex.mile - o_mi,
+			    MILES)).compareTo(rem) < 0)
+			{
+				Route rb = branchExhaustive(r, c, orig,
+					ex.r_node, dist_max);
+				if (rb != null && (null == best ||
+				    rb.getGoodness() < best.getGoodness()))
+					best = rb;
+			}
+			if (ex.common)
+				break;
+		}
+		return best;
+	}
+
+	/** Branch an exhaustive search through an exit */
+	private Route branchExhaustive(Route r, Corridor c, GeoLoc orig,
+		R_NodeImpl rn, Distance dist_max)
+	{
+		R_NodeImpl f = rn.getFork();
+		if (f != null && f.getGeoLoc() != null) {
+			Route re = r.createExtended(c, orig, rn.getGeoLoc(),
+				false);
+			if (re != null)
+				return findExhaustive(f.getGeoLoc(), re,
+					dist_max);
+		}
+		return null;
+	}
+
+	/** Find a route with the route finder */
+	private Route findRoute(GeoLoc orig, GeoLoc dest) {
+		return new RouteFinder(BaseObjectImpl.corridors).findRoute(orig,
+			dest);
+	}
+
+	/** Get the route distance (miles) */
+	static private float miles(Route r) {
+		return r.getDistance().asFloat(MILES);
+	}
+
+	/** Assert that both searches find the same route */
+	private Route assertSameRoute(GeoLoc orig, GeoLoc dest) {
+		Route r0 = findExhaustive(orig, dest);
+		Route r1 = findRoute(orig, dest);
+		if (null == r0)
+			assertTrue(null == r1);
+		else {
+			assertTrue(r1 != null);
+			assertTrue(r0.legCount() == r1.legCount());
+			assertTrue(Math.abs(miles(r0) - miles(r1)) < 0.001f);
+		}
+		return r1;
+	}
+
+	private GeoLoc origin() {
+		return createLoc(road_o, NB, null, (short) 0, 44.985, -93.10);
+	}
+
+	private GeoLoc destination() {
+		return createLoc(road_c, EB, null, (short) 0, 45.10, -92.92);
+	}
+
+	public void testShorterPath() {
+		Route r = assertSameRoute(origin(), destination());
+		assertTrue(r.legCount() == 4);
+		assertTrue(miles(r) > 16.5f && miles(r) < 17.0f);
+	}
+
+	public void testRemainingDistance() {
+		// Only the path through V is within reach
+		max_miles.setValue("18");
+		Route r = assertSameRoute(origin(), destination());
+		assertTrue(r != null);
+		assertTrue(miles(r) < 17.0f);
+		max_miles.setValue("16");
+		assertTrue(assertSameRoute(origin(), destination()) == null);
+	}
+
+	public void testMaxLegs() {
+		// Limit is checked before branching, not for the final leg
+		max_legs.setValue("2");
+		assertTrue(assertSameRoute(origin(), destination()) == null);
+		max_legs.setValue("3");
+		assertTrue(assertSameRoute(origin(), destination()) != null);
+	}
+
+	public void testAllPairs() {
+		ArrayList<GeoLoc> origins = new ArrayList<GeoLoc>();
+		ArrayList<GeoLoc> dests = new ArrayList<GeoLoc>();
+		for (int i = 0; i < 8; i++) {
+			double f = i / 8.0;
+			origins.add(createLoc(road_o, NB, null, (short) 0,
+				44.982 + 0.07 * f, -93.10));
+			origins.add(createLoc(road_w, EB, null, (short) 0,
+				45.0 - 0.05 * f, -93.10 + 0.1 * f));
+			dests.add(createLoc(road_a, NB, null, (short) 0,
+				44.96 + 0.14 * f, -93.00));
+			dests.add(createLoc(road_c, EB, null, (short) 0,
+				45.10, -92.995 + 0.11 * f));
+		}
+		for (String mi: new String[] { "8", "12", "16", "30" }) {
+			max_miles.setValue(mi);
+			for (GeoLoc o: origins) {
+				for (GeoLoc d: dests)
+					assertSameRoute(o, d);
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+import us.mn.state.dot.sched.TimeSteward;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * Sample archive reader tests
+ *
+ * @author Douglas Lau
+ */
+public class SampleArchiveReaderTest extends TestCase {
+
+	public SampleArchiveReaderTest(String name) {
+		super(name);
+	}
+
+	private File arc;
+	private File day;
+	private String date;
+	private long midnight;
+
+	@Override
+	protected void setUp() throws IOException {
+		arc = Files.createTempDirectory("traffic").toFile();
+		// Samples must be recent to pass cache time stamp checks
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		midnight = cal.getTimeInMillis();
+		date = TimeSteward.dateShortString(midnight);
+		day = new File(new File(arc, date.substring(0, 4)), date);
+		day.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() {
+		delete(arc);
+	}
+
+	static private void delete(File f) {
+		File[] fs = f.listFiles();
+		if (fs != null) {
+			for (File c: fs)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	/** Write samples to the day directory */
+	private void writeSamples() {
+		SampleArchiveFactory factory = new SampleArchiveFactory() {
+			public File createFile(String sensor_id, String ext,
+				long stamp)
+			{
+				return new File(day, sensor_id + "." + ext);
+			}
+			public File createFile(String sensor_id,
+				PeriodicSampleType s_type, PeriodicSample ps)
+			{
+				return createFile(sensor_id, s_type.extension +
+					ps.period, ps.start());
+			}
+			public boolean hasKnownExtension(String name) {
+				return true;
+			}
+		};
+		PeriodicSampleCache veh = new PeriodicSampleCache(
+			PeriodicSampleType.VEH_COUNT);
+		veh.add(new PeriodicSample(midnight + 30000, 30, 5), "D1");
+		veh.add(new PeriodicSample(midnight + 60000, 30, 200), "D1");
+		veh.add(new PeriodicSample(midnight + 120000, 30, 0), "D1");
+		PeriodicSampleCache scn = new PeriodicSampleCache(
+			PeriodicSampleType.SCAN);
+		scn.add(new PeriodicSample(midnight + 30000, 30, 1000), "D1");
+		PeriodicSampleWriter writer = new PeriodicSampleWriter(factory);
+		writer.flush(veh, "D1");
+		writer.flush(scn, "D1");
+	}
+
+	/** Check samples read from the archive */
+	private void checkSamples() throws IOException {
+		SampleArchiveReader reader = new SampleArchiveReader(arc, date);
+		try {
+			int[] v = reader.read("D1", PeriodicSampleType.VEH_COUNT,
+				30);
+			assertTrue(v.length == 2880);
+			assertTrue(v[0] == 5);
+			// Vehicle counts are clamped to one byte
+			assertTrue(v[1] == 127);
+			assertTrue(v[2] == MISSING_DATA);
+			assertTrue(v[3] == 0);
+			assertTrue(v[4] == MISSING_DATA);
+			int[] c = reader.read("D1", PeriodicSampleType.SCAN, 30);
+			assertTrue(c[0] == 1000);
+			assertTrue(c[1] == MISSING_DATA);
+			int[] s = reader.read("D1", PeriodicSampleType.SPEED,
+				30);
+			assertTrue(s[0] == MISSING_DATA);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	public void testDayDirectory() throws IOException {
+		writeSamples();
+		checkSamples();
+	}
+
+	public void testTrafficArchive() throws IOException {
+		writeSamples();
+		File traf = new File(day.getPath() + ".traffic");
+		ZipOutputStream zos = new ZipOutputStream(
+			new FileOutputStream(traf));
+		try {
+			for (File f: day.listFiles()) {
+				zos.putNextEntry(new ZipEntry(f.getName()));
+				zos.write(Files.readAllBytes(f.toPath()));
+			}
+		}
+		finally {
+			zos.close();
+		}
+		delete(day);
+		checkSamples();
+	}
+
+	public void testMissingDay() {
+		try {
+			new SampleArchiveReader(arc, "19991231");
+			fail();
+		}
+		catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.List;
+import junit.framework.TestCase;
+import us.mn.state.dot.sched.SimulatedTimeSource;
+import us.mn.state.dot.sched.SystemTimeSource;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * Sign message reaping tests
+ *
+ * @author Doug Lau
+ */
+public class SignMessageImplTest extends TestCase {
+
+	/** Time after reap grace (ms) */
+	static private final long AFTER_GRACE_MS = 61 * 1000;
+
+	public SignMessageImplTest(String name) {
+		super(name);
+	}
+
+	private final SimulatedTimeSource clock =
+		new SimulatedTimeSource(1000000);
+
+	@Override
+	protected void setUp() {
+		TimeSteward.setTimeSource(clock);
+		// Drain messages queued by other tests
+		clock.setTime(clock.currentTimeMillis() + AFTER_GRACE_MS);
+		SignMessageImpl.pollReapable();
+	}
+
+	@Override
+	protected void tearDown() {
+		TimeSteward.setTimeSource(new SystemTimeSource());
+	}
+
+	public void testRequeue() {
+		SignMessageImpl sm = new SignMessageImpl("msg_1");
+		// Released in the same millisecond as created
+		SignMessageImpl.replaceRef(null, sm);
+		SignMessageImpl.replaceRef(sm, null);
+		clock.setTime(clock.currentTimeMillis() + AFTER_GRACE_MS);
+		List<SignMessageImpl> msgs = SignMessageImpl.pollReapable();
+		assertTrue(msgs.size() == 1);
+		assertTrue(msgs.get(0) == sm);
+		assertTrue(SignMessageImpl.pollReapable().isEmpty());
+	}
+
+	public void testReferenced() {
+		SignMessageImpl sm = new SignMessageImpl("msg_2");
+		SignMessageImpl.replaceRef(null, sm);
+		clock.setTime(clock.currentTimeMillis() + AFTER_GRACE_MS);
+		assertTrue(SignMessageImpl.pollReapable().isEmpty());
+		SignMessageImpl.replaceRef(sm, null);
+		assertTrue(SignMessageImpl.pollReapable().isEmpty());
+		clock.setTime(clock.currentTimeMillis() + AFTER_GRACE_MS);
+		assertTrue(SignMessageImpl.pollReapable().size() == 1);
+	}
+}
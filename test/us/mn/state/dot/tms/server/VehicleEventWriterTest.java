@@ -0,0 +1,91 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Calendar;
+import junit.framework.TestCase;
+import us.mn.state.dot.sched.Scheduler;
+
+/**
+ * Vehicle event writer tests
+ *
+ * @author Doug Lau
+ */
+public class VehicleEventWriterTest extends TestCase {
+
+	/** Factory which creates files in a separate directory per day */
+	static private class DayFactory
+		extends PeriodicSampleWriterTest.TestFactory
+	{
+		public File createFile(String sensor_id, String ext,
+			long stamp) throws IOException
+		{
+			File dir = new File("/tmp/vlog_test", "d" + stamp / 1000 /
+				3600 / 24);
+			dir.mkdirs();
+			return new File(dir, sensor_id + "." + ext);
+		}
+	}
+
+	public VehicleEventWriterTest(String name) {
+		super(name);
+	}
+
+	public void testWriter() throws IOException {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.HOUR_OF_DAY, 6);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		long st = cal.getTimeInMillis();
+		File txt = new DayFactory().createFile("V1", "vlog", st);
+		File bin = new DayFactory().createFile("V1", "vlogb", st);
+		txt.delete();
+		bin.delete();
+		VehicleEventWriter w = new VehicleEventWriter(new DayFactory(),
+			new Scheduler("vlog_test"));
+		w.setBinary(true);
+		w.addEvent("V1", st, "200,?,06:00:00\n", 200, 0, 0);
+		w.addEvent("V1", st + 2000, "150,2000,,55\n", 150, 2000, 55);
+		w.addGap("V1", st + 3000);
+		w.flush();
+		assertTrue("200,?,06:00:00\n150,2000,,55\n*\n".equals(new String(
+			Files.readAllBytes(txt.toPath()), "US-ASCII")));
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(bin.toPath()));
+		assertTrue(b.remaining() ==
+			3 * VehicleEventWriter.BIN_RECORD_BYTES);
+		assertTrue(b.getInt() == 6 * 3600 * 1000);
+		assertTrue(b.getInt() == 0);
+		assertTrue(b.getShort() == 200);
+		assertTrue(b.getShort() == 0);
+		assertTrue(b.getInt() == 6 * 3600 * 1000 + 2000);
+		assertTrue(b.getInt() == 2000);
+		assertTrue(b.getShort() == 150);
+		assertTrue(b.getShort() == 55);
+		assertTrue(b.getInt() == 6 * 3600 * 1000 + 3000);
+		assertTrue(b.getInt() == -1);
+		assertTrue(b.getShort() == -1);
+		assertTrue(b.getShort() == -1);
+		// Append in a second batch
+		w.addEvent("V1", st + 5000, "100,2000\n", 100, 2000, 0);
+		w.flush();
+		assertTrue(new String(Files.readAllBytes(txt.toPath()),
+			"US-ASCII").endsWith("*\n100,2000\n"));
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+
+/**
+ * Datagram mux tests, using fake devices on the loopback interface.  The
+ * first byte of each datagram is its request-id.
+ *
+ * @author Doug Lau
+ */
+public class DatagramMuxTest extends TestCase {
+
+	/** Fake device which echoes requests.  A request with the high bit
+	 * set is answered by a stale response first; a request-id of zero is
+	 * not answered. */
+	static private class Device extends Thread {
+		private final DatagramSocket socket;
+		private Device() throws IOException {
+			socket = new DatagramSocket(0,
+				InetAddress.getLoopbackAddress());
+			setDaemon(true);
+		}
+		private SocketAddress address() {
+			return socket.getLocalSocketAddress();
+		}
+		@Override public void run() {
+			byte[] b = new byte[64];
+			DatagramPacket p = new DatagramPacket(b, b.length);
+			try {
+				while (true) {
+					p.setLength(b.length);
+					socket.receive(p);
+					respond(p);
+				}
+			}
+			catch (IOException e) {
+				// socket closed
+			}
+		}
+		private void respond(DatagramPacket p) throws IOException {
+			byte rid = p.getData()[0];
+			if (rid == 0)
+				return;
+			if ((rid & 0x80) != 0) {
+				p.getData()[0] = (byte) (rid + 1);
+				socket.send(p);
+				p.getData()[0] = rid;
+			}
+			socket.send(p);
+		}
+	}
+
+	static private final DatagramMux.RequestIdDecoder DECODER =
+		new DatagramMux.RequestIdDecoder()
+	{
+		public int decodeRequestId(ByteBuffer buf) throws IOException {
+			if (!buf.hasRemaining())
+				throw new ParsingException("EMPTY");
+			return buf.get(buf.position());
+		}
+	};
+
+	public DatagramMuxTest(String name) {
+		super(name);
+	}
+
+	private CommSelector selector;
+	private DatagramMux mux;
+
+	@Override
+	protected void setUp() throws IOException {
+		selector = new CommSelector();
+		Thread t = new Thread() {
+			@Override public void run() {
+				try {
+					selector.selectLoop();
+				}
+				catch (IOException e) {
+					// selector closed
+				}
+				catch (RuntimeException e) {
+					// selector closed
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+		mux = new DatagramMux(selector, DECODER);
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		mux.close();
+		selector.close();
+	}
+
+	/** Send one request and wait for the response */
+	private byte[] request(SocketAddress ra, int rid, String data)
+		throws IOException
+	{
+		byte[] d = data.getBytes();
+		ByteBuffer pkt = ByteBuffer.allocate(d.length + 1);
+		pkt.put((byte) rid);
+		pkt.put(d);
+		pkt.flip();
+		return mux.send(ra, pkt, 500).await(2000);
+	}
+
+	public void testResponse() throws IOException {
+		Device dev = new Device();
+		dev.start();
+		byte[] r = request(dev.address(), 5, "hello");
+		assertTrue(r != null);
+		assertTrue(r.length == 6);
+		assertTrue(r[0] == 5);
+		assertTrue(new String(r, 1, 5).equals("hello"));
+		assertTrue(mux.getPendingCount() == 0);
+		dev.socket.close();
+	}
+
+	public void testTimeout() throws IOException {
+		Device dev = new Device();
+		dev.start();
+		assertTrue(request(dev.address(), 0, "lost") == null);
+		assertTrue(mux.getPendingCount() == 0);
+		// Device slot is released after timeout
+		assertTrue(request(dev.address(), 1, "found") != null);
+		dev.socket.close();
+	}
+
+	public void testStale() throws IOException {
+		Device dev = new Device();
+		dev.start();
+		byte[] r = request(dev.address(), 0x81, "x");
+		assertTrue(r != null);
+		assertTrue(r[0] == (byte) 0x81);
+		assertTrue(mux.getUnmatchedCount() == 1);
+		dev.socket.close();
+	}
+
+	public void testManyDevices() throws IOException {
+		Device[] devs = new Device[20];
+		DatagramMux.Exchange[] exs = new DatagramMux.Exchange[20];
+		for (int i = 0; i < devs.length; i++) {
+			devs[i] = new Device();
+			devs[i].start();
+		}
+		// All devices have outstanding requests at once
+		for (int i = 0; i < devs.length; i++) {
+			ByteBuffer pkt = ByteBuffer.wrap(new byte[] {
+				(byte) (i + 1), (byte) i });
+			exs[i] = mux.send(devs[i].address(), pkt, 1000);
+		}
+		for (int i = 0; i < devs.length; i++) {
+			byte[] r = exs[i].await(2000);
+			assertTrue(r != null);
+			assertTrue(r[1] == i);
+			devs[i].socket.close();
+		}
+	}
+
+	public void testMessenger() throws IOException {
+		Device dev = new Device();
+		dev.start();
+		MuxMessenger m = new MuxMessenger(mux, dev.address(), 300);
+		OutputStream os = m.getOutputStream();
+		InputStream is = m.getInputStream("");
+		os.write(new byte[] { 7, 'a', 'b' });
+		os.flush();
+		assertTrue(is.read() == 7);
+		assertTrue(is.available() == 2);
+		assertTrue(is.read() == 'a');
+		assertTrue(is.read() == 'b');
+		os.write(new byte[] { 0, 'c' });
+		os.flush();
+		try {
+			is.read();
+			fail();
+		}
+		catch (SocketTimeoutException e) {
+			// expected
+		}
+		m.close();
+		dev.socket.close();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.Cabinet;
+import us.mn.state.dot.tms.GeoLoc;
+import us.mn.state.dot.tms.server.BaseObjectImpl;
+import us.mn.state.dot.tms.server.CabinetImpl;
+import us.mn.state.dot.tms.server.ControllerImpl;
+import us.mn.state.dot.tms.server.GeoLocImpl;
+import us.mn.state.dot.tms.server.SQLConnection;
+import us.mn.state.dot.tms.server.Storable;
+
+/**
+ * Operation queue tests
+ *
+ * @author Doug Lau
+ */
+public class OpQueueTest extends TestCase {
+
+	/** Operation with one phase */
+	static private class TestOp extends OpController<ControllerProperty> {
+		private TestOp(PriorityLevel p, ControllerImpl c) {
+			super(p, c, c.getName());
+		}
+		protected Phase<ControllerProperty> phaseOne() {
+			return new Done();
+		}
+		private class Done extends Phase<ControllerProperty> {
+			protected Phase<ControllerProperty> poll(
+				CommMessage<ControllerProperty> mess)
+			{
+				return null;
+			}
+		}
+	}
+
+	/** Storage which discards all changes */
+	static private abstract class TestStore extends BaseObjectImpl {
+		private TestStore() {
+			super(null);
+		}
+		static private void init(ServerNamespace ns) {
+			namespace = ns;
+			store = new SQLConnection() {
+				@Override
+				public void create(Storable s) { }
+			};
+		}
+	}
+
+	public OpQueueTest(String name) {
+		super(name);
+	}
+
+	private final ControllerImpl[] ctrl = new ControllerImpl[4];
+
+	private final OpQueue<ControllerProperty> queue =
+		new OpQueue<ControllerProperty>();
+
+	@Override
+	protected void setUp() throws Exception {
+		ServerNamespace ns = new ServerNamespace();
+		ns.registerType(GeoLoc.SONAR_TYPE, GeoLocImpl.class);
+		ns.registerType(Cabinet.SONAR_TYPE, CabinetImpl.class);
+		TestStore.init(ns);
+		for (int i = 0; i < ctrl.length; i++)
+			ctrl[i] = new ControllerImpl("ctl_" + i);
+	}
+
+	private TestOp op(PriorityLevel p, int c) {
+		return new TestOp(p, ctrl[c]);
+	}
+
+	public void testPriority() {
+		TestOp a = op(PriorityLevel.DATA_30_SEC, 0);
+		TestOp b = op(PriorityLevel.URGENT, 1);
+		TestOp c = op(PriorityLevel.DATA_30_SEC, 2);
+		TestOp d = op(PriorityLevel.DIAGNOSTIC, 3);
+		assertTrue(queue.enqueue(a));
+		assertTrue(queue.enqueue(b));
+		assertTrue(queue.enqueue(c));
+		assertTrue(queue.enqueue(d));
+		assertTrue(queue.size() == 4);
+		assertTrue(queue.tryNext() == b);
+		assertTrue(queue.tryNext() == a);
+		assertTrue(queue.tryNext() == c);
+		assertTrue(queue.tryNext() == d);
+		assertTrue(queue.tryNext() == null);
+		assertTrue(queue.isEmpty());
+	}
+
+	public void testDuplicate() throws InterruptedException {
+		TestOp a = op(PriorityLevel.COMMAND, 0);
+		assertTrue(queue.enqueue(a));
+		assertFalse(queue.enqueue(op(PriorityLevel.COMMAND, 0)));
+		assertTrue(queue.next(0) == a);
+		// Equal to the in-progress operation
+		assertFalse(queue.enqueue(op(PriorityLevel.URGENT, 0)));
+		assertTrue(queue.size() == 1);
+		a.setSucceeded();
+		assertTrue(queue.enqueue(op(PriorityLevel.COMMAND, 0)));
+		assertTrue(queue.size() == 2);
+	}
+
+	public void testRequeue() throws InterruptedException {
+		TestOp a = op(PriorityLevel.COMMAND, 0);
+		TestOp b = op(PriorityLevel.COMMAND, 1);
+		assertTrue(queue.enqueue(a));
+		assertTrue(queue.enqueue(b));
+		assertTrue(queue.next(0) == a);
+		assertTrue(queue.requeue(a));
+		assertTrue(queue.size() == 2);
+		assertTrue(queue.next(0) == b);
+		assertTrue(queue.next(0) == a);
+		queue.close();
+		assertFalse(queue.requeue(a));
+		assertFalse(queue.enqueue(op(PriorityLevel.COMMAND, 2)));
+	}
+
+	public void testRemove() {
+		// remove is done by requeue, for work or queued operations
+		TestOp a = op(PriorityLevel.COMMAND, 0);
+		TestOp b = op(PriorityLevel.COMMAND, 1);
+		TestOp c = op(PriorityLevel.COMMAND, 2);
+		assertTrue(queue.enqueue(a));
+		assertTrue(queue.enqueue(b));
+		assertTrue(queue.enqueue(c));
+		assertTrue(queue.requeue(a));
+		assertTrue(queue.size() == 3);
+		// Operation not in queue
+		assertFalse(queue.requeue(op(PriorityLevel.COMMAND, 3)));
+		assertTrue(queue.size() == 3);
+		assertTrue(queue.tryNext() == b);
+		assertTrue(queue.tryNext() == c);
+		assertTrue(queue.tryNext() == a);
+		assertTrue(queue.isEmpty());
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Timer wheel tests
+ *
+ * @author Doug Lau
+ */
+public class TimerWheelTest extends TestCase {
+
+	static private final Runnable TASK = new Runnable() {
+		public void run() { }
+	};
+
+	public TimerWheelTest(String name) {
+		super(name);
+	}
+
+	public void testExpire() {
+		TimerWheel tw = new TimerWheel(10, 8);
+		assertTrue(tw.isEmpty());
+		tw.schedule(TASK, 1000, 25);
+		assertTrue(tw.size() == 1);
+		assertTrue(tw.advance(1010).isEmpty());
+		assertTrue(tw.advance(1020).isEmpty());
+		List<Runnable> tasks = tw.advance(1030);
+		assertTrue(tasks.size() == 1);
+		assertTrue(tasks.get(0) == TASK);
+		assertTrue(tw.isEmpty());
+		assertTrue(tw.advance(1100).isEmpty());
+	}
+
+	public void testRounds() {
+		TimerWheel tw = new TimerWheel(10, 8);
+		// Longer than one revolution of the wheel
+		tw.schedule(TASK, 0, 200);
+		for (long t = 10; t < 200; t += 10)
+			assertTrue(tw.advance(t).isEmpty());
+		assertTrue(tw.advance(200).size() == 1);
+	}
+
+	public void testSkip() {
+		TimerWheel tw = new TimerWheel(10, 8);
+		tw.schedule(TASK, 0, 30);
+		tw.schedule(TASK, 0, 500);
+		assertTrue(tw.advance(1000).size() == 2);
+		assertTrue(tw.isEmpty());
+	}
+
+	public void testCancel() {
+		TimerWheel tw = new TimerWheel(10, 8);
+		TimerWheel.Timeout t = tw.schedule(TASK, 0, 30);
+		assertTrue(t.cancel());
+		assertFalse(t.cancel());
+		assertTrue(tw.isEmpty());
+		assertTrue(tw.advance(100).isEmpty());
+		t = tw.schedule(TASK, 100, 10);
+		assertTrue(tw.advance(110).size() == 1);
+		assertFalse(t.cancel());
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import junit.framework.TestCase;
+
+/**
+ * Simulator server tests, with MnDOT 170 and DXM simulators.
+ *
+ * @author Doug Lau
+ */
+public class SimServerTest extends TestCase {
+
+	/** Request for 30-second data from drop 1 (MNDOT_5) */
+	static private final byte[] READ_30_SEC = packet(new byte[] {
+		(1 << 3) | 7, 3, 0x03, 0x4B, 72, 0
+	});
+
+	/** Set the checksum of a packet */
+	static private byte[] packet(byte[] pkt) {
+		byte xsum = 0;
+		for (int i = 0; i < pkt.length - 1; i++)
+			xsum ^= pkt[i];
+		pkt[pkt.length - 1] = xsum;
+		return pkt;
+	}
+
+	public SimServerTest(String name) {
+		super(name);
+	}
+
+	private SimServer server;
+
+	@Override
+	protected void setUp() throws IOException {
+		server = new SimServer();
+		server.start();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		server.close();
+	}
+
+	/** Read one MnDOT 170 response */
+	private byte[] readResponse(DataInputStream is) throws IOException {
+		int dc = is.readUnsignedByte();
+		int len = is.readUnsignedByte();
+		byte[] pkt = new byte[3 + len];
+		pkt[0] = (byte) dc;
+		pkt[1] = (byte) len;
+		is.readFully(pkt, 2, len + 1);
+		return pkt;
+	}
+
+	public void testMndot() throws IOException {
+		InetSocketAddress a = server.addTcp(new Mndot170Sim(true,
+			new SampleGenerator(1200, 1)), SimConditions.IDEAL);
+		Socket s = new Socket(a.getAddress(), a.getPort());
+		s.setSoTimeout(2000);
+		OutputStream os = s.getOutputStream();
+		DataInputStream is = new DataInputStream(s.getInputStream());
+		// Two requests in one write are framed separately
+		byte[] req = new byte[READ_30_SEC.length * 2];
+		System.arraycopy(READ_30_SEC, 0, req, 0, READ_30_SEC.length);
+		System.arraycopy(READ_30_SEC, 0, req, READ_30_SEC.length,
+			READ_30_SEC.length);
+		os.write(req);
+		for (int i = 0; i < 2; i++) {
+			byte[] resp = readResponse(is);
+			assertTrue(resp.length == 75);
+			assertTrue(resp[0] == (1 << 3));
+			assertTrue(packet(resp.clone())[74] == resp[74]);
+		}
+		// Bad checksum
+		byte[] bad = READ_30_SEC.clone();
+		bad[bad.length - 1]++;
+		os.write(bad);
+		byte[] resp = readResponse(is);
+		assertTrue(resp[0] == ((1 << 3) | 2));
+		assertTrue(resp[1] == 0);
+		s.close();
+		assertTrue(server.getRequests() == 3);
+	}
+
+	public void testDxm() throws IOException {
+		InetSocketAddress a = server.addTcp(new DxmSim(
+			new SampleGenerator(1200, 1)), SimConditions.IDEAL);
+		Socket s = new Socket(a.getAddress(), a.getPort());
+		s.setSoTimeout(2000);
+		s.getOutputStream().write("CMD0001 60,4,0,0,0\n".getBytes());
+		byte[] b = new byte[128];
+		int n = s.getInputStream().read(b);
+		String resp = new String(b, 0, n).trim();
+		assertTrue(resp.startsWith("RSP000160,"));
+		assertTrue(resp.endsWith(","));
+		assertTrue(resp.split(",").length == 5);
+		s.close();
+	}
+
+	/** Send one datagram and wait for a response */
+	private byte[] exchange(InetSocketAddress a, byte[] req, int timeout)
+		throws IOException
+	{
+		DatagramSocket ds = new DatagramSocket();
+		try {
+			ds.setSoTimeout(timeout);
+			ds.send(new DatagramPacket(req, req.length, a));
+			byte[] b = new byte[256];
+			DatagramPacket p = new DatagramPacket(b, b.length);
+			ds.receive(p);
+			byte[] resp = new byte[p.getLength()];
+			System.arraycopy(b, 0, resp, 0, resp.length);
+			return resp;
+		}
+		catch (SocketTimeoutException e) {
+			return null;
+		}
+		finally {
+			ds.close();
+		}
+	}
+
+	public void testLatency() throws IOException {
+		InetSocketAddress a = server.addUdp(new Mndot170Sim(true,
+			new SampleGenerator(1200, 1)), new SimConditions(100, 0,
+			0, 1));
+		long st = System.currentTimeMillis();
+		byte[] resp = exchange(a, READ_30_SEC, 2000);
+		long el = System.currentTimeMillis() - st;
+		assertTrue(resp != null);
+		assertTrue(resp.length == 75);
+		assertTrue(el >= 95);
+		assertTrue(server.getResponses() == 1);
+	}
+
+	public void testLoss() throws IOException {
+		InetSocketAddress a = server.addUdp(new Mndot170Sim(true,
+			new SampleGenerator(1200, 1)), new SimConditions(0, 0,
+			1, 1));
+		assertTrue(exchange(a, READ_30_SEC, 300) == null);
+		assertTrue(server.getRequests() == 1);
+		assertTrue(server.getLost() == 1);
+		assertTrue(server.getResponses() == 0);
+	}
+
+	public void testInvalidDatagram() throws IOException {
+		InetSocketAddress a = server.addUdp(new Mndot170Sim(true,
+			new SampleGenerator(1200, 1)), SimConditions.IDEAL);
+		assertTrue(exchange(a, new byte[] { 1 }, 300) == null);
+		byte[] bad = READ_30_SEC.clone();
+		bad[1] = 100;
+		assertTrue(exchange(a, bad, 300) == null);
+		assertTrue(server.getErrors() == 2);
+		// The endpoint is still open
+		byte[] resp = exchange(a, READ_30_SEC, 2000);
+		assertTrue(resp != null);
+		assertTrue(resp.length == 75);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import junit.framework.TestCase;
+import static us.mn.state.dot.tms.server.comm.ntcip.mib1202.MIB1202.*;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Integer;
+import us.mn.state.dot.tms.server.comm.snmp.NoSuchName;
+import us.mn.state.dot.tms.server.comm.snmp.SNMP;
+
+/**
+ * SNMP simulator tests, using the SNMP message client.
+ *
+ * @author Doug Lau
+ */
+public class SnmpSimTest extends TestCase {
+
+	/** In-memory transport for a simulator */
+	static private class Transport {
+		private final DeviceSim sim;
+		private byte[] response = new byte[0];
+		private int pos = 0;
+		private Transport(DeviceSim s) {
+			sim = s;
+		}
+		private final OutputStream out = new ByteArrayOutputStream() {
+			public void flush() throws IOException {
+				byte[] req = toByteArray();
+				reset();
+				response = sim.respond(req);
+				pos = 0;
+			}
+		};
+		private final InputStream in = new InputStream() {
+			public int read() {
+				return (pos < response.length)
+				      ? (response[pos++] & 0xFF)
+				      : -1;
+			}
+			public int available() {
+				return response.length - pos;
+			}
+		};
+		private SNMP.Message message() {
+			return new SNMP().new Message(out, in, "Public");
+		}
+	}
+
+	public SnmpSimTest(String name) {
+		super(name);
+	}
+
+	private Transport createTransport() {
+		SnmpSim sim = new SnmpSim(new SampleGenerator(1200, 1));
+		ASN1Integer n = activeVolumeOccupancyDetectors.makeInt();
+		n.setInteger(4);
+		sim.putValue(n);
+		sim.putVolumeColumn(detectorVolume.makeInt(1));
+		sim.putOccupancyColumn(detectorOccupancy.makeInt(1));
+		return new Transport(sim);
+	}
+
+	public void testGet() throws IOException {
+		Transport t = createTransport();
+		SNMP.Message mess = t.message();
+		ASN1Integer n = activeVolumeOccupancyDetectors.makeInt();
+		ASN1Integer veh = detectorVolume.makeInt(3);
+		ASN1Integer occ = detectorOccupancy.makeInt(3);
+		mess.add(n);
+		mess.add(veh);
+		mess.add(occ);
+		mess.queryProps();
+		assertTrue(n.getInteger() == 4);
+		assertTrue(veh.getInteger() >= 0);
+		assertTrue(veh.getInteger() <= 20);
+		assertTrue(occ.getInteger() >= 0);
+		assertTrue(occ.getInteger() <= 200);
+	}
+
+	public void testNoSuchName() throws IOException {
+		Transport t = createTransport();
+		SNMP.Message mess = t.message();
+		mess.add(maxVehicleDetectors.makeInt());
+		try {
+			mess.queryProps();
+			fail();
+		}
+		catch (NoSuchName e) {
+			// expected
+		}
+	}
+
+	public void testSet() throws IOException {
+		Transport t = createTransport();
+		SNMP.Message mess = t.message();
+		ASN1Integer per = volumeOccupancyPeriod.makeInt();
+		per.setInteger(30);
+		mess.add(per);
+		mess.storeProps();
+		assertTrue(per.getInteger() == 30);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.snmp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * BER encoding tests
+ *
+ * @author Doug Lau
+ */
+public class BERTest extends TestCase {
+
+	private final BER ber = new SNMP();
+
+	public BERTest(String name) {
+		super(name);
+	}
+
+	private boolean check(int[] exp) {
+		byte[] enc = ber.getEncodedData();
+		byte[] b = new byte[exp.length];
+		for (int i = 0; i < exp.length; i++)
+			b[i] = (byte) exp[i];
+		return Arrays.equals(enc, b);
+	}
+
+	private int roundTrip(int v) throws IOException {
+		ber.encodeInteger(v);
+		return ber.decodeInteger(ByteBuffer.wrap(ber.getEncodedData()));
+	}
+
+	public void testInteger() throws IOException {
+		ber.encodeInteger(0);
+		assertTrue(check(new int[] { 0x02, 0x01, 0x00 }));
+		ber.encodeInteger(127);
+		assertTrue(check(new int[] { 0x02, 0x01, 0x7F }));
+		ber.encodeInteger(128);
+		assertTrue(check(new int[] { 0x02, 0x02, 0x00, 0x80 }));
+		ber.encodeInteger(-128);
+		assertTrue(check(new int[] { 0x02, 0x01, 0x80 }));
+		ber.encodeInteger(-129);
+		assertTrue(check(new int[] { 0x02, 0x02, 0xFF, 0x7F }));
+		int[] vals = { 1, -1, 255, 256, 32767, 32768, -32769, 65535,
+			8388607, 8388608, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		for (int v: vals)
+			assertTrue(roundTrip(v) == v);
+	}
+
+	public void testLength() throws IOException {
+		ber.encodeLength(200);
+		assertTrue(check(new int[] { 0x81, 0xC8 }));
+		ber.encodeLength(300);
+		assertTrue(check(new int[] { 0x82, 0x01, 0x2C }));
+	}
+
+	public void testObjectIdentifier() throws IOException {
+		ber.encodeObjectIdentifier(new int[] { 1, 3, 6, 1, 4, 1, 1206,
+			4, 2, 3 });
+		assertTrue(check(new int[] { 0x06, 0x0A, 0x2B, 0x06, 0x01,
+			0x04, 0x01, 0x89, 0x36, 0x04, 0x02, 0x03 }));
+	}
+
+	public void testSequence() throws IOException {
+		byte[] big = new byte[1000];
+		ber.encodeOctetString(big);
+		ber.encodeInteger(7);
+		ber.encodeSequence(0);
+		ByteBuffer buf = ByteBuffer.wrap(ber.getEncodedData());
+		assertTrue(ber.decodeSequence(buf) == 1007);
+		assertTrue(ber.decodeInteger(buf) == 7);
+		assertTrue(Arrays.equals(ber.decodeOctetString(buf), big));
+		assertFalse(buf.hasRemaining());
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2019  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.snmp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import static us.mn.state.dot.tms.server.comm.ntcip.mib1203.MIB1203.*;
+
+/**
+ * SNMP message packing tests, using a fake agent.
+ *
+ * @author Doug Lau
+ */
+public class MessageTest extends TestCase {
+
+	/** Fake SNMP agent.  Responds to each object with the last
+	 * sub-identifier of its OID. */
+	static private class Agent extends SNMP {
+		private final int max_objs;
+		private final int error;
+		private int n_requests = 0;
+		private byte[] request = new byte[0];
+		private byte[] response = new byte[0];
+		private int pos = 0;
+		private Agent(int mo, int e) {
+			max_objs = mo;
+			error = e;
+		}
+		private final OutputStream out = new ByteArrayOutputStream() {
+			public void flush() throws IOException {
+				byte[] req = toByteArray();
+				reset();
+				n_requests++;
+				request = req;
+				response = respond(req);
+				pos = 0;
+			}
+		};
+		private final InputStream in = new InputStream() {
+			public int read() {
+				return (pos < response.length)
+				      ? (response[pos++] & 0xFF)
+				      : -1;
+			}
+			public int available() {
+				return response.length - pos;
+			}
+		};
+		private byte[] respond(byte[] req) throws IOException {
+			ByteBuffer buf = ByteBuffer.wrap(req);
+			decodeSequence(buf);
+			decodeInteger(buf);
+			byte[] community = decodeOctetString(buf);
+			decodeIdentifier(buf);
+			decodeLength(buf);
+			int request_id = decodeInteger(buf);
+			decodeInteger(buf);
+			decodeInteger(buf);
+			decodeSequence(buf);
+			ArrayList<byte[]> oids = new ArrayList<byte[]>();
+			while (buf.hasRemaining()) {
+				decodeSequence(buf);
+				decodeIdentifier(buf);
+				byte[] oid = new byte[decodeLength(buf)];
+				buf.get(oid);
+				oids.add(oid);
+				decodeIdentifier(buf);
+				int len = decodeLength(buf);
+				buf.position(buf.position() + len);
+			}
+			int err = (oids.size() > max_objs) ? error : 0;
+			for (int i = oids.size() - 1; i >= 0; i--) {
+				byte[] oid = oids.get(i);
+				int mark = encodedLength();
+				encodeInteger(oid[oid.length - 1]);
+				encodeBytes(oid, 0, oid.length);
+				encodeLength(oid.length);
+				encodeIdentifier(ASN1Tag.OBJECT_IDENTIFIER);
+				encodeSequence(mark);
+			}
+			encodeSequence(0);
+			encodeInteger((err != 0) ? 1 : 0);
+			encodeInteger(err);
+			encodeInteger(request_id);
+			encodeConstructed(SNMPTag.GET_RESPONSE, 0);
+			encodeOctetString(community);
+			encodeInteger(SNMP_VERSION);
+			encodeSequence(0);
+			return getEncodedData();
+		}
+	}
+
+	public MessageTest(String name) {
+		super(name);
+	}
+
+	private ASN1Integer[] query(Agent agent, AgentCaps caps, int n)
+		throws IOException
+	{
+		SNMP.Message mess = new SNMP().new Message(agent.out, agent.in,
+			"Public", caps);
+		ASN1Integer[] nums = new ASN1Integer[n];
+		for (int row = 1; row <= n; row++) {
+			nums[row - 1] = fontNumber.makeInt(row);
+			mess.add(nums[row - 1]);
+		}
+		mess.queryProps();
+		return nums;
+	}
+
+	private boolean checkRows(ASN1Integer[] nums) {
+		for (int row = 1; row <= nums.length; row++) {
+			if (nums[row - 1].getInteger() != row)
+				return false;
+		}
+		return true;
+	}
+
+	private SNMP.Message store(Agent agent, AgentCaps caps, int n) {
+		SNMP.Message mess = new SNMP().new Message(agent.out, agent.in,
+			"Public", caps);
+		for (int row = 1; row <= n; row++) {
+			ASN1Integer num = fontNumber.makeInt(row);
+			num.setInteger(row);
+			mess.add(num);
+		}
+		return mess;
+	}
+
+	public void testPacked() throws IOException {
+		Agent agent = new Agent(Integer.MAX_VALUE, 0);
+		AgentCaps caps = new AgentCaps();
+		assertTrue(checkRows(query(agent, caps, 100)));
+		// No byte limit -- only split after tooBig
+		assertTrue(agent.n_requests == 1);
+	}
+
+	public void testTooBig() throws IOException {
+		Agent agent = new Agent(5, 1);
+		AgentCaps caps = new AgentCaps();
+		assertTrue(checkRows(query(agent, caps, 40)));
+		assertTrue(caps.getMaxObjects() <= 5);
+		assertTrue(caps.getMaxObjects() > 1);
+		agent.n_requests = 0;
+		assertTrue(checkRows(query(agent, caps, 40)));
+		assertTrue(agent.n_requests <= 40 / caps.getMaxObjects() + 1);
+	}
+
+	public void testTooBigWorked() throws IOException {
+		Agent agent = new Agent(6, 1);
+		AgentCaps caps = new AgentCaps();
+		assertTrue(checkRows(query(agent, caps, 6)));
+		assertTrue(agent.n_requests == 1);
+		assertTrue(checkRows(query(agent, caps, 40)));
+		// Halving would go 40, 20, 10, 5 -- but 6 worked before
+		assertTrue(caps.getMaxObjects() == 6);
+	}
+
+	public void testGenErr() throws IOException {
+		Agent agent = new Agent(1, 5);
+		AgentCaps caps = new AgentCaps();
+		assertTrue(checkRows(query(agent, caps, 10)));
+		assertTrue(caps.getMaxObjects() == 1);
+	}
+
+	public void testSetGenErr() throws IOException {
+		Agent agent = new Agent(1, 5);
+		SNMP.Message mess = store(agent, new AgentCaps(), 3);
+		try {
+			mess.storeProps();
+			fail();
+		}
+		catch (GenError e) {
+			// expected -- sets are never split after genErr
+		}
+		assertTrue(agent.n_requests == 1);
+	}
+
+	public void testSetPacked() throws IOException {
+		Agent agent = new Agent(Integer.MAX_VALUE, 0);
+		store(agent, new AgentCaps(), 100).storeProps();
+		assertTrue(agent.n_requests == 1);
+	}
+
+	public void testSetTooBig() throws IOException {
+		Agent agent = new Agent(5, 1);
+		AgentCaps caps = new AgentCaps();
+		SNMP.Message mess = store(agent, caps, 10);
+		try {
+			mess.storeProps();
+			fail();
+		}
+		catch (TooBig e) {
+			// expected -- sets are not split by default
+		}
+		assertTrue(agent.n_requests == 1);
+		// Even after the agent limit is known
+		assertTrue(checkRows(query(agent, caps, 10)));
+		mess = store(agent, caps, 10);
+		agent.n_requests = 0;
+		try {
+			mess.storeProps();
+			fail();
+		}
+		catch (TooBig e) {
+			// expected
+		}
+		assertTrue(agent.n_requests == 1);
+	}
+
+	public void testSetSplit() throws IOException {
+		Agent agent = new Agent(5, 1);
+		SNMP.Message mess = store(agent, new AgentCaps(), 10);
+		mess.setSplitSets(true);
+		mess.storeProps();
+		assertTrue(agent.n_requests > 2);
+	}
+
+	public void testRequestId() throws IOException {
+		Agent agent = new Agent(Integer.MAX_VALUE, 0);
+		query(agent, new AgentCaps(), 1);
+		query(agent, new AgentCaps(), 1);
+		SNMP snmp = new SNMP();
+		ByteBuffer req = ByteBuffer.wrap(agent.request);
+		int rid = snmp.decodeRequestId(req);
+		assertTrue(req.position() == 0);
+		assertTrue(rid == snmp.decodeRequestId(
+			ByteBuffer.wrap(agent.response)));
+	}
+}